@@ -33,6 +33,7 @@ CREATE TABLE `crowd_tags` (
   `tag_name` varchar(64) NOT NULL COMMENT '人群名称',
   `tag_desc` varchar(256) NOT NULL COMMENT '人群描述',
   `statistics` int NOT NULL COMMENT '人群标签统计量',
+  `tag_expr` varchar(512) NOT NULL DEFAULT '' COMMENT '人群标签表达式；为空为普通标签，否则为其他标签组合的人群，如 (A | B) & !C',
   `create_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
   `update_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
   PRIMARY KEY (`id`),
@@ -100,6 +101,9 @@ CREATE TABLE `crowd_tags_job` (
   `stat_start_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '统计数据，开始时间',
   `stat_end_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '统计数据，结束时间',
   `status` tinyint(1) NOT NULL DEFAULT '0' COMMENT '状态；0初始、1计划（进入执行阶段）、2重置、3完成',
+  `checkpoint` varchar(128) NOT NULL DEFAULT '' COMMENT '断点；已写入数据的读取位置',
+  `processed_count` bigint NOT NULL DEFAULT '0' COMMENT '已处理用户数',
+  `inserted_count` bigint NOT NULL DEFAULT '0' COMMENT '新写入用户数',
   `create_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
   `update_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
   PRIMARY KEY (`id`),
@@ -131,6 +135,7 @@ CREATE TABLE `group_buy_activity` (
   `take_limit_count` int NOT NULL DEFAULT '1' COMMENT '拼团次数限制',
   `target` int NOT NULL DEFAULT '1' COMMENT '拼团目标',
   `valid_time` int NOT NULL DEFAULT '15' COMMENT '拼团时长（分钟）',
+  `stock_limit` int NOT NULL DEFAULT '0' COMMENT '活动总参与名额（0不限制）',
   `status` tinyint(1) NOT NULL DEFAULT '0' COMMENT '活动状态（0创建、1生效、2过期、3废弃）',
   `start_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '活动开始时间',
   `end_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '活动结束时间',
@@ -191,7 +196,7 @@ DROP TABLE IF EXISTS `group_buy_order`;
 
 CREATE TABLE `group_buy_order` (
   `id` int unsigned NOT NULL AUTO_INCREMENT COMMENT '自增ID',
-  `team_id` varchar(8) NOT NULL COMMENT '拼单组队ID',
+  `team_id` varchar(32) NOT NULL COMMENT '拼单组队ID',
   `activity_id` bigint NOT NULL COMMENT '活动ID',
   `source` varchar(8) NOT NULL COMMENT '渠道',
   `channel` varchar(8) NOT NULL COMMENT '来源',
@@ -232,8 +237,8 @@ DROP TABLE IF EXISTS `group_buy_order_list`;
 CREATE TABLE `group_buy_order_list` (
   `id` int unsigned NOT NULL AUTO_INCREMENT COMMENT '自增ID',
   `user_id` varchar(64) NOT NULL COMMENT '用户ID',
-  `team_id` varchar(8) NOT NULL COMMENT '拼单组队ID',
-  `order_id` varchar(12) NOT NULL COMMENT '订单ID',
+  `team_id` varchar(32) NOT NULL COMMENT '拼单组队ID',
+  `order_id` varchar(32) NOT NULL COMMENT '订单ID',
   `activity_id` bigint NOT NULL COMMENT '活动ID',
   `start_time` datetime NOT NULL COMMENT '活动开始时间',
   `end_time` datetime NOT NULL COMMENT '活动结束时间',
@@ -247,11 +252,13 @@ CREATE TABLE `group_buy_order_list` (
   `out_trade_no` varchar(12) NOT NULL COMMENT '外部交易单号-确保外部调用唯一幂等',
   `out_trade_time` datetime DEFAULT NULL COMMENT '外部交易时间',
   `biz_id` varchar(64) NOT NULL COMMENT '业务唯一ID',
+  `activity_stock_stripe` int DEFAULT NULL COMMENT '活动总名额占用分段；为空未占用',
   `create_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
   `update_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
   PRIMARY KEY (`id`),
   UNIQUE KEY `uq_order_id` (`order_id`),
-  KEY `idx_user_id_activity_id` (`user_id`,`activity_id`)
+  KEY `idx_user_id_activity_id` (`user_id`,`activity_id`),
+  KEY `idx_activity_id_stock_stripe` (`activity_id`,`activity_stock_stripe`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
 
 LOCK TABLES `group_buy_order_list` WRITE;
@@ -268,6 +275,49 @@ VALUES
 UNLOCK TABLES;
 
 
+# 转储表 lock_order_dead_letter
+# ------------------------------------------------------------
+
+DROP TABLE IF EXISTS `lock_order_dead_letter`;
+
+CREATE TABLE `lock_order_dead_letter` (
+  `id` bigint unsigned NOT NULL AUTO_INCREMENT COMMENT '自增ID',
+  `order_id` varchar(32) NOT NULL COMMENT '订单ID',
+  `user_id` varchar(64) NOT NULL COMMENT '用户ID',
+  `activity_id` bigint NOT NULL COMMENT '活动ID',
+  `out_trade_no` varchar(12) NOT NULL COMMENT '外部交易单号',
+  `reserve` text NOT NULL COMMENT '预占记录；含锁单内容及预占键',
+  `attempts` int NOT NULL DEFAULT '0' COMMENT '重放次数',
+  `error_message` varchar(512) DEFAULT NULL COMMENT '最后一次失败原因',
+  `status` tinyint(1) NOT NULL DEFAULT '0' COMMENT '处理状态【0待处理、1已修复】',
+  `create_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+  `update_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `uq_order_id` (`order_id`),
+  KEY `idx_status` (`status`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci COMMENT='锁单异步落库死信';
+
+
+# 转储表 market_event_outbox
+# ------------------------------------------------------------
+
+DROP TABLE IF EXISTS `market_event_outbox`;
+
+CREATE TABLE `market_event_outbox` (
+  `id` bigint unsigned NOT NULL AUTO_INCREMENT COMMENT '自增ID',
+  `event_id` varchar(64) NOT NULL COMMENT '事件ID',
+  `routing_key` varchar(64) NOT NULL COMMENT '消息路由',
+  `message` varchar(1024) NOT NULL COMMENT '消息内容',
+  `status` tinyint(1) NOT NULL DEFAULT '0' COMMENT '发送状态【0待发送、1已发送、2发送失败】',
+  `retry_count` int NOT NULL DEFAULT '0' COMMENT '重试次数',
+  `create_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+  `update_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `uq_event_id` (`event_id`),
+  KEY `idx_status_create_time` (`status`,`create_time`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci COMMENT='交易事件发件箱';
+
+
 # 转储表 notify_task
 # ------------------------------------------------------------
 
@@ -276,7 +326,7 @@ DROP TABLE IF EXISTS `notify_task`;
 CREATE TABLE `notify_task` (
   `id` int unsigned NOT NULL AUTO_INCREMENT COMMENT '自增ID',
   `activity_id` bigint NOT NULL COMMENT '活动ID',
-  `team_id` varchar(8) NOT NULL COMMENT '拼单组队ID',
+  `team_id` varchar(32) NOT NULL COMMENT '拼单组队ID',
   `notify_type` varchar(8) NOT NULL DEFAULT 'HTTP' COMMENT '回调类型（HTTP、MQ）',
   `notify_mq` varchar(32) DEFAULT NULL COMMENT '回调消息',
   `notify_url` varchar(128) DEFAULT NULL COMMENT '回调接口',
@@ -369,6 +419,20 @@ VALUES
 UNLOCK TABLES;
 
 
+# 转储表 user_index
+# ------------------------------------------------------------
+
+DROP TABLE IF EXISTS `user_index`;
+
+CREATE TABLE `user_index` (
+  `id` int unsigned NOT NULL AUTO_INCREMENT COMMENT '自增ID；人群标签位图中的用户索引',
+  `user_id` varchar(16) NOT NULL COMMENT '用户ID',
+  `create_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `uq_user_id` (`user_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci COMMENT='用户索引字典';
+
+
 
 /*!40111 SET SQL_NOTES=@OLD_SQL_NOTES */;
 /*!40101 SET SQL_MODE=@OLD_SQL_MODE */;
@@ -1,7 +1,10 @@
 package cn.bugstack.api;
 
+import cn.bugstack.api.dto.ActivityPrewarmStatusResponseDTO;
 import cn.bugstack.api.response.Response;
 
+import java.util.List;
+
 /**
  * @author Fuzhengwei bugstack.cn @小傅哥
  * @description DCC 动态配置中心
@@ -11,4 +14,10 @@ public interface IDCCService {
 
     Response<Boolean> updateConfig(String key, String value);
 
+    Response<Boolean> refreshActivitySnapshot(Long activityId);
+
+    Response<List<ActivityPrewarmStatusResponseDTO>> queryActivityPrewarmStatus();
+
+    Response<Boolean> invalidateCache(String entity, String id);
+
 }
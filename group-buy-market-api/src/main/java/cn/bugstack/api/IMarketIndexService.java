@@ -20,6 +20,14 @@ public interface IMarketIndexService {
      */
     Response<GoodsMarketResponseDTO> queryGroupBuyMarketConfig(GoodsMarketRequestDTO goodsMarketRequestDTO);
 
+    /**
+     * 批量查询拼团营销配置
+     *
+     * @param goodsMarketBatchRequestDTO 营销商品列表
+     * @return 与商品顺序一致的营销配置信息
+     */
+    Response<List<GoodsMarketBatchResponseDTO>> queryGroupBuyMarketConfigBatch(GoodsMarketBatchRequestDTO goodsMarketBatchRequestDTO);
+
     /**
      * 查询拼团营销排行榜
      *
@@ -1,11 +1,15 @@
 package cn.bugstack.api;
 
+import cn.bugstack.api.dto.LockMarketPayOrderBatchRequestDTO;
+import cn.bugstack.api.dto.LockMarketPayOrderBatchResponseDTO;
 import cn.bugstack.api.dto.LockMarketPayOrderRequestDTO;
 import cn.bugstack.api.dto.LockMarketPayOrderResponseDTO;
 import cn.bugstack.api.dto.SettlementMarketPayOrderRequestDTO;
 import cn.bugstack.api.dto.SettlementMarketPayOrderResponseDTO;
 import cn.bugstack.api.response.Response;
 
+import java.util.List;
+
 /**
  * @author Fuzhengwei bugstack.cn @小傅哥
  * @description 营销交易服务接口
@@ -21,6 +25,14 @@ public interface IMarketTradeService {
      */
     Response<LockMarketPayOrderResponseDTO> lockMarketPayOrder(LockMarketPayOrderRequestDTO requestDTO);
 
+    /**
+     * 营销批量锁单；按活动、组队分组执行，单笔失败不影响其他订单
+     *
+     * @param requestDTO 批量锁单商品信息
+     * @return 逐笔锁单结果，与请求顺序一致
+     */
+    Response<List<LockMarketPayOrderBatchResponseDTO>> lockMarketPayOrderBatch(LockMarketPayOrderBatchRequestDTO requestDTO);
+
     /**
      * 营销结算
      *
@@ -0,0 +1,44 @@
+package cn.bugstack.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+/**
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ * @description 活动预热状态应答对象；状态为应答节点本地的预热结果
+ * @create 2025-08-09 09:40
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ActivityPrewarmStatusResponseDTO {
+
+    /** 活动ID */
+    private Long activityId;
+    /** 活动开始时间 */
+    private Date startTime;
+    /** 预热状态；WARMING 预热中、SUCCESS 预热完成、FAIL 预热失败 */
+    private String status;
+    /** 预热商品数 */
+    private Integer goodsCount;
+    /** 试算次数 */
+    private Integer trialCount;
+    /** 试算失败次数 */
+    private Integer trialErrorCount;
+    /** 数据加载耗时（毫秒） */
+    private Long loadMillis;
+    /** 试算耗时（毫秒） */
+    private Long trialMillis;
+    /** 总耗时（毫秒） */
+    private Long costMillis;
+    /** 预热完成时间 */
+    private Date warmTime;
+    /** 失败原因 */
+    private String message;
+
+}
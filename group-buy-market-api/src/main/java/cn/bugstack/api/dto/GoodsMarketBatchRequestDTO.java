@@ -0,0 +1,24 @@
+package cn.bugstack.api.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ * @description 商品营销批量请求对象；类目页一次查询多个商品
+ * @create 2025-08-18 10:40
+ */
+@Data
+public class GoodsMarketBatchRequestDTO {
+
+    // 用户ID
+    private String userId;
+    // 渠道
+    private String source;
+    // 来源
+    private String channel;
+    // 商品ID列表
+    private List<String> goodsIds;
+
+}
@@ -0,0 +1,32 @@
+package cn.bugstack.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ * @description 商品营销批量应答对象；与请求商品顺序一致，每个商品独立返回结果码
+ * @create 2025-08-18 10:40
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class GoodsMarketBatchResponseDTO {
+
+    /** 商品ID */
+    private String goodsId;
+    /** 结果码 */
+    private String code;
+    /** 结果信息 */
+    private String info;
+    /** 活动ID；成功时返回 */
+    private Long activityId;
+    /** 商品信息；成功时返回 */
+    private GoodsMarketResponseDTO.Goods goods;
+    /** 组队统计；成功时返回，同一活动共用 */
+    private GoodsMarketResponseDTO.TeamStatistic teamStatistic;
+
+}
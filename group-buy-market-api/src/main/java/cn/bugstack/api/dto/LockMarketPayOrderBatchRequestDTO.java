@@ -0,0 +1,18 @@
+package cn.bugstack.api.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ * @description 营销支付批量锁单请求对象；合作渠道一次推送多笔锁单
+ * @create 2025-03-08 10:12
+ */
+@Data
+public class LockMarketPayOrderBatchRequestDTO {
+
+    // 锁单列表，逐笔独立应答
+    private List<LockMarketPayOrderRequestDTO> lockMarketPayOrderList;
+
+}
@@ -0,0 +1,30 @@
+package cn.bugstack.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ * @description 营销支付批量锁单应答对象；与请求列表顺序一致，每笔独立返回结果码
+ * @create 2025-03-08 10:12
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class LockMarketPayOrderBatchResponseDTO {
+
+    /** 用户ID */
+    private String userId;
+    /** 外部交易单号 */
+    private String outTradeNo;
+    /** 结果码 */
+    private String code;
+    /** 结果信息 */
+    private String info;
+    /** 锁单结果；成功时返回 */
+    private LockMarketPayOrderResponseDTO lockMarketPayOrderResponseDTO;
+
+}
@@ -7,7 +7,9 @@ import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.ByteBufInputStream;
 import io.netty.buffer.ByteBufOutputStream;
 import org.redisson.Redisson;
+import org.redisson.api.RTopic;
 import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
 import org.redisson.client.codec.BaseCodec;
 import org.redisson.client.protocol.Decoder;
 import org.redisson.client.protocol.Encoder;
@@ -55,6 +57,38 @@ public class RedisClientConfig {
         return Redisson.create(config);
     }
 
+    /**
+     * 活动配置快照刷新广播；消息为活动ID，0 表示全部活动
+     */
+    @Bean("activitySnapshotRedisTopic")
+    public RTopic activitySnapshotRedisTopic(RedissonClient redissonClient) {
+        return redissonClient.getTopic("group_buy_market_activity_snapshot_refresh_topic", StringCodec.INSTANCE);
+    }
+
+    /**
+     * 已满队伍广播；消息为 full_teamId 或 open_teamId
+     */
+    @Bean("teamFullRedisTopic")
+    public RTopic teamFullRedisTopic(RedissonClient redissonClient) {
+        return redissonClient.getTopic("group_buy_market_team_full_topic", StringCodec.INSTANCE);
+    }
+
+    /**
+     * 人群标签增量广播；消息为 add:版本:用户索引:tagId 或 remove:版本:用户索引:tagId
+     */
+    @Bean("crowdTagRedisTopic")
+    public RTopic crowdTagRedisTopic(RedissonClient redissonClient) {
+        return redissonClient.getTopic("group_buy_market_crowd_tag_delta_topic", StringCodec.INSTANCE);
+    }
+
+    /**
+     * 缓存失效广播；消息为 失效版本:k:缓存键 或 失效版本:p:缓存键前缀
+     */
+    @Bean("cacheInvalidationRedisTopic")
+    public RTopic cacheInvalidationRedisTopic(RedissonClient redissonClient) {
+        return redissonClient.getTopic("group_buy_market_cache_invalidation_topic", StringCodec.INSTANCE);
+    }
+
     static class RedisCodec extends BaseCodec {
 
         private final Encoder encoder = in -> {
@@ -0,0 +1,83 @@
+package cn.bugstack.config;
+
+import cn.bugstack.infrastructure.loader.RequestDataLoader;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * 请求级数据加载器上下文；请求结束时输出数据库、Redis 往返次数
+ * <p>
+ * 异步请求（DeferredResult）在容器线程返回后仍由业务线程池通过 {@link RequestDataLoader#wrap(Runnable)} 使用同一上下文，
+ * 统计在异步完成、超时或出错时输出；容器线程的线程变量在返回时即清除，避免串到下一个请求。
+ *
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ */
+@Slf4j
+@Component
+public class RequestDataLoaderFilter extends OncePerRequestFilter {
+
+    @Override
+    protected void doFilterInternal(@NotNull HttpServletRequest request, @NotNull HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        RequestDataLoader.Context context = RequestDataLoader.open();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            RequestDataLoader.close();
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new StatisticsAsyncListener(request.getRequestURI(), context));
+            } else {
+                logStatistics(request.getRequestURI(), context);
+            }
+        }
+    }
+
+    private static void logStatistics(String uri, RequestDataLoader.Context context) {
+        log.debug("请求数据往返统计 uri:{} db:{} redis:{} dedup:{}", uri, context.getDbRoundTrips(), context.getRedisRoundTrips(), context.getDedupHits());
+    }
+
+    /**
+     * 异步请求结束时输出统计；超时、出错后容器仍会回调 onComplete，只在 onComplete 输出一次
+     */
+    private static class StatisticsAsyncListener implements AsyncListener {
+
+        private final String uri;
+        private final RequestDataLoader.Context context;
+
+        private StatisticsAsyncListener(String uri, RequestDataLoader.Context context) {
+            this.uri = uri;
+            this.context = context;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            logStatistics(uri, context);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // 再次开启异步时监听器会被移除，重新注册
+            event.getAsyncContext().addListener(this);
+        }
+
+    }
+
+}
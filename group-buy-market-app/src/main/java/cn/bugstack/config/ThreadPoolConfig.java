@@ -1,6 +1,8 @@
 package cn.bugstack.config;
 
+import cn.bugstack.infrastructure.loader.RequestDataLoader;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
@@ -8,6 +10,7 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableAsync;
 
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
 @EnableAsync
@@ -37,7 +40,7 @@ public class ThreadPoolConfig {
                 handler = new ThreadPoolExecutor.AbortPolicy();
                 break;
         }
-        // 创建线程池
+        // 创建线程池；提交任务时传递请求级数据加载器上下文，异步查询共享去重和往返统计
         return new ThreadPoolExecutor(
                 properties.getCorePoolSize(),
                 properties.getMaxPoolSize(),
@@ -45,7 +48,34 @@ public class ThreadPoolConfig {
                 TimeUnit.SECONDS,
                 new LinkedBlockingQueue<>(properties.getBlockQueueSize()),
                 Executors.defaultThreadFactory(),
-                handler);
+                handler) {
+            @Override
+            public void execute(Runnable command) {
+                super.execute(RequestDataLoader.wrap(command));
+            }
+        };
+    }
+
+    /**
+     * 批量锁单通道线程池；通道内同步等待锁单落库，与试算、查询共用的线程池隔离，避免通道任务占满线程后等待排队中的试算任务。
+     * 线程用尽时由请求线程执行通道任务
+     */
+    @Bean(name = "lockBatchExecutor", destroyMethod = "shutdown")
+    public ExecutorService lockBatchExecutor(@Value("${group-buy-market.lock-order.batch.executor-threads:32}") int threads) {
+        AtomicInteger threadIndex = new AtomicInteger();
+        return new ThreadPoolExecutor(
+                threads,
+                threads,
+                60,
+                TimeUnit.SECONDS,
+                new SynchronousQueue<>(),
+                runnable -> new Thread(runnable, "lock-batch-" + threadIndex.incrementAndGet()),
+                new ThreadPoolExecutor.CallerRunsPolicy()) {
+            @Override
+            public void execute(Runnable command) {
+                super.execute(RequestDataLoader.wrap(command));
+            }
+        };
     }
 
 }
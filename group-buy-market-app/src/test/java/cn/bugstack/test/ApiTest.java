@@ -1,7 +1,9 @@
 package cn.bugstack.test;
 
+import cn.bugstack.infrastructure.cache.TwoLevelCache;
 import cn.bugstack.infrastructure.event.EventPublisher;
 import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.redisson.api.RLock;
@@ -13,6 +15,7 @@ import org.springframework.test.context.junit4.SpringRunner;
 import javax.annotation.Resource;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 
 @Slf4j
@@ -29,6 +32,9 @@ public class ApiTest {
     @Resource
     private RedissonClient redissonClient;
 
+    @Resource
+    private TwoLevelCache twoLevelCache;
+
     @Test
     public void test_lock_thread_1() throws InterruptedException {
         RLock lock = redissonClient.getLock("group_buy_market_notify_job_exec");
@@ -84,4 +90,32 @@ public class ApiTest {
         System.out.println("Current time in milliseconds: " + currentTime);
     }
 
+    @Test
+    public void test_two_level_cache() throws InterruptedException {
+        String cacheKey = "group_buy_market_test_two_level_cache_" + System.currentTimeMillis();
+        AtomicInteger loadCount = new AtomicInteger();
+        CountDownLatch countDownLatch = new CountDownLatch(16);
+        for (int i = 0; i < 16; i++) {
+            new Thread(() -> {
+                String value = twoLevelCache.get("test", cacheKey, () -> {
+                    loadCount.incrementAndGet();
+                    return "xiaofuge";
+                }, 60000);
+                log.info("测试结果:{}", value);
+                countDownLatch.countDown();
+            }).start();
+        }
+        countDownLatch.await();
+
+        // 并发未命中只加载一次；不存在的 key 空值缓存，不重复加载
+        Assert.assertEquals(1, loadCount.get());
+        String nullKey = cacheKey + "_null";
+        twoLevelCache.get("test", nullKey, () -> {
+            loadCount.incrementAndGet();
+            return null;
+        }, 60000);
+        Assert.assertNull(twoLevelCache.get("test", nullKey, () -> "xfg01", 60000));
+        Assert.assertEquals(2, loadCount.get());
+    }
+
 }
@@ -0,0 +1,140 @@
+package cn.bugstack.test.domain.activity;
+
+import cn.bugstack.domain.activity.model.valobj.CompiledDiscountPlan;
+import cn.bugstack.domain.activity.model.valobj.DiscountTypeEnum;
+import cn.bugstack.domain.activity.model.valobj.GroupBuyActivityDiscountVO;
+import cn.bugstack.domain.activity.service.discount.IDiscountCalculateService;
+import cn.bugstack.domain.activity.service.discount.impl.MJCalculateService;
+import cn.bugstack.domain.activity.service.discount.impl.NCalculateService;
+import cn.bugstack.domain.activity.service.discount.impl.ZJCalculateService;
+import cn.bugstack.domain.activity.service.discount.impl.ZKCalculateService;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ * @description 编译折扣计划与折扣计算服务的差异对比测试；不依赖 Spring 容器
+ * @create 2025-08-16 10:30
+ */
+@Slf4j
+public class CompiledDiscountPlanTest {
+
+    private final Map<String, IDiscountCalculateService> discountCalculateServiceMap = new HashMap<String, IDiscountCalculateService>() {{
+        put("ZJ", new ZJCalculateService());
+        put("MJ", new MJCalculateService());
+        put("ZK", new ZKCalculateService());
+        put("N", new NCalculateService());
+    }};
+
+    @Test
+    public void test_random_diff() {
+        Random random = new Random(20250816L);
+        int count = 0;
+        for (int i = 0; i < 200000; i++) {
+            BigDecimal originalPrice = randomPrice(random, 100000);
+            String marketPlan;
+            String marketExpr;
+            switch (random.nextInt(4)) {
+                case 0:
+                    marketPlan = "ZJ";
+                    marketExpr = randomPrice(random, 200).toPlainString();
+                    break;
+                case 1:
+                    marketPlan = "MJ";
+                    marketExpr = randomPrice(random, 1000).toPlainString() + "," + randomPrice(random, 200).toPlainString();
+                    break;
+                case 2:
+                    marketPlan = "ZK";
+                    marketExpr = BigDecimal.valueOf(random.nextInt(1000), 1 + random.nextInt(3)).toPlainString();
+                    break;
+                default:
+                    marketPlan = "N";
+                    marketExpr = randomPrice(random, 100).toPlainString();
+            }
+            assertSame(marketPlan, marketExpr, originalPrice);
+            count++;
+        }
+        log.info("测试结果 对比次数:{}", count);
+    }
+
+    @Test
+    public void test_edge_case() {
+        // 满减不满足门槛，按原价
+        assertSame("MJ", "100,10", new BigDecimal("99.99"));
+        assertSame("MJ", "100,10", new BigDecimal("100"));
+        assertSame("MJ", "100, 10", new BigDecimal("100.00"));
+        // 最低支付1分钱
+        assertSame("ZJ", "20", new BigDecimal("20.00"));
+        assertSame("ZJ", "20", new BigDecimal("0.01"));
+        assertSame("MJ", "10,50", new BigDecimal("30"));
+        assertSame("ZK", "0.001", new BigDecimal("99.99"));
+        // 折扣按元向下取整
+        assertSame("ZK", "0.8", new BigDecimal("99.99"));
+        assertSame("ZK", "0.85", new BigDecimal("1999.9"));
+        assertSame("ZK", "1", new BigDecimal("0.5"));
+        // N元购不设下限
+        assertSame("N", "0", new BigDecimal("100"));
+        assertSame("N", "1.9", new BigDecimal("100"));
+    }
+
+    @Test
+    public void test_not_compiled() {
+        Assert.assertNull(CompiledDiscountPlan.compile("ZJ", "0.001"));
+        Assert.assertNull(CompiledDiscountPlan.compile("ZJ", "-1"));
+        Assert.assertNull(CompiledDiscountPlan.compile("ZJ", " 10"));
+        Assert.assertNull(CompiledDiscountPlan.compile("MJ", "100"));
+        Assert.assertNull(CompiledDiscountPlan.compile("MJ", "abc,10"));
+        Assert.assertNull(CompiledDiscountPlan.compile("ZK", "0.0000000001"));
+        Assert.assertNull(CompiledDiscountPlan.compile("N", "1e12"));
+        Assert.assertNull(CompiledDiscountPlan.compile("XX", "10"));
+        Assert.assertNull(CompiledDiscountPlan.compile("ZJ", null));
+
+        Assert.assertEquals(-1, CompiledDiscountPlan.toCents(new BigDecimal("0.001")));
+        Assert.assertEquals(-1, CompiledDiscountPlan.toCents(new BigDecimal("-1")));
+        Assert.assertEquals(-1, CompiledDiscountPlan.toCents(null));
+        Assert.assertEquals(1000, CompiledDiscountPlan.toCents(new BigDecimal("1E+1")));
+    }
+
+    @Test
+    public void test_reuse() {
+        CompiledDiscountPlan compiledDiscountPlan = CompiledDiscountPlan.compile("MJ", "100,10");
+        Assert.assertNotNull(compiledDiscountPlan);
+        Assert.assertTrue(compiledDiscountPlan.isCompiledFrom("MJ", "100,10"));
+        Assert.assertFalse(compiledDiscountPlan.isCompiledFrom("MJ", "100,20"));
+        Assert.assertFalse(compiledDiscountPlan.isCompiledFrom("ZJ", "100,10"));
+    }
+
+    private void assertSame(String marketPlan, String marketExpr, BigDecimal originalPrice) {
+        GroupBuyActivityDiscountVO.GroupBuyDiscount groupBuyDiscount = GroupBuyActivityDiscountVO.GroupBuyDiscount.builder()
+                .discountType(DiscountTypeEnum.BASE)
+                .marketPlan(marketPlan)
+                .marketExpr(marketExpr)
+                .build();
+        BigDecimal expectPayPrice = discountCalculateServiceMap.get(marketPlan).doCalculate(originalPrice, groupBuyDiscount);
+
+        CompiledDiscountPlan compiledDiscountPlan = CompiledDiscountPlan.compile(marketPlan, marketExpr);
+        Assert.assertNotNull(marketPlan + " " + marketExpr, compiledDiscountPlan);
+        long originalCents = CompiledDiscountPlan.toCents(originalPrice);
+        long payCents = compiledDiscountPlan.payCents(originalCents);
+
+        String message = marketPlan + " " + marketExpr + " " + originalPrice;
+        Assert.assertEquals(message, 0, expectPayPrice.compareTo(CompiledDiscountPlan.fromCents(payCents)));
+        Assert.assertEquals(message, 0, originalPrice.subtract(expectPayPrice).compareTo(CompiledDiscountPlan.fromCents(compiledDiscountPlan.deductionCents(originalCents))));
+    }
+
+    /**
+     * 随机金额，0.01 ~ max 元，标度0~2
+     */
+    private static BigDecimal randomPrice(Random random, int max) {
+        int scale = random.nextInt(3);
+        long unscaled = 1 + (long) (random.nextDouble() * max * Math.pow(10, scale));
+        return BigDecimal.valueOf(unscaled, scale);
+    }
+
+}
@@ -5,12 +5,14 @@ import cn.bugstack.domain.activity.model.entity.TrialBalanceEntity;
 import cn.bugstack.domain.activity.service.IIndexGroupBuyMarketService;
 import com.alibaba.fastjson.JSON;
 import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import javax.annotation.Resource;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author Fuzhengwei bugstack.cn @小傅哥
@@ -67,4 +69,22 @@ public class IIndexGroupBuyMarketServiceTest {
         log.info("返回结果:{}", JSON.toJSONString(trialBalanceEntity));
     }
 
+    @Test
+    public void test_indexMarketTrialAsync() throws Exception {
+        MarketProductEntity marketProductEntity = new MarketProductEntity();
+        marketProductEntity.setUserId("xiaofuge");
+        marketProductEntity.setSource("s01");
+        marketProductEntity.setChannel("c01");
+        marketProductEntity.setGoodsId("9890001");
+
+        TrialBalanceEntity syncTrialBalanceEntity = indexGroupBuyMarketService.indexMarketTrial(marketProductEntity);
+        TrialBalanceEntity trialBalanceEntity = indexGroupBuyMarketService.indexMarketTrialAsync(marketProductEntity).get(5, TimeUnit.SECONDS);
+        log.info("请求参数:{}", JSON.toJSONString(marketProductEntity));
+        log.info("返回结果:{}", JSON.toJSONString(trialBalanceEntity));
+
+        Assert.assertEquals(0, syncTrialBalanceEntity.getPayPrice().compareTo(trialBalanceEntity.getPayPrice()));
+        Assert.assertEquals(syncTrialBalanceEntity.getIsVisible(), trialBalanceEntity.getIsVisible());
+        Assert.assertEquals(syncTrialBalanceEntity.getIsEnable(), trialBalanceEntity.getIsEnable());
+    }
+
 }
@@ -0,0 +1,176 @@
+package cn.bugstack.test.domain.activity;
+
+import cn.bugstack.domain.activity.model.valobj.MarketPriceVO;
+import cn.bugstack.domain.activity.service.trial.cache.MarketPriceCache;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ * @description 商品营销价格缓存测试；并发未命中只计算一次、版本变化整体替换、计算失败不缓存；不依赖 Spring 容器
+ * @create 2025-08-26 16:00
+ */
+@Slf4j
+public class MarketPriceCacheTest {
+
+    private static final Long ACTIVITY_ID = 100123L;
+    private static final String GOODS_ID = "9890001";
+    private static final BigDecimal ORIGINAL_PRICE = new BigDecimal("100.00");
+
+    private MarketPriceCache marketPriceCache;
+    private final AtomicInteger calculations = new AtomicInteger();
+
+    @Before
+    public void init() {
+        marketPriceCache = new MarketPriceCache();
+        ReflectionTestUtils.setField(marketPriceCache, "maximumSize", 1000L);
+        ReflectionTestUtils.setField(marketPriceCache, "expireAfterAccessSeconds", 600L);
+        marketPriceCache.init();
+    }
+
+    @Test
+    public void test_single_flight() throws Exception {
+        int threads = 32;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<MarketPriceVO>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return marketPriceCache.get(ACTIVITY_ID, GOODS_ID, "d1_1", 1L, ORIGINAL_PRICE, () -> {
+                    sleep(50);
+                    return price(ORIGINAL_PRICE, "20.00");
+                });
+            }));
+        }
+        start.countDown();
+
+        MarketPriceVO first = futures.get(0).get(10, TimeUnit.SECONDS);
+        for (Future<MarketPriceVO> future : futures) {
+            // 等待同一结果
+            Assert.assertSame(first, future.get(10, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+
+        Assert.assertEquals(1, calculations.get());
+        Assert.assertEquals(0, new BigDecimal("80.00").compareTo(first.getPayPrice()));
+    }
+
+    @Test
+    public void test_version_replace() {
+        MarketPriceVO v1 = marketPriceCache.get(ACTIVITY_ID, GOODS_ID, "d1_1", 1L, ORIGINAL_PRICE, () -> price(ORIGINAL_PRICE, "20.00"));
+        Assert.assertSame(v1, marketPriceCache.get(ACTIVITY_ID, GOODS_ID, "d1_1", 1L, ORIGINAL_PRICE, () -> price(ORIGINAL_PRICE, "0.00")));
+        Assert.assertEquals(1, calculations.get());
+
+        // 1. 折扣变更
+        MarketPriceVO v2 = marketPriceCache.get(ACTIVITY_ID, GOODS_ID, "d1_2", 1L, ORIGINAL_PRICE, () -> price(ORIGINAL_PRICE, "30.00"));
+        Assert.assertEquals(0, new BigDecimal("70.00").compareTo(v2.getPayPrice()));
+
+        // 2. 商品价格版本变更
+        MarketPriceVO v3 = marketPriceCache.get(ACTIVITY_ID, GOODS_ID, "d1_2", 2L, ORIGINAL_PRICE, () -> price(ORIGINAL_PRICE, "40.00"));
+        Assert.assertEquals(0, new BigDecimal("60.00").compareTo(v3.getPayPrice()));
+
+        // 3. 原价变更，数值相等的不同标度视为同一价格
+        BigDecimal newPrice = new BigDecimal("120.00");
+        MarketPriceVO v4 = marketPriceCache.get(ACTIVITY_ID, GOODS_ID, "d1_2", 2L, newPrice, () -> price(newPrice, "40.00"));
+        Assert.assertEquals(0, new BigDecimal("80.00").compareTo(v4.getPayPrice()));
+        Assert.assertSame(v4, marketPriceCache.get(ACTIVITY_ID, GOODS_ID, "d1_2", 2L, new BigDecimal("120"), () -> price(newPrice, "0.00")));
+        Assert.assertEquals(4, calculations.get());
+
+        // 4. 旧版本不再命中；不同商品互不影响
+        Assert.assertNotSame(v1, marketPriceCache.get(ACTIVITY_ID, GOODS_ID, "d1_1", 1L, ORIGINAL_PRICE, () -> price(ORIGINAL_PRICE, "20.00")));
+        marketPriceCache.get(ACTIVITY_ID, "9890002", "d1_2", 2L, newPrice, () -> price(newPrice, "40.00"));
+        Assert.assertEquals(6, calculations.get());
+    }
+
+    @Test
+    public void test_failure_not_cached() {
+        try {
+            marketPriceCache.get(ACTIVITY_ID, GOODS_ID, "d1_1", 1L, ORIGINAL_PRICE, () -> {
+                calculations.incrementAndGet();
+                throw new IllegalStateException("折扣表达式错误");
+            });
+            Assert.fail("计算失败应抛出原异常");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("折扣表达式错误", e.getMessage());
+        }
+
+        // 失败的缓存项已移除，下次请求重新计算
+        MarketPriceVO price = marketPriceCache.get(ACTIVITY_ID, GOODS_ID, "d1_1", 1L, ORIGINAL_PRICE, () -> price(ORIGINAL_PRICE, "20.00"));
+        Assert.assertEquals(0, new BigDecimal("80.00").compareTo(price.getPayPrice()));
+        Assert.assertEquals(2, calculations.get());
+    }
+
+    @Test
+    public void test_no_discount_version() {
+        // 折扣版本为空时不缓存，每次计算
+        marketPriceCache.get(ACTIVITY_ID, GOODS_ID, null, 1L, ORIGINAL_PRICE, () -> price(ORIGINAL_PRICE, "20.00"));
+        marketPriceCache.get(ACTIVITY_ID, GOODS_ID, null, 1L, ORIGINAL_PRICE, () -> price(ORIGINAL_PRICE, "20.00"));
+        Assert.assertEquals(2, calculations.get());
+    }
+
+    @Test
+    public void test_failure_shared_by_waiters() throws Exception {
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<MarketPriceVO>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return marketPriceCache.get(ACTIVITY_ID, GOODS_ID, "d1_1", 1L, ORIGINAL_PRICE, () -> {
+                    calculations.incrementAndGet();
+                    sleep(50);
+                    throw new IllegalStateException("折扣表达式错误");
+                });
+            }));
+        }
+        start.countDown();
+
+        // 异常回到全部等待的请求；等待期间不重复计算
+        for (Future<MarketPriceVO> future : futures) {
+            try {
+                future.get(10, TimeUnit.SECONDS);
+                Assert.fail("计算失败应抛出原异常");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+        }
+        executor.shutdown();
+        Assert.assertTrue(calculations.get() < threads);
+        log.info("测试结果 calculations:{} threads:{}", calculations.get(), threads);
+    }
+
+    private MarketPriceVO price(BigDecimal originalPrice, String deductionPrice) {
+        calculations.incrementAndGet();
+        BigDecimal deduction = new BigDecimal(deductionPrice);
+        return MarketPriceVO.builder()
+                .originalPrice(originalPrice)
+                .deductionPrice(deduction)
+                .payPrice(originalPrice.subtract(deduction))
+                .build();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
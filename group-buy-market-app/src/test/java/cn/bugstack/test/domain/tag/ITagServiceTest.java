@@ -1,15 +1,29 @@
 package cn.bugstack.test.domain.tag;
 
+import cn.bugstack.domain.tag.adapter.port.ITagPort;
+import cn.bugstack.domain.tag.model.entity.CrowdTagsJobEntity;
+import cn.bugstack.domain.tag.model.valobj.CrowdTagsExpressionVO;
+import cn.bugstack.domain.tag.model.valobj.CrowdTagsUserBatchVO;
 import cn.bugstack.domain.tag.service.TagService;
+import cn.bugstack.infrastructure.adapter.repository.tag.CrowdTagBitmapLayout;
+import cn.bugstack.infrastructure.adapter.repository.tag.CrowdTagsExpressionBitmap;
+import cn.bugstack.infrastructure.adapter.repository.tag.UserIndexDictionary;
 import cn.bugstack.infrastructure.redis.IRedisService;
+import cn.bugstack.infrastructure.snapshot.CrowdTagReplicaRegistry;
+import com.alibaba.fastjson.JSON;
 import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.redisson.api.RBitSet;
+import org.roaringbitmap.RoaringBitmap;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import javax.annotation.Resource;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * @author Fuzhengwei bugstack.cn @小傅哥
@@ -25,6 +39,14 @@ public class ITagServiceTest {
     private TagService tagService;
     @Resource
     private IRedisService redisService;
+    @Resource
+    private CrowdTagReplicaRegistry crowdTagReplicaRegistry;
+    @Resource
+    private CrowdTagBitmapLayout crowdTagBitmapLayout;
+    @Resource
+    private UserIndexDictionary userIndexDictionary;
+    @Resource
+    private ITagPort tagPort;
 
     @Test
     public void test_tag_job() {
@@ -39,6 +61,80 @@ public class ITagServiceTest {
         log.info("gudebai 不存在，预期结果为 false，测试结果:{}", bitSet.get(redisService.getIndexFromUserId("gudebai")));
     }
 
+    @Test
+    public void test_crowd_tag_replica() throws InterruptedException {
+        String tagId = "RQ_KJHKL98UU78H66554GFDV";
+        RBitSet bitSet = redisService.getBitSet(crowdTagBitmapLayout.bitmapKey(tagId));
+        // 首次访问触发副本构建
+        crowdTagReplicaRegistry.isTagCrowdRange(tagId, crowdTagBitmapLayout.queryIndex("xiaofuge"));
+        Thread.sleep(3000);
+
+        for (String userId : new String[]{"xiaofuge", "gudebai"}) {
+            Integer index = crowdTagBitmapLayout.queryIndex(userId);
+            boolean expected = null != index && bitSet.get(index);
+            Boolean within = crowdTagReplicaRegistry.isTagCrowdRange(tagId, index);
+            log.info("{} 副本结果:{} Redis结果:{}", userId, within, expected);
+            Assert.assertEquals(expected, within);
+        }
+    }
+
+    @Test
+    public void test_user_index_dictionary() {
+        int index01 = userIndexDictionary.assignIndex("xiaofuge");
+        int index02 = userIndexDictionary.assignIndex("liergou");
+        log.info("xiaofuge:{} liergou:{}", index01, index02);
+
+        Assert.assertNotEquals(index01, index02);
+        Assert.assertEquals(index01, userIndexDictionary.assignIndex("xiaofuge"));
+        Assert.assertEquals(Integer.valueOf(index01), userIndexDictionary.queryIndex("xiaofuge"));
+        Assert.assertEquals(Integer.valueOf(index02), userIndexDictionary.assignIndexes(Arrays.asList("xiaofuge", "liergou")).get("liergou"));
+    }
+
+    @Test
+    public void test_migrate_crowd_tags_bitmap() {
+        int count = tagService.migrateCrowdTagsBitmap();
+        log.info("迁移标签数:{}", count);
+
+        RBitSet bitSet = redisService.getBitSet(crowdTagBitmapLayout.denseBitmapKey("RQ_KJHKL98UU78H66554GFDV"));
+        log.info("xiaofuge 存在，预期结果为 true，测试结果:{}", bitSet.get(userIndexDictionary.assignIndex("xiaofuge")));
+    }
+
+    @Test
+    public void test_tag_port_checkpoint() throws Exception {
+        CrowdTagsJobEntity crowdTagsJobEntity = CrowdTagsJobEntity.builder()
+                .tagId("RQ_KJHKL98UU78H66554GFDV")
+                .batchId("10001")
+                .build();
+
+        CrowdTagsUserBatchVO batch01 = tagPort.readCrowdTagsUserIds(crowdTagsJobEntity, null, 5);
+        CrowdTagsUserBatchVO batch02 = tagPort.readCrowdTagsUserIds(crowdTagsJobEntity, batch01.getCheckpoint(), 100);
+        CrowdTagsUserBatchVO batch03 = tagPort.readCrowdTagsUserIds(crowdTagsJobEntity, batch02.getCheckpoint(), 100);
+        log.info("batch01:{} batch02:{}", JSON.toJSONString(batch01), JSON.toJSONString(batch02));
+
+        Assert.assertEquals(5, batch01.getUserIds().size());
+        Assert.assertEquals("xfg04", batch02.getUserIds().get(0));
+        Assert.assertEquals(6, batch02.getUserIds().size());
+        Assert.assertTrue(batch03.getUserIds().isEmpty());
+    }
+
+    @Test
+    public void test_crowd_tags_expression() {
+        CrowdTagsExpressionVO crowdTagsExpressionVO = CrowdTagsExpressionVO.parse("(A | B) & !C");
+        Assert.assertTrue(crowdTagsExpressionVO.isBounded());
+        Assert.assertFalse(CrowdTagsExpressionVO.parse("!A | B").isBounded());
+        Assert.assertTrue(crowdTagsExpressionVO.isWithin(tagId -> "B".equals(tagId)));
+        Assert.assertFalse(crowdTagsExpressionVO.isWithin(tagId -> !"A".equals(tagId)));
+
+        Map<String, RoaringBitmap> bitmaps = new HashMap<>();
+        bitmaps.put("A", RoaringBitmap.bitmapOf(1, 2, 3));
+        bitmaps.put("B", RoaringBitmap.bitmapOf(3, 4, 5));
+        bitmaps.put("C", RoaringBitmap.bitmapOf(2, 5, 6));
+        RoaringBitmap result = CrowdTagsExpressionBitmap.evaluate(crowdTagsExpressionVO, bitmaps::get);
+        log.info("测试结果:{}", result);
+        Assert.assertEquals(RoaringBitmap.bitmapOf(1, 3, 4), result);
+        Assert.assertEquals(RoaringBitmap.bitmapOf(1, 3), CrowdTagsExpressionBitmap.evaluate(CrowdTagsExpressionVO.parse("A & !(!B | C) | A & !C & !B"), bitmaps::get));
+    }
+
     @Test
     public void test_null_tag_bitmap() {
         RBitSet bitSet = redisService.getBitSet("null");
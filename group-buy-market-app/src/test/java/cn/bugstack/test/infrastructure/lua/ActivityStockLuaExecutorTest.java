@@ -0,0 +1,116 @@
+package cn.bugstack.test.infrastructure.lua;
+
+import cn.bugstack.infrastructure.adapter.repository.lua.ActivityStockLuaExecutor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.RandomStringUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.redisson.api.RBucket;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ * @description 活动名额分段脚本测试；初始名额未知返回 STOCK_MISSING、扣减不为负、调出以剩余为上限、并发扣减不超卖
+ * @create 2025-08-26 14:00
+ */
+@Slf4j
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class ActivityStockLuaExecutorTest {
+
+    @Resource
+    private ActivityStockLuaExecutor activityStockLuaExecutor;
+    @Resource
+    private RedissonClient redissonClient;
+
+    private final String stockKey = "group_buy_market_activity_stock_test_" + RandomStringUtils.randomNumeric(8);
+
+    @After
+    public void cleanup() {
+        redissonClient.getKeys().delete(stockKey);
+    }
+
+    @Test
+    public void test_decrement() {
+        // 1. key 不存在且初始名额未知，不写入
+        Assert.assertEquals(ActivityStockLuaExecutor.STOCK_MISSING, activityStockLuaExecutor.decrement(stockKey, ActivityStockLuaExecutor.STOCK_UNKNOWN, 60));
+        Assert.assertFalse(stock().isExists());
+
+        // 2. 按初始名额写入后扣减，已写入的 key 不再按初始名额覆盖
+        Assert.assertEquals(2, activityStockLuaExecutor.decrement(stockKey, 3, 60));
+        Assert.assertEquals(1, activityStockLuaExecutor.decrement(stockKey, 100, 60));
+        Assert.assertEquals(0, activityStockLuaExecutor.decrement(stockKey, ActivityStockLuaExecutor.STOCK_UNKNOWN, 60));
+        Assert.assertTrue(stock().remainTimeToLive() > 0);
+
+        // 3. 用尽后不再扣减为负
+        Assert.assertEquals(ActivityStockLuaExecutor.STOCK_EMPTY, activityStockLuaExecutor.decrement(stockKey, ActivityStockLuaExecutor.STOCK_UNKNOWN, 60));
+        Assert.assertEquals("0", stock().get());
+    }
+
+    @Test
+    public void test_take_increment() {
+        Assert.assertEquals(ActivityStockLuaExecutor.STOCK_MISSING, activityStockLuaExecutor.take(stockKey, ActivityStockLuaExecutor.STOCK_UNKNOWN, 60, 5));
+        Assert.assertEquals(ActivityStockLuaExecutor.STOCK_MISSING, activityStockLuaExecutor.increment(stockKey, ActivityStockLuaExecutor.STOCK_UNKNOWN, 60, 1));
+        Assert.assertFalse(stock().isExists());
+
+        // 调入按初始名额写入后累加
+        Assert.assertEquals(10, activityStockLuaExecutor.increment(stockKey, 8, 60, 2));
+        // 调出以实时剩余为上限
+        Assert.assertEquals(4, activityStockLuaExecutor.take(stockKey, ActivityStockLuaExecutor.STOCK_UNKNOWN, 60, 4));
+        Assert.assertEquals(6, activityStockLuaExecutor.take(stockKey, ActivityStockLuaExecutor.STOCK_UNKNOWN, 60, 100));
+        Assert.assertEquals(0, activityStockLuaExecutor.take(stockKey, ActivityStockLuaExecutor.STOCK_UNKNOWN, 60, 1));
+        Assert.assertEquals("0", stock().get());
+    }
+
+    @Test
+    public void test_decrement_concurrent() throws Exception {
+        int stock = 100;
+        int threads = 64;
+        int perThread = 5;
+        activityStockLuaExecutor.increment(stockKey, stock, 60, 0);
+
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                int success = 0;
+                for (int j = 0; j < perThread; j++) {
+                    if (activityStockLuaExecutor.decrement(stockKey, ActivityStockLuaExecutor.STOCK_UNKNOWN, 60) >= 0) success++;
+                }
+                return success;
+            }));
+        }
+        start.countDown();
+
+        int success = 0;
+        for (Future<Integer> future : futures) {
+            success += future.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        Assert.assertEquals(stock, success);
+        Assert.assertEquals("0", stock().get());
+        log.info("测试结果 success:{} requests:{}", success, threads * perThread);
+    }
+
+    private RBucket<String> stock() {
+        return redissonClient.getBucket(stockKey, StringCodec.INSTANCE);
+    }
+
+}
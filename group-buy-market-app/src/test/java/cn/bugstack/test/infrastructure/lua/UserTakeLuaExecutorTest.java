@@ -0,0 +1,135 @@
+package cn.bugstack.test.infrastructure.lua;
+
+import cn.bugstack.infrastructure.adapter.repository.lua.UserTakeLuaExecutor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.RandomStringUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.redisson.api.RMap;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ * @description 用户参与次数脚本测试；未初始化、达到上限、回退不为负、序号只增不减、并发占用不超上限
+ * @create 2025-08-26 11:30
+ */
+@Slf4j
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class UserTakeLuaExecutorTest {
+
+    @Resource
+    private UserTakeLuaExecutor userTakeLuaExecutor;
+    @Resource
+    private RedissonClient redissonClient;
+
+    private final String takeKey = "group_buy_market_user_take_test_" + RandomStringUtils.randomNumeric(8);
+
+    @After
+    public void cleanup() {
+        redissonClient.getKeys().delete(takeKey);
+    }
+
+    @Test
+    public void test_occupy_release() {
+        // 1. 未回填时返回 TAKE_MISS，不创建 key
+        Assert.assertEquals(UserTakeLuaExecutor.TAKE_MISS, userTakeLuaExecutor.occupy(takeKey, 2));
+        Assert.assertFalse(take().isExists());
+
+        // 2. 回填数据库已参与 1 次、最大序号 3；第 2 次参与返回序号 4，第 3 次达到上限
+        userTakeLuaExecutor.backfill(takeKey, 1, 3, 60);
+        Assert.assertEquals(4, userTakeLuaExecutor.occupy(takeKey, 2));
+        Assert.assertEquals(UserTakeLuaExecutor.TAKE_LIMIT, userTakeLuaExecutor.occupy(takeKey, 2));
+        Assert.assertEquals("2", take().get("count"));
+        Assert.assertEquals("4", take().get("seq"));
+
+        // 3. 已存在时回填不覆盖并发累加的结果
+        userTakeLuaExecutor.backfill(takeKey, 0, 0, 60);
+        Assert.assertEquals("2", take().get("count"));
+
+        // 4. 回退只减有效次数，序号不回退，再次参与得到新序号
+        userTakeLuaExecutor.release(takeKey);
+        Assert.assertEquals("1", take().get("count"));
+        Assert.assertEquals(5, userTakeLuaExecutor.occupy(takeKey, 2));
+
+        // 5. 多次回退不为负
+        userTakeLuaExecutor.release(takeKey);
+        userTakeLuaExecutor.release(takeKey);
+        userTakeLuaExecutor.release(takeKey);
+        Assert.assertEquals("0", take().get("count"));
+
+        // 6. 上限为空不限制
+        for (int i = 0; i < 5; i++) {
+            Assert.assertTrue(userTakeLuaExecutor.occupy(takeKey, null) > 0);
+        }
+        Assert.assertEquals("5", take().get("count"));
+        Assert.assertEquals("10", take().get("seq"));
+    }
+
+    @Test
+    public void test_release_missing() {
+        // key 不存在时回退不创建 key，下次占用从数据库回填
+        userTakeLuaExecutor.release(takeKey);
+        Assert.assertFalse(take().isExists());
+    }
+
+    @Test
+    public void test_occupy_concurrent() throws Exception {
+        int takeLimit = 10;
+        userTakeLuaExecutor.backfill(takeKey, 0, 0, 60);
+
+        int threads = 50;
+        Set<Long> seqs = ConcurrentHashMap.newKeySet();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return userTakeLuaExecutor.occupy(takeKey, takeLimit);
+            }));
+        }
+        start.countDown();
+
+        int limited = 0;
+        for (Future<Long> future : futures) {
+            long result = future.get(10, TimeUnit.SECONDS);
+            if (UserTakeLuaExecutor.TAKE_LIMIT == result) {
+                limited++;
+            } else {
+                Assert.assertTrue(seqs.add(result));
+            }
+        }
+        executor.shutdown();
+
+        // 恰好占用上限次数，序号为 1..10 且不重复
+        Assert.assertEquals(threads - takeLimit, limited);
+        Set<Long> expected = new HashSet<>();
+        for (long seq = 1; seq <= takeLimit; seq++) expected.add(seq);
+        Assert.assertEquals(expected, seqs);
+        Assert.assertEquals(String.valueOf(takeLimit), take().get("count"));
+        log.info("测试结果 success:{} limited:{}", seqs.size(), limited);
+    }
+
+    private RMap<String, String> take() {
+        return redissonClient.getMap(takeKey, StringCodec.INSTANCE);
+    }
+
+}
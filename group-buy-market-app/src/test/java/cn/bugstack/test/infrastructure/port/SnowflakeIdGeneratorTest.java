@@ -0,0 +1,94 @@
+package cn.bugstack.test.infrastructure.port;
+
+import cn.bugstack.domain.trade.adapter.port.IIdGenerator;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ * @description 雪花算法ID生成器测试；并发取号唯一、超出预取缓冲后同步兜底，ID 结构与租约 workerId 一致
+ * @create 2025-08-26 10:00
+ */
+@Slf4j
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class SnowflakeIdGeneratorTest {
+
+    private static final long EPOCH = 1735660800000L;
+
+    @Resource
+    private IIdGenerator idGenerator;
+
+    @Test
+    public void test_nextId_concurrent_unique() throws Exception {
+        int threads = 16;
+        // 取号总量远超默认 8192 的预取缓冲，覆盖缓冲耗尽时的同步生成
+        int perThread = 20000;
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int j = 0; j < perThread; j++) {
+                    Assert.assertTrue("重复ID", ids.add(idGenerator.nextId()));
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        Assert.assertEquals(threads * perThread, ids.size());
+
+        long workerId = -1;
+        long upper = System.currentTimeMillis() - EPOCH + 1000;
+        for (Long id : ids) {
+            Assert.assertTrue(id > 0);
+            long worker = (id >> 12) & 1023;
+            if (workerId < 0) workerId = worker;
+            Assert.assertEquals("同一节点 workerId 应一致", workerId, worker);
+            // 序列用尽时借用下一毫秒，允许少量超前
+            Assert.assertTrue((id >> 22) <= upper);
+        }
+        log.info("测试结果 count:{} workerId:{}", ids.size(), workerId);
+    }
+
+    @Test
+    public void test_nextId_trend_increasing() {
+        long first = idGenerator.nextId();
+        // 取号数量超过预取缓冲，缓冲内较早生成的ID取完后，后取到的ID应大于最早取到的ID
+        long max = first;
+        for (int i = 0; i < 100000; i++) {
+            max = Math.max(max, idGenerator.nextId());
+        }
+        Assert.assertTrue(max > first);
+
+        String orderId = idGenerator.nextOrderId();
+        String teamId = idGenerator.nextTeamId();
+        Assert.assertNotEquals(orderId, teamId);
+        Assert.assertTrue(orderId.matches("\\d+"));
+        Assert.assertTrue(teamId.matches("\\d+"));
+        log.info("测试结果 orderId:{} teamId:{}", orderId, teamId);
+    }
+
+}
@@ -0,0 +1,211 @@
+package cn.bugstack.test.infrastructure.stock;
+
+import cn.bugstack.infrastructure.adapter.repository.lua.ActivityStockLuaExecutor;
+import cn.bugstack.infrastructure.adapter.repository.stock.ActivityStockStripes;
+import cn.bugstack.infrastructure.dao.IGroupBuyOrderListDao;
+import cn.bugstack.infrastructure.dao.po.GroupBuyActivity;
+import cn.bugstack.infrastructure.snapshot.ActivitySnapshot;
+import cn.bugstack.infrastructure.snapshot.ActivitySnapshotRegistry;
+import cn.bugstack.types.exception.AppException;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.RandomUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ * @description 活动总名额分段测试；使用真实 Redis 与脚本，活动快照、已占用数替换为桩。验证并发占用不超卖、分段丢失按数据库重建、归还与调拨守恒
+ * @create 2025-08-26 14:30
+ */
+@Slf4j
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class ActivityStockStripesTest {
+
+    private static final int STRIPES = 4;
+    private static final int STOCK_LIMIT = 100;
+
+    @Resource
+    private ActivityStockLuaExecutor activityStockLuaExecutor;
+    @Resource
+    private RedissonClient redissonClient;
+
+    private final Long activityId = 9000000000L + RandomUtils.nextLong(0, 100000000L);
+
+    private ActivitySnapshotRegistry activitySnapshotRegistry;
+    private IGroupBuyOrderListDao groupBuyOrderListDao;
+    private ActivitySnapshot snapshot;
+    private ActivityStockStripes activityStockStripes;
+
+    @Before
+    public void init() {
+        snapshot = snapshot(STOCK_LIMIT);
+        activitySnapshotRegistry = Mockito.mock(ActivitySnapshotRegistry.class);
+        groupBuyOrderListDao = Mockito.mock(IGroupBuyOrderListDao.class);
+        when(activitySnapshotRegistry.get(activityId)).thenReturn(snapshot);
+        when(groupBuyOrderListDao.queryActivityStockOccupiedCount(activityId)).thenReturn(0);
+
+        activityStockStripes = new ActivityStockStripes();
+        ReflectionTestUtils.setField(activityStockStripes, "activityStockLuaExecutor", activityStockLuaExecutor);
+        ReflectionTestUtils.setField(activityStockStripes, "activitySnapshotRegistry", activitySnapshotRegistry);
+        ReflectionTestUtils.setField(activityStockStripes, "redissonClient", redissonClient);
+        ReflectionTestUtils.setField(activityStockStripes, "groupBuyOrderListDao", groupBuyOrderListDao);
+        ReflectionTestUtils.setField(activityStockStripes, "stripes", STRIPES);
+        ReflectionTestUtils.setField(activityStockStripes, "lowWaterPercent", 25);
+    }
+
+    @After
+    public void cleanup() {
+        redissonClient.getKeys().deleteByPattern("group_buy_market_activity_stock_" + activityId + "*");
+        redissonClient.getSet("group_buy_market_activity_stock_active", StringCodec.INSTANCE).remove(String.valueOf(activityId));
+    }
+
+    @Test
+    public void test_occupy_concurrent() throws Exception {
+        int threads = 150;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(50);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return activityStockStripes.occupy(activityId);
+            }));
+        }
+        start.countDown();
+
+        int success = 0;
+        int soldOut = 0;
+        for (Future<Integer> future : futures) {
+            Integer stripe = future.get(30, TimeUnit.SECONDS);
+            if (null == stripe) {
+                soldOut++;
+            } else {
+                Assert.assertTrue(stripe >= 0 && stripe < STRIPES);
+                success++;
+            }
+        }
+        executor.shutdown();
+
+        // 分段首次使用时并发重建，占用总数恰好等于总名额，全部分段用尽才判定售罄
+        Assert.assertEquals(STOCK_LIMIT, success);
+        Assert.assertEquals(threads - STOCK_LIMIT, soldOut);
+        Assert.assertEquals(0, sum());
+    }
+
+    @Test
+    public void test_rebuild_from_db() {
+        // 1. 数据库已占用 40，预热后各段均分剩余 60
+        when(groupBuyOrderListDao.queryActivityStockOccupiedCount(activityId)).thenReturn(40);
+        activityStockStripes.warmUp(activityId);
+        Assert.assertEquals(STOCK_LIMIT - 40, sum());
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            Assert.assertEquals(15, remain(stripe));
+        }
+
+        // 2. 分段 0 占用一个并落库后，分段 1 key 丢失；重建 = 总名额 - 已占用 41 - 其余分段剩余 44
+        activityStockLuaExecutor.decrement(stockKey(0), ActivityStockLuaExecutor.STOCK_UNKNOWN, 60);
+        when(groupBuyOrderListDao.queryActivityStockOccupiedCount(activityId)).thenReturn(41);
+        redissonClient.getKeys().delete(stockKey(1));
+        activityStockStripes.warmUp(activityId);
+        Assert.assertEquals(15, remain(1));
+        Assert.assertEquals(STOCK_LIMIT - 41, sum());
+    }
+
+    @Test
+    public void test_release() {
+        Integer stripe = activityStockStripes.occupy(activityId);
+        Assert.assertNotNull(stripe);
+        Assert.assertEquals(STOCK_LIMIT - 1, sum());
+
+        // 未占用分段的订单退单不归还
+        activityStockStripes.release(activityId, null);
+        activityStockStripes.release(activityId, ActivityStockStripes.NO_LIMIT);
+        Assert.assertEquals(STOCK_LIMIT - 1, sum());
+
+        activityStockStripes.release(activityId, stripe);
+        Assert.assertEquals(STOCK_LIMIT, sum());
+    }
+
+    @Test
+    public void test_rebalance() {
+        activityStockStripes.warmUp(activityId);
+        // 模拟分段 0 几乎用尽、分段 3 富余，总剩余仍为 100
+        redissonClient.getBucket(stockKey(0), StringCodec.INSTANCE).set("1");
+        redissonClient.getBucket(stockKey(3), StringCodec.INSTANCE).set("49");
+
+        // 均值 25，低水位 6：分段 0 从分段 3 调入 24
+        Integer moved = ReflectionTestUtils.invokeMethod(activityStockStripes, "rebalance", activityId, snapshot);
+        Assert.assertEquals(Integer.valueOf(24), moved);
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            Assert.assertEquals(25, remain(stripe));
+        }
+        Assert.assertEquals(STOCK_LIMIT, sum());
+    }
+
+    @Test
+    public void test_occupy_without_limit_or_snapshot() {
+        when(activitySnapshotRegistry.get(activityId)).thenReturn(snapshot(0));
+        Assert.assertEquals(Integer.valueOf(ActivityStockStripes.NO_LIMIT), activityStockStripes.occupy(activityId));
+
+        // 快照缺失无法确定总名额，拒绝占用
+        when(activitySnapshotRegistry.get(activityId)).thenReturn(null);
+        try {
+            activityStockStripes.occupy(activityId);
+            Assert.fail("快照缺失应拒绝占用");
+        } catch (AppException e) {
+            log.info("测试结果 code:{} info:{}", e.getCode(), e.getInfo());
+        }
+    }
+
+    private ActivitySnapshot snapshot(int stockLimit) {
+        long now = System.currentTimeMillis();
+        return new ActivitySnapshot(GroupBuyActivity.builder()
+                .activityId(activityId)
+                .activityName("活动名额分段测试")
+                .status(1)
+                .startTime(new Date(now - TimeUnit.HOURS.toMillis(1)))
+                .endTime(new Date(now + TimeUnit.DAYS.toMillis(1)))
+                .stockLimit(stockLimit)
+                .build(), null, null);
+    }
+
+    private String stockKey(int stripe) {
+        return "group_buy_market_activity_stock_" + activityId + "_" + stripe;
+    }
+
+    private long remain(int stripe) {
+        String value = redissonClient.<String>getBucket(stockKey(stripe), StringCodec.INSTANCE).get();
+        return null == value ? 0 : Long.parseLong(value);
+    }
+
+    private long sum() {
+        long sum = 0;
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            sum += remain(stripe);
+        }
+        return sum;
+    }
+
+}
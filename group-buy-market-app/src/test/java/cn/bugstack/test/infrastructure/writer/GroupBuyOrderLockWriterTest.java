@@ -0,0 +1,231 @@
+package cn.bugstack.test.infrastructure.writer;
+
+import cn.bugstack.infrastructure.adapter.repository.writer.GroupBuyOrderLockWriter;
+import cn.bugstack.infrastructure.adapter.repository.writer.LockOrderCommand;
+import cn.bugstack.infrastructure.dao.IGroupBuyOrderDao;
+import cn.bugstack.infrastructure.dao.IGroupBuyOrderListDao;
+import cn.bugstack.infrastructure.dao.IMarketEventOutboxDao;
+import cn.bugstack.infrastructure.dao.po.GroupBuyOrder;
+import cn.bugstack.infrastructure.dao.po.GroupBuyOrderList;
+import cn.bugstack.types.enums.ResponseCode;
+import cn.bugstack.types.exception.AppException;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ * @description 组提交写入器测试；DAO 与事务管理器替换为桩，验证攒批、失败逐笔重放、等待超时取消与结果未知；不依赖 Spring 容器
+ * @create 2025-08-26 10:30
+ */
+@Slf4j
+public class GroupBuyOrderLockWriterTest {
+
+    private IGroupBuyOrderDao groupBuyOrderDao;
+    private IGroupBuyOrderListDao groupBuyOrderListDao;
+    private GroupBuyOrderLockWriter writer;
+
+    /** 已写入（提交）的订单ID */
+    private final List<String> written = new CopyOnWriteArrayList<>();
+    private final AtomicInteger batchCount = new AtomicInteger();
+    private final ExecutorService executor = Executors.newFixedThreadPool(32);
+
+    @Before
+    public void init() {
+        groupBuyOrderDao = Mockito.mock(IGroupBuyOrderDao.class);
+        groupBuyOrderListDao = Mockito.mock(IGroupBuyOrderListDao.class);
+        when(groupBuyOrderDao.updateAddLockCount(anyString())).thenReturn(1);
+    }
+
+    @After
+    public void destroy() throws InterruptedException {
+        if (null != writer) writer.destroy();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void test_groupCommit_batch() throws Exception {
+        doAnswer(invocation -> {
+            batchCount.incrementAndGet();
+            List<GroupBuyOrderList> list = invocation.getArgument(0);
+            list.forEach(item -> written.add(item.getOrderId()));
+            return null;
+        }).when(groupBuyOrderListDao).insertBatch(anyList());
+        writer = newWriter(2, 3000, 20, 5);
+
+        int count = 20;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            LockOrderCommand command = newTeamCommand("t" + i, "o" + i);
+            futures.add(executor.submit(() -> {
+                start.await();
+                writer.groupCommit(command);
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+
+        Assert.assertEquals(count, written.size());
+        Assert.assertEquals(count, new HashSet<>(written).size());
+        // 同时到达的请求合并为少量批次写入，不走单笔写入
+        Assert.assertTrue(batchCount.get() < count);
+        verify(groupBuyOrderListDao, never()).insert(any());
+        log.info("测试结果 written:{} batches:{}", written.size(), batchCount.get());
+    }
+
+    @Test
+    public void test_groupCommit_replay() throws Exception {
+        doAnswer(invocation -> {
+            List<GroupBuyOrderList> list = invocation.getArgument(0);
+            for (GroupBuyOrderList item : list) {
+                if ("o-dup".equals(item.getOrderId())) throw new DuplicateKeyException("Duplicate entry o-dup");
+            }
+            list.forEach(item -> written.add(item.getOrderId()));
+            return null;
+        }).when(groupBuyOrderListDao).insertBatch(anyList());
+        doAnswer(invocation -> {
+            GroupBuyOrderList item = invocation.getArgument(0);
+            if ("o-dup".equals(item.getOrderId())) throw new DuplicateKeyException("Duplicate entry o-dup");
+            written.add(item.getOrderId());
+            return null;
+        }).when(groupBuyOrderListDao).insert(any());
+        when(groupBuyOrderDao.updateAddLockCount("team-full")).thenReturn(0);
+        writer = newWriter(1, 3000, 20, 5);
+
+        List<LockOrderCommand> commands = Arrays.asList(
+                newTeamCommand("t1", "o1"),
+                newTeamCommand("t2", "o2"),
+                newTeamCommand("t3", "o-dup"),
+                joinTeamCommand("team-full", "o-full"),
+                joinTeamCommand("team-join", "o-join"));
+        CountDownLatch start = new CountDownLatch(1);
+        Map<String, Future<?>> futures = new ConcurrentHashMap<>();
+        for (LockOrderCommand command : commands) {
+            futures.put(command.getGroupBuyOrderList().getOrderId(), executor.submit(() -> {
+                start.await();
+                writer.groupCommit(command);
+                return null;
+            }));
+        }
+        start.countDown();
+
+        futures.get("o1").get(10, TimeUnit.SECONDS);
+        futures.get("o2").get(10, TimeUnit.SECONDS);
+        futures.get("o-join").get(10, TimeUnit.SECONDS);
+        // 批内失败逐笔重放后，唯一索引冲突、组队已满只回到对应的调用方
+        Assert.assertEquals(ResponseCode.INDEX_EXCEPTION.getCode(), failure(futures.get("o-dup")).getCode());
+        Assert.assertEquals(ResponseCode.E0005.getCode(), failure(futures.get("o-full")).getCode());
+        Assert.assertEquals(new HashSet<>(Arrays.asList("o1", "o2", "o-join")), new HashSet<>(written));
+        Assert.assertEquals(3, written.size());
+    }
+
+    @Test
+    public void test_groupCommit_timeout() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            entered.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            List<GroupBuyOrderList> list = invocation.getArgument(0);
+            list.forEach(item -> written.add(item.getOrderId()));
+            return null;
+        }).when(groupBuyOrderListDao).insertBatch(anyList());
+        // 单刷写线程；事务超时 0 秒，已取批的调用方只多等余量 200 毫秒
+        writer = newWriter(1, 100, 1, 0);
+
+        // 1. 第一笔被刷写线程取走后阻塞在写入中
+        Future<?> claimed = executor.submit(() -> writer.groupCommit(newTeamCommand("t-a", "o-a")));
+        Assert.assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+        // 2. 第二笔排在队列中，调用方等待超时后取消
+        Future<?> queued = executor.submit(() -> writer.groupCommit(newTeamCommand("t-b", "o-b")));
+        AppException cancelled = failure(queued);
+        Assert.assertEquals(ResponseCode.UN_ERROR.getCode(), cancelled.getCode());
+        Assert.assertEquals("组提交等待超时", cancelled.getInfo());
+
+        // 3. 已取走的任务结果未知，不能按失败回退预占
+        Assert.assertEquals(ResponseCode.E0011.getCode(), failure(claimed).getCode());
+
+        // 4. 放行写入并等待刷写线程处理完队列；已取消的任务不再写入
+        release.countDown();
+        writer.destroy();
+        Assert.assertEquals(Arrays.asList("o-a"), written);
+    }
+
+    private GroupBuyOrderLockWriter newWriter(int flushThreads, long waitTimeoutMs, long lingerMs, int transactionTimeoutSeconds) {
+        GroupBuyOrderLockWriter writer = new GroupBuyOrderLockWriter();
+        ReflectionTestUtils.setField(writer, "groupBuyOrderDao", groupBuyOrderDao);
+        ReflectionTestUtils.setField(writer, "groupBuyOrderListDao", groupBuyOrderListDao);
+        ReflectionTestUtils.setField(writer, "marketEventOutboxDao", Mockito.mock(IMarketEventOutboxDao.class));
+        ReflectionTestUtils.setField(writer, "transactionManager", Mockito.mock(PlatformTransactionManager.class));
+        ReflectionTestUtils.setField(writer, "maxBatchSize", 64);
+        ReflectionTestUtils.setField(writer, "lingerMs", lingerMs);
+        ReflectionTestUtils.setField(writer, "queueCapacity", 1024);
+        ReflectionTestUtils.setField(writer, "flushThreads", flushThreads);
+        ReflectionTestUtils.setField(writer, "waitTimeoutMs", waitTimeoutMs);
+        ReflectionTestUtils.setField(writer, "outcomeMarginMs", 200L);
+        ReflectionTestUtils.setField(writer, "transactionTimeoutSeconds", transactionTimeoutSeconds);
+        writer.init();
+        return writer;
+    }
+
+    private static LockOrderCommand newTeamCommand(String teamId, String orderId) {
+        return LockOrderCommand.builder()
+                .teamId(teamId)
+                .groupBuyOrder(GroupBuyOrder.builder().teamId(teamId).build())
+                .groupBuyOrderList(GroupBuyOrderList.builder().teamId(teamId).orderId(orderId).build())
+                .build();
+    }
+
+    private static LockOrderCommand joinTeamCommand(String teamId, String orderId) {
+        return LockOrderCommand.builder()
+                .teamId(teamId)
+                .groupBuyOrderList(GroupBuyOrderList.builder().teamId(teamId).orderId(orderId).build())
+                .build();
+    }
+
+    private static AppException failure(Future<?> future) throws Exception {
+        try {
+            future.get(10, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof AppException);
+            return (AppException) e.getCause();
+        }
+        Assert.fail("应写入失败");
+        return null;
+    }
+
+}
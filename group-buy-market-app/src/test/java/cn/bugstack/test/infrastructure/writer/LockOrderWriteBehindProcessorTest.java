@@ -0,0 +1,198 @@
+package cn.bugstack.test.infrastructure.writer;
+
+import cn.bugstack.infrastructure.adapter.repository.lua.LuaScriptRegistry;
+import cn.bugstack.infrastructure.adapter.repository.writer.GroupBuyOrderLockWriter;
+import cn.bugstack.infrastructure.adapter.repository.writer.LockOrderCommand;
+import cn.bugstack.infrastructure.adapter.repository.writer.LockOrderWriteBehindProcessor;
+import cn.bugstack.infrastructure.dao.IGroupBuyOrderListDao;
+import cn.bugstack.infrastructure.dao.ILockOrderDeadLetterDao;
+import cn.bugstack.infrastructure.dao.po.GroupBuyOrderList;
+import cn.bugstack.infrastructure.dao.po.LockOrderDeadLetter;
+import cn.bugstack.infrastructure.dcc.DCCService;
+import cn.bugstack.infrastructure.event.MarketEventOutboxRelay;
+import cn.bugstack.types.enums.ResponseCode;
+import cn.bugstack.types.exception.AppException;
+import com.alibaba.fastjson2.JSON;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.redisson.api.RMap;
+import org.redisson.api.RScoredSortedSet;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ * @description 锁单异步落库对账测试；Redis 与 DAO 替换为桩，验证重放失败退避、超过次数转入死信、已落库清理；不依赖 Spring 容器
+ * @create 2025-08-26 11:00
+ */
+@Slf4j
+@SuppressWarnings("unchecked")
+public class LockOrderWriteBehindProcessorTest {
+
+    private static final String ORDER_ID = "880001";
+    private static final long GRACE_SECONDS = 30;
+
+    private RScoredSortedSet<String> pending;
+    private RMap<String, String> reserveMap;
+    private LuaScriptRegistry luaScriptRegistry;
+    private GroupBuyOrderLockWriter groupBuyOrderLockWriter;
+    private IGroupBuyOrderListDao groupBuyOrderListDao;
+    private ILockOrderDeadLetterDao lockOrderDeadLetterDao;
+    private LockOrderWriteBehindProcessor processor;
+
+    @Before
+    public void init() {
+        pending = Mockito.mock(RScoredSortedSet.class);
+        reserveMap = Mockito.mock(RMap.class);
+        RedissonClient redissonClient = Mockito.mock(RedissonClient.class);
+        when(redissonClient.<String>getScoredSortedSet(LockOrderWriteBehindProcessor.PENDING_KEY, StringCodec.INSTANCE)).thenReturn(pending);
+        when(redissonClient.<String, String>getMap(LockOrderWriteBehindProcessor.RESERVE_KEY_PREFIX + ORDER_ID, StringCodec.INSTANCE)).thenReturn(reserveMap);
+        when(pending.valueRange(anyDouble(), anyBoolean(), anyDouble(), anyBoolean(), anyInt(), anyInt())).thenReturn(Collections.singletonList(ORDER_ID));
+
+        Map<String, String> reserve = new HashMap<>();
+        reserve.put("payload", JSON.toJSONString(LockOrderCommand.builder()
+                .teamId("team-missing")
+                .groupBuyOrderList(GroupBuyOrderList.builder()
+                        .userId("xfg01")
+                        .teamId("team-missing")
+                        .orderId(ORDER_ID)
+                        .activityId(100123L)
+                        .outTradeNo("909000098111")
+                        .build())
+                .build()));
+        reserve.put("seq", "1");
+        when(reserveMap.readAllMap()).thenReturn(reserve);
+
+        luaScriptRegistry = Mockito.mock(LuaScriptRegistry.class);
+        groupBuyOrderLockWriter = Mockito.mock(GroupBuyOrderLockWriter.class);
+        groupBuyOrderListDao = Mockito.mock(IGroupBuyOrderListDao.class);
+        lockOrderDeadLetterDao = Mockito.mock(ILockOrderDeadLetterDao.class);
+
+        processor = new LockOrderWriteBehindProcessor();
+        ReflectionTestUtils.setField(processor, "redissonClient", redissonClient);
+        ReflectionTestUtils.setField(processor, "groupBuyOrderLockWriter", groupBuyOrderLockWriter);
+        ReflectionTestUtils.setField(processor, "groupBuyOrderListDao", groupBuyOrderListDao);
+        ReflectionTestUtils.setField(processor, "dccService", Mockito.mock(DCCService.class));
+        ReflectionTestUtils.setField(processor, "luaScriptRegistry", luaScriptRegistry);
+        ReflectionTestUtils.setField(processor, "marketEventOutboxRelay", Mockito.mock(MarketEventOutboxRelay.class));
+        ReflectionTestUtils.setField(processor, "lockOrderDeadLetterDao", lockOrderDeadLetterDao);
+        ReflectionTestUtils.setField(processor, "maxAttempts", 5);
+        ReflectionTestUtils.setField(processor, "reconcileGraceSeconds", GRACE_SECONDS);
+        ReflectionTestUtils.setField(processor, "reconcileBatchSize", 500);
+        ReflectionTestUtils.setField(processor, "retryBackoffSeconds", 10L);
+        ReflectionTestUtils.setField(processor, "maxBackoffSeconds", 600L);
+
+        // 加入的组队不存在，重放总是失败
+        doThrow(new AppException(ResponseCode.E0005)).when(groupBuyOrderLockWriter).write(any());
+    }
+
+    @Test
+    public void test_reconcile_backoff() {
+        attempts(2L);
+        long before = System.currentTimeMillis();
+        Assert.assertEquals(1, processor.reconcile());
+        long after = System.currentTimeMillis();
+
+        // 第 2 次失败退避 10 << 1 = 20 秒：下次对账时间 = 当前 + 20 秒，记录分数需扣除宽限期
+        ArgumentCaptor<Double> score = ArgumentCaptor.forClass(Double.class);
+        verify(pending).add(score.capture(), eq(ORDER_ID));
+        long grace = TimeUnit.SECONDS.toMillis(GRACE_SECONDS);
+        Assert.assertTrue(score.getValue() >= before - grace + 20000);
+        Assert.assertTrue(score.getValue() <= after - grace + 20000);
+
+        // 预占保留，不转入死信
+        verify(lockOrderDeadLetterDao, never()).insert(any());
+        verify(pending, never()).remove(ORDER_ID);
+        verify(reserveMap, never()).delete();
+    }
+
+    @Test
+    public void test_reconcile_backoff_capped() {
+        ReflectionTestUtils.setField(processor, "maxAttempts", 100);
+        attempts(40L);
+        long before = System.currentTimeMillis();
+        processor.reconcile();
+
+        // 退避翻倍不溢出，以最大退避 600 秒为上限
+        ArgumentCaptor<Double> score = ArgumentCaptor.forClass(Double.class);
+        verify(pending).add(score.capture(), eq(ORDER_ID));
+        long delay = score.getValue().longValue() - (before - TimeUnit.SECONDS.toMillis(GRACE_SECONDS));
+        Assert.assertTrue(delay >= 600000 && delay < 601000);
+    }
+
+    @Test
+    public void test_reconcile_dead_letter() {
+        attempts(5L);
+        Assert.assertEquals(1, processor.reconcile());
+
+        ArgumentCaptor<LockOrderDeadLetter> deadLetter = ArgumentCaptor.forClass(LockOrderDeadLetter.class);
+        verify(lockOrderDeadLetterDao).insert(deadLetter.capture());
+        Assert.assertEquals(ORDER_ID, deadLetter.getValue().getOrderId());
+        Assert.assertEquals("xfg01", deadLetter.getValue().getUserId());
+        Assert.assertEquals("909000098111", deadLetter.getValue().getOutTradeNo());
+        Assert.assertEquals(Integer.valueOf(5), deadLetter.getValue().getAttempts());
+        Assert.assertTrue(deadLetter.getValue().getReserve().contains("team-missing"));
+
+        // 移出待落库集合，不再退避重放
+        verify(pending).remove(ORDER_ID);
+        verify(reserveMap).delete();
+        verify(pending, never()).add(anyDouble(), anyString());
+    }
+
+    @Test
+    public void test_reconcile_landed() {
+        GroupBuyOrderList landed = GroupBuyOrderList.builder().orderId(ORDER_ID).build();
+        when(groupBuyOrderListDao.queryGroupBuyOrderRecordByOutTradeNo(any())).thenReturn(landed);
+        Assert.assertEquals(1, processor.reconcile());
+
+        // 已落库只清理，不重放、不累加次数
+        verify(groupBuyOrderLockWriter, never()).write(any());
+        verify(luaScriptRegistry, never()).eval(any(), anyString(), any(), anyList(), eq("attempts"), eq("1"));
+        verify(pending).remove(ORDER_ID);
+        verify(reserveMap).delete();
+    }
+
+    @Test
+    public void test_reconcile_duplicate_landed() {
+        // 重放时唯一索引冲突，且记录已由消费线程落库，视为成功
+        attempts(1L);
+        doThrow(new AppException(ResponseCode.INDEX_EXCEPTION)).when(groupBuyOrderLockWriter).write(any());
+        GroupBuyOrderList landed = GroupBuyOrderList.builder().orderId(ORDER_ID).build();
+        when(groupBuyOrderListDao.queryGroupBuyOrderRecordByOutTradeNo(any())).thenReturn(null, landed);
+        processor.reconcile();
+
+        verify(pending).remove(ORDER_ID);
+        verify(reserveMap).delete();
+        verify(lockOrderDeadLetterDao, never()).insert(any());
+        verify(pending, never()).add(anyDouble(), anyString());
+    }
+
+    private void attempts(Long attempts) {
+        when(luaScriptRegistry.<Long>eval(eq(RScript.Mode.READ_WRITE), anyString(), eq(RScript.ReturnType.INTEGER), anyList(), eq("attempts"), eq("1")))
+                .thenReturn(attempts);
+    }
+
+}
@@ -0,0 +1,223 @@
+package cn.bugstack.test.infrastructure.writer;
+
+import cn.bugstack.infrastructure.adapter.repository.writer.GroupBuyOrderLockWriter;
+import cn.bugstack.infrastructure.adapter.repository.writer.LockOrderCommand;
+import cn.bugstack.infrastructure.adapter.repository.writer.TeamLockCountCombiner;
+import cn.bugstack.infrastructure.dao.IGroupBuyOrderDao;
+import cn.bugstack.infrastructure.dao.IGroupBuyOrderListDao;
+import cn.bugstack.infrastructure.dao.IMarketEventOutboxDao;
+import cn.bugstack.infrastructure.dao.po.GroupBuyOrder;
+import cn.bugstack.infrastructure.dao.po.GroupBuyOrderList;
+import cn.bugstack.infrastructure.snapshot.TeamFullRegistry;
+import cn.bugstack.types.enums.ResponseCode;
+import cn.bugstack.types.exception.AppException;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ * @description 热点组队锁单合并器测试；DAO 与事务管理器替换为桩，验证合并分配不超目标人数、已满不访问数据库、队伍不存在不记为已满、批量失败逐笔重放；不依赖 Spring 容器
+ * @create 2025-08-26 15:00
+ */
+@Slf4j
+public class TeamLockCountCombinerTest {
+
+    private static final String TEAM_ID = "team-hot";
+    private static final int TARGET_COUNT = 10;
+
+    private IGroupBuyOrderDao groupBuyOrderDao;
+    private IGroupBuyOrderListDao groupBuyOrderListDao;
+    private GroupBuyOrderLockWriter groupBuyOrderLockWriter;
+    private TeamFullRegistry teamFullRegistry;
+    private TeamLockCountCombiner combiner;
+
+    /** 队伍行已锁单量 */
+    private final AtomicInteger lockCount = new AtomicInteger();
+    /** 已写入的订单ID */
+    private final List<String> written = new CopyOnWriteArrayList<>();
+    private final Set<String> fullTeams = ConcurrentHashMap.newKeySet();
+    private final ExecutorService executor = Executors.newFixedThreadPool(32);
+
+    @Before
+    public void init() {
+        groupBuyOrderDao = Mockito.mock(IGroupBuyOrderDao.class);
+        groupBuyOrderListDao = Mockito.mock(IGroupBuyOrderListDao.class);
+        groupBuyOrderLockWriter = Mockito.mock(GroupBuyOrderLockWriter.class);
+        teamFullRegistry = Mockito.mock(TeamFullRegistry.class);
+
+        when(groupBuyOrderDao.queryGroupBuyProgressForUpdate(TEAM_ID)).thenAnswer(invocation -> {
+            GroupBuyOrder groupBuyOrder = new GroupBuyOrder();
+            groupBuyOrder.setTeamId(TEAM_ID);
+            groupBuyOrder.setTargetCount(TARGET_COUNT);
+            groupBuyOrder.setLockCount(lockCount.get());
+            return groupBuyOrder;
+        });
+        when(groupBuyOrderDao.updateAddLockCountBatch(eq(TEAM_ID), anyInt())).thenAnswer(invocation -> {
+            lockCount.addAndGet(invocation.getArgument(1));
+            return 1;
+        });
+        doAnswer(invocation -> {
+            List<GroupBuyOrderList> list = invocation.getArgument(0);
+            list.forEach(item -> written.add(item.getOrderId()));
+            return null;
+        }).when(groupBuyOrderListDao).insertBatch(anyList());
+        when(teamFullRegistry.isFull(anyString())).thenAnswer(invocation -> fullTeams.contains(invocation.<String>getArgument(0)));
+        doAnswer(invocation -> fullTeams.add(invocation.getArgument(0))).when(teamFullRegistry).markFull(anyString());
+
+        combiner = new TeamLockCountCombiner();
+        ReflectionTestUtils.setField(combiner, "groupBuyOrderDao", groupBuyOrderDao);
+        ReflectionTestUtils.setField(combiner, "groupBuyOrderListDao", groupBuyOrderListDao);
+        ReflectionTestUtils.setField(combiner, "marketEventOutboxDao", Mockito.mock(IMarketEventOutboxDao.class));
+        ReflectionTestUtils.setField(combiner, "groupBuyOrderLockWriter", groupBuyOrderLockWriter);
+        ReflectionTestUtils.setField(combiner, "transactionManager", Mockito.mock(PlatformTransactionManager.class));
+        ReflectionTestUtils.setField(combiner, "teamFullRegistry", teamFullRegistry);
+        ReflectionTestUtils.setField(combiner, "maxBatchSize", 128);
+        ReflectionTestUtils.setField(combiner, "pollMillis", 2L);
+        ReflectionTestUtils.setField(combiner, "transactionTimeoutSeconds", 5);
+        combiner.init();
+    }
+
+    @After
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void test_combine_concurrent() throws Exception {
+        int requests = 30;
+        List<Future<?>> futures = submit(TEAM_ID, requests);
+
+        int success = 0;
+        int full = 0;
+        for (Future<?> future : futures) {
+            AppException e = result(future);
+            if (null == e) {
+                success++;
+            } else {
+                Assert.assertEquals(ResponseCode.E0005.getCode(), e.getCode());
+                full++;
+            }
+        }
+
+        // 1. 恰好分配目标人数，锁单量与写入明细一致
+        Assert.assertEquals(TARGET_COUNT, success);
+        Assert.assertEquals(requests - TARGET_COUNT, full);
+        Assert.assertEquals(TARGET_COUNT, lockCount.get());
+        Assert.assertEquals(TARGET_COUNT, written.size());
+        // 2. 名额用尽的队伍记为已满
+        verify(teamFullRegistry).markFull(TEAM_ID);
+
+        // 3. 已满后不再访问数据库
+        int queries = Mockito.mockingDetails(groupBuyOrderDao).getInvocations().size();
+        Assert.assertEquals(ResponseCode.E0005.getCode(), result(executor.submit(() -> combiner.combine(command(TEAM_ID, "o-after")))).getCode());
+        Assert.assertEquals(queries, Mockito.mockingDetails(groupBuyOrderDao).getInvocations().size());
+        log.info("测试结果 success:{} full:{} invocations:{}", success, full, queries);
+    }
+
+    @Test
+    public void test_combine_missing_team() throws Exception {
+        when(groupBuyOrderDao.queryGroupBuyProgressForUpdate("team-missing")).thenReturn(null);
+
+        for (Future<?> future : submit("team-missing", 5)) {
+            AppException e = result(future);
+            Assert.assertNotNull(e);
+            Assert.assertEquals(ResponseCode.E0005.getCode(), e.getCode());
+            Assert.assertEquals("拼团组队失败，组队记录不存在", e.getInfo());
+        }
+
+        // 队伍不存在不记为已满，也不逐笔重放
+        verify(teamFullRegistry, never()).markFull(anyString());
+        verify(groupBuyOrderLockWriter, never()).write(any());
+        verify(groupBuyOrderDao, never()).updateAddLockCountBatch(anyString(), anyInt());
+    }
+
+    @Test
+    public void test_combine_replay() throws Exception {
+        doThrow(new DuplicateKeyException("Duplicate entry o-dup")).when(groupBuyOrderListDao).insertBatch(anyList());
+        doAnswer(invocation -> {
+            LockOrderCommand command = invocation.getArgument(0);
+            if ("o-dup".equals(command.getGroupBuyOrderList().getOrderId())) throw new AppException(ResponseCode.INDEX_EXCEPTION);
+            written.add(command.getGroupBuyOrderList().getOrderId());
+            return null;
+        }).when(groupBuyOrderLockWriter).write(any());
+
+        Future<?> ok1 = executor.submit(() -> combiner.combine(command(TEAM_ID, "o1")));
+        Future<?> dup = executor.submit(() -> combiner.combine(command(TEAM_ID, "o-dup")));
+        Future<?> ok2 = executor.submit(() -> combiner.combine(command(TEAM_ID, "o2")));
+
+        // 整批回滚后逐笔重放，唯一索引冲突只回到对应的调用方
+        Assert.assertNull(result(ok1));
+        Assert.assertNull(result(ok2));
+        Assert.assertEquals(ResponseCode.INDEX_EXCEPTION.getCode(), result(dup).getCode());
+        verify(groupBuyOrderLockWriter, times(3)).write(any());
+        Assert.assertTrue(written.contains("o1") && written.contains("o2") && !written.contains("o-dup"));
+    }
+
+    private List<Future<?>> submit(String teamId, int requests) {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < requests; i++) {
+            LockOrderCommand command = command(teamId, "o" + i);
+            futures.add(executor.submit(() -> {
+                start.await();
+                combiner.combine(command);
+                return null;
+            }));
+        }
+        start.countDown();
+        return futures;
+    }
+
+    private static LockOrderCommand command(String teamId, String orderId) {
+        return LockOrderCommand.builder()
+                .teamId(teamId)
+                .groupBuyOrderList(GroupBuyOrderList.builder().teamId(teamId).orderId(orderId).build())
+                .build();
+    }
+
+    /**
+     * @return 失败时的异常；成功为空
+     */
+    private static AppException result(Future<?> future) throws Exception {
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            return null;
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof AppException);
+            return (AppException) e.getCause();
+        }
+    }
+
+}
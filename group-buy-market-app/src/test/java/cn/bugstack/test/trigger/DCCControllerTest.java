@@ -1,11 +1,18 @@
 package cn.bugstack.test.trigger;
 
 import cn.bugstack.api.IDCCService;
+import cn.bugstack.api.response.Response;
 import cn.bugstack.domain.activity.model.entity.MarketProductEntity;
 import cn.bugstack.domain.activity.model.entity.TrialBalanceEntity;
 import cn.bugstack.domain.activity.service.IIndexGroupBuyMarketService;
+import cn.bugstack.infrastructure.dao.po.GroupBuyActivity;
+import cn.bugstack.infrastructure.dao.po.SCSkuActivity;
+import cn.bugstack.infrastructure.dao.po.Sku;
+import cn.bugstack.infrastructure.redis.IRedisService;
+import cn.bugstack.types.enums.ResponseCode;
 import com.alibaba.fastjson.JSON;
 import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -29,6 +36,9 @@ public class DCCControllerTest {
     @Resource
     private IIndexGroupBuyMarketService indexGroupBuyMarketService;
 
+    @Resource
+    private IRedisService redisService;
+
     @Test
     public void test_updateConfig() {
         // 动态调整配置
@@ -54,5 +64,43 @@ public class DCCControllerTest {
         log.info("返回结果:{}", JSON.toJSONString(trialBalanceEntity));
     }
 
+    @Test
+    public void test_invalidateCache() throws Exception {
+        MarketProductEntity marketProductEntity = new MarketProductEntity();
+        marketProductEntity.setUserId("xiaofuge");
+        marketProductEntity.setSource("s01");
+        marketProductEntity.setChannel("c01");
+        marketProductEntity.setGoodsId("9890001");
+        TrialBalanceEntity before = indexGroupBuyMarketService.indexMarketTrial(marketProductEntity);
+        Long activityId = before.getGroupBuyActivityDiscountVO().getActivityId();
+
+        // 失效商品缓存，各节点删除本地缓存，发起节点立即删除 Redis 缓存，下次访问重新加载
+        Response<Boolean> skuResponse = dccService.invalidateCache("sku", "9890001");
+        log.info("测试结果:{}", JSON.toJSONString(skuResponse));
+        Assert.assertEquals(ResponseCode.SUCCESS.getCode(), skuResponse.getCode());
+        Assert.assertFalse(redisService.isExists(Sku.cacheRedisKey("9890001")));
+
+        Response<Boolean> scSkuActivityResponse = dccService.invalidateCache("sc_sku_activity", "s01_c01_9890001");
+        log.info("测试结果:{}", JSON.toJSONString(scSkuActivityResponse));
+        Assert.assertEquals(ResponseCode.SUCCESS.getCode(), scSkuActivityResponse.getCode());
+        Assert.assertFalse(redisService.isExists(SCSkuActivity.cacheRedisKey("s01", "c01", "9890001")));
+
+        // 按前缀失效，发起节点扫描删除前缀下的 Redis 缓存
+        Response<Boolean> activityResponse = dccService.invalidateCache("activity", null);
+        log.info("测试结果:{}", JSON.toJSONString(activityResponse));
+        Assert.assertEquals(ResponseCode.SUCCESS.getCode(), activityResponse.getCode());
+        Assert.assertFalse(redisService.isExists(GroupBuyActivity.cacheRedisKey(activityId)));
+
+        Response<Boolean> unknownResponse = dccService.invalidateCache("unknown", "1");
+        log.info("测试结果:{}", JSON.toJSONString(unknownResponse));
+        Assert.assertNotEquals(ResponseCode.SUCCESS.getCode(), unknownResponse.getCode());
+
+        // 失效后重新加载，结果与失效前一致
+        TrialBalanceEntity trialBalanceEntity = indexGroupBuyMarketService.indexMarketTrial(marketProductEntity);
+        log.info("返回结果:{}", JSON.toJSONString(trialBalanceEntity));
+        Assert.assertEquals(activityId, trialBalanceEntity.getGroupBuyActivityDiscountVO().getActivityId());
+        Assert.assertEquals(0, before.getPayPrice().compareTo(trialBalanceEntity.getPayPrice()));
+        Assert.assertTrue(redisService.isExists(Sku.cacheRedisKey("9890001")));
+    }
 
 }
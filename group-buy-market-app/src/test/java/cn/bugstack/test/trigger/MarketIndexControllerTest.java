@@ -1,17 +1,26 @@
 package cn.bugstack.test.trigger;
 
+import cn.bugstack.api.dto.GoodsMarketBatchRequestDTO;
+import cn.bugstack.api.dto.GoodsMarketBatchResponseDTO;
 import cn.bugstack.api.dto.GoodsMarketRequestDTO;
 import cn.bugstack.api.dto.GoodsMarketResponseDTO;
 import cn.bugstack.api.response.Response;
+import cn.bugstack.infrastructure.dao.po.Sku;
+import cn.bugstack.infrastructure.redis.IRedisService;
 import cn.bugstack.trigger.http.MarketIndexController;
+import cn.bugstack.types.enums.ResponseCode;
 import com.alibaba.fastjson.JSON;
 import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import javax.annotation.Resource;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * @author Fuzhengwei bugstack.cn @小傅哥
@@ -25,6 +34,8 @@ public class MarketIndexControllerTest {
 
     @Resource
     private MarketIndexController marketIndexController;
+    @Resource
+    private IRedisService redisService;
 
     @Test
     public void test_queryGroupBuyMarketConfig() {
@@ -40,4 +51,50 @@ public class MarketIndexControllerTest {
         log.info("应答结果:{}", JSON.toJSONString(response));
     }
 
+    @Test
+    public void test_queryGroupBuyMarketConfigBatch() {
+        GoodsMarketBatchRequestDTO requestDTO = new GoodsMarketBatchRequestDTO();
+        requestDTO.setSource("s01");
+        requestDTO.setChannel("c01");
+        requestDTO.setUserId("xfg02");
+        requestDTO.setGoodsIds(Arrays.asList("9890001", "9890002", "9890003"));
+
+        Response<List<GoodsMarketBatchResponseDTO>> response = marketIndexController.queryGroupBuyMarketConfigBatch(requestDTO);
+
+        log.info("请求参数:{}", JSON.toJSONString(requestDTO));
+        log.info("应答结果:{}", JSON.toJSONString(response));
+
+        // 按请求顺序逐个应答，无配置的商品单独返回 E0002
+        Assert.assertEquals(ResponseCode.SUCCESS.getCode(), response.getCode());
+        Assert.assertEquals(requestDTO.getGoodsIds().size(), response.getData().size());
+        for (int i = 0; i < requestDTO.getGoodsIds().size(); i++) {
+            GoodsMarketBatchResponseDTO item = response.getData().get(i);
+            Assert.assertEquals(requestDTO.getGoodsIds().get(i), item.getGoodsId());
+            if (ResponseCode.E0002.getCode().equals(item.getCode())) continue;
+
+            Assert.assertEquals(ResponseCode.SUCCESS.getCode(), item.getCode());
+            Assert.assertNotNull(item.getActivityId());
+            Assert.assertNotNull(item.getGoods().getPayPrice());
+            Assert.assertNotNull(item.getTeamStatistic());
+            // 商品批量加载后写入 Redis 缓存
+            Assert.assertTrue(redisService.isExists(Sku.cacheRedisKey(item.getGoodsId())));
+        }
+        Assert.assertTrue(response.getData().stream().anyMatch(item -> ResponseCode.SUCCESS.getCode().equals(item.getCode())));
+    }
+
+    @Test
+    public void test_queryGroupBuyMarketConfigBatch_illegalParameter() {
+        GoodsMarketBatchRequestDTO requestDTO = new GoodsMarketBatchRequestDTO();
+        requestDTO.setSource("s01");
+        requestDTO.setChannel("c01");
+        requestDTO.setUserId("xfg03");
+        requestDTO.setGoodsIds(Collections.emptyList());
+
+        Response<List<GoodsMarketBatchResponseDTO>> response = marketIndexController.queryGroupBuyMarketConfigBatch(requestDTO);
+
+        log.info("应答结果:{}", JSON.toJSONString(response));
+        Assert.assertEquals(ResponseCode.ILLEGAL_PARAMETER.getCode(), response.getCode());
+        Assert.assertNull(response.getData());
+    }
+
 }
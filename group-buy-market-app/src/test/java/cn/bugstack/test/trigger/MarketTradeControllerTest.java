@@ -1,18 +1,25 @@
 package cn.bugstack.test.trigger;
 
 import cn.bugstack.api.IMarketTradeService;
+import cn.bugstack.api.dto.LockMarketPayOrderBatchRequestDTO;
+import cn.bugstack.api.dto.LockMarketPayOrderBatchResponseDTO;
 import cn.bugstack.api.dto.LockMarketPayOrderRequestDTO;
 import cn.bugstack.api.dto.LockMarketPayOrderResponseDTO;
 import cn.bugstack.api.response.Response;
+import cn.bugstack.types.enums.ResponseCode;
 import com.alibaba.fastjson.JSON;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.RandomStringUtils;
+import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 
 /**
@@ -99,4 +106,73 @@ public class MarketTradeControllerTest {
 
     }
 
+    @Test
+    public void test_lockMarketPayOrderBatch() {
+        List<LockMarketPayOrderRequestDTO> lockMarketPayOrderList = new ArrayList<>();
+        lockMarketPayOrderList.add(buildLockMarketPayOrderRequestDTO("xfg02"));
+        // 参数不合法的订单只影响该笔结果
+        LockMarketPayOrderRequestDTO illegal = buildLockMarketPayOrderRequestDTO("xfg03");
+        illegal.setSource(null);
+        lockMarketPayOrderList.add(illegal);
+        lockMarketPayOrderList.add(buildLockMarketPayOrderRequestDTO("xfg03"));
+        lockMarketPayOrderList.add(buildLockMarketPayOrderRequestDTO("xfg04"));
+
+        LockMarketPayOrderBatchRequestDTO requestDTO = new LockMarketPayOrderBatchRequestDTO();
+        requestDTO.setLockMarketPayOrderList(lockMarketPayOrderList);
+        Response<List<LockMarketPayOrderBatchResponseDTO>> response = marketTradeService.lockMarketPayOrderBatch(requestDTO);
+        log.info("测试结果 req:{} res:{}", JSON.toJSONString(requestDTO), JSON.toJSONString(response));
+
+        // 1. 逐笔应答，与请求顺序一致
+        Assert.assertEquals(ResponseCode.SUCCESS.getCode(), response.getCode());
+        Assert.assertEquals(lockMarketPayOrderList.size(), response.getData().size());
+        for (int i = 0; i < lockMarketPayOrderList.size(); i++) {
+            Assert.assertEquals(lockMarketPayOrderList.get(i).getUserId(), response.getData().get(i).getUserId());
+            Assert.assertEquals(lockMarketPayOrderList.get(i).getOutTradeNo(), response.getData().get(i).getOutTradeNo());
+        }
+        Assert.assertEquals(ResponseCode.ILLEGAL_PARAMETER.getCode(), response.getData().get(1).getCode());
+        Assert.assertNull(response.getData().get(1).getLockMarketPayOrderResponseDTO());
+
+        // 2. 重复推送同一批次，已锁单的订单按外部单号幂等返回原订单
+        Response<List<LockMarketPayOrderBatchResponseDTO>> retry = marketTradeService.lockMarketPayOrderBatch(requestDTO);
+        Assert.assertEquals(ResponseCode.SUCCESS.getCode(), retry.getCode());
+        for (int i = 0; i < lockMarketPayOrderList.size(); i++) {
+            LockMarketPayOrderBatchResponseDTO first = response.getData().get(i);
+            if (!ResponseCode.SUCCESS.getCode().equals(first.getCode())) continue;
+            Assert.assertEquals(ResponseCode.SUCCESS.getCode(), retry.getData().get(i).getCode());
+            Assert.assertEquals(first.getLockMarketPayOrderResponseDTO().getOrderId(), retry.getData().get(i).getLockMarketPayOrderResponseDTO().getOrderId());
+        }
+    }
+
+    @Test
+    public void test_lockMarketPayOrderBatch_illegalParameter() {
+        LockMarketPayOrderBatchRequestDTO requestDTO = new LockMarketPayOrderBatchRequestDTO();
+        requestDTO.setLockMarketPayOrderList(Collections.emptyList());
+        Response<List<LockMarketPayOrderBatchResponseDTO>> response = marketTradeService.lockMarketPayOrderBatch(requestDTO);
+        Assert.assertEquals(ResponseCode.ILLEGAL_PARAMETER.getCode(), response.getCode());
+        Assert.assertNull(response.getData());
+
+        // 超过单批上限 200 笔整批拒绝
+        List<LockMarketPayOrderRequestDTO> lockMarketPayOrderList = new ArrayList<>();
+        for (int i = 0; i < 201; i++) {
+            lockMarketPayOrderList.add(buildLockMarketPayOrderRequestDTO("xfg02"));
+        }
+        requestDTO.setLockMarketPayOrderList(lockMarketPayOrderList);
+        response = marketTradeService.lockMarketPayOrderBatch(requestDTO);
+        Assert.assertEquals(ResponseCode.ILLEGAL_PARAMETER.getCode(), response.getCode());
+        Assert.assertNull(response.getData());
+    }
+
+    private LockMarketPayOrderRequestDTO buildLockMarketPayOrderRequestDTO(String userId) {
+        LockMarketPayOrderRequestDTO lockMarketPayOrderRequestDTO = new LockMarketPayOrderRequestDTO();
+        lockMarketPayOrderRequestDTO.setUserId(userId);
+        lockMarketPayOrderRequestDTO.setTeamId(null);
+        lockMarketPayOrderRequestDTO.setActivityId(100123L);
+        lockMarketPayOrderRequestDTO.setGoodsId("9890001");
+        lockMarketPayOrderRequestDTO.setSource("s01");
+        lockMarketPayOrderRequestDTO.setChannel("c01");
+        lockMarketPayOrderRequestDTO.setNotifyUrl("http://127.0.0.1:8091/api/v1/test/group_buy_notify");
+        lockMarketPayOrderRequestDTO.setOutTradeNo(RandomStringUtils.randomNumeric(12));
+        return lockMarketPayOrderRequestDTO;
+    }
+
 }
@@ -1,12 +1,16 @@
 package cn.bugstack.domain.activity.adapter.repository;
 
+import cn.bugstack.domain.activity.model.entity.ActivityPrewarmEntity;
 import cn.bugstack.domain.activity.model.entity.UserGroupBuyOrderDetailEntity;
+import cn.bugstack.domain.activity.model.valobj.CacheEntityEnumVO;
 import cn.bugstack.domain.activity.model.valobj.GroupBuyActivityDiscountVO;
 import cn.bugstack.domain.activity.model.valobj.SCSkuActivityVO;
 import cn.bugstack.domain.activity.model.valobj.SkuVO;
 import cn.bugstack.domain.activity.model.valobj.TeamStatisticVO;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * @author Fuzhengwei bugstack.cn @小傅哥
@@ -21,6 +25,20 @@ public interface IActivityRepository {
 
     SCSkuActivityVO querySCSkuActivityBySCGoodsId(String source, String channel, String goodsId);
 
+    /**
+     * 批量查询商品信息
+     *
+     * @return 存在的商品ID -> 商品信息
+     */
+    Map<String, SkuVO> querySkuByGoodsIds(Set<String> goodsIds);
+
+    /**
+     * 批量查询渠道商品活动配置
+     *
+     * @return 存在的商品ID -> 渠道商品活动配置
+     */
+    Map<String, SCSkuActivityVO> querySCSkuActivityBySCGoodsIds(String source, String channel, Set<String> goodsIds);
+
     boolean isTagCrowdRange(String tagId, String userId);
 
     boolean downgradeSwitch();
@@ -33,4 +51,28 @@ public interface IActivityRepository {
 
     TeamStatisticVO queryTeamStatisticByActivityId(Long activityId);
 
+    /**
+     * 查询即将开始的生效活动及其渠道商品
+     *
+     * @param leadSeconds 开始时间在当前时间之后该秒数内
+     */
+    List<ActivityPrewarmEntity> queryUpcomingActivityList(long leadSeconds);
+
+    /**
+     * 预热活动；刷新本节点活动快照，商品数据加载到本节点和 Redis 缓存
+     */
+    void prewarmActivity(ActivityPrewarmEntity activityPrewarmEntity);
+
+    /**
+     * 预热活动库存；初始化活动总名额分段 key，已写入的分段保持不变，集群内一个节点执行即可
+     */
+    void prewarmActivityStock(Long activityId);
+
+    /**
+     * 失效实体缓存；删除 Redis 缓存并广播各节点失效本地缓存
+     *
+     * @param id 实体ID；为空时按前缀失效该实体的全部缓存
+     */
+    void invalidateCache(CacheEntityEnumVO entity, String id);
+
 }
@@ -0,0 +1,32 @@
+package cn.bugstack.domain.activity.model.entity;
+
+import cn.bugstack.domain.activity.model.valobj.SCSkuActivityVO;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ * @description 待预热活动实体对象；即将开始的活动及其渠道商品
+ * @create 2025-08-09 09:20
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ActivityPrewarmEntity {
+
+    /** 活动ID */
+    private Long activityId;
+    /** 活动开始时间 */
+    private Date startTime;
+    /** 活动结束时间 */
+    private Date endTime;
+    /** 活动关联的渠道商品 */
+    private List<SCSkuActivityVO> scSkuActivityList;
+
+}
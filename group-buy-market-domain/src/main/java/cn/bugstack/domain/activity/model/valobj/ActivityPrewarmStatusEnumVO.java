@@ -0,0 +1,26 @@
+package cn.bugstack.domain.activity.model.valobj;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+/**
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ * @description 活动预热状态枚举
+ * @create 2025-08-09 09:20
+ */
+@Getter
+@AllArgsConstructor
+@NoArgsConstructor
+public enum ActivityPrewarmStatusEnumVO {
+
+    WARMING("WARMING", "预热中"),
+    SUCCESS("SUCCESS", "预热完成"),
+    FAIL("FAIL", "预热失败"),
+    SKIP("SKIP", "试算被降级、切量拦截，未预热试算链路"),
+    ;
+
+    private String code;
+    private String info;
+
+}
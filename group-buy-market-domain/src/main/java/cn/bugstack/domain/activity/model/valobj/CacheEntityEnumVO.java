@@ -0,0 +1,33 @@
+package cn.bugstack.domain.activity.model.valobj;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+/**
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ * @description 缓存实体枚举；按实体失效集群缓存
+ * @create 2025-08-26 09:30
+ */
+@Getter
+@AllArgsConstructor
+@NoArgsConstructor
+public enum CacheEntityEnumVO {
+
+    SKU("sku", "商品；ID 为 goodsId"),
+    SC_SKU_ACTIVITY("sc_sku_activity", "渠道商品活动配置；ID 为 source_channel_goodsId"),
+    ACTIVITY("activity", "拼团活动；ID 为 activityId"),
+    DISCOUNT("discount", "拼团折扣；ID 为 discountId"),
+    ;
+
+    private String code;
+    private String info;
+
+    public static CacheEntityEnumVO getByCode(String code) {
+        for (CacheEntityEnumVO entity : values()) {
+            if (entity.code.equals(code)) return entity;
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,179 @@
+package cn.bugstack.domain.activity.model.valobj;
+
+import cn.bugstack.types.common.Constants;
+
+import java.math.BigDecimal;
+
+/**
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ * @description 编译后的折扣计划
+ * <p>
+ * 折扣配置加载时把 marketPlan、marketExpr 解析为以分为单位的整数参数，试算时按 long 计算支付金额，不再拆分表达式、创建 BigDecimal。
+ * 计算规则与 MJ、ZJ、ZK、N 折扣计算服务一致：折扣后金额小于等于0时最低支付1分钱，折扣率按元向下取整，N元购不设下限。
+ * 金额精度超过分、数值超出范围或表达式无法解析的配置不编译，由折扣计算服务按 BigDecimal 计算。
+ * @create 2025-08-16 10:05
+ */
+public final class CompiledDiscountPlan {
+
+    /** 最低支付金额（分） */
+    private static final long MIN_PAY_CENTS = 1;
+    /** 可编译的金额、折扣率无标度值上限；两者乘积不超过 long 范围 */
+    private static final long MAX_VALUE = 1_000_000_000L;
+    private static final int MAX_RATE_SCALE = 9;
+
+    private enum Plan {
+        /** 直减 */
+        ZJ,
+        /** 满减 */
+        MJ,
+        /** 折扣 */
+        ZK,
+        /** N元购 */
+        N
+    }
+
+    private final String marketPlan;
+    private final String marketExpr;
+    private final Plan plan;
+    /** 满减门槛（分） */
+    private final long thresholdCents;
+    /** 直减、满减金额（分） */
+    private final long reduceCents;
+    /** N元购支付金额（分） */
+    private final long fixedCents;
+    /** 折扣率无标度值 */
+    private final long rateUnscaled;
+    /** 折扣率换算到元的除数；10^标度 × 100 */
+    private final long rateDivisor;
+
+    private CompiledDiscountPlan(String marketPlan, String marketExpr, Plan plan, long thresholdCents, long reduceCents, long fixedCents, long rateUnscaled, long rateDivisor) {
+        this.marketPlan = marketPlan;
+        this.marketExpr = marketExpr;
+        this.plan = plan;
+        this.thresholdCents = thresholdCents;
+        this.reduceCents = reduceCents;
+        this.fixedCents = fixedCents;
+        this.rateUnscaled = rateUnscaled;
+        this.rateDivisor = rateDivisor;
+    }
+
+    /**
+     * 编译折扣计划
+     *
+     * @return 不支持的计划类型或不可编译的表达式返回空
+     */
+    public static CompiledDiscountPlan compile(String marketPlan, String marketExpr) {
+        if (null == marketPlan || null == marketExpr) return null;
+        try {
+            switch (marketPlan) {
+                case "ZJ": {
+                    long reduceCents = toCents(new BigDecimal(marketExpr));
+                    if (reduceCents < 0) return null;
+                    return new CompiledDiscountPlan(marketPlan, marketExpr, Plan.ZJ, 0, reduceCents, 0, 0, 0);
+                }
+                case "MJ": {
+                    String[] split = marketExpr.split(Constants.SPLIT);
+                    if (split.length < 2) return null;
+                    long thresholdCents = toCents(new BigDecimal(split[0].trim()));
+                    long reduceCents = toCents(new BigDecimal(split[1].trim()));
+                    if (thresholdCents < 0 || reduceCents < 0) return null;
+                    return new CompiledDiscountPlan(marketPlan, marketExpr, Plan.MJ, thresholdCents, reduceCents, 0, 0, 0);
+                }
+                case "ZK": {
+                    BigDecimal rate = new BigDecimal(marketExpr);
+                    if (rate.scale() < 0) rate = rate.setScale(0);
+                    if (rate.signum() < 0 || rate.scale() > MAX_RATE_SCALE) return null;
+                    long rateUnscaled = rate.unscaledValue().longValueExact();
+                    if (rateUnscaled > MAX_VALUE) return null;
+                    long rateDivisor = 100;
+                    for (int i = 0; i < rate.scale(); i++) {
+                        rateDivisor *= 10;
+                    }
+                    return new CompiledDiscountPlan(marketPlan, marketExpr, Plan.ZK, 0, 0, 0, rateUnscaled, rateDivisor);
+                }
+                case "N": {
+                    long fixedCents = toCents(new BigDecimal(marketExpr));
+                    if (fixedCents < 0) return null;
+                    return new CompiledDiscountPlan(marketPlan, marketExpr, Plan.N, 0, 0, fixedCents, 0, 0);
+                }
+                default:
+                    return null;
+            }
+        } catch (NumberFormatException | ArithmeticException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 是否由相同的配置编译；配置未变更时复用
+     */
+    public boolean isCompiledFrom(String marketPlan, String marketExpr) {
+        return this.marketPlan.equals(marketPlan) && this.marketExpr.equals(marketExpr);
+    }
+
+    /**
+     * 计算支付金额
+     *
+     * @param originalCents 商品原价（分），由 {@link #toCents(BigDecimal)} 转换
+     * @return 支付金额（分）
+     */
+    public long payCents(long originalCents) {
+        long payCents;
+        switch (plan) {
+            case ZJ:
+                payCents = originalCents - reduceCents;
+                break;
+            case MJ:
+                // 不满足最低满减约束，则按照原价
+                if (originalCents < thresholdCents) return originalCents;
+                payCents = originalCents - reduceCents;
+                break;
+            case ZK:
+                // 按元向下取整
+                payCents = originalCents * rateUnscaled / rateDivisor * 100;
+                break;
+            default:
+                // N元购，直接为优惠后的金额
+                return fixedCents;
+        }
+        // 最低支付1分钱
+        return payCents <= 0 ? MIN_PAY_CENTS : payCents;
+    }
+
+    /**
+     * 计算优惠金额
+     *
+     * @return 优惠金额（分）；原价减支付金额
+     */
+    public long deductionCents(long originalCents) {
+        return originalCents - payCents(originalCents);
+    }
+
+    /**
+     * 金额转换为分
+     *
+     * @return 精度超过分、为负数或超出可计算范围时返回 -1
+     */
+    public static long toCents(BigDecimal price) {
+        if (null == price || price.signum() < 0 || price.scale() > 2) return -1;
+        try {
+            long cents = price.movePointRight(2).longValueExact();
+            return cents > MAX_VALUE ? -1 : cents;
+        } catch (ArithmeticException e) {
+            return -1;
+        }
+    }
+
+    public static BigDecimal fromCents(long cents) {
+        return BigDecimal.valueOf(cents, 2);
+    }
+
+    public String getMarketPlan() {
+        return marketPlan;
+    }
+
+    public String getMarketExpr() {
+        return marketExpr;
+    }
+
+}
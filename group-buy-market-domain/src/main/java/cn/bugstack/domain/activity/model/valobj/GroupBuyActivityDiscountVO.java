@@ -1,14 +1,11 @@
 package cn.bugstack.domain.activity.model.valobj;
 
-import cn.bugstack.types.common.Constants;
 import lombok.*;
-import org.apache.commons.lang3.StringUtils;
 
 import java.math.BigDecimal;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 
 /**
  * @author Fuzhengwei bugstack.cn @小傅哥
@@ -93,18 +90,18 @@ public class GroupBuyActivityDiscountVO {
      */
     private String tagScope;
 
+    /**
+     * 人群标签规则范围（预解析）；为空时按 tagScope 即时解析
+     */
+    private TagScopeVO tagScopeVO;
+
     private GroupBuyDiscount groupBuyDiscount;
     /**
      * 可见限制
      * 只要存在这样一个值，那么首次获得的默认值就是 false
      */
     public boolean isVisible() {
-        if (StringUtils.isBlank(this.tagScope)) return TagScopeEnumVO.VISIBLE.getAllow();
-        String[] split = this.tagScope.split(Constants.SPLIT);
-        if (split.length > 0 && Objects.equals(split[0], "1") && StringUtils.isNotBlank(split[0])) {
-            return TagScopeEnumVO.VISIBLE.getRefuse();
-        }
-        return TagScopeEnumVO.VISIBLE.getAllow();
+        return getTagScopeVO().isVisible();
     }
 
     /**
@@ -112,15 +109,11 @@ public class GroupBuyActivityDiscountVO {
      * 只要存在这样一个值，那么首次获得的默认值就是 false
      */
     public boolean isEnable() {
-        if (StringUtils.isBlank(this.tagScope)) return TagScopeEnumVO.VISIBLE.getAllow();
-        String[] split = this.tagScope.split(Constants.SPLIT);
-        if (split.length == 2 && Objects.equals(split[1], "2") && StringUtils.isNotBlank(split[1])) {
-            return TagScopeEnumVO.ENABLE.getRefuse();
-        }
-        if (split.length == 1 && Objects.equals(split[0], "2")) {
-            return TagScopeEnumVO.ENABLE.getRefuse();
-        }
-        return TagScopeEnumVO.ENABLE.getAllow();
+        return getTagScopeVO().isEnable();
+    }
+
+    public TagScopeVO getTagScopeVO() {
+        return null != tagScopeVO ? tagScopeVO : TagScopeVO.parse(tagScope);
     }
 
     @Getter
@@ -157,6 +150,16 @@ public class GroupBuyActivityDiscountVO {
          * 人群标签，特定优惠限定
          */
         private String tagId;
+
+        /**
+         * 编译后的折扣计划；为空时由折扣计算服务计算
+         */
+        private CompiledDiscountPlan compiledDiscountPlan;
+
+        /**
+         * 折扣版本（折扣ID_更新时间），价格缓存按版本失效
+         */
+        private String discountVersion;
     }
 
 }
@@ -0,0 +1,28 @@
+package cn.bugstack.domain.activity.model.valobj;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ * @description 商品营销价格；只与活动折扣、商品原价有关，不含用户相关的人群标签判断
+ * @create 2025-08-17 09:40
+ */
+@Getter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class MarketPriceVO {
+
+    /** 原始价格 */
+    private BigDecimal originalPrice;
+    /** 折扣金额 */
+    private BigDecimal deductionPrice;
+    /** 支付金额 */
+    private BigDecimal payPrice;
+
+}
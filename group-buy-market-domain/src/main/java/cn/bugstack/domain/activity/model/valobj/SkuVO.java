@@ -24,5 +24,7 @@ public class SkuVO {
     private String goodsName;
     /** 原始价格 */
     private BigDecimal originalPrice;
+    /** 价格版本（更新时间），价格缓存按版本失效 */
+    private long priceVersion;
 
 }
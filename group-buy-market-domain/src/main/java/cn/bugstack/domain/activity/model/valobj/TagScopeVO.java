@@ -0,0 +1,56 @@
+package cn.bugstack.domain.activity.model.valobj;
+
+import cn.bugstack.types.common.Constants;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.Objects;
+
+/**
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ * @description 人群标签作用域值对象；tagScope 配置预解析后的可见、可参与限制
+ * @create 2025-03-02 10:12
+ */
+@Getter
+@AllArgsConstructor
+public class TagScopeVO {
+
+    /** 未配置人群标签范围，可见、可参与 */
+    public static final TagScopeVO ALLOW_ALL = new TagScopeVO(TagScopeEnumVO.VISIBLE.getAllow(), TagScopeEnumVO.ENABLE.getAllow());
+
+    /**
+     * 可见限制
+     */
+    private final boolean visible;
+
+    /**
+     * 参与限制
+     */
+    private final boolean enable;
+
+    /**
+     * 解析人群标签范围配置，如 1,2 表示不在人群内不可见、不可参与
+     * 只要存在这样一个值，那么首次获得的默认值就是 false
+     */
+    public static TagScopeVO parse(String tagScope) {
+        if (StringUtils.isBlank(tagScope)) return ALLOW_ALL;
+        String[] split = tagScope.split(Constants.SPLIT);
+
+        boolean visible = TagScopeEnumVO.VISIBLE.getAllow();
+        if (split.length > 0 && Objects.equals(split[0], "1")) {
+            visible = TagScopeEnumVO.VISIBLE.getRefuse();
+        }
+
+        boolean enable = TagScopeEnumVO.ENABLE.getAllow();
+        if (split.length == 2 && Objects.equals(split[1], "2")) {
+            enable = TagScopeEnumVO.ENABLE.getRefuse();
+        }
+        if (split.length == 1 && Objects.equals(split[0], "2")) {
+            enable = TagScopeEnumVO.ENABLE.getRefuse();
+        }
+
+        return new TagScopeVO(visible, enable);
+    }
+
+}
@@ -0,0 +1,33 @@
+package cn.bugstack.domain.activity.service;
+
+import cn.bugstack.domain.activity.adapter.repository.IActivityRepository;
+import cn.bugstack.domain.activity.model.valobj.CacheEntityEnumVO;
+import cn.bugstack.types.enums.ResponseCode;
+import cn.bugstack.types.exception.AppException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+
+/**
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ * @description 活动缓存服务
+ * @create 2025-08-26 09:30
+ */
+@Slf4j
+@Service
+public class ActivityCacheServiceImpl implements IActivityCacheService {
+
+    @Resource
+    private IActivityRepository repository;
+
+    @Override
+    public void invalidateCache(CacheEntityEnumVO entity, String id) {
+        if (null == entity) {
+            throw new AppException(ResponseCode.ILLEGAL_PARAMETER.getCode(), ResponseCode.ILLEGAL_PARAMETER.getInfo());
+        }
+        log.info("失效实体缓存 entity:{} id:{}", entity.getCode(), id);
+        repository.invalidateCache(entity, id);
+    }
+
+}
@@ -0,0 +1,163 @@
+package cn.bugstack.domain.activity.service;
+
+import cn.bugstack.domain.activity.adapter.repository.IActivityRepository;
+import cn.bugstack.domain.activity.model.entity.ActivityPrewarmEntity;
+import cn.bugstack.domain.activity.model.entity.MarketProductEntity;
+import cn.bugstack.domain.activity.model.valobj.ActivityPrewarmStatusEnumVO;
+import cn.bugstack.domain.activity.model.valobj.ActivityPrewarmStatusVO;
+import cn.bugstack.domain.activity.model.valobj.SCSkuActivityVO;
+import cn.bugstack.types.enums.ResponseCode;
+import cn.bugstack.types.exception.AppException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ * @description 活动预热服务
+ * <p>
+ * 1. 活动开始前的提前量内，每个节点各自预热：刷新本地活动快照，商品、渠道商品加载到本地和 Redis 缓存；活动总名额分段 key 由一个节点初始化
+ * 2. 以固定的预热用户对每个渠道商品执行模拟试算，提前加载试算链路的类、触发 JIT 编译，试算只读不产生数据；预热用户被降级、切量拦截时停止试算并记为跳过
+ * 3. 按活动记录预热状态、数据加载与试算耗时；失败或活动开始时间变更时下次调度重新预热，活动结束后移除记录
+ * @create 2025-08-09 09:20
+ */
+@Slf4j
+@Service
+public class ActivityPrewarmServiceImpl implements IActivityPrewarmService {
+
+    /** 模拟试算用户 */
+    private static final String PREWARM_USER_ID = "group_buy_market_prewarm";
+
+    @Resource
+    private IActivityRepository repository;
+    @Resource
+    private IIndexGroupBuyMarketService indexGroupBuyMarketService;
+
+    /** activityId -> 本节点预热状态 */
+    private final ConcurrentHashMap<Long, ActivityPrewarmStatusVO> statusMap = new ConcurrentHashMap<>();
+
+    @Override
+    public int prewarmUpcomingActivities(long leadSeconds, int trialRounds) {
+        // 活动结束的记录移除
+        long now = System.currentTimeMillis();
+        statusMap.values().removeIf(status -> null != status.getEndTime() && status.getEndTime().getTime() < now);
+
+        List<ActivityPrewarmEntity> activityPrewarmEntities = repository.queryUpcomingActivityList(leadSeconds);
+        if (null == activityPrewarmEntities || activityPrewarmEntities.isEmpty()) return 0;
+
+        int count = 0;
+        for (ActivityPrewarmEntity activityPrewarmEntity : activityPrewarmEntities) {
+            ActivityPrewarmStatusVO status = statusMap.get(activityPrewarmEntity.getActivityId());
+            if (null != status
+                    && (ActivityPrewarmStatusEnumVO.SUCCESS.equals(status.getStatus()) || ActivityPrewarmStatusEnumVO.SKIP.equals(status.getStatus()))
+                    && status.getStartTime().equals(activityPrewarmEntity.getStartTime())) {
+                continue;
+            }
+            prewarm(activityPrewarmEntity, trialRounds);
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public int prewarmUpcomingActivityStock(long leadSeconds) {
+        List<ActivityPrewarmEntity> activityPrewarmEntities = repository.queryUpcomingActivityList(leadSeconds);
+        if (null == activityPrewarmEntities || activityPrewarmEntities.isEmpty()) return 0;
+
+        for (ActivityPrewarmEntity activityPrewarmEntity : activityPrewarmEntities) {
+            repository.prewarmActivityStock(activityPrewarmEntity.getActivityId());
+        }
+        return activityPrewarmEntities.size();
+    }
+
+    @Override
+    public List<ActivityPrewarmStatusVO> queryActivityPrewarmStatusList() {
+        List<ActivityPrewarmStatusVO> statusList = new ArrayList<>(statusMap.values());
+        statusList.sort(Comparator.comparing(ActivityPrewarmStatusVO::getStartTime));
+        return statusList;
+    }
+
+    private void prewarm(ActivityPrewarmEntity activityPrewarmEntity, int trialRounds) {
+        Long activityId = activityPrewarmEntity.getActivityId();
+        List<SCSkuActivityVO> scSkuActivityList = null == activityPrewarmEntity.getScSkuActivityList() ? new ArrayList<>() : activityPrewarmEntity.getScSkuActivityList();
+
+        ActivityPrewarmStatusVO status = ActivityPrewarmStatusVO.builder()
+                .activityId(activityId)
+                .startTime(activityPrewarmEntity.getStartTime())
+                .endTime(activityPrewarmEntity.getEndTime())
+                .status(ActivityPrewarmStatusEnumVO.WARMING)
+                .goodsCount(scSkuActivityList.size())
+                .trialCount(0)
+                .trialErrorCount(0)
+                .build();
+        statusMap.put(activityId, status);
+
+        long begin = System.currentTimeMillis();
+        try {
+            // 1. 加载活动配置、商品数据
+            repository.prewarmActivity(activityPrewarmEntity);
+            long loaded = System.currentTimeMillis();
+            status.setLoadMillis(loaded - begin);
+
+            // 2. 模拟试算；降级、切量拦截时试算链路未执行，停止试算记为跳过；其他单次失败只记录次数，全部失败记为失败
+            int trialCount = 0;
+            int trialErrorCount = 0;
+            AppException intercepted = null;
+            Exception lastError = null;
+            for (int round = 0; round < trialRounds && null == intercepted; round++) {
+                for (SCSkuActivityVO scSkuActivityVO : scSkuActivityList) {
+                    trialCount++;
+                    try {
+                        indexGroupBuyMarketService.indexMarketTrial(MarketProductEntity.builder()
+                                .activityId(activityId)
+                                .userId(PREWARM_USER_ID)
+                                .goodsId(scSkuActivityVO.getGoodsId())
+                                .source(scSkuActivityVO.getSource())
+                                .channel(scSkuActivityVO.getChanel())
+                                .build());
+                    } catch (AppException e) {
+                        trialErrorCount++;
+                        lastError = e;
+                        if (ResponseCode.E0003.getCode().equals(e.getCode()) || ResponseCode.E0004.getCode().equals(e.getCode())) {
+                            intercepted = e;
+                            break;
+                        }
+                    } catch (Exception e) {
+                        trialErrorCount++;
+                        lastError = e;
+                    }
+                }
+            }
+            status.setTrialCount(trialCount);
+            status.setTrialErrorCount(trialErrorCount);
+            status.setTrialMillis(System.currentTimeMillis() - loaded);
+            if (null != intercepted) {
+                status.setStatus(ActivityPrewarmStatusEnumVO.SKIP);
+                status.setMessage(intercepted.getInfo());
+            } else if (trialCount > 0 && trialErrorCount == trialCount) {
+                status.setStatus(ActivityPrewarmStatusEnumVO.FAIL);
+                status.setMessage(lastError.getMessage());
+            } else {
+                status.setStatus(ActivityPrewarmStatusEnumVO.SUCCESS);
+            }
+        } catch (Exception e) {
+            log.error("活动预热失败 activityId:{}", activityId, e);
+            status.setStatus(ActivityPrewarmStatusEnumVO.FAIL);
+            status.setMessage(e.getMessage());
+        } finally {
+            status.setCostMillis(System.currentTimeMillis() - begin);
+            status.setWarmTime(new Date());
+        }
+
+        log.info("活动预热 activityId:{} status:{} startTime:{} goods:{} trial:{} trialError:{} load:{}ms trial:{}ms cost:{}ms",
+                activityId, status.getStatus().getCode(), activityPrewarmEntity.getStartTime(), status.getGoodsCount(),
+                status.getTrialCount(), status.getTrialErrorCount(), status.getLoadMillis(), status.getTrialMillis(), status.getCostMillis());
+    }
+
+}
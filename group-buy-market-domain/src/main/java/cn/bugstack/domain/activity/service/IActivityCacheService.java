@@ -0,0 +1,20 @@
+package cn.bugstack.domain.activity.service;
+
+import cn.bugstack.domain.activity.model.valobj.CacheEntityEnumVO;
+
+/**
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ * @description 活动缓存服务接口；活动、商品配置变更后失效集群各节点的缓存
+ * @create 2025-08-26 09:30
+ */
+public interface IActivityCacheService {
+
+    /**
+     * 失效实体缓存
+     *
+     * @param entity 缓存实体
+     * @param id     实体ID；为空时失效该实体的全部缓存
+     */
+    void invalidateCache(CacheEntityEnumVO entity, String id);
+
+}
@@ -0,0 +1,36 @@
+package cn.bugstack.domain.activity.service;
+
+import cn.bugstack.domain.activity.model.valobj.ActivityPrewarmStatusVO;
+
+import java.util.List;
+
+/**
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ * @description 活动预热服务接口；活动开始前在每个节点加载配置、商品数据，初始化库存 key，并以模拟试算预热代码路径
+ * @create 2025-08-09 09:20
+ */
+public interface IActivityPrewarmService {
+
+    /**
+     * 预热即将开始的活动；本节点已预热成功的活动跳过
+     *
+     * @param leadSeconds 提前量，预热开始时间在该时间内的活动
+     * @param trialRounds 每个渠道商品的模拟试算次数
+     * @return 本次预热的活动数
+     */
+    int prewarmUpcomingActivities(long leadSeconds, int trialRounds);
+
+    /**
+     * 预热即将开始的活动的共享数据（活动总名额分段 key）；集群内由一个节点执行
+     *
+     * @param leadSeconds 提前量，预热开始时间在该时间内的活动
+     * @return 预热的活动数
+     */
+    int prewarmUpcomingActivityStock(long leadSeconds);
+
+    /**
+     * 查询本节点的活动预热状态
+     */
+    List<ActivityPrewarmStatusVO> queryActivityPrewarmStatusList();
+
+}
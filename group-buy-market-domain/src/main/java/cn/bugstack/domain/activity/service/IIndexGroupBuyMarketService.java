@@ -6,6 +6,7 @@ import cn.bugstack.domain.activity.model.entity.TrialBalanceEntity;
 import cn.bugstack.domain.activity.model.valobj.TeamStatisticVO;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * @author Fuzhengwei bugstack.cn @小傅哥
@@ -16,6 +17,22 @@ public interface IIndexGroupBuyMarketService {
 
     TrialBalanceEntity indexMarketTrial(MarketProductEntity marketProductEntity) throws Exception;
 
+    /**
+     * 异步试算；数据加载在线程池执行，各节点组合执行，不阻塞调用线程
+     *
+     * @param marketProductEntity 营销商品
+     * @return 试算结果，异常时以业务异常完成
+     */
+    CompletableFuture<TrialBalanceEntity> indexMarketTrialAsync(MarketProductEntity marketProductEntity);
+
+    /**
+     * 批量试算；渠道商品、商品信息批量加载，价格一次计算
+     *
+     * @param marketProductEntities 营销商品列表
+     * @return 与入参顺序一致，商品无拼团营销配置时为 null
+     */
+    List<TrialBalanceEntity> indexMarketTrialBatch(List<MarketProductEntity> marketProductEntities);
+
     /**
      * 查询进行中的拼团订单
      *
@@ -4,20 +4,30 @@ import cn.bugstack.domain.activity.adapter.repository.IActivityRepository;
 import cn.bugstack.domain.activity.model.entity.UserGroupBuyOrderDetailEntity;
 import cn.bugstack.domain.activity.model.entity.MarketProductEntity;
 import cn.bugstack.domain.activity.model.entity.TrialBalanceEntity;
+import cn.bugstack.domain.activity.model.valobj.GroupBuyActivityDiscountVO;
+import cn.bugstack.domain.activity.model.valobj.MarketPriceVO;
+import cn.bugstack.domain.activity.model.valobj.SCSkuActivityVO;
+import cn.bugstack.domain.activity.model.valobj.SkuVO;
 import cn.bugstack.domain.activity.model.valobj.TeamStatisticVO;
+import cn.bugstack.domain.activity.service.discount.MarketPriceCalculateService;
 import cn.bugstack.domain.activity.service.trial.factory.DefaultActivityStrategyFactory;
+import cn.bugstack.types.enums.ResponseCode;
+import cn.bugstack.types.exception.AppException;
 import cn.bugstack.wrench.design.framework.tree.StrategyHandler;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * @author Fuzhengwei bugstack.cn @小傅哥
  * @description 首页营销服务
  * @create 2024-12-14 14:33
  */
+@Slf4j
 @Service
 public class IndexGroupBuyMarketServiceImpl implements IIndexGroupBuyMarketService {
 
@@ -25,6 +35,8 @@ public class IndexGroupBuyMarketServiceImpl implements IIndexGroupBuyMarketServi
     private DefaultActivityStrategyFactory defaultActivityStrategyFactory;
     @Resource
     private IActivityRepository repository;
+    @Resource
+    private MarketPriceCalculateService marketPriceCalculateService;
 
     @Override
     public TrialBalanceEntity indexMarketTrial(MarketProductEntity marketProductEntity) throws Exception {
@@ -34,6 +46,104 @@ public class IndexGroupBuyMarketServiceImpl implements IIndexGroupBuyMarketServi
         return strategyHandler.apply(marketProductEntity, new DefaultActivityStrategyFactory.DynamicContext());
     }
 
+    @Override
+    public CompletableFuture<TrialBalanceEntity> indexMarketTrialAsync(MarketProductEntity marketProductEntity) {
+        return defaultActivityStrategyFactory.asyncStrategyHandler().applyAsync(marketProductEntity, new DefaultActivityStrategyFactory.DynamicContext());
+    }
+
+    @Override
+    public List<TrialBalanceEntity> indexMarketTrialBatch(List<MarketProductEntity> marketProductEntities) {
+        List<TrialBalanceEntity> trialBalanceEntities = new ArrayList<>(marketProductEntities.size());
+        if (marketProductEntities.isEmpty()) return trialBalanceEntities;
+
+        // 1. 参数判断；降级、切量按用户判断一次
+        Set<String> userIds = new HashSet<>();
+        for (MarketProductEntity marketProductEntity : marketProductEntities) {
+            if (StringUtils.isBlank(marketProductEntity.getUserId()) || StringUtils.isBlank(marketProductEntity.getGoodsId()) ||
+                    StringUtils.isBlank(marketProductEntity.getSource()) || StringUtils.isBlank(marketProductEntity.getChannel())) {
+                throw new AppException(ResponseCode.ILLEGAL_PARAMETER.getCode(), ResponseCode.ILLEGAL_PARAMETER.getInfo());
+            }
+            userIds.add(marketProductEntity.getUserId());
+        }
+        if (repository.downgradeSwitch()) {
+            log.info("拼团活动降级拦截 {}", userIds);
+            throw new AppException(ResponseCode.E0003.getCode(), ResponseCode.E0003.getInfo());
+        }
+        for (String userId : userIds) {
+            if (!repository.cutRange(userId)) {
+                log.info("拼团活动切量拦截 {}", userId);
+                throw new AppException(ResponseCode.E0004.getCode(), ResponseCode.E0004.getInfo());
+            }
+        }
+
+        // 2. 渠道商品活动配置；未指定活动的商品按 渠道_来源 分组，每组一次批量查询
+        Map<String, Set<String>> scGoodsIds = new HashMap<>();
+        Set<String> goodsIds = new HashSet<>();
+        for (MarketProductEntity marketProductEntity : marketProductEntities) {
+            goodsIds.add(marketProductEntity.getGoodsId());
+            if (null != marketProductEntity.getActivityId()) continue;
+            scGoodsIds.computeIfAbsent(marketProductEntity.getSource() + "_" + marketProductEntity.getChannel(), key -> new HashSet<>())
+                    .add(marketProductEntity.getGoodsId());
+        }
+        Map<String, Map<String, SCSkuActivityVO>> scSkuActivityMap = new HashMap<>();
+        for (MarketProductEntity marketProductEntity : marketProductEntities) {
+            String scKey = marketProductEntity.getSource() + "_" + marketProductEntity.getChannel();
+            if (!scGoodsIds.containsKey(scKey) || scSkuActivityMap.containsKey(scKey)) continue;
+            scSkuActivityMap.put(scKey, repository.querySCSkuActivityBySCGoodsIds(marketProductEntity.getSource(), marketProductEntity.getChannel(), scGoodsIds.get(scKey)));
+        }
+
+        // 3. 商品信息一次批量查询
+        Map<String, SkuVO> skuMap = repository.querySkuByGoodsIds(goodsIds);
+
+        // 4. 逐个商品计算；活动配置读取进程内快照，价格走共享价格缓存，人群标签按 标签_用户 判断一次
+        Map<Long, GroupBuyActivityDiscountVO> activityMap = new HashMap<>();
+        Map<String, Boolean> tagCrowdRangeMap = new HashMap<>();
+        for (MarketProductEntity marketProductEntity : marketProductEntities) {
+            Long activityId = marketProductEntity.getActivityId();
+            if (null == activityId) {
+                SCSkuActivityVO scSkuActivityVO = scSkuActivityMap.get(marketProductEntity.getSource() + "_" + marketProductEntity.getChannel()).get(marketProductEntity.getGoodsId());
+                activityId = null == scSkuActivityVO ? null : scSkuActivityVO.getActivityId();
+            }
+            GroupBuyActivityDiscountVO groupBuyActivityDiscountVO = null == activityId ? null : activityMap.computeIfAbsent(activityId, repository::queryGroupBuyActivityDiscountVO);
+            SkuVO skuVO = skuMap.get(marketProductEntity.getGoodsId());
+
+            // 无营销配置
+            if (null == groupBuyActivityDiscountVO || null == groupBuyActivityDiscountVO.getGroupBuyDiscount() || null == skuVO) {
+                trialBalanceEntities.add(null);
+                continue;
+            }
+
+            MarketPriceVO marketPriceVO = marketPriceCalculateService.calculate(groupBuyActivityDiscountVO, skuVO);
+
+            // 人群标签配置为空，则走默认值
+            boolean visible = true;
+            boolean enable = true;
+            String tagId = groupBuyActivityDiscountVO.getTagId();
+            if (StringUtils.isNotBlank(tagId)) {
+                String userId = marketProductEntity.getUserId();
+                boolean isWithin = tagCrowdRangeMap.computeIfAbsent(tagId + "_" + userId, key -> repository.isTagCrowdRange(tagId, userId));
+                visible = groupBuyActivityDiscountVO.isVisible() || isWithin;
+                enable = groupBuyActivityDiscountVO.isEnable() || isWithin;
+            }
+
+            trialBalanceEntities.add(TrialBalanceEntity.builder()
+                    .goodsId(skuVO.getGoodsId())
+                    .goodsName(skuVO.getGoodsName())
+                    .originalPrice(skuVO.getOriginalPrice())
+                    .deductionPrice(marketPriceVO.getDeductionPrice())
+                    .payPrice(marketPriceVO.getPayPrice())
+                    .targetCount(groupBuyActivityDiscountVO.getTarget())
+                    .startTime(groupBuyActivityDiscountVO.getStartTime())
+                    .endTime(groupBuyActivityDiscountVO.getEndTime())
+                    .isVisible(visible)
+                    .isEnable(enable)
+                    .groupBuyActivityDiscountVO(groupBuyActivityDiscountVO)
+                    .build());
+        }
+
+        return trialBalanceEntities;
+    }
+
     @Override
     public List<UserGroupBuyOrderDetailEntity> queryInProgressUserGroupBuyOrderDetailList(Long activityId, String userId, Integer ownerCount, Integer randomCount) {
         List<UserGroupBuyOrderDetailEntity> unionAllList = new ArrayList<>();
@@ -0,0 +1,74 @@
+package cn.bugstack.domain.activity.service.discount;
+
+import cn.bugstack.domain.activity.model.valobj.CompiledDiscountPlan;
+import cn.bugstack.domain.activity.model.valobj.GroupBuyActivityDiscountVO;
+import cn.bugstack.domain.activity.model.valobj.MarketPriceVO;
+import cn.bugstack.domain.activity.model.valobj.SkuVO;
+import cn.bugstack.domain.activity.service.trial.cache.MarketPriceCache;
+import cn.bugstack.types.enums.ResponseCode;
+import cn.bugstack.types.exception.AppException;
+import com.alibaba.fastjson.JSON;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.math.BigDecimal;
+import java.util.Map;
+
+/**
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ * @description 商品营销价格计算服务；试算节点和批量试算共用
+ * @create 2025-08-18 10:20
+ */
+@Slf4j
+@Service
+public class MarketPriceCalculateService {
+
+    /**
+     * <a href="https://bugstack.cn/md/road-map/spring-dependency-injection.html">Spring 注入详细说明</a>
+     */
+    @Resource
+    private Map<String, IDiscountCalculateService> discountCalculateServiceMap;
+    @Resource
+    private MarketPriceCache marketPriceCache;
+
+    /**
+     * 计算商品营销价格；价格与用户无关，按活动、商品缓存，折扣或商品变更后重新计算
+     */
+    public MarketPriceVO calculate(GroupBuyActivityDiscountVO groupBuyActivityDiscountVO, SkuVO skuVO) {
+        GroupBuyActivityDiscountVO.GroupBuyDiscount groupBuyDiscount = groupBuyActivityDiscountVO.getGroupBuyDiscount();
+        return marketPriceCache.get(groupBuyActivityDiscountVO.getActivityId(), skuVO.getGoodsId(),
+                groupBuyDiscount.getDiscountVersion(), skuVO.getPriceVersion(), skuVO.getOriginalPrice(),
+                () -> calculate(groupBuyDiscount, skuVO.getOriginalPrice()));
+    }
+
+    private MarketPriceVO calculate(GroupBuyActivityDiscountVO.GroupBuyDiscount groupBuyDiscount, BigDecimal originalPrice) {
+        // 已编译的折扣计划按分计算
+        CompiledDiscountPlan compiledDiscountPlan = groupBuyDiscount.getCompiledDiscountPlan();
+        long originalCents = null == compiledDiscountPlan ? -1 : CompiledDiscountPlan.toCents(originalPrice);
+        if (originalCents >= 0) {
+            long payCents = compiledDiscountPlan.payCents(originalCents);
+            return MarketPriceVO.builder()
+                    .originalPrice(originalPrice)
+                    .deductionPrice(CompiledDiscountPlan.fromCents(originalCents - payCents))
+                    .payPrice(CompiledDiscountPlan.fromCents(payCents))
+                    .build();
+        }
+
+        // 未编译的配置由折扣计算服务计算
+        IDiscountCalculateService discountCalculateService = discountCalculateServiceMap.get(groupBuyDiscount.getMarketPlan());
+        if (null == discountCalculateService) {
+            log.info("不存在{}类型的折扣计算服务，支持类型为:{}", groupBuyDiscount.getMarketPlan(), JSON.toJSONString(discountCalculateServiceMap.keySet()));
+            throw new AppException(ResponseCode.E0001.getCode(), ResponseCode.E0001.getInfo());
+        }
+
+        // 折扣价格
+        BigDecimal payPrice = discountCalculateService.doCalculate(originalPrice, groupBuyDiscount);
+        return MarketPriceVO.builder()
+                .originalPrice(originalPrice)
+                .deductionPrice(originalPrice.subtract(payPrice))
+                .payPrice(payPrice)
+                .build();
+    }
+
+}
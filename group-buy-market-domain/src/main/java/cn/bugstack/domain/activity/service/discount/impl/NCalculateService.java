@@ -18,7 +18,7 @@ public class NCalculateService extends AbstractDiscountCalculateService {
 
     @Override
     public BigDecimal doCalculate(BigDecimal originalPrice, GroupBuyActivityDiscountVO.GroupBuyDiscount groupBuyDiscount) {
-        log.info("优惠策略折扣计算:{}", groupBuyDiscount.getDiscountType().getCode());
+        log.debug("优惠策略折扣计算:{}", groupBuyDiscount.getDiscountType().getCode());
 
         // 折扣表达式 - 直接为优惠后的金额
         String marketExpr = groupBuyDiscount.getMarketExpr();
@@ -19,7 +19,7 @@ public class ZJCalculateService extends AbstractDiscountCalculateService {
 
     @Override
     public BigDecimal doCalculate(BigDecimal originalPrice, GroupBuyActivityDiscountVO.GroupBuyDiscount groupBuyDiscount) {
-        log.info("优惠策略折扣计算:{}", groupBuyDiscount.getDiscountType().getCode());
+        log.debug("优惠策略折扣计算:{}", groupBuyDiscount.getDiscountType().getCode());
 
         // 折扣表达式 - 直减为扣减金额
         String marketExpr = groupBuyDiscount.getMarketExpr();
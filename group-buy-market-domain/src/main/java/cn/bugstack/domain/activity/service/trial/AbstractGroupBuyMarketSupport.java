@@ -3,14 +3,19 @@ package cn.bugstack.domain.activity.service.trial;
 import cn.bugstack.domain.activity.adapter.repository.IActivityRepository;
 import cn.bugstack.domain.activity.service.trial.factory.DefaultActivityStrategyFactory;
 import cn.bugstack.wrench.design.framework.tree.AbstractMultiThreadStrategyRouter;
+import cn.bugstack.wrench.design.framework.tree.StrategyHandler;
 
 import javax.annotation.Resource;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeoutException;
 
 /**
  * @author Fuzhengwei bugstack.cn @小傅哥
  * @description 抽象的拼团营销支撑类
+ * <p>
+ * 异步受理：{@link #applyAsync} 先执行 {@link #multiThreadAsync} 异步加载数据，数据就绪后在回调线程执行本节点 doApply；
+ * 节点中的 router 只记录下一节点，再由 applyAsync 组合执行下一节点，整棵树不阻塞等待。同步受理 apply 保持不变。
  * @create 2024-12-14 13:42
  */
 public abstract class AbstractGroupBuyMarketSupport<MarketProductEntity, DynamicContext, TrialBalanceEntity> extends AbstractMultiThreadStrategyRouter<cn.bugstack.domain.activity.model.entity.MarketProductEntity, DefaultActivityStrategyFactory.DynamicContext, cn.bugstack.domain.activity.model.entity.TrialBalanceEntity> {
@@ -26,4 +31,63 @@ public abstract class AbstractGroupBuyMarketSupport<MarketProductEntity, Dynamic
         // 缺省的方法
     }
 
+    // 异步受理的数据准备工作，返回的 future 完成后执行 doApply；缺省无数据准备
+    protected CompletableFuture<Void> multiThreadAsync(cn.bugstack.domain.activity.model.entity.MarketProductEntity requestParameter, DefaultActivityStrategyFactory.DynamicContext dynamicContext) {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * 异步受理
+     */
+    public CompletableFuture<cn.bugstack.domain.activity.model.entity.TrialBalanceEntity> applyAsync(cn.bugstack.domain.activity.model.entity.MarketProductEntity requestParameter, DefaultActivityStrategyFactory.DynamicContext dynamicContext) {
+        dynamicContext.setAsync(true);
+
+        CompletableFuture<Void> prepared;
+        try {
+            prepared = multiThreadAsync(requestParameter, dynamicContext);
+        } catch (Exception e) {
+            return failed(e);
+        }
+
+        return prepared.thenCompose(ignore -> {
+            StrategyHandler<cn.bugstack.domain.activity.model.entity.MarketProductEntity, DefaultActivityStrategyFactory.DynamicContext, cn.bugstack.domain.activity.model.entity.TrialBalanceEntity> nextHandler;
+            cn.bugstack.domain.activity.model.entity.TrialBalanceEntity result;
+            try {
+                dynamicContext.setNextHandler(null);
+                result = doApply(requestParameter, dynamicContext);
+                nextHandler = dynamicContext.getNextHandler();
+                dynamicContext.setNextHandler(null);
+
+                // 终结节点直接返回结果
+                if (null == nextHandler) return CompletableFuture.completedFuture(result);
+                // 非本树节点（如缺省处理器）同步执行
+                if (!(nextHandler instanceof AbstractGroupBuyMarketSupport)) {
+                    return CompletableFuture.completedFuture(nextHandler.apply(requestParameter, dynamicContext));
+                }
+            } catch (Exception e) {
+                return failed(e);
+            }
+            return ((AbstractGroupBuyMarketSupport<?, ?, ?>) nextHandler).applyAsync(requestParameter, dynamicContext);
+        });
+    }
+
+    /**
+     * 路由；异步受理时只记录下一节点，由 {@link #applyAsync} 继续执行
+     */
+    @Override
+    public cn.bugstack.domain.activity.model.entity.TrialBalanceEntity router(cn.bugstack.domain.activity.model.entity.MarketProductEntity requestParameter, DefaultActivityStrategyFactory.DynamicContext dynamicContext) throws Exception {
+        if (!dynamicContext.isAsync()) {
+            return super.router(requestParameter, dynamicContext);
+        }
+        StrategyHandler<cn.bugstack.domain.activity.model.entity.MarketProductEntity, DefaultActivityStrategyFactory.DynamicContext, cn.bugstack.domain.activity.model.entity.TrialBalanceEntity> strategyHandler = get(requestParameter, dynamicContext);
+        dynamicContext.setNextHandler(null != strategyHandler ? strategyHandler : defaultStrategyHandler);
+        return null;
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable e) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
+    }
+
 }
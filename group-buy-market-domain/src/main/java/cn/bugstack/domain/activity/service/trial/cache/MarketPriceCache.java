@@ -0,0 +1,105 @@
+package cn.bugstack.domain.activity.service.trial.cache;
+
+import cn.bugstack.domain.activity.model.valobj.MarketPriceVO;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ * @description 商品营销价格缓存
+ * <p>
+ * 1. 试算价格只与活动折扣、商品原价有关，按 活动ID_商品ID 缓存，所有用户共用；人群标签判断仍按请求执行
+ * 2. 缓存项记录折扣版本、商品价格版本，版本不一致时整体替换，折扣或商品变更后旧价格不再命中
+ * 3. 同一商品并发未命中时只由一个请求计算，其余请求等待同一结果；计算失败时移除缓存项，异常回到全部等待的请求
+ * @create 2025-08-17 09:45
+ */
+@Component
+public class MarketPriceCache {
+
+    /** 最大缓存商品数 */
+    @Value("${group-buy-market.market-price-cache.maximum-size:100000}")
+    private long maximumSize;
+    /** 未访问过期时间（秒） */
+    @Value("${group-buy-market.market-price-cache.expire-after-access-seconds:600}")
+    private long expireAfterAccessSeconds;
+
+    private Cache<String, PriceEntry> cache;
+
+    @PostConstruct
+    public void init() {
+        cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterAccess(expireAfterAccessSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * 获取商品营销价格；未命中或版本不一致时计算并缓存
+     *
+     * @param discountVersion 折扣版本，为空时不缓存
+     * @param priceVersion    商品价格版本
+     * @param originalPrice   商品原价，命中时一并校验
+     * @param calculator      价格计算
+     */
+    public MarketPriceVO get(Long activityId, String goodsId, String discountVersion, long priceVersion, BigDecimal originalPrice, Supplier<MarketPriceVO> calculator) {
+        if (null == activityId || null == goodsId || null == discountVersion || null == originalPrice) {
+            return calculator.get();
+        }
+
+        String key = activityId + "_" + goodsId;
+        PriceEntry entry = cache.getIfPresent(key);
+        if (null == entry || !entry.isVersion(discountVersion, priceVersion, originalPrice)) {
+            PriceEntry candidate = new PriceEntry(discountVersion, priceVersion, originalPrice);
+            entry = cache.asMap().compute(key, (k, current) -> null != current && current.isVersion(discountVersion, priceVersion, originalPrice) ? current : candidate);
+            if (entry == candidate) {
+                calculate(key, candidate, calculator);
+            }
+        }
+
+        try {
+            return entry.future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw e;
+        }
+    }
+
+    private void calculate(String key, PriceEntry entry, Supplier<MarketPriceVO> calculator) {
+        try {
+            entry.future.complete(calculator.get());
+        } catch (Throwable e) {
+            cache.asMap().remove(key, entry);
+            entry.future.completeExceptionally(e);
+        }
+    }
+
+    private static class PriceEntry {
+
+        private final String discountVersion;
+        private final long priceVersion;
+        private final BigDecimal originalPrice;
+        private final CompletableFuture<MarketPriceVO> future = new CompletableFuture<>();
+
+        private PriceEntry(String discountVersion, long priceVersion, BigDecimal originalPrice) {
+            this.discountVersion = discountVersion;
+            this.priceVersion = priceVersion;
+            this.originalPrice = originalPrice;
+        }
+
+        private boolean isVersion(String discountVersion, long priceVersion, BigDecimal originalPrice) {
+            return this.priceVersion == priceVersion && this.discountVersion.equals(discountVersion) && 0 == this.originalPrice.compareTo(originalPrice);
+        }
+
+    }
+
+}
@@ -4,6 +4,7 @@ import cn.bugstack.domain.activity.model.entity.MarketProductEntity;
 import cn.bugstack.domain.activity.model.entity.TrialBalanceEntity;
 import cn.bugstack.domain.activity.model.valobj.GroupBuyActivityDiscountVO;
 import cn.bugstack.domain.activity.model.valobj.SkuVO;
+import cn.bugstack.domain.activity.service.trial.AbstractGroupBuyMarketSupport;
 import cn.bugstack.domain.activity.service.trial.node.RootNode;
 import cn.bugstack.wrench.design.framework.tree.StrategyHandler;
 import lombok.AllArgsConstructor;
@@ -33,6 +34,13 @@ public class DefaultActivityStrategyFactory {
         return rootNode;
     }
 
+    /**
+     * 异步受理入口；各节点返回 CompletableFuture 组合执行，不阻塞调用线程
+     */
+    public AbstractGroupBuyMarketSupport<MarketProductEntity, DynamicContext, TrialBalanceEntity> asyncStrategyHandler() {
+        return rootNode;
+    }
+
     @Data
     @Builder
     @AllArgsConstructor
@@ -61,6 +69,10 @@ public class DefaultActivityStrategyFactory {
         private Set<String> appliedDiscounts = new HashSet<>();                  // 已使用的优惠（去重）
         private List<PricingStep> steps = new ArrayList<>(); // 审计轨迹
         private Object request;                               // 可选：保留 request 引用，路由器里用得到
+        // 异步受理；节点路由时只记录下一节点，由异步受理链继续执行
+        private boolean async;
+        // 异步受理时待执行的下一节点
+        private StrategyHandler<MarketProductEntity, DynamicContext, TrialBalanceEntity> nextHandler;
     }
 
 }
@@ -3,23 +3,20 @@ package cn.bugstack.domain.activity.service.trial.node;
 import cn.bugstack.domain.activity.model.entity.MarketProductEntity;
 import cn.bugstack.domain.activity.model.entity.TrialBalanceEntity;
 import cn.bugstack.domain.activity.model.valobj.GroupBuyActivityDiscountVO;
+import cn.bugstack.domain.activity.model.valobj.MarketPriceVO;
 import cn.bugstack.domain.activity.model.valobj.SCSkuActivityVO;
 import cn.bugstack.domain.activity.model.valobj.SkuVO;
-import cn.bugstack.domain.activity.service.discount.IDiscountCalculateService;
+import cn.bugstack.domain.activity.service.discount.MarketPriceCalculateService;
 import cn.bugstack.domain.activity.service.trial.AbstractGroupBuyMarketSupport;
 import cn.bugstack.domain.activity.service.trial.factory.DefaultActivityStrategyFactory;
 import cn.bugstack.domain.activity.service.trial.thread.QueryGroupBuyActivityDiscountVOThreadTask;
 import cn.bugstack.domain.activity.service.trial.thread.QuerySkuVOFromDBThreadTask;
 import cn.bugstack.wrench.design.framework.tree.StrategyHandler;
-import cn.bugstack.types.enums.ResponseCode;
-import cn.bugstack.types.exception.AppException;
 import com.alibaba.fastjson.JSON;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
-import java.math.BigDecimal;
-import java.util.Map;
 import java.util.concurrent.*;
 import java.util.function.Supplier;
 
@@ -34,15 +31,12 @@ public class MarketNode extends AbstractGroupBuyMarketSupport<MarketProductEntit
 
     @Resource
     private ThreadPoolExecutor threadPoolExecutor;
-    /**
-     * <a href="https://bugstack.cn/md/road-map/spring-dependency-injection.html">Spring 注入详细说明</a>
-     */
-    @Resource
-    private Map<String, IDiscountCalculateService> discountCalculateServiceMap;
     @Resource
     private ErrorNode errorNode;
     @Resource
     private TagNode tagNode;
+    @Resource
+    private MarketPriceCalculateService marketPriceCalculateService;
 
     /**
      * 在 MarketNode2CompletableFuture 继承的子类实现一个 CompletableFuture 多线程方式。
@@ -79,6 +73,41 @@ public class MarketNode extends AbstractGroupBuyMarketSupport<MarketProductEntit
         log.info("拼团商品查询试算服务-MarketNode userId:{} 异步线程加载数据「GroupBuyActivityDiscountVO、SkuVO」完成", requestParameter.getUserId());
     }
 
+    /**
+     * 异步受理的数据准备；两个查询在线程池并行执行，全部完成后写入上下文，不阻塞调用线程。
+     * 超时由调用方（Servlet 异步请求超时）控制。
+     */
+    @Override
+    protected CompletableFuture<Void> multiThreadAsync(MarketProductEntity requestParameter, DefaultActivityStrategyFactory.DynamicContext dynamicContext) {
+        // 异步查询活动配置
+        QueryGroupBuyActivityDiscountVOThreadTask queryGroupBuyActivityDiscountVOThreadTask = new QueryGroupBuyActivityDiscountVOThreadTask(requestParameter.getActivityId(), requestParameter.getSource(), requestParameter.getChannel(), requestParameter.getGoodsId(), repository);
+        CompletableFuture<GroupBuyActivityDiscountVO> groupBuyActivityDiscountVOCompletableFuture = CompletableFuture.supplyAsync(() -> {
+            try {
+                return queryGroupBuyActivityDiscountVOThreadTask.call();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, threadPoolExecutor);
+
+        // 异步查询商品信息
+        QuerySkuVOFromDBThreadTask querySkuVOFromDBThreadTask = new QuerySkuVOFromDBThreadTask(requestParameter.getGoodsId(), repository);
+        CompletableFuture<SkuVO> skuVOCompletableFuture = CompletableFuture.supplyAsync(() -> {
+            try {
+                return querySkuVOFromDBThreadTask.call();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, threadPoolExecutor);
+
+        // 写入上下文
+        return groupBuyActivityDiscountVOCompletableFuture.thenCombine(skuVOCompletableFuture, (groupBuyActivityDiscountVO, skuVO) -> {
+            dynamicContext.setGroupBuyActivityDiscountVO(groupBuyActivityDiscountVO);
+            dynamicContext.setSkuVO(skuVO);
+            log.info("拼团商品查询试算服务-MarketNode userId:{} 异步加载数据「GroupBuyActivityDiscountVO、SkuVO」完成", requestParameter.getUserId());
+            return null;
+        });
+    }
+
     @Override
     public TrialBalanceEntity doApply(MarketProductEntity requestParameter, DefaultActivityStrategyFactory.DynamicContext dynamicContext) throws Exception {
         log.info("拼团商品查询试算服务-MarketNode userId:{} requestParameter:{}", requestParameter.getUserId(), JSON.toJSONString(requestParameter));
@@ -95,17 +124,10 @@ public class MarketNode extends AbstractGroupBuyMarketSupport<MarketProductEntit
             return router(requestParameter, dynamicContext);
         }
 
-        // 优惠试算
-        IDiscountCalculateService discountCalculateService = discountCalculateServiceMap.get(groupBuyDiscount.getMarketPlan());
-        if (null == discountCalculateService) {
-            log.info("不存在{}类型的折扣计算服务，支持类型为:{}", groupBuyDiscount.getMarketPlan(), JSON.toJSONString(discountCalculateServiceMap.keySet()));
-            throw new AppException(ResponseCode.E0001.getCode(), ResponseCode.E0001.getInfo());
-        }
-
-        // 折扣价格
-        BigDecimal payPrice = discountCalculateService.doCalculate(skuVO.getOriginalPrice(), groupBuyDiscount);
-        dynamicContext.setDeductionPrice(skuVO.getOriginalPrice().subtract(payPrice));
-        dynamicContext.setPayPrice(payPrice);
+        // 优惠试算；价格与用户无关，按活动、商品缓存，折扣或商品变更后重新计算
+        MarketPriceVO marketPriceVO = marketPriceCalculateService.calculate(groupBuyActivityDiscountVO, skuVO);
+        dynamicContext.setDeductionPrice(marketPriceVO.getDeductionPrice());
+        dynamicContext.setPayPrice(marketPriceVO.getPayPrice());
 
         return router(requestParameter, dynamicContext);
     }
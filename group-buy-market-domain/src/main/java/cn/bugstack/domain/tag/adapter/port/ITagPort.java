@@ -0,0 +1,23 @@
+package cn.bugstack.domain.tag.adapter.port;
+
+import cn.bugstack.domain.tag.model.entity.CrowdTagsJobEntity;
+import cn.bugstack.domain.tag.model.valobj.CrowdTagsUserBatchVO;
+
+/**
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ * @description 人群标签数据源接口；按批次流式读取人群用户
+ * @create 2025-08-21 09:30
+ */
+public interface ITagPort {
+
+    /**
+     * 从断点之后读取一批用户
+     *
+     * @param crowdTagsJobEntity 批次任务
+     * @param checkpoint         断点，为空时从头读取
+     * @param limit              最大条数
+     * @return 用户批次，用户ID为空表示读取完成
+     */
+    CrowdTagsUserBatchVO readCrowdTagsUserIds(CrowdTagsJobEntity crowdTagsJobEntity, String checkpoint, int limit) throws Exception;
+
+}
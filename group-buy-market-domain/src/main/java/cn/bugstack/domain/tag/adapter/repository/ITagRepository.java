@@ -1,6 +1,12 @@
 package cn.bugstack.domain.tag.adapter.repository;
 
 import cn.bugstack.domain.tag.model.entity.CrowdTagsJobEntity;
+import cn.bugstack.domain.tag.model.valobj.CrowdTagsExpressionVO;
+import cn.bugstack.domain.tag.model.valobj.CrowdTagsJobStatusEnumVO;
+import cn.bugstack.domain.tag.model.valobj.CrowdTagsUserBatchVO;
+
+import java.util.List;
+import java.util.Map;
 
 /**
  * @author Fuzhengwei bugstack.cn @小傅哥
@@ -15,4 +21,52 @@ public interface ITagRepository {
 
     void updateCrowdTagsStatistics(String tagId, int count);
 
+    void resetCrowdTagsJob(String tagId, String batchId);
+
+    void updateCrowdTagsJobStatus(String tagId, String batchId, CrowdTagsJobStatusEnumVO status);
+
+    /**
+     * 批量写入人群用户并保存断点；明细、断点同一事务提交
+     *
+     * @return 新写入的用户数
+     */
+    int saveCrowdTagsUserBatch(String tagId, String batchId, CrowdTagsUserBatchVO crowdTagsUserBatchVO);
+
+    /**
+     * 任务完成；更新人群标签统计量、任务状态，通知各节点重新加载人群标签
+     */
+    void completeCrowdTagsJob(String tagId, String batchId, long insertedCount);
+
+    List<String> queryCrowdTagIdsToMigrate();
+
+    int migrateCrowdTagsBitmap(String tagId);
+
+    /**
+     * 查询组合人群标签
+     *
+     * @return 人群ID -> 表达式
+     */
+    Map<String, CrowdTagsExpressionVO> queryCrowdTagsExpressions();
+
+    /**
+     * 保存表达式并重新计算组合人群
+     *
+     * @return 组合人群用户数
+     */
+    int saveCrowdTagsExpression(String tagId, CrowdTagsExpressionVO crowdTagsExpressionVO);
+
+    /**
+     * 对账；全量重新计算组合人群，修正增量更新遗漏的用户
+     *
+     * @return 修正的用户数
+     */
+    int reconcileCrowdTagsExpressions();
+
+    /**
+     * 按数据库重建用户索引字典的 Redis 分片
+     *
+     * @return 重建的用户数
+     */
+    int rebuildUserIndexes();
+
 }
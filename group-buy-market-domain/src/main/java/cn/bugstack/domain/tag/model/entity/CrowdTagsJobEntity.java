@@ -1,5 +1,6 @@
 package cn.bugstack.domain.tag.model.entity;
 
+import cn.bugstack.domain.tag.model.valobj.CrowdTagsJobStatusEnumVO;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -18,6 +19,10 @@ import java.util.Date;
 @NoArgsConstructor
 public class CrowdTagsJobEntity {
 
+    /** 标签ID */
+    private String tagId;
+    /** 批次ID */
+    private String batchId;
     /** 标签类型（参与量、消费金额） */
     private Integer tagType;
     /** 标签规则（限定类型 N次） */
@@ -26,5 +31,13 @@ public class CrowdTagsJobEntity {
     private Date statStartTime;
     /** 统计数据，结束时间 */
     private Date statEndTime;
+    /** 状态 */
+    private CrowdTagsJobStatusEnumVO status;
+    /** 断点；已写入数据的读取位置 */
+    private String checkpoint;
+    /** 已处理用户数 */
+    private Long processedCount;
+    /** 新写入用户数 */
+    private Long insertedCount;
 
 }
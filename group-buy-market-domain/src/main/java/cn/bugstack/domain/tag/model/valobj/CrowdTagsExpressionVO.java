@@ -0,0 +1,175 @@
+package cn.bugstack.domain.tag.model.valobj;
+
+import cn.bugstack.types.enums.ResponseCode;
+import cn.bugstack.types.exception.AppException;
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ * @description 人群标签表达式值对象；由人群标签组合的人群，如 (A | B) & !C
+ * <p>
+ * 运算符优先级 ! 高于 & 高于 |，支持括号；标签ID由字母、数字、下划线组成
+ * @create 2025-08-24 10:20
+ */
+public class CrowdTagsExpressionVO {
+
+    /** 原始表达式 */
+    @Getter
+    private final String expression;
+    /** 引用的人群标签 */
+    @Getter
+    private final Set<String> tagIds;
+
+    private final Node root;
+
+    private CrowdTagsExpressionVO(String expression, Set<String> tagIds, Node root) {
+        this.expression = expression;
+        this.tagIds = tagIds;
+        this.root = root;
+    }
+
+    public static CrowdTagsExpressionVO parse(String expression) {
+        if (null == expression || expression.trim().isEmpty()) {
+            throw new AppException(ResponseCode.E0301.getCode(), ResponseCode.E0301.getInfo());
+        }
+        Parser parser = new Parser(expression);
+        Node root = parser.parseOr();
+        parser.skipBlank();
+        if (parser.pos != expression.length()) throw parser.illegal();
+        return new CrowdTagsExpressionVO(expression, Collections.unmodifiableSet(parser.tagIds), root);
+    }
+
+    /**
+     * 按表达式结构求值；位图、单个用户的判断共用
+     *
+     * @param tag 标签求值
+     * @param and 与
+     * @param or  或
+     * @param not 取反
+     */
+    public <T> T evaluate(Function<String, T> tag, BinaryOperator<T> and, BinaryOperator<T> or, UnaryOperator<T> not) {
+        return root.evaluate(tag, and, or, not);
+    }
+
+    /**
+     * 判断用户是否在组合人群中
+     *
+     * @param within 用户是否在标签人群中
+     */
+    public boolean isWithin(Function<String, Boolean> within) {
+        return evaluate(within, (a, b) -> a && b, (a, b) -> a || b, a -> !a);
+    }
+
+    /**
+     * 人群是否有界；不在任何标签中的用户不在组合人群中时，组合人群是引用标签人群并集的子集
+     */
+    public boolean isBounded() {
+        return !isWithin(tagId -> false);
+    }
+
+    private interface Node {
+        <T> T evaluate(Function<String, T> tag, BinaryOperator<T> and, BinaryOperator<T> or, UnaryOperator<T> not);
+    }
+
+    private static class Parser {
+
+        private final String expression;
+        private final Set<String> tagIds = new LinkedHashSet<>();
+        private int pos;
+
+        private Parser(String expression) {
+            this.expression = expression;
+        }
+
+        private Node parseOr() {
+            Node left = parseAnd();
+            while (accept('|')) {
+                Node l = left, r = parseAnd();
+                left = new Node() {
+                    @Override
+                    public <T> T evaluate(Function<String, T> tag, BinaryOperator<T> and, BinaryOperator<T> or, UnaryOperator<T> not) {
+                        return or.apply(l.evaluate(tag, and, or, not), r.evaluate(tag, and, or, not));
+                    }
+                };
+            }
+            return left;
+        }
+
+        private Node parseAnd() {
+            Node left = parseNot();
+            while (accept('&')) {
+                Node l = left, r = parseNot();
+                left = new Node() {
+                    @Override
+                    public <T> T evaluate(Function<String, T> tag, BinaryOperator<T> and, BinaryOperator<T> or, UnaryOperator<T> not) {
+                        return and.apply(l.evaluate(tag, and, or, not), r.evaluate(tag, and, or, not));
+                    }
+                };
+            }
+            return left;
+        }
+
+        private Node parseNot() {
+            if (accept('!')) {
+                Node operand = parseNot();
+                return new Node() {
+                    @Override
+                    public <T> T evaluate(Function<String, T> tag, BinaryOperator<T> and, BinaryOperator<T> or, UnaryOperator<T> not) {
+                        return not.apply(operand.evaluate(tag, and, or, not));
+                    }
+                };
+            }
+            if (accept('(')) {
+                Node node = parseOr();
+                if (!accept(')')) throw illegal();
+                return node;
+            }
+            return parseTag();
+        }
+
+        private Node parseTag() {
+            skipBlank();
+            int start = pos;
+            while (pos < expression.length() && (Character.isLetterOrDigit(expression.charAt(pos)) || expression.charAt(pos) == '_')) {
+                pos++;
+            }
+            if (start == pos) throw illegal();
+            String tagId = expression.substring(start, pos);
+            tagIds.add(tagId);
+            return new Node() {
+                @Override
+                public <T> T evaluate(Function<String, T> tag, BinaryOperator<T> and, BinaryOperator<T> or, UnaryOperator<T> not) {
+                    return tag.apply(tagId);
+                }
+            };
+        }
+
+        private boolean accept(char c) {
+            skipBlank();
+            if (pos < expression.length() && expression.charAt(pos) == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private void skipBlank() {
+            while (pos < expression.length() && Character.isWhitespace(expression.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private AppException illegal() {
+            return new AppException(ResponseCode.E0301.getCode(), ResponseCode.E0301.getInfo() + " " + expression + " 位置:" + pos);
+        }
+
+    }
+
+}
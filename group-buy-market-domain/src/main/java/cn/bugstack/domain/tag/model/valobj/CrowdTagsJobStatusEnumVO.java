@@ -0,0 +1,36 @@
+package cn.bugstack.domain.tag.model.valobj;
+
+import lombok.*;
+
+/**
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ * @description 人群标签任务状态枚举
+ * @create 2025-08-21 09:30
+ */
+@Getter
+@AllArgsConstructor
+@NoArgsConstructor
+public enum CrowdTagsJobStatusEnumVO {
+
+    INIT(0, "初始"),
+    PLAN(1, "计划（进入执行阶段）"),
+    RESET(2, "重置"),
+    COMPLETE(3, "完成"),
+    ;
+
+    private Integer code;
+    private String info;
+
+    public static CrowdTagsJobStatusEnumVO valueOf(Integer code) {
+        switch (code) {
+            case 1:
+                return PLAN;
+            case 2:
+                return RESET;
+            case 3:
+                return COMPLETE;
+        }
+        return INIT;
+    }
+
+}
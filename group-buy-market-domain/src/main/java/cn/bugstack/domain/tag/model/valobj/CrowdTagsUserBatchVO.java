@@ -0,0 +1,26 @@
+package cn.bugstack.domain.tag.model.valobj;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ * @description 人群标签用户批次；读取到的用户ID和读取后的断点
+ * @create 2025-08-21 09:30
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class CrowdTagsUserBatchVO {
+
+    /** 用户ID；为空表示读取完成 */
+    private List<String> userIds;
+    /** 本批读取后的断点 */
+    private String checkpoint;
+
+}
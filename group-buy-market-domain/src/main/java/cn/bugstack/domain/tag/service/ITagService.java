@@ -8,11 +8,41 @@ package cn.bugstack.domain.tag.service;
 public interface ITagService {
 
     /**
-     * 执行人群标签批次任务
+     * 执行人群标签批次任务；流式读取用户批量写入，按批保存断点，中断后重新执行从断点继续
      *
      * @param tagId   人群ID
      * @param batchId 批次ID
      */
     void execTagBatchJob(String tagId, String batchId);
 
+    /**
+     * 人群标签位图迁移；按人群标签明细把存量标签重建到用户索引字典布局，已迁移的标签跳过
+     *
+     * @return 本次迁移的标签数
+     */
+    int migrateCrowdTagsBitmap();
+
+    /**
+     * 保存人群标签表达式；按表达式组合引用标签的人群并写入该标签，引用标签写入用户时增量更新
+     *
+     * @param tagId      人群ID
+     * @param expression 表达式，如 (A | B) & !C
+     * @return 组合人群用户数
+     */
+    int saveCrowdTagsExpression(String tagId, String expression);
+
+    /**
+     * 组合人群对账；引用标签并发写入同一用户时增量更新可能漏判，按表达式全量重新计算并只写入差异
+     *
+     * @return 修正的用户数
+     */
+    int reconcileCrowdTagsExpressions();
+
+    /**
+     * 重建用户索引字典；Redis 分片按数据库全量回填，用于分片数调整、Redis 数据丢失后恢复
+     *
+     * @return 重建的用户数
+     */
+    int rebuildUserIndexes();
+
 }
@@ -1,13 +1,21 @@
 package cn.bugstack.domain.tag.service;
 
+import cn.bugstack.domain.tag.adapter.port.ITagPort;
 import cn.bugstack.domain.tag.adapter.repository.ITagRepository;
 import cn.bugstack.domain.tag.model.entity.CrowdTagsJobEntity;
+import cn.bugstack.domain.tag.model.valobj.CrowdTagsExpressionVO;
+import cn.bugstack.domain.tag.model.valobj.CrowdTagsJobStatusEnumVO;
+import cn.bugstack.domain.tag.model.valobj.CrowdTagsUserBatchVO;
+import cn.bugstack.types.enums.ResponseCode;
+import cn.bugstack.types.exception.AppException;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author Fuzhengwei bugstack.cn @小傅哥
@@ -20,6 +28,15 @@ public class TagService implements ITagService {
 
     @Resource
     private ITagRepository repository;
+    @Resource
+    private ITagPort port;
+
+    /** 每批写入的用户数 */
+    @Value("${group-buy-market.crowd-tag.ingest-batch-size:2000}")
+    private int batchSize;
+    /** 写入速率日志间隔（秒） */
+    @Value("${group-buy-market.crowd-tag.ingest-report-interval-seconds:10}")
+    private long reportIntervalSeconds;
 
     @Override
     public void execTagBatchJob(String tagId, String batchId) {
@@ -27,31 +44,106 @@ public class TagService implements ITagService {
 
         // 1. 查询批次任务
         CrowdTagsJobEntity crowdTagsJobEntity = repository.queryCrowdTagsJobEntity(tagId, batchId);
+        if (null == crowdTagsJobEntity) {
+            log.warn("人群标签批次任务不存在 tagId:{} batchId:{}", tagId, batchId);
+            return;
+        }
+        if (CrowdTagsJobStatusEnumVO.COMPLETE.equals(crowdTagsJobEntity.getStatus())) {
+            log.info("人群标签批次任务已完成 tagId:{} batchId:{}", tagId, batchId);
+            return;
+        }
+
+        // 2. 重置的任务从头执行，其余从断点继续
+        String checkpoint = crowdTagsJobEntity.getCheckpoint();
+        long processedCount = null == crowdTagsJobEntity.getProcessedCount() ? 0L : crowdTagsJobEntity.getProcessedCount();
+        long insertedCount = null == crowdTagsJobEntity.getInsertedCount() ? 0L : crowdTagsJobEntity.getInsertedCount();
+        if (CrowdTagsJobStatusEnumVO.RESET.equals(crowdTagsJobEntity.getStatus())) {
+            repository.resetCrowdTagsJob(tagId, batchId);
+            checkpoint = null;
+            processedCount = 0L;
+            insertedCount = 0L;
+        }
+        repository.updateCrowdTagsJobStatus(tagId, batchId, CrowdTagsJobStatusEnumVO.PLAN);
+
+        // 3. 流式读取用户，按批写入明细、位图并保存断点
+        long startTime = System.currentTimeMillis();
+        long lastReportTime = startTime;
+        long startProcessedCount = processedCount;
+        try {
+            while (true) {
+                CrowdTagsUserBatchVO crowdTagsUserBatchVO = port.readCrowdTagsUserIds(crowdTagsJobEntity, checkpoint, batchSize);
+                List<String> userIds = crowdTagsUserBatchVO.getUserIds();
+                if (null == userIds || userIds.isEmpty()) break;
+
+                insertedCount += repository.saveCrowdTagsUserBatch(tagId, batchId, crowdTagsUserBatchVO);
+                processedCount += userIds.size();
+                checkpoint = crowdTagsUserBatchVO.getCheckpoint();
+
+                long now = System.currentTimeMillis();
+                if (now - lastReportTime >= TimeUnit.SECONDS.toMillis(reportIntervalSeconds)) {
+                    log.info("人群标签批次任务进行中 tagId:{} batchId:{} processed:{} inserted:{} rows/s:{}", tagId, batchId, processedCount, insertedCount, rowsPerSecond(processedCount - startProcessedCount, now - startTime));
+                    lastReportTime = now;
+                }
+            }
+        } catch (Exception e) {
+            // 已保存断点，重新执行任务时从断点继续
+            log.error("人群标签批次任务中断 tagId:{} batchId:{} processed:{} checkpoint:{}", tagId, batchId, processedCount, checkpoint, e);
+            throw new RuntimeException("人群标签批次任务中断", e);
+        }
+
+        // 4. 更新人群标签统计量，任务完成
+        repository.completeCrowdTagsJob(tagId, batchId, insertedCount);
+        log.info("人群标签批次任务完成 tagId:{} batchId:{} processed:{} inserted:{} rows/s:{}", tagId, batchId, processedCount, insertedCount, rowsPerSecond(processedCount - startProcessedCount, System.currentTimeMillis() - startTime));
+    }
+
+    private static long rowsPerSecond(long rows, long elapsedMillis) {
+        return rows * 1000 / Math.max(1L, elapsedMillis);
+    }
+
+    @Override
+    public int migrateCrowdTagsBitmap() {
+        List<String> tagIds = repository.queryCrowdTagIdsToMigrate();
+        for (String tagId : tagIds) {
+            int count = repository.migrateCrowdTagsBitmap(tagId);
+            log.info("人群标签位图迁移完成 tagId:{} count:{}", tagId, count);
+        }
+        return tagIds.size();
+    }
+
+    @Override
+    public int saveCrowdTagsExpression(String tagId, String expression) {
+        CrowdTagsExpressionVO crowdTagsExpressionVO = CrowdTagsExpressionVO.parse(expression);
+        // 只取反的表达式人群为全体用户之外的补集，无法物化
+        if (!crowdTagsExpressionVO.isBounded()) {
+            throw new AppException(ResponseCode.E0302.getCode(), ResponseCode.E0302.getInfo());
+        }
 
-        // 2. 采集用户数据 - 这部分需要采集用户的消费类数据，后续有用户发起拼单后再处理。
-
-        // 3. 数据写入记录
-        List<String> userIdList = new ArrayList<String>() {{
-            add("xiaofuge");
-            add("liergou");
-            add("xfg01");
-            add("xfg02");
-            add("xfg03");
-            add("xfg04");
-            add("xfg05");
-            add("xfg06");
-            add("xfg07");
-            add("xfg08");
-            add("xfg09");
-        }};
-
-        // 4. 一般人群标签的处理在公司中，会有专门的数据数仓团队通过脚本方式写入到数据库，就不用这样一个个或者批次来写。
-        for (String userId : userIdList) {
-            repository.addCrowdTagsUserId(tagId, userId);
-        }
-
-        // 5. 更新人群标签统计量
-        repository.updateCrowdTagsStatistics(tagId, userIdList.size());
+        // 引用标签须为普通标签，组合人群只随普通标签增量更新，不级联
+        Map<String, CrowdTagsExpressionVO> expressions = repository.queryCrowdTagsExpressions();
+        for (String memberTagId : crowdTagsExpressionVO.getTagIds()) {
+            if (memberTagId.equals(tagId) || expressions.containsKey(memberTagId)) {
+                throw new AppException(ResponseCode.E0301.getCode(), ResponseCode.E0301.getInfo() + " 不可引用组合人群标签 " + memberTagId);
+            }
+        }
+        for (Map.Entry<String, CrowdTagsExpressionVO> entry : expressions.entrySet()) {
+            if (entry.getValue().getTagIds().contains(tagId)) {
+                throw new AppException(ResponseCode.E0301.getCode(), ResponseCode.E0301.getInfo() + " 已被组合人群标签引用 " + entry.getKey());
+            }
+        }
+
+        int count = repository.saveCrowdTagsExpression(tagId, crowdTagsExpressionVO);
+        log.info("人群标签表达式保存完成 tagId:{} expression:{} count:{}", tagId, expression, count);
+        return count;
+    }
+
+    @Override
+    public int reconcileCrowdTagsExpressions() {
+        return repository.reconcileCrowdTagsExpressions();
+    }
+
+    @Override
+    public int rebuildUserIndexes() {
+        return repository.rebuildUserIndexes();
     }
 
 }
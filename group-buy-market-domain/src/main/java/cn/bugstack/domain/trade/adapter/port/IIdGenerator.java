@@ -0,0 +1,23 @@
+package cn.bugstack.domain.trade.adapter.port;
+
+/**
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ * @description 分布式ID生成接口；拼单组队ID、订单ID
+ * @create 2025-07-20 10:12
+ */
+public interface IIdGenerator {
+
+    /**
+     * 生成趋势递增的唯一ID
+     */
+    long nextId();
+
+    default String nextTeamId() {
+        return String.valueOf(nextId());
+    }
+
+    default String nextOrderId() {
+        return String.valueOf(nextId());
+    }
+
+}
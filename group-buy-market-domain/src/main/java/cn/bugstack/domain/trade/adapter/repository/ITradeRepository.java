@@ -9,7 +9,10 @@ import cn.bugstack.domain.trade.model.entity.MarketPayOrderEntity;
 import cn.bugstack.domain.trade.model.entity.NotifyTaskEntity;
 import cn.bugstack.domain.trade.model.valobj.GroupBuyProgressVO;
 
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * @author Fuzhengwei bugstack.cn @小傅哥
@@ -20,14 +23,63 @@ public interface ITradeRepository {
 
     MarketPayOrderEntity queryMarketPayOrderEntityByOutTradeNo(String userId, String outTradeNo);
 
+    MarketPayOrderEntity queryNoPayMarketPayOrderByOutTradeNo(String userId, String outTradeNo);
+
+    MarketPayOrderEntity queryOutTradeNoIndex(String userId, String outTradeNo);
+
+    void prefetchOutTradeNoIndex(Map<String, Set<String>> userOutTradeNos);
+
+    String tryLockOutTradeNo(String userId, String outTradeNo);
+
+    void unlockOutTradeNo(String userId, String outTradeNo, String lockToken);
+
     MarketPayOrderEntity lockMarketPayOrder(GroupBuyOrderAggregate groupBuyOrderAggregate);
 
+    boolean isRedisFirstLockActivity(Long activityId);
+
+    MarketPayOrderEntity reserveMarketPayOrder(GroupBuyOrderAggregate groupBuyOrderAggregate, Integer takeLimitCount, String teamStockKey, String recoveryTeamStockKey);
+
+    int reconcileReservedMarketPayOrder();
+
+    void saveUnknownLockOrder(UnknownLockOrderEntity unknownLockOrderEntity);
+
+    int reconcileUnknownLockOrder();
+
+    int relayMarketEventOutbox();
+
     GroupBuyProgressVO queryGroupBuyProgress(String teamId);
 
+    Map<String, GroupBuyProgressVO> queryGroupBuyProgress(Set<String> teamIds);
+
     GroupBuyActivityEntity queryGroupBuyActivityEntityByActivityId(Long activityId);
 
     Integer queryOrderCountByActivityId(Long activityId, String userId);
 
+    Integer occupyUserTakeCount(Long activityId, String userId, Integer takeLimitCount, Date endTime);
+
+    void releaseUserTakeCount(Long activityId, String userId);
+
+    /**
+     * 占用一个活动总名额
+     *
+     * @return 占用的分段序号；为空表示已售罄
+     */
+    Integer occupyActivityStock(Long activityId);
+
+    /**
+     * 归还一个活动总名额
+     *
+     * @param stripe 占用时的分段序号；未知时为空
+     */
+    void releaseActivityStock(Long activityId, Integer stripe);
+
+    /**
+     * 调拨活动总名额分段
+     *
+     * @return 调拨名额数
+     */
+    int rebalanceActivityStock();
+
     GroupBuyTeamEntity queryGroupBuyTeamByTeamId(String teamId);
 
     NotifyTaskEntity settlementMarketPayOrder(GroupBuyTeamSettlementAggregate groupBuyTeamSettlementAggregate);
@@ -46,7 +98,11 @@ public interface ITradeRepository {
 
     boolean occupyTeamStock(String teamStockKey, String recoveryTeamStockKey, Integer target, Integer validTime);
 
-    void recoveryTeamStock(String recoveryTeamStockKey, Integer validTime);
+    void recoveryTeamStock(String teamId, String recoveryTeamStockKey, Integer validTime);
+
+    boolean isTeamFull(String teamId);
+
+    void markTeamFull(String teamId);
 
     void unpaid2Refund(GroupBuyRefundAggregate groupBuyRefundAggregate);
 
@@ -29,5 +29,9 @@ public class GroupBuyOrderAggregate {
     private PayDiscountEntity payDiscountEntity;
     /** 已参与拼团量 */
     private Integer userTakeOrderCount;
+    /** 占用的活动名额分段序号；为空表示活动未设置总名额 */
+    private Integer activityStockStripe;
+    /** 预购订单ID；仓储写入前生成，锁单结果未知时用于对账 */
+    private String orderId;
 
 }
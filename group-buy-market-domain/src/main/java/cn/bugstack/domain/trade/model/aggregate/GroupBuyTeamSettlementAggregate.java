@@ -25,5 +25,7 @@ public class GroupBuyTeamSettlementAggregate {
     private GroupBuyTeamEntity groupBuyTeamEntity;
     /** 交易支付订单实体对象 */
     private TradePaySuccessEntity tradePaySuccessEntity;
+    /** 结算订单的商品ID；写入排行榜事件 */
+    private String goodsId;
 
 }
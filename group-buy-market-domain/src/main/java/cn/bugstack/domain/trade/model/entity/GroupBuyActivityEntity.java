@@ -33,6 +33,8 @@ public class GroupBuyActivityEntity {
     private Integer target;
     /** 拼团时长（分钟） */
     private Integer validTime;
+    /** 活动总参与名额（0不限制） */
+    private Integer stockLimit;
     /** 活动状态（0创建、1生效、2过期、3废弃） */
     private ActivityStatusEnumVO status;
     /** 活动开始时间 */
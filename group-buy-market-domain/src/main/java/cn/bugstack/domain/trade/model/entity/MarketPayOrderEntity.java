@@ -23,6 +23,8 @@ public class MarketPayOrderEntity {
     private String teamId;
     /** 预购订单ID */
     private String orderId;
+    /** 商品ID */
+    private String goodsId;
     /** 原始价格 */
     private BigDecimal originalPrice;
     /** 折扣金额 */
@@ -31,5 +33,7 @@ public class MarketPayOrderEntity {
     private BigDecimal payPrice;
     /** 交易订单状态枚举 */
     private TradeOrderStatusEnumVO tradeOrderStatusEnumVO;
+    /** 活动总名额占用分段；为空未占用 */
+    private Integer activityStockStripe;
 
 }
@@ -37,5 +37,7 @@ public class PayDiscountEntity {
     private String outTradeNo;
     /** 回调配置 */
     private NotifyConfigVO notifyConfigVO;
+    /** 批量锁单；落库固定走组提交 */
+    private boolean batchLock;
 
 }
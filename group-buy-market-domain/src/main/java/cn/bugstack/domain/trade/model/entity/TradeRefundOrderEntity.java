@@ -37,4 +37,19 @@ public class TradeRefundOrderEntity {
      */
     private String orderId;
 
+    /**
+     * 外部交易单号
+     */
+    private String outTradeNo;
+
+    /**
+     * 商品ID
+     */
+    private String goodsId;
+
+    /**
+     * 活动总名额占用分段；为空未占用
+     */
+    private Integer activityStockStripe;
+
 }
@@ -24,6 +24,8 @@ public class TradeSettlementRuleFilterBackEntity {
     private String teamId;
     /** 活动ID */
     private Long activityId;
+    /** 结算订单的商品ID */
+    private String goodsId;
     /** 目标数量 */
     private Integer targetCount;
     /** 完成数量 */
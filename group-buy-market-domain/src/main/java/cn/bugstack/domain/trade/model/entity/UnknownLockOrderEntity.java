@@ -0,0 +1,40 @@
+package cn.bugstack.domain.trade.model.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+/**
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ * @description 锁单结果未知实体对象；写入等待超时、无法确定是否落库的订单，记录回退预占所需的信息，由对账确认
+ * @create 2025-08-25 10:20
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class UnknownLockOrderEntity {
+
+    /** 预购订单ID */
+    private String orderId;
+    /** 用户ID */
+    private String userId;
+    /** 外部交易单号 */
+    private String outTradeNo;
+    /** 活动ID */
+    private Long activityId;
+    /** 拼单组队ID */
+    private String teamId;
+    /** 组队有效时长（分钟） */
+    private Integer validTime;
+    /** 组队库存恢复量 key */
+    private String recoveryTeamStockKey;
+    /** 活动总名额占用分段；为空未占用 */
+    private Integer activityStockStripe;
+    /** 记录时间 */
+    private Date createTime;
+
+}
@@ -3,6 +3,9 @@ package cn.bugstack.domain.trade.service;
 import cn.bugstack.domain.trade.model.entity.*;
 import cn.bugstack.domain.trade.model.valobj.GroupBuyProgressVO;
 
+import java.util.Map;
+import java.util.Set;
+
 /**
  * @author Fuzhengwei bugstack.cn @小傅哥
  * @description 拼团交易锁单服务接口
@@ -19,6 +22,49 @@ public interface ITradeLockOrderService {
      */
     MarketPayOrderEntity queryNoPayMarketPayOrderByOutTradeNo(String userId, String outTradeNo);
 
+    /**
+     * 批量锁单预取；一次 Redis 管道读取外部单号幂等索引、一次查询读取组队进度，逐笔锁单时直接命中请求级记忆
+     *
+     * @param userOutTradeNos 用户ID -> 外部唯一单号
+     * @param teamIds         加入的拼团ID
+     */
+    void prefetchLockMarketPayOrder(Map<String, Set<String>> userOutTradeNos, Set<String> teamIds);
+
+    /**
+     * 已满队伍拦截；队伍已满且该外部单号未锁单时拦截
+     *
+     * @param userId     用户ID
+     * @param outTradeNo 外部唯一单号
+     * @param teamId     拼团ID
+     * @return true 拦截
+     */
+    boolean isTeamFullIntercept(String userId, String outTradeNo, String teamId);
+
+    /**
+     * 记录队伍已满并广播
+     *
+     * @param teamId 拼团ID
+     */
+    void markTeamFull(String teamId);
+
+    /**
+     * 外部单号在途锁；同一外部单号的重复请求等待首个请求完成后再查询幂等结果
+     *
+     * @param userId     用户ID
+     * @param outTradeNo 外部唯一单号
+     * @return 锁令牌，释放时传入；为空表示加锁失败
+     */
+    String tryLockOutTradeNo(String userId, String outTradeNo);
+
+    /**
+     * 释放外部单号在途锁；令牌不一致（锁已过期被其他请求持有）时不释放
+     *
+     * @param userId     用户ID
+     * @param outTradeNo 外部唯一单号
+     * @param lockToken  加锁时返回的令牌
+     */
+    void unlockOutTradeNo(String userId, String outTradeNo, String lockToken);
+
     /**
      * 查询拼团进度
      *
@@ -37,4 +83,25 @@ public interface ITradeLockOrderService {
      */
     MarketPayOrderEntity lockMarketPayOrder(UserEntity userEntity, PayActivityEntity payActivityEntity, PayDiscountEntity payDiscountEntity) throws Exception;
 
+    /**
+     * 对账，修复 Redis 优先锁单模式下预占后未落库的订单
+     *
+     * @return 处理条数
+     */
+    int reconcileReservedMarketPayOrder();
+
+    /**
+     * 对账，确认锁单结果未知（E0011）的订单是否落库；未落库的回退参与次数、组队库存和活动总名额
+     *
+     * @return 处理条数
+     */
+    int reconcileUnknownLockOrder();
+
+    /**
+     * 调拨活动总名额分段，把富余分段的名额调入即将用尽的分段
+     *
+     * @return 调拨名额数
+     */
+    int rebalanceActivityStock();
+
 }
@@ -38,4 +38,11 @@ public interface ITradeTaskService {
      */
     Map<String, Integer> execNotifyJob(NotifyTaskEntity notifyTaskEntity) throws Exception;
 
+    /**
+     * 补偿投递交易事件发件箱中未发送的事件
+     *
+     * @return 发送成功条数
+     */
+    int execMarketEventOutboxRelay();
+
 }
@@ -7,14 +7,19 @@ import cn.bugstack.domain.trade.model.entity.*;
 import cn.bugstack.domain.trade.model.valobj.GroupBuyProgressVO;
 import cn.bugstack.domain.trade.service.ITradeLockOrderService;
 import cn.bugstack.domain.trade.service.lock.factory.TradeLockRuleFilterFactory;
+import cn.bugstack.types.enums.ResponseCode;
 import cn.bugstack.types.event.MarketRankEvent;
 import cn.bugstack.types.event.MarketRankEventType;
+import cn.bugstack.types.exception.AppException;
 import cn.bugstack.wrench.design.framework.link.model2.chain.BusinessLinkedList;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
 import java.util.Date;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 /**
@@ -32,10 +37,46 @@ public class TradeLockOrderService implements ITradeLockOrderService {
     @Resource
     private BusinessLinkedList<TradeLockRuleCommandEntity, TradeLockRuleFilterFactory.DynamicContext, TradeLockRuleFilterBackEntity> tradeRuleFilter;
 
+    @Resource
+    private BusinessLinkedList<TradeLockRuleCommandEntity, TradeLockRuleFilterFactory.DynamicContext, TradeLockRuleFilterBackEntity> tradeReserveRuleFilter;
+
     @Override
     public MarketPayOrderEntity queryNoPayMarketPayOrderByOutTradeNo(String userId, String outTradeNo) {
         log.info("拼团交易-查询未支付营销订单:{} outTradeNo:{}", userId, outTradeNo);
-        return repository.queryMarketPayOrderEntityByOutTradeNo(userId, outTradeNo);
+        return repository.queryNoPayMarketPayOrderByOutTradeNo(userId, outTradeNo);
+    }
+
+    @Override
+    public void prefetchLockMarketPayOrder(Map<String, Set<String>> userOutTradeNos, Set<String> teamIds) {
+        log.info("拼团交易-批量锁单预取 users:{} teams:{}", userOutTradeNos.size(), teamIds.size());
+        if (!userOutTradeNos.isEmpty()) {
+            repository.prefetchOutTradeNoIndex(userOutTradeNos);
+        }
+        if (!teamIds.isEmpty()) {
+            repository.queryGroupBuyProgress(teamIds);
+        }
+    }
+
+    @Override
+    public boolean isTeamFullIntercept(String userId, String outTradeNo, String teamId) {
+        if (StringUtils.isBlank(teamId) || !repository.isTeamFull(teamId)) return false;
+        // 已锁单的重复请求放行，由幂等流程返回已有订单；只查幂等索引，不查库
+        return null == repository.queryOutTradeNoIndex(userId, outTradeNo);
+    }
+
+    @Override
+    public void markTeamFull(String teamId) {
+        repository.markTeamFull(teamId);
+    }
+
+    @Override
+    public String tryLockOutTradeNo(String userId, String outTradeNo) {
+        return repository.tryLockOutTradeNo(userId, outTradeNo);
+    }
+
+    @Override
+    public void unlockOutTradeNo(String userId, String outTradeNo, String lockToken) {
+        repository.unlockOutTradeNo(userId, outTradeNo, lockToken);
     }
 
     @Override
@@ -48,13 +89,32 @@ public class TradeLockOrderService implements ITradeLockOrderService {
     public MarketPayOrderEntity lockMarketPayOrder(UserEntity userEntity, PayActivityEntity payActivityEntity, PayDiscountEntity payDiscountEntity) throws Exception {
         log.info("拼团交易-锁定营销优惠支付订单:{} activityId:{} goodsId:{}", userEntity.getUserId(), payActivityEntity.getActivityId(), payDiscountEntity.getGoodsId());
 
+        // 秒杀活动，Redis 优先锁单
+        if (repository.isRedisFirstLockActivity(payActivityEntity.getActivityId())) {
+            return reserveMarketPayOrder(userEntity, payActivityEntity, payDiscountEntity);
+        }
+
         // 交易规则过滤
-        TradeLockRuleFilterBackEntity tradeLockRuleFilterBackEntity = tradeRuleFilter.apply(TradeLockRuleCommandEntity.builder()
-                        .activityId(payActivityEntity.getActivityId())
-                        .userId(userEntity.getUserId())
-                        .teamId(payActivityEntity.getTeamId())
-                        .build(),
-                new TradeLockRuleFilterFactory.DynamicContext());
+        TradeLockRuleFilterFactory.DynamicContext dynamicContext = new TradeLockRuleFilterFactory.DynamicContext();
+        TradeLockRuleFilterBackEntity tradeLockRuleFilterBackEntity;
+        try {
+            tradeLockRuleFilterBackEntity = tradeRuleFilter.apply(TradeLockRuleCommandEntity.builder()
+                            .activityId(payActivityEntity.getActivityId())
+                            .userId(userEntity.getUserId())
+                            .teamId(payActivityEntity.getTeamId())
+                            .build(),
+                    dynamicContext);
+        } catch (Exception e) {
+            // 参与次数已占用，后续规则（活动总名额、组队库存）未通过时回退
+            if (null != dynamicContext.getUserTakeOrderCount()) {
+                repository.releaseUserTakeCount(payActivityEntity.getActivityId(), userEntity.getUserId());
+            }
+            // 活动总名额已占用，后续规则（组队库存）未通过时归还
+            if (null != dynamicContext.getActivityStockStripe()) {
+                repository.releaseActivityStock(payActivityEntity.getActivityId(), dynamicContext.getActivityStockStripe());
+            }
+            throw e;
+        }
 
         // 已参与拼团量 - 用于构建数据库唯一索引使用，确保用户只能在一个活动上参与固定的次数
         Integer userTakeOrderCount = tradeLockRuleFilterBackEntity.getUserTakeOrderCount();
@@ -70,13 +130,97 @@ public class TradeLockOrderService implements ITradeLockOrderService {
         try {
             // 锁定聚合订单 - 这会用户只是下单还没有支付。后续会有2个流程；支付成功、超时未支付（回退）
             return repository.lockMarketPayOrder(groupBuyOrderAggregate);
+        } catch (AppException e) {
+            if (!ResponseCode.E0011.getCode().equals(e.getCode())) {
+                releaseLockOrder(userEntity, payActivityEntity, tradeLockRuleFilterBackEntity, dynamicContext);
+                throw e;
+            }
+            // 结果未知，订单可能已落库，不能回退；记录后由对账确认
+            repository.saveUnknownLockOrder(UnknownLockOrderEntity.builder()
+                    .orderId(groupBuyOrderAggregate.getOrderId())
+                    .userId(userEntity.getUserId())
+                    .outTradeNo(payDiscountEntity.getOutTradeNo())
+                    .activityId(payActivityEntity.getActivityId())
+                    .teamId(payActivityEntity.getTeamId())
+                    .validTime(payActivityEntity.getValidTime())
+                    .recoveryTeamStockKey(tradeLockRuleFilterBackEntity.getRecoveryTeamStockKey())
+                    .activityStockStripe(dynamicContext.getActivityStockStripe())
+                    .createTime(new Date())
+                    .build());
+            throw e;
         } catch (Exception e) {
-            // 记录失败恢复量
-            repository.recoveryTeamStock(tradeLockRuleFilterBackEntity.getRecoveryTeamStockKey(), payActivityEntity.getValidTime());
+            releaseLockOrder(userEntity, payActivityEntity, tradeLockRuleFilterBackEntity, dynamicContext);
             throw e;
         }
 
     }
 
+    /**
+     * 锁单失败，回退已占用的组队库存、参与次数和活动总名额
+     */
+    private void releaseLockOrder(UserEntity userEntity, PayActivityEntity payActivityEntity, TradeLockRuleFilterBackEntity tradeLockRuleFilterBackEntity, TradeLockRuleFilterFactory.DynamicContext dynamicContext) {
+        // 记录失败恢复量
+        repository.recoveryTeamStock(payActivityEntity.getTeamId(), tradeLockRuleFilterBackEntity.getRecoveryTeamStockKey(), payActivityEntity.getValidTime());
+        // 回退参与次数
+        repository.releaseUserTakeCount(payActivityEntity.getActivityId(), userEntity.getUserId());
+        // 归还活动总名额
+        if (null != dynamicContext.getActivityStockStripe()) {
+            repository.releaseActivityStock(payActivityEntity.getActivityId(), dynamicContext.getActivityStockStripe());
+        }
+    }
+
+    @Override
+    public int reconcileReservedMarketPayOrder() {
+        return repository.reconcileReservedMarketPayOrder();
+    }
+
+    @Override
+    public int reconcileUnknownLockOrder() {
+        return repository.reconcileUnknownLockOrder();
+    }
+
+    @Override
+    public int rebalanceActivityStock() {
+        return repository.rebalanceActivityStock();
+    }
+
+    /**
+     * Redis 优先锁单；一次脚本预占用户参与次数、组队名额、外部单号幂等，预占成功即返回，数据库异步落库
+     */
+    private MarketPayOrderEntity reserveMarketPayOrder(UserEntity userEntity, PayActivityEntity payActivityEntity, PayDiscountEntity payDiscountEntity) throws Exception {
+        // 交易规则过滤；活动可用性、活动总名额
+        TradeLockRuleFilterFactory.DynamicContext dynamicContext = new TradeLockRuleFilterFactory.DynamicContext();
+        tradeReserveRuleFilter.apply(TradeLockRuleCommandEntity.builder()
+                        .activityId(payActivityEntity.getActivityId())
+                        .userId(userEntity.getUserId())
+                        .teamId(payActivityEntity.getTeamId())
+                        .build(),
+                dynamicContext);
+
+        GroupBuyActivityEntity groupBuyActivity = dynamicContext.getGroupBuyActivity();
+
+        // 构建聚合对象；参与次数由预占脚本累加
+        GroupBuyOrderAggregate groupBuyOrderAggregate = GroupBuyOrderAggregate.builder()
+                .userEntity(userEntity)
+                .payActivityEntity(payActivityEntity)
+                .payDiscountEntity(payDiscountEntity)
+                .activityStockStripe(dynamicContext.getActivityStockStripe())
+                .build();
+
+        try {
+            // 预占成功后活动总名额随预占记录释放；外部单号重复时由仓储归还
+            return repository.reserveMarketPayOrder(groupBuyOrderAggregate,
+                    groupBuyActivity.getTakeLimitCount(),
+                    dynamicContext.generateTeamStockKey(payActivityEntity.getTeamId()),
+                    dynamicContext.generateRecoveryTeamStockKey(payActivityEntity.getTeamId()));
+        } catch (Exception e) {
+            // 预占失败，归还活动总名额
+            if (null != dynamicContext.getActivityStockStripe()) {
+                repository.releaseActivityStock(payActivityEntity.getActivityId(), dynamicContext.getActivityStockStripe());
+            }
+            throw e;
+        }
+    }
+
 
 }
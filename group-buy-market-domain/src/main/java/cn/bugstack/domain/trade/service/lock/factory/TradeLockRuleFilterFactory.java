@@ -3,6 +3,7 @@ package cn.bugstack.domain.trade.service.lock.factory;
 import cn.bugstack.domain.trade.model.entity.GroupBuyActivityEntity;
 import cn.bugstack.domain.trade.model.entity.TradeLockRuleCommandEntity;
 import cn.bugstack.domain.trade.model.entity.TradeLockRuleFilterBackEntity;
+import cn.bugstack.domain.trade.service.lock.filter.ActivityStockOccupyRuleFilter;
 import cn.bugstack.domain.trade.service.lock.filter.ActivityUsabilityRuleFilter;
 import cn.bugstack.domain.trade.service.lock.filter.TeamStockOccupyRuleFilter;
 import cn.bugstack.domain.trade.service.lock.filter.UserTakeLimitRuleFilter;
@@ -30,6 +31,7 @@ public class TradeLockRuleFilterFactory {
     public BusinessLinkedList<TradeLockRuleCommandEntity, DynamicContext, TradeLockRuleFilterBackEntity> tradeRuleFilter(
             ActivityUsabilityRuleFilter activityUsabilityRuleFilter,
             UserTakeLimitRuleFilter userTakeLimitRuleFilter,
+            ActivityStockOccupyRuleFilter activityStockOccupyRuleFilter,
             TeamStockOccupyRuleFilter teamStockOccupyRuleFilter) {
 
         // 组装链
@@ -37,12 +39,29 @@ public class TradeLockRuleFilterFactory {
                 new LinkArmory<>("交易规则过滤链",
                         activityUsabilityRuleFilter,
                         userTakeLimitRuleFilter,
+                        activityStockOccupyRuleFilter,
                         teamStockOccupyRuleFilter);
 
         // 链对象
         return linkArmory.getLogicLink();
     }
 
+    /**
+     * Redis 优先锁单过滤链；用户参与次数、组队名额由预占脚本原子校验，这里只校验活动可用性、占用活动总名额
+     */
+    @Bean("tradeReserveRuleFilter")
+    public BusinessLinkedList<TradeLockRuleCommandEntity, DynamicContext, TradeLockRuleFilterBackEntity> tradeReserveRuleFilter(
+            ActivityUsabilityRuleFilter activityUsabilityRuleFilter,
+            ActivityStockOccupyRuleFilter activityStockOccupyRuleFilter) {
+
+        LinkArmory<TradeLockRuleCommandEntity, DynamicContext, TradeLockRuleFilterBackEntity> linkArmory =
+                new LinkArmory<>("交易预占规则过滤链",
+                        activityUsabilityRuleFilter,
+                        activityStockOccupyRuleFilter);
+
+        return linkArmory.getLogicLink();
+    }
+
     @Data
     @Builder
     @AllArgsConstructor
@@ -55,6 +74,9 @@ public class TradeLockRuleFilterFactory {
 
         private Integer userTakeOrderCount;
 
+        /** 占用的活动总名额分段序号；为空表示未占用 */
+        private Integer activityStockStripe;
+
         public String generateTeamStockKey(String teamId) {
             if (StringUtils.isBlank(teamId)) return null;
             return teamStockKey + groupBuyActivity.getActivityId() + "_" + teamId;
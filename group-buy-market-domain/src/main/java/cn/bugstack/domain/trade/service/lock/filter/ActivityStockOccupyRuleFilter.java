@@ -0,0 +1,50 @@
+package cn.bugstack.domain.trade.service.lock.filter;
+
+import cn.bugstack.domain.trade.adapter.repository.ITradeRepository;
+import cn.bugstack.domain.trade.model.entity.GroupBuyActivityEntity;
+import cn.bugstack.domain.trade.model.entity.TradeLockRuleCommandEntity;
+import cn.bugstack.domain.trade.model.entity.TradeLockRuleFilterBackEntity;
+import cn.bugstack.domain.trade.service.lock.factory.TradeLockRuleFilterFactory;
+import cn.bugstack.types.enums.ResponseCode;
+import cn.bugstack.types.exception.AppException;
+import cn.bugstack.wrench.design.framework.link.model2.handler.ILogicHandler;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+
+/**
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ * @description 活动总名额占用规则过滤；活动未设置总名额时跳过
+ * @create 2025-08-02 10:12
+ */
+@Slf4j
+@Service
+public class ActivityStockOccupyRuleFilter implements ILogicHandler<TradeLockRuleCommandEntity, TradeLockRuleFilterFactory.DynamicContext, TradeLockRuleFilterBackEntity> {
+
+    @Resource
+    private ITradeRepository repository;
+
+    @Override
+    public TradeLockRuleFilterBackEntity apply(TradeLockRuleCommandEntity requestParameter, TradeLockRuleFilterFactory.DynamicContext dynamicContext) throws Exception {
+        GroupBuyActivityEntity groupBuyActivity = dynamicContext.getGroupBuyActivity();
+        Integer stockLimit = groupBuyActivity.getStockLimit();
+        if (null == stockLimit || stockLimit <= 0) {
+            return next(requestParameter, dynamicContext);
+        }
+
+        log.info("交易规则过滤-活动总名额校验{} activityId:{}", requestParameter.getUserId(), requestParameter.getActivityId());
+
+        // 占用活动总名额；名额按分段计数分散在多个 Redis key 上，全部分段用尽才为售罄
+        Integer stripe = repository.occupyActivityStock(requestParameter.getActivityId());
+        if (null == stripe) {
+            throw new AppException(ResponseCode.E0010);
+        }
+
+        // 记录占用分段，后续规则或锁单失败时归还
+        dynamicContext.setActivityStockStripe(stripe);
+
+        return next(requestParameter, dynamicContext);
+    }
+
+}
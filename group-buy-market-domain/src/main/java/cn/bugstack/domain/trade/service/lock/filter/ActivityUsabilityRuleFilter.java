@@ -35,7 +35,7 @@ public class ActivityUsabilityRuleFilter implements ILogicHandler<TradeLockRuleC
         GroupBuyActivityEntity groupBuyActivity = repository.queryGroupBuyActivityEntityByActivityId(requestParameter.getActivityId());
 
         // 校验；活动状态 - 可以抛业务异常code，或者把code写入到动态上下文dynamicContext中，最后获取。
-        if (!ActivityStatusEnumVO.EFFECTIVE.equals(groupBuyActivity.getStatus())) {
+        if (null == groupBuyActivity || !ActivityStatusEnumVO.EFFECTIVE.equals(groupBuyActivity.getStatus())) {
             log.info("活动的可用性校验，非生效状态 activityId:{}", requestParameter.getActivityId());
             throw new AppException(ResponseCode.E0101);
         }
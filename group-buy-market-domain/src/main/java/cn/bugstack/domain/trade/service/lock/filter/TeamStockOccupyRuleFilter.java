@@ -49,6 +49,8 @@ public class TeamStockOccupyRuleFilter implements ILogicHandler<TradeLockRuleCom
 
         if (!status) {
             log.warn("交易规则过滤-组队库存校验{} activityId:{} 抢占失败:{}", requestParameter.getUserId(), requestParameter.getActivityId(), teamStockKey);
+            // 广播队伍已满，后续请求在锁单入口直接拒绝
+            repository.markTeamFull(teamId);
             throw new AppException(ResponseCode.E0008);
         }
 
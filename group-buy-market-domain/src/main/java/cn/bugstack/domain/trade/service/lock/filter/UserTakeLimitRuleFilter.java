@@ -31,15 +31,16 @@ public class UserTakeLimitRuleFilter implements ILogicHandler<TradeLockRuleComma
 
         GroupBuyActivityEntity groupBuyActivity = dynamicContext.getGroupBuyActivity();
 
-        // 查询用户在一个拼团活动上参与的次数
-        Integer count = repository.queryOrderCountByActivityId(requestParameter.getActivityId(), requestParameter.getUserId());
+        // 占用用户在一个拼团活动上的参与次数；Redis 计数原子校验并累加，返回累计参与序号
+        Integer takeSeq = repository.occupyUserTakeCount(requestParameter.getActivityId(), requestParameter.getUserId(), groupBuyActivity.getTakeLimitCount(), groupBuyActivity.getEndTime());
 
-        if (null != groupBuyActivity.getTakeLimitCount() && count >= groupBuyActivity.getTakeLimitCount()) {
+        if (null == takeSeq) {
             log.info("用户参与次数校验，已达可参与上限 activityId:{}", requestParameter.getActivityId());
             throw new AppException(ResponseCode.E0103);
         }
 
-        dynamicContext.setUserTakeOrderCount(count);
+        // 已参与次数，锁单时按 +1 构建 bizId 唯一值
+        dynamicContext.setUserTakeOrderCount(takeSeq - 1);
 
         // 走到下一个责任链节点
         return next(requestParameter, dynamicContext);
@@ -1,6 +1,5 @@
 package cn.bugstack.domain.trade.service.refund;
 
-import cn.bugstack.domain.trade.adapter.port.ITradePort;
 import cn.bugstack.domain.trade.adapter.repository.ITradeRepository;
 import cn.bugstack.domain.trade.model.entity.*;
 import cn.bugstack.domain.trade.model.valobj.RefundTypeEnumVO;
@@ -8,15 +7,10 @@ import cn.bugstack.domain.trade.model.valobj.TradeOrderStatusEnumVO;
 import cn.bugstack.domain.trade.service.ITradeRefundOrderService;
 import cn.bugstack.domain.trade.service.refund.business.IRefundOrderStrategy;
 import cn.bugstack.types.enums.GroupBuyOrderEnumVO;
-import cn.bugstack.types.event.MarketRankEvent;
-import cn.bugstack.types.event.MarketRankEventType;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
-import javax.annotation.Resource;
-import java.util.Date;
 import java.util.Map;
-import java.util.UUID;
 
 /**
  * 退单，逆向流程服务
@@ -30,9 +24,6 @@ public class TradeRefundOrderService implements ITradeRefundOrderService {
 
     private final ITradeRepository repository;
 
-    @Resource
-    private ITradePort port;
-
     private final Map<String, IRefundOrderStrategy> refundOrderStrategyMap;
 
     public TradeRefundOrderService(ITradeRepository repository, Map<String, IRefundOrderStrategy> refundOrderStrategyMap) {
@@ -74,9 +65,12 @@ public class TradeRefundOrderService implements ITradeRefundOrderService {
                 .orderId(orderId)
                 .teamId(teamId)
                 .activityId(groupBuyTeamEntity.getActivityId())
+                .outTradeNo(tradeRefundCommandEntity.getOutTradeNo())
+                .goodsId(marketPayOrderEntity.getGoodsId())
+                .activityStockStripe(marketPayOrderEntity.getActivityStockStripe())
                 .build());
 
-        sendGroupBuyStatusEvent(teamId,groupBuyTeamEntity.getActivityId(),orderId);
+        // 退单事件已在退单事务内写入发件箱，提交后投递
         return TradeRefundBehaviorEntity.builder()
                 .userId(tradeRefundCommandEntity.getUserId())
                 .orderId(orderId)
@@ -85,29 +79,4 @@ public class TradeRefundOrderService implements ITradeRefundOrderService {
                 .build();
     }
 
-    /**
-     * 发送拼团状态变化事件
-     */
-    private void sendGroupBuyStatusEvent(String teamId, Long activityId, String orderId) {
-        log.info("发送退单消息至MQ：{}", teamId);
-        try {
-            // 获取商品ID（需要根据实际业务逻辑获取，这里假设从数据库中查询）
-            String goodsId = repository.queryGoodsIdByTeamId(teamId);
-
-            if (goodsId != null) {
-                MarketRankEvent rankEvent = new MarketRankEvent();
-                rankEvent.setEventId(UUID.randomUUID().toString());
-                rankEvent.setOrderId(orderId);
-                rankEvent.setActivityId(activityId);
-                rankEvent.setGoodsId(goodsId);
-                rankEvent.setOccurTime(new Date());
-
-                rankEvent.setEventType(MarketRankEventType.REFUND_SUCCESS);
-                // 通过消息队列发送事件
-                port.sendRankEvent(rankEvent);
-            }
-        } catch (Exception e) {
-            log.error("发送拼团状态变化事件失败", e);
-        }
-    }
 }
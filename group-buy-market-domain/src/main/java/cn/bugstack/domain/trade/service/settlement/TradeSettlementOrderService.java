@@ -2,17 +2,13 @@ package cn.bugstack.domain.trade.service.settlement;
 
 import cn.bugstack.domain.activity.adapter.repository.IRankRedisRepository;
 import cn.bugstack.domain.activity.service.trial.factory.RankKeyFactory;
-import cn.bugstack.domain.trade.adapter.port.ITradePort;
 import cn.bugstack.domain.trade.adapter.repository.ITradeRepository;
 import cn.bugstack.domain.trade.model.aggregate.GroupBuyTeamSettlementAggregate;
 import cn.bugstack.domain.trade.model.entity.*;
 import cn.bugstack.domain.trade.service.ITradeSettlementOrderService;
 import cn.bugstack.domain.trade.service.ITradeTaskService;
 import cn.bugstack.domain.trade.service.settlement.factory.TradeSettlementRuleFilterFactory;
-import cn.bugstack.types.enums.GroupBuyOrderEnumVO;
 import cn.bugstack.types.enums.NotifyTaskHTTPEnumVO;
-import cn.bugstack.types.event.MarketRankEvent;
-import cn.bugstack.types.event.MarketRankEventType;
 import cn.bugstack.types.exception.AppException;
 import cn.bugstack.wrench.design.framework.link.model2.chain.BusinessLinkedList;
 import com.alibaba.fastjson.JSON;
@@ -35,8 +31,6 @@ public class TradeSettlementOrderService implements ITradeSettlementOrderService
     @Resource
     private ITradeRepository repository;
     @Resource
-    private ITradePort port;
-    @Resource
     private ThreadPoolExecutor threadPoolExecutor;
     @Resource
     private ITradeTaskService tradeTaskService;
@@ -60,7 +54,6 @@ public class TradeSettlementOrderService implements ITradeSettlementOrderService
                 new TradeSettlementRuleFilterFactory.DynamicContext());
 
         String teamId = tradeSettlementRuleFilterBackEntity.getTeamId();
-        Long activityId = tradeSettlementRuleFilterBackEntity.getActivityId();
 
         // 2. 查询组团信息
         GroupBuyTeamEntity groupBuyTeamEntity = GroupBuyTeamEntity.builder()
@@ -80,16 +73,12 @@ public class TradeSettlementOrderService implements ITradeSettlementOrderService
                 .userEntity(UserEntity.builder().userId(tradePaySuccessEntity.getUserId()).build())
                 .groupBuyTeamEntity(groupBuyTeamEntity)
                 .tradePaySuccessEntity(tradePaySuccessEntity)
+                .goodsId(tradeSettlementRuleFilterBackEntity.getGoodsId())
                 .build();
 
-        // 4. 拼团交易结算
+        // 4. 拼团交易结算；拼团状态变化事件在结算事务内写入发件箱，提交后投递
         NotifyTaskEntity notifyTaskEntity = repository.settlementMarketPayOrder(groupBuyTeamSettlementAggregate);
 
-        // 5. 发送拼团状态变化事件
-        sendGroupBuyStatusEvent(teamId, activityId, groupBuyTeamEntity.getStatus());
-
-        // 6. 组队回调处理 - 处理失败也会有定时任务补偿
-
         // 5. 组队回调处理 - 处理失败也会有定时任务补偿，通过这样的方式，可以减轻任务调度，提高时效性
         if (null != notifyTaskEntity) {
             threadPoolExecutor.execute(() -> {
@@ -115,34 +104,4 @@ public class TradeSettlementOrderService implements ITradeSettlementOrderService
                 .build();
     }
 
-    /**
-     * 发送拼团状态变化事件
-     */
-    private void sendGroupBuyStatusEvent(String teamId, Long activityId, GroupBuyOrderEnumVO status) {
-        try {
-            // 获取商品ID（需要根据实际业务逻辑获取，这里假设从数据库中查询）
-            String goodsId = repository.queryGoodsIdByTeamId(teamId);
-
-            if (goodsId != null) {
-                MarketRankEvent rankEvent = new MarketRankEvent();
-                rankEvent.setEventId(UUID.randomUUID().toString());
-                rankEvent.setOrderId(teamId); // 使用teamId作为订单ID
-                rankEvent.setActivityId(activityId);
-                rankEvent.setGoodsId(goodsId);
-                rankEvent.setOccurTime(new Date());
-
-                // 根据拼团状态设置事件类型
-                if (GroupBuyOrderEnumVO.COMPLETE.equals(status)) {
-                    rankEvent.setEventType(MarketRankEventType.GROUP_BUY_COMPLETE);
-                } else if (GroupBuyOrderEnumVO.PROGRESS.equals(status)) {
-                    rankEvent.setEventType(MarketRankEventType.GROUP_BUY_PROGRESS);
-                }
-
-                // 通过消息队列发送事件
-                port.sendRankEvent(rankEvent);
-            }
-        } catch (Exception e) {
-            log.error("发送拼团状态变化事件失败", e);
-        }
-    }
 }
@@ -28,6 +28,7 @@ public class EndRuleFilter implements ILogicHandler<TradeSettlementRuleCommandEn
         return TradeSettlementRuleFilterBackEntity.builder()
                 .teamId(groupBuyTeamEntity.getTeamId())
                 .activityId(groupBuyTeamEntity.getActivityId())
+                .goodsId(dynamicContext.getMarketPayOrderEntity().getGoodsId())
                 .targetCount(groupBuyTeamEntity.getTargetCount())
                 .completeCount(groupBuyTeamEntity.getCompleteCount())
                 .lockCount(groupBuyTeamEntity.getLockCount())
@@ -56,6 +56,11 @@ public class TradeTaskService implements ITradeTaskService {
         return execNotifyJob(Collections.singletonList(notifyTaskEntity));
     }
 
+    @Override
+    public int execMarketEventOutboxRelay() {
+        return repository.relayMarketEventOutbox();
+    }
+
     private Map<String, Integer> execNotifyJob(List<NotifyTaskEntity> notifyTaskEntityList) throws Exception {
         int successCount = 0, errorCount = 0, retryCount = 0;
         for (NotifyTaskEntity notifyTask : notifyTaskEntityList) {
@@ -0,0 +1,246 @@
+package cn.bugstack.infrastructure.adapter.port;
+
+import cn.bugstack.domain.trade.adapter.port.IIdGenerator;
+import cn.bugstack.infrastructure.adapter.repository.lua.LuaScriptRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBucket;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.net.InetAddress;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 雪花算法ID生成器
+ * <p>
+ * 1. ID 结构：41位时间戳（毫秒）+ 10位工作节点 + 12位序列号，趋势递增，InnoDB 唯一索引顺序写入
+ * 2. 工作节点：启动时通过 Redisson 租约占用 [0, 1023] 中的一个 workerId，定时续约，多节点不会冲突；租约丢失时重新申请并丢弃已预取的ID
+ * 3. 预取环形缓冲：后台线程批量生成ID填充 long[] 环形数组，热路径只做一次 CAS 取值，无锁、无 I/O；缓冲耗尽时同步生成兜底
+ *
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ */
+@Slf4j
+@Component
+public class SnowflakeIdGenerator implements IIdGenerator {
+
+    /** 起始时间 2025-01-01 00:00:00 */
+    private static final long EPOCH = 1735660800000L;
+    private static final long WORKER_ID_BITS = 10L;
+    private static final long SEQUENCE_BITS = 12L;
+    private static final long MAX_WORKER_ID = ~(-1L << WORKER_ID_BITS);
+    private static final long SEQUENCE_MASK = ~(-1L << SEQUENCE_BITS);
+    private static final long WORKER_ID_SHIFT = SEQUENCE_BITS;
+    private static final long TIMESTAMP_SHIFT = SEQUENCE_BITS + WORKER_ID_BITS;
+
+    private static final String WORKER_KEY_PREFIX = "group_buy_market_id_worker_";
+
+    /** 续约脚本；仅当租约仍归属当前实例时才延长过期时间 */
+    private static final String RENEW_SCRIPT = ""
+            + "if redis.call('GET', KEYS[1]) == ARGV[1] then\n"
+            + "  return redis.call('EXPIRE', KEYS[1], ARGV[2])\n"
+            + "end\n"
+            + "return 0";
+
+    /** 释放脚本；仅删除归属当前实例的租约 */
+    private static final String RELEASE_SCRIPT = ""
+            + "if redis.call('GET', KEYS[1]) == ARGV[1] then\n"
+            + "  return redis.call('DEL', KEYS[1])\n"
+            + "end\n"
+            + "return 0";
+
+    @Resource
+    private RedissonClient redissonClient;
+    @Resource
+    private LuaScriptRegistry luaScriptRegistry;
+
+    /** 环形缓冲大小，必须是 2 的幂 */
+    @Value("${group-buy-market.id-generator.buffer-size:8192}")
+    private int bufferSize;
+    /** 剩余可用ID低于该比例时触发填充 */
+    @Value("${group-buy-market.id-generator.padding-factor:50}")
+    private int paddingFactor;
+    /** workerId 租约时长（秒） */
+    @Value("${group-buy-market.id-generator.lease-seconds:60}")
+    private long leaseSeconds;
+
+    private final String instanceId = instanceId();
+
+    private ScheduledExecutorService scheduler;
+
+    private volatile long workerId = -1;
+    private long lastTimestamp = -1L;
+    private long sequence = 0L;
+
+    private long[] ring;
+    private int mask;
+    private long paddingThreshold;
+    /** 已生产的ID序号（下一个写入位置） */
+    private final AtomicLong tail = new AtomicLong(0);
+    /** 已消费的ID序号（下一个读取位置） */
+    private final AtomicLong cursor = new AtomicLong(0);
+    private final AtomicBoolean filling = new AtomicBoolean(false);
+
+    @PostConstruct
+    public void init() {
+        if (Integer.bitCount(bufferSize) != 1) {
+            throw new IllegalArgumentException("id-generator.buffer-size must be a power of 2: " + bufferSize);
+        }
+        ring = new long[bufferSize];
+        mask = bufferSize - 1;
+        paddingThreshold = (long) bufferSize * paddingFactor / 100;
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "id-generator");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        leaseWorkerId();
+        fill();
+
+        long renewInterval = Math.max(1, leaseSeconds / 3);
+        scheduler.scheduleWithFixedDelay(this::renewWorkerId, renewInterval, renewInterval, TimeUnit.SECONDS);
+        // 兜底定时填充，避免低流量时长期不触发阈值填充
+        scheduler.scheduleWithFixedDelay(this::fill, 1, 1, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        scheduler.shutdownNow();
+        long current = workerId;
+        if (current < 0) return;
+        try {
+            luaScriptRegistry.eval(RScript.Mode.READ_WRITE, RELEASE_SCRIPT, RScript.ReturnType.INTEGER,
+                    Collections.<Object>singletonList(WORKER_KEY_PREFIX + current), instanceId);
+        } catch (Exception e) {
+            log.warn("释放雪花算法 workerId 租约失败 workerId:{}", current, e);
+        }
+    }
+
+    @Override
+    public long nextId() {
+        while (true) {
+            long current = cursor.get();
+            if (current >= tail.get()) {
+                // 缓冲已耗尽，同步生成兜底
+                triggerFill();
+                return generate();
+            }
+            long id = ring[(int) (current & mask)];
+            if (cursor.compareAndSet(current, current + 1)) {
+                if (tail.get() - current - 1 < paddingThreshold) {
+                    triggerFill();
+                }
+                return id;
+            }
+        }
+    }
+
+    private void triggerFill() {
+        if (filling.get()) return;
+        try {
+            scheduler.execute(this::fill);
+        } catch (Exception ignore) {
+            // 停机中
+        }
+    }
+
+    /**
+     * 填充环形缓冲；单线程生产，生产位置不超过 cursor + bufferSize，不会覆盖未消费的ID
+     */
+    private void fill() {
+        if (!filling.compareAndSet(false, true)) return;
+        try {
+            long t = tail.get();
+            while (t - cursor.get() < bufferSize) {
+                ring[(int) (t & mask)] = generate();
+                tail.set(++t);
+            }
+        } catch (Exception e) {
+            log.error("雪花算法ID缓冲填充失败", e);
+        } finally {
+            filling.set(false);
+        }
+    }
+
+    private synchronized long generate() {
+        if (workerId < 0) {
+            throw new IllegalStateException("snowflake workerId not leased");
+        }
+        long timestamp = System.currentTimeMillis();
+        // 时钟回拨时沿用上次时间戳继续递增序列，保证单调
+        if (timestamp < lastTimestamp) {
+            timestamp = lastTimestamp;
+        }
+        if (timestamp == lastTimestamp) {
+            sequence = (sequence + 1) & SEQUENCE_MASK;
+            if (0 == sequence) {
+                // 当前毫秒序列用尽，借用下一毫秒
+                timestamp = lastTimestamp + 1;
+            }
+        } else {
+            sequence = 0L;
+        }
+        lastTimestamp = timestamp;
+        return ((timestamp - EPOCH) << TIMESTAMP_SHIFT) | (workerId << WORKER_ID_SHIFT) | sequence;
+    }
+
+    /**
+     * 申请 workerId 租约；从随机位置开始探测，减少多节点同时启动时的竞争
+     */
+    private synchronized void leaseWorkerId() {
+        int start = ThreadLocalRandom.current().nextInt((int) MAX_WORKER_ID + 1);
+        for (int i = 0; i <= MAX_WORKER_ID; i++) {
+            long candidate = (start + i) & MAX_WORKER_ID;
+            RBucket<String> bucket = redissonClient.getBucket(WORKER_KEY_PREFIX + candidate, StringCodec.INSTANCE);
+            if (bucket.trySet(instanceId, leaseSeconds, TimeUnit.SECONDS)) {
+                workerId = candidate;
+                log.info("雪花算法 workerId 租约申请成功 workerId:{} instanceId:{}", candidate, instanceId);
+                return;
+            }
+        }
+        throw new IllegalStateException("no snowflake workerId available");
+    }
+
+    private void renewWorkerId() {
+        try {
+            Long renewed = luaScriptRegistry.eval(RScript.Mode.READ_WRITE, RENEW_SCRIPT, RScript.ReturnType.INTEGER,
+                    Collections.<Object>singletonList(WORKER_KEY_PREFIX + workerId), instanceId, String.valueOf(leaseSeconds));
+            if (null != renewed && renewed == 1) return;
+
+            // 租约已丢失（如长时间 GC 或网络分区），workerId 可能已被其他节点占用：重新申请，并丢弃已预取的ID
+            log.warn("雪花算法 workerId 租约丢失，重新申请 workerId:{}", workerId);
+            synchronized (this) {
+                workerId = -1;
+                cursor.set(tail.get());
+                leaseWorkerId();
+            }
+        } catch (Exception e) {
+            log.error("雪花算法 workerId 续约失败 workerId:{}", workerId, e);
+        }
+    }
+
+    private static String instanceId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "unknown";
+        }
+        return host + "_" + UUID.randomUUID();
+    }
+
+}
@@ -0,0 +1,115 @@
+package cn.bugstack.infrastructure.adapter.port;
+
+import cn.bugstack.domain.tag.adapter.port.ITagPort;
+import cn.bugstack.domain.tag.model.entity.CrowdTagsJobEntity;
+import cn.bugstack.domain.tag.model.valobj.CrowdTagsUserBatchVO;
+import cn.bugstack.infrastructure.dao.IGroupBuyOrderListDao;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ * @description 人群标签数据源服务
+ * <p>
+ * 1. 文件：数仓导出的 {tagId}_{batchId}.txt，每行一个用户ID；断点为已读取的字节偏移 f:{offset}
+ * 2. 数据库：无导出文件时按任务规则统计拼团订单，按用户ID顺序分页；断点为已读取的最后用户ID d:{userId}
+ * @create 2025-08-21 09:30
+ */
+@Slf4j
+@Service
+public class TagPort implements ITagPort {
+
+    private static final String FILE_CHECKPOINT_PREFIX = "f:";
+    private static final String DB_CHECKPOINT_PREFIX = "d:";
+
+    @Resource
+    private IGroupBuyOrderListDao groupBuyOrderListDao;
+
+    /** 人群用户导出文件目录 */
+    @Value("${group-buy-market.crowd-tag.ingest-dir:./data/crowd-tag-ingest}")
+    private String ingestDir;
+
+    @Override
+    public CrowdTagsUserBatchVO readCrowdTagsUserIds(CrowdTagsJobEntity crowdTagsJobEntity, String checkpoint, int limit) throws Exception {
+        // 有断点时沿用断点的数据源，避免中途放入导出文件后切换数据源
+        if (StringUtils.startsWith(checkpoint, DB_CHECKPOINT_PREFIX)) {
+            return readFromDatabase(crowdTagsJobEntity, checkpoint.substring(DB_CHECKPOINT_PREFIX.length()), limit);
+        }
+
+        Path file = Paths.get(ingestDir, crowdTagsJobEntity.getTagId() + "_" + crowdTagsJobEntity.getBatchId() + ".txt");
+        if (StringUtils.startsWith(checkpoint, FILE_CHECKPOINT_PREFIX)) {
+            return readFromFile(file, Long.parseLong(checkpoint.substring(FILE_CHECKPOINT_PREFIX.length())), limit);
+        }
+        if (Files.exists(file)) {
+            return readFromFile(file, 0L, limit);
+        }
+        return readFromDatabase(crowdTagsJobEntity, "", limit);
+    }
+
+    private CrowdTagsUserBatchVO readFromFile(Path file, long offset, int limit) throws Exception {
+        List<String> userIds = new ArrayList<>(limit);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            channel.position(offset);
+            InputStream inputStream = new BufferedInputStream(Channels.newInputStream(channel));
+            ByteArrayOutputStream line = new ByteArrayOutputStream(32);
+            // 按字节读取行，断点记录到完整行之后
+            int b;
+            while (userIds.size() < limit && (b = inputStream.read()) != -1) {
+                offset++;
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+                addUserId(userIds, line);
+            }
+            // 末行无换行符
+            if (userIds.size() < limit && line.size() > 0) {
+                addUserId(userIds, line);
+            }
+        }
+        return CrowdTagsUserBatchVO.builder()
+                .userIds(userIds)
+                .checkpoint(FILE_CHECKPOINT_PREFIX + offset)
+                .build();
+    }
+
+    private static void addUserId(List<String> userIds, ByteArrayOutputStream line) {
+        String userId = new String(line.toByteArray(), StandardCharsets.UTF_8).trim();
+        line.reset();
+        if (!userId.isEmpty()) userIds.add(userId);
+    }
+
+    private CrowdTagsUserBatchVO readFromDatabase(CrowdTagsJobEntity crowdTagsJobEntity, String lastUserId, int limit) {
+        List<String> userIds = groupBuyOrderListDao.queryCrowdTagsUserIdPage(
+                crowdTagsJobEntity.getTagType(),
+                new BigDecimal(crowdTagsJobEntity.getTagRule()),
+                crowdTagsJobEntity.getStatStartTime(),
+                crowdTagsJobEntity.getStatEndTime(),
+                lastUserId,
+                limit);
+
+        String checkpoint = userIds.isEmpty() ? lastUserId : userIds.get(userIds.size() - 1);
+        return CrowdTagsUserBatchVO.builder()
+                .userIds(userIds)
+                .checkpoint(DB_CHECKPOINT_PREFIX + checkpoint)
+                .build();
+    }
+
+}
@@ -1,11 +1,14 @@
 package cn.bugstack.infrastructure.adapter.repository;
 
+import cn.bugstack.infrastructure.cache.TwoLevelCache;
 import cn.bugstack.infrastructure.dcc.DCCService;
 import cn.bugstack.infrastructure.redis.IRedisService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Resource;
+import java.util.*;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 /**
@@ -14,6 +17,9 @@ import java.util.function.Supplier;
  */
 public abstract class AbstractRepository {
 
+    /** 未指定缓存区域时的统计区域 */
+    protected static final String DEFAULT_REGION = "default";
+
     private final Logger logger = LoggerFactory.getLogger(AbstractRepository.class);
 
     @Resource
@@ -22,9 +28,12 @@ public abstract class AbstractRepository {
     @Resource
     protected DCCService dccService;
 
+    @Resource
+    protected TwoLevelCache twoLevelCache;
+
     /**
      * 通用缓存处理方法
-     * 优先从缓存获取，缓存不存在则从数据库获取并写入缓存
+     * 优先从本地缓存、Redis 获取，缓存不存在则从数据库获取并写入缓存
      *
      * @param cacheKey      缓存键
      * @param dbFallback    数据库查询函数
@@ -32,33 +41,11 @@ public abstract class AbstractRepository {
      * @return              查询结果
      */
     protected <T> T getFromCacheOrDb(String cacheKey, Supplier<T> dbFallback) {
-        // 判断是否开启缓存
-        if (dccService.isCacheOpenSwitch()) {
-            // 从缓存获取
-            T cacheResult = redisService.getValue(cacheKey);
-            // 缓存存在则直接返回
-            if (null != cacheResult) {
-                return cacheResult;
-            }
-            // 缓存不存在则从数据库获取
-            T dbResult = dbFallback.get();
-            // 数据库查询结果为空则直接返回
-            if (null == dbResult) {
-                return null;
-            }
-            // 写入缓存
-            redisService.setValue(cacheKey, dbResult);
-            return dbResult;
-        } else {
-            // 缓存未开启，直接从数据库获取
-            logger.warn("缓存降级 {}", cacheKey);
-            return dbFallback.get();
-        }
+        return getFromCacheOrDb(DEFAULT_REGION, cacheKey, dbFallback, 0);
     }
 
     /**
      * 通用缓存处理方法（带过期时间）
-     * 优先从缓存获取，缓存不存在则从数据库获取并写入缓存
      *
      * @param cacheKey      缓存键
      * @param dbFallback    数据库查询函数
@@ -67,23 +54,24 @@ public abstract class AbstractRepository {
      * @return              查询结果
      */
     protected <T> T getFromCacheOrDb(String cacheKey, Supplier<T> dbFallback, long expired) {
+        return getFromCacheOrDb(DEFAULT_REGION, cacheKey, dbFallback, expired);
+    }
+
+    /**
+     * 通用缓存处理方法（带缓存区域、过期时间）
+     * 本地缓存 -> Redis -> 数据库；同一 key 单节点只查询一次数据库，不存在的结果短时缓存
+     *
+     * @param region        缓存区域，按区域统计命中率
+     * @param cacheKey      缓存键
+     * @param dbFallback    数据库查询函数
+     * @param expired       过期时间，小于等于0不过期
+     * @param <T>           返回类型
+     * @return              查询结果
+     */
+    protected <T> T getFromCacheOrDb(String region, String cacheKey, Supplier<T> dbFallback, long expired) {
         // 判断是否开启缓存
         if (dccService.isCacheOpenSwitch()) {
-            // 从缓存获取
-            T cacheResult = redisService.getValue(cacheKey);
-            // 缓存存在则直接返回
-            if (null != cacheResult) {
-                return cacheResult;
-            }
-            // 缓存不存在则从数据库获取
-            T dbResult = dbFallback.get();
-            // 数据库查询结果为空则直接返回
-            if (null == dbResult) {
-                return null;
-            }
-            // 写入缓存（带过期时间）
-            redisService.setValue(cacheKey, dbResult, expired);
-            return dbResult;
+            return twoLevelCache.get(region, cacheKey, dbFallback, expired);
         } else {
             // 缓存未开启，直接从数据库获取
             logger.warn("缓存降级 {}", cacheKey);
@@ -91,4 +79,45 @@ public abstract class AbstractRepository {
         }
     }
 
+    /**
+     * 通用缓存批量处理方法（带过期时间）
+     *
+     * @param keys          业务键
+     * @param cacheKey      业务键 -> 缓存键
+     * @param dbFallback    数据库批量查询函数，入参为未命中的业务键，返回业务键 -> 值
+     * @param expired       过期时间
+     * @param <K>           业务键类型
+     * @param <T>           返回类型
+     * @return              存在的业务键 -> 值
+     */
+    protected <K, T> Map<K, T> getFromCacheOrDbBatch(Collection<K> keys, Function<K, String> cacheKey, Function<Set<K>, Map<K, T>> dbFallback, long expired) {
+        return getFromCacheOrDbBatch(DEFAULT_REGION, keys, cacheKey, dbFallback, expired);
+    }
+
+    /**
+     * 通用缓存批量处理方法（带缓存区域、过期时间）
+     * 本地缓存命中的直接返回，其余一次管道读取 Redis，未命中的 key 一次交给数据库查询，查询结果一次管道写入缓存
+     *
+     * @param region        缓存区域，按区域统计命中率
+     * @param keys          业务键
+     * @param cacheKey      业务键 -> 缓存键
+     * @param dbFallback    数据库批量查询函数，入参为未命中的业务键，返回业务键 -> 值
+     * @param expired       过期时间
+     * @param <K>           业务键类型
+     * @param <T>           返回类型
+     * @return              存在的业务键 -> 值
+     */
+    protected <K, T> Map<K, T> getFromCacheOrDbBatch(String region, Collection<K> keys, Function<K, String> cacheKey, Function<Set<K>, Map<K, T>> dbFallback, long expired) {
+        if (null == keys || keys.isEmpty()) return new HashMap<>();
+
+        // 缓存未开启，直接从数据库获取
+        if (!dccService.isCacheOpenSwitch()) {
+            logger.warn("缓存降级 {}", keys);
+            Map<K, T> dbResult = dbFallback.apply(new LinkedHashSet<>(keys));
+            return null == dbResult ? new HashMap<>() : dbResult;
+        }
+
+        return twoLevelCache.getAll(region, keys, cacheKey, dbFallback, expired);
+    }
+
 }
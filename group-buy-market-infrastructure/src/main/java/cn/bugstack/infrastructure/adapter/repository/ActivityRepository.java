@@ -1,13 +1,24 @@
 package cn.bugstack.infrastructure.adapter.repository;
 
 import cn.bugstack.domain.activity.adapter.repository.IActivityRepository;
+import cn.bugstack.domain.activity.model.entity.ActivityPrewarmEntity;
 import cn.bugstack.domain.activity.model.entity.UserGroupBuyOrderDetailEntity;
 import cn.bugstack.domain.activity.model.valobj.*;
+import cn.bugstack.infrastructure.adapter.repository.stock.ActivityStockStripes;
+import cn.bugstack.infrastructure.adapter.repository.tag.CrowdTagBitmapLayout;
+import cn.bugstack.infrastructure.cache.CacheInvalidationBus;
 import cn.bugstack.infrastructure.dao.*;
 import cn.bugstack.infrastructure.dao.po.*;
 import cn.bugstack.infrastructure.dcc.DCCService;
+import cn.bugstack.infrastructure.loader.RequestDataLoader;
 import cn.bugstack.infrastructure.redis.IRedisService;
-import org.redisson.api.RBitSet;
+import cn.bugstack.infrastructure.snapshot.ActivitySnapshot;
+import cn.bugstack.infrastructure.snapshot.ActivitySnapshotRegistry;
+import cn.bugstack.infrastructure.snapshot.CrowdTagReplicaRegistry;
+import org.apache.commons.lang3.StringUtils;
+import org.redisson.api.RBatch;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 
 import javax.annotation.Resource;
@@ -22,13 +33,14 @@ import java.util.stream.Collectors;
 @Repository
 public class ActivityRepository extends AbstractRepository implements IActivityRepository {
 
-    @Resource
-    private IGroupBuyActivityDao groupBuyActivityDao;
-    @Resource
-    private IGroupBuyDiscountDao groupBuyDiscountDao;
+    /** 请求级数据加载器命名空间；队伍明细，锁单、结算、退单时由交易仓储失效 */
+    static final String LOADER_TEAM_ORDER = "team_order";
+
     @Resource
     private ISkuDao skuDao;
     @Resource
+    private IGroupBuyActivityDao groupBuyActivityDao;
+    @Resource
     private ISCSkuActivityDao skuActivityDao;
     @Resource
     private IRedisService redisService;
@@ -38,55 +50,56 @@ public class ActivityRepository extends AbstractRepository implements IActivityR
     private IGroupBuyOrderDao groupBuyOrderDao;
     @Resource
     private IGroupBuyOrderListDao groupBuyOrderListDao;
+    @Resource
+    private ActivitySnapshotRegistry activitySnapshotRegistry;
+    @Resource
+    private CrowdTagReplicaRegistry crowdTagReplicaRegistry;
+    @Resource
+    private CrowdTagBitmapLayout crowdTagBitmapLayout;
+    @Resource
+    private RedissonClient redissonClient;
+    @Resource
+    private ActivityStockStripes activityStockStripes;
+    @Resource
+    private CacheInvalidationBus cacheInvalidationBus;
+
+    /** 商品、渠道商品缓存过期时间（毫秒）；须大于活动预热提前量 */
+    @Value("${group-buy-market.activity-prewarm.goods-cache-expire-millis:1800000}")
+    private long goodsCacheExpireMillis;
 
     @Override
     public GroupBuyActivityDiscountVO queryGroupBuyActivityDiscountVO(Long activityId) {
-        // 优先从缓存获取&写缓存，注意如果实现了后台配置，在更新时要更库，删缓存。
-        GroupBuyActivity groupBuyActivityRes = getFromCacheOrDb(GroupBuyActivity.cacheRedisKey(activityId),
-                () -> groupBuyActivityDao.queryValidGroupBuyActivityId(activityId));
-        if (null == groupBuyActivityRes) return null;
-
-        String discountId = groupBuyActivityRes.getDiscountId();
-
-        // 优先从缓存获取&写缓存
-        GroupBuyDiscount groupBuyDiscountRes = getFromCacheOrDb(GroupBuyDiscount.cacheRedisKey(discountId),
-                () -> groupBuyDiscountDao.queryGroupBuyActivityDiscountByDiscountId(discountId));
-        if (null == groupBuyDiscountRes) return null;
-
-        GroupBuyActivityDiscountVO.GroupBuyDiscount groupBuyDiscount = GroupBuyActivityDiscountVO.GroupBuyDiscount.builder()
-                .discountName(groupBuyDiscountRes.getDiscountName())
-                .discountDesc(groupBuyDiscountRes.getDiscountDesc())
-                .discountType(DiscountTypeEnum.get(groupBuyDiscountRes.getDiscountType()))
-                .marketPlan(groupBuyDiscountRes.getMarketPlan())
-                .marketExpr(groupBuyDiscountRes.getMarketExpr())
-                .tagId(groupBuyDiscountRes.getTagId())
-                .build();
-
-        return GroupBuyActivityDiscountVO.builder()
-                .activityId(groupBuyActivityRes.getActivityId())
-                .activityName(groupBuyActivityRes.getActivityName())
-                .groupBuyDiscount(groupBuyDiscount)
-                .groupType(groupBuyActivityRes.getGroupType())
-                .takeLimitCount(groupBuyActivityRes.getTakeLimitCount())
-                .target(groupBuyActivityRes.getTarget())
-                .validTime(groupBuyActivityRes.getValidTime())
-                .status(groupBuyActivityRes.getStatus())
-                .startTime(groupBuyActivityRes.getStartTime())
-                .endTime(groupBuyActivityRes.getEndTime())
-                .tagId(groupBuyActivityRes.getTagId())
-                .tagScope(groupBuyActivityRes.getTagScope())
-                .build();
+        // 进程内活动快照；活动、折扣、人群标签范围已预解析，配置变更时广播刷新
+        ActivitySnapshot activitySnapshot = activitySnapshotRegistry.get(activityId);
+        if (null == activitySnapshot) return null;
+        return activitySnapshot.getGroupBuyActivityDiscountVO();
     }
 
     @Override
     public SkuVO querySkuByGoodsId(String goodsId) {
-        Sku sku = skuDao.querySkuByGoodsId(goodsId);
-        if (null == sku) return null;
-        return SkuVO.builder()
-                .goodsId(sku.getGoodsId())
-                .goodsName(sku.getGoodsName())
-                .originalPrice(sku.getOriginalPrice())
-                .build();
+        return RequestDataLoader.load("sku", goodsId, () -> {
+            RequestDataLoader.recordRedis();
+            Sku sku = getFromCacheOrDb("sku", Sku.cacheRedisKey(goodsId), () -> skuDao.querySkuByGoodsId(goodsId), goodsCacheExpireMillis);
+            if (null == sku) return null;
+            return buildSkuVO(sku);
+        });
+    }
+
+    @Override
+    public Map<String, SkuVO> querySkuByGoodsIds(Set<String> goodsIds) {
+        // 与单个查询共用请求级记忆，已加载的商品直接命中
+        return RequestDataLoader.loadMany("sku", goodsIds, ids -> {
+            RequestDataLoader.recordRedis();
+            Map<String, Sku> skuMap = getFromCacheOrDbBatch("sku", ids, Sku::cacheRedisKey, missIds -> {
+                List<Sku> skus = skuDao.querySkuByGoodsIds(missIds);
+                if (null == skus || skus.isEmpty()) return Collections.emptyMap();
+                return skus.stream().collect(Collectors.toMap(Sku::getGoodsId, sku -> sku, (a, b) -> a));
+            }, goodsCacheExpireMillis);
+
+            Map<String, SkuVO> skuVOMap = new HashMap<>();
+            skuMap.forEach((goodsId, sku) -> skuVOMap.put(goodsId, buildSkuVO(sku)));
+            return skuVOMap;
+        });
     }
 
     @Override
@@ -96,23 +109,62 @@ public class ActivityRepository extends AbstractRepository implements IActivityR
         scSkuActivityReq.setChannel(channel);
         scSkuActivityReq.setGoodsId(goodsId);
 
-        SCSkuActivity scSkuActivity = skuActivityDao.querySCSkuActivityBySCGoodsId(scSkuActivityReq);
-        if (null == scSkuActivity) return null;
+        return RequestDataLoader.load("sc_sku_activity", source + "_" + channel + "_" + goodsId, () -> {
+            RequestDataLoader.recordRedis();
+            SCSkuActivity scSkuActivity = getFromCacheOrDb("sc_sku_activity", SCSkuActivity.cacheRedisKey(source, channel, goodsId),
+                    () -> skuActivityDao.querySCSkuActivityBySCGoodsId(scSkuActivityReq), goodsCacheExpireMillis);
+            if (null == scSkuActivity) return null;
 
-        return SCSkuActivityVO.builder()
-                .source(scSkuActivity.getSource())
-                .chanel(scSkuActivity.getChannel())
-                .activityId(scSkuActivity.getActivityId())
-                .goodsId(scSkuActivity.getGoodsId())
-                .build();
+            return buildSCSkuActivityVO(scSkuActivity);
+        });
+    }
+
+    @Override
+    public Map<String, SCSkuActivityVO> querySCSkuActivityBySCGoodsIds(String source, String channel, Set<String> goodsIds) {
+        // 请求级记忆键与单个查询一致：source_channel_goodsId
+        String keyPrefix = source + "_" + channel + "_";
+        Set<String> keys = new LinkedHashSet<>();
+        for (String goodsId : goodsIds) {
+            keys.add(keyPrefix + goodsId);
+        }
+
+        Map<String, SCSkuActivityVO> loaded = RequestDataLoader.loadMany("sc_sku_activity", keys, missKeys -> {
+            RequestDataLoader.recordRedis();
+            Set<String> missGoodsIds = missKeys.stream().map(key -> key.substring(keyPrefix.length())).collect(Collectors.toCollection(LinkedHashSet::new));
+            Map<String, SCSkuActivity> scSkuActivityMap = getFromCacheOrDbBatch("sc_sku_activity", missGoodsIds, goodsId -> SCSkuActivity.cacheRedisKey(source, channel, goodsId), ids -> {
+                List<SCSkuActivity> scSkuActivities = skuActivityDao.querySCSkuActivityBySCGoodsIds(source, channel, ids);
+                if (null == scSkuActivities || scSkuActivities.isEmpty()) return Collections.emptyMap();
+                return scSkuActivities.stream().collect(Collectors.toMap(SCSkuActivity::getGoodsId, scSkuActivity -> scSkuActivity, (a, b) -> a));
+            }, goodsCacheExpireMillis);
+
+            Map<String, SCSkuActivityVO> scSkuActivityVOMap = new HashMap<>();
+            scSkuActivityMap.forEach((goodsId, scSkuActivity) -> scSkuActivityVOMap.put(keyPrefix + goodsId, buildSCSkuActivityVO(scSkuActivity)));
+            return scSkuActivityVOMap;
+        });
+
+        Map<String, SCSkuActivityVO> result = new HashMap<>();
+        loaded.forEach((key, scSkuActivityVO) -> result.put(key.substring(keyPrefix.length()), scSkuActivityVO));
+        return result;
     }
 
     @Override
     public boolean isTagCrowdRange(String tagId, String userId) {
-        RBitSet bitSet = redisService.getBitSet(tagId);
-        if (!bitSet.isExists()) return true;
-        // 判断用户是否存在人群中
-        return bitSet.get(redisService.getIndexFromUserId(userId));
+        // 本地副本就绪时内存判断；字典布局下未分配索引的用户 index 为 null
+        Integer index = crowdTagBitmapLayout.queryIndex(userId);
+        Boolean within = crowdTagReplicaRegistry.isTagCrowdRange(tagId, index);
+        if (null != within) return within;
+
+        return RequestDataLoader.load("tag_crowd", tagId + "_" + userId, () -> {
+            // 人群标签是否存在、用户是否存在人群中，一次管道往返
+            String bitmapKey = crowdTagBitmapLayout.bitmapKey(tagId);
+            RBatch batch = redissonClient.createBatch();
+            batch.getBitSet(bitmapKey).isExistsAsync();
+            if (null != index) batch.getBitSet(bitmapKey).getAsync(index);
+            List<?> responses = batch.execute().getResponses();
+            RequestDataLoader.recordRedis();
+            if (!Boolean.TRUE.equals(responses.get(0))) return true;
+            return null != index && Boolean.TRUE.equals(responses.get(1));
+        });
     }
 
     @Override
@@ -141,12 +193,9 @@ public class ActivityRepository extends AbstractRepository implements IActivityR
                 .filter(teamId -> teamId != null && !teamId.isEmpty()) // 过滤非空和非空字符串
                 .collect(Collectors.toSet());
 
-        // 3. 查询队伍明细，组装Map结构
-        List<GroupBuyOrder> groupBuyOrders = groupBuyOrderDao.queryGroupBuyProgressByTeamIds(teamIds);
-        if (null == groupBuyOrders || groupBuyOrders.isEmpty()) return null;
-
-        Map<String, GroupBuyOrder> groupBuyOrderMap = groupBuyOrders.stream()
-                .collect(Collectors.toMap(GroupBuyOrder::getTeamId, order -> order));
+        // 3. 查询队伍明细，组装Map结构；同一请求内已查询过的队伍不再重复查询
+        Map<String, GroupBuyOrder> groupBuyOrderMap = queryGroupBuyProgressByTeamIds(teamIds);
+        if (groupBuyOrderMap.isEmpty()) return null;
 
         // 4. 转换数据
         List<UserGroupBuyOrderDetailEntity> userGroupBuyOrderDetailEntities = new ArrayList<>();
@@ -197,12 +246,9 @@ public class ActivityRepository extends AbstractRepository implements IActivityR
                 .filter(teamId -> teamId != null && !teamId.isEmpty()) // 过滤非空和非空字符串
                 .collect(Collectors.toSet());
 
-        // 3. 查询队伍明细，组装Map结构
-        List<GroupBuyOrder> groupBuyOrders = groupBuyOrderDao.queryGroupBuyProgressByTeamIds(teamIds);
-        if (null == groupBuyOrders || groupBuyOrders.isEmpty()) return null;
-
-        Map<String, GroupBuyOrder> groupBuyOrderMap = groupBuyOrders.stream()
-                .collect(Collectors.toMap(GroupBuyOrder::getTeamId, order -> order));
+        // 3. 查询队伍明细，组装Map结构；同一请求内已查询过的队伍不再重复查询
+        Map<String, GroupBuyOrder> groupBuyOrderMap = queryGroupBuyProgressByTeamIds(teamIds);
+        if (groupBuyOrderMap.isEmpty()) return null;
 
         // 4. 转换数据
         List<UserGroupBuyOrderDetailEntity> userGroupBuyOrderDetailEntities = new ArrayList<>();
@@ -256,4 +302,108 @@ public class ActivityRepository extends AbstractRepository implements IActivityR
                 .build();
     }
 
-}
\ No newline at end of file
+    @Override
+    public List<ActivityPrewarmEntity> queryUpcomingActivityList(long leadSeconds) {
+        long now = System.currentTimeMillis();
+        List<GroupBuyActivity> groupBuyActivities = groupBuyActivityDao.queryUpcomingGroupBuyActivityList(new Date(now), new Date(now + leadSeconds * 1000));
+        if (null == groupBuyActivities || groupBuyActivities.isEmpty()) return Collections.emptyList();
+
+        List<ActivityPrewarmEntity> activityPrewarmEntities = new ArrayList<>(groupBuyActivities.size());
+        for (GroupBuyActivity groupBuyActivity : groupBuyActivities) {
+            List<SCSkuActivity> scSkuActivities = skuActivityDao.querySCSkuActivityListByActivityId(groupBuyActivity.getActivityId());
+            List<SCSkuActivityVO> scSkuActivityList = null == scSkuActivities ? Collections.emptyList() : scSkuActivities.stream()
+                    .map(scSkuActivity -> SCSkuActivityVO.builder()
+                            .source(scSkuActivity.getSource())
+                            .chanel(scSkuActivity.getChannel())
+                            .activityId(scSkuActivity.getActivityId())
+                            .goodsId(scSkuActivity.getGoodsId())
+                            .build())
+                    .collect(Collectors.toList());
+
+            activityPrewarmEntities.add(ActivityPrewarmEntity.builder()
+                    .activityId(groupBuyActivity.getActivityId())
+                    .startTime(groupBuyActivity.getStartTime())
+                    .endTime(groupBuyActivity.getEndTime())
+                    .scSkuActivityList(scSkuActivityList)
+                    .build());
+        }
+        return activityPrewarmEntities;
+    }
+
+    @Override
+    public void prewarmActivity(ActivityPrewarmEntity activityPrewarmEntity) {
+        Long activityId = activityPrewarmEntity.getActivityId();
+
+        // 1. 本节点活动快照重新加载，取开始前的最新配置
+        activitySnapshotRegistry.refresh(activityId);
+
+        // 2. 商品、渠道商品写入 Redis 缓存
+        if (null != activityPrewarmEntity.getScSkuActivityList()) {
+            for (SCSkuActivityVO scSkuActivityVO : activityPrewarmEntity.getScSkuActivityList()) {
+                querySCSkuActivityBySCGoodsId(scSkuActivityVO.getSource(), scSkuActivityVO.getChanel(), scSkuActivityVO.getGoodsId());
+                querySkuByGoodsId(scSkuActivityVO.getGoodsId());
+            }
+        }
+    }
+
+    @Override
+    public void prewarmActivityStock(Long activityId) {
+        // 初始化活动总名额分段 key
+        activityStockStripes.warmUp(activityId);
+    }
+
+    @Override
+    public void invalidateCache(CacheEntityEnumVO entity, String id) {
+        String prefix;
+        switch (entity) {
+            case SKU:
+                prefix = Sku.CACHE_KEY_PREFIX;
+                break;
+            case SC_SKU_ACTIVITY:
+                prefix = SCSkuActivity.CACHE_KEY_PREFIX;
+                break;
+            case ACTIVITY:
+                prefix = GroupBuyActivity.CACHE_KEY_PREFIX;
+                break;
+            case DISCOUNT:
+                prefix = GroupBuyDiscount.CACHE_KEY_PREFIX;
+                break;
+            default:
+                throw new IllegalArgumentException("unknown cache entity " + entity);
+        }
+
+        if (StringUtils.isBlank(id)) {
+            cacheInvalidationBus.invalidatePrefix(prefix);
+        } else {
+            cacheInvalidationBus.invalidate(prefix + id);
+        }
+    }
+
+    private Map<String, GroupBuyOrder> queryGroupBuyProgressByTeamIds(Set<String> teamIds) {
+        return RequestDataLoader.loadMany(LOADER_TEAM_ORDER, teamIds, ids -> {
+            List<GroupBuyOrder> groupBuyOrders = groupBuyOrderDao.queryGroupBuyProgressByTeamIds(ids);
+            if (null == groupBuyOrders || groupBuyOrders.isEmpty()) return Collections.emptyMap();
+            return groupBuyOrders.stream()
+                    .collect(Collectors.toMap(GroupBuyOrder::getTeamId, order -> order));
+        });
+    }
+
+    private SkuVO buildSkuVO(Sku sku) {
+        return SkuVO.builder()
+                .goodsId(sku.getGoodsId())
+                .goodsName(sku.getGoodsName())
+                .originalPrice(sku.getOriginalPrice())
+                .priceVersion(null == sku.getUpdateTime() ? 0 : sku.getUpdateTime().getTime())
+                .build();
+    }
+
+    private SCSkuActivityVO buildSCSkuActivityVO(SCSkuActivity scSkuActivity) {
+        return SCSkuActivityVO.builder()
+                .source(scSkuActivity.getSource())
+                .chanel(scSkuActivity.getChannel())
+                .activityId(scSkuActivity.getActivityId())
+                .goodsId(scSkuActivity.getGoodsId())
+                .build();
+    }
+
+}
@@ -2,10 +2,10 @@ package cn.bugstack.infrastructure.adapter.repository;
 
 import cn.bugstack.domain.activity.adapter.repository.IRankRedisRepository;
 import cn.bugstack.domain.activity.model.entity.RankItemEntity;
+import cn.bugstack.infrastructure.adapter.repository.lua.RankLuaExecutor;
 import lombok.extern.slf4j.Slf4j;
 import org.redisson.api.RBucket;
 import org.redisson.api.RScoredSortedSet;
-import org.redisson.api.RScript;
 import org.redisson.api.RedissonClient;
 import org.redisson.client.codec.StringCodec;
 import org.redisson.client.protocol.ScoredEntry;
@@ -15,7 +15,6 @@ import org.springframework.stereotype.Repository;
 import javax.annotation.Resource;
 import java.time.Duration;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
@@ -35,6 +34,9 @@ public class RankRedisRepository extends AbstractRepository implements IRankRedi
     @Resource
     private RedissonClient redissonClient;
 
+    @Resource
+    private RankLuaExecutor rankLuaExecutor;
+
     @Override
     public List<RankItemEntity> queryTopN(String key, int topN) {
         if (topN <= 0) {
@@ -167,36 +169,15 @@ public class RankRedisRepository extends AbstractRepository implements IRankRedi
 
     /**
      * 修改 2: 带元数据更新的累加 (对应原 Lua 脚本执行)
-     * 彻底解决 "value is not a valid float" 报错
+     * 彻底解决 "value is not a valid float" 报错；脚本由注册表预加载，EVALSHA 执行
      */
     @Override
     public void incrWithMeta(String zsetKey, String metaUpdateKey, String goodsId, long delta, long ttlSeconds, long updateTimeMillis) {
         // Lua 脚本：
         // 1. ZINCRBY 增加销量
-        // 2. EXPIRE 设置榜单过期时间
-        // 3. SET 更新元数据时间
-        // 4. EXPIRE 设置元数据过期时间
-        String luaScript =
-                "redis.call('ZINCRBY', KEYS[1], ARGV[1], ARGV[2]); " +
-                        "redis.call('EXPIRE', KEYS[1], ARGV[3]); " +
-                        "redis.call('SET', KEYS[2], ARGV[4]); " +
-                        "redis.call('EXPIRE', KEYS[2], ARGV[3]); ";
-
-        RScript script = redissonClient.getScript(StringCodec.INSTANCE); // 指定使用 String 编码，防止乱码
-
-        // 执行脚本
-        // keys: [zsetKey, metaUpdateKey]
-        // values: [delta, goodsId, ttlSeconds, updateTimeMillis]
-        script.eval(
-                RScript.Mode.READ_WRITE,
-                luaScript,
-                RScript.ReturnType.VALUE,
-                Arrays.asList(zsetKey, metaUpdateKey), // KEYS
-                String.valueOf(delta),                 // ARGV[1]
-                goodsId,                               // ARGV[2]
-                String.valueOf(ttlSeconds),            // ARGV[3]
-                String.valueOf(updateTimeMillis)       // ARGV[4]
-        );
+        // 2. SET 更新元数据时间
+        // 3. EXPIRE 设置榜单、元数据过期时间
+        rankLuaExecutor.incrWithMeta(zsetKey, metaUpdateKey, goodsId, delta, ttlSeconds, updateTimeMillis);
     }
 
 
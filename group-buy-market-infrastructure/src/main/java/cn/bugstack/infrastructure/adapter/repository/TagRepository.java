@@ -2,6 +2,12 @@ package cn.bugstack.infrastructure.adapter.repository;
 
 import cn.bugstack.domain.tag.adapter.repository.ITagRepository;
 import cn.bugstack.domain.tag.model.entity.CrowdTagsJobEntity;
+import cn.bugstack.domain.tag.model.valobj.CrowdTagsExpressionVO;
+import cn.bugstack.domain.tag.model.valobj.CrowdTagsJobStatusEnumVO;
+import cn.bugstack.domain.tag.model.valobj.CrowdTagsUserBatchVO;
+import cn.bugstack.infrastructure.adapter.repository.tag.CrowdTagBitmapLayout;
+import cn.bugstack.infrastructure.adapter.repository.tag.CrowdTagsExpressionBitmap;
+import cn.bugstack.infrastructure.adapter.repository.tag.UserIndexDictionary;
 import cn.bugstack.infrastructure.dao.ICrowdTagsDao;
 import cn.bugstack.infrastructure.dao.ICrowdTagsDetailDao;
 import cn.bugstack.infrastructure.dao.ICrowdTagsJobDao;
@@ -9,13 +15,34 @@ import cn.bugstack.infrastructure.dao.po.CrowdTags;
 import cn.bugstack.infrastructure.dao.po.CrowdTagsDetail;
 import cn.bugstack.infrastructure.dao.po.CrowdTagsJob;
 import cn.bugstack.infrastructure.redis.IRedisService;
+import cn.bugstack.infrastructure.snapshot.CrowdTagReplicaRegistry;
+import cn.bugstack.types.enums.ResponseCode;
+import cn.bugstack.types.exception.AppException;
+import com.google.common.collect.Lists;
 import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBatch;
 import org.redisson.api.RBitSet;
+import org.redisson.api.RBitSetAsync;
+import org.redisson.api.RLock;
+import org.redisson.api.RSet;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
  * @author Fuzhengwei bugstack.cn @小傅哥
@@ -26,6 +53,11 @@ import javax.annotation.Resource;
 @Repository
 public class TagRepository implements ITagRepository {
 
+    /** 已迁移到字典布局的人群标签 */
+    private static final String MIGRATED_TAG_IDS_KEY = "crowd_tag_dense_migrated";
+    /** 组合人群计算锁；同一组合人群的保存、对账串行执行 */
+    private static final String EXPRESSION_LOCK_PREFIX = "group_buy_market_crowd_tags_expression_lock_";
+
     @Resource
     private ICrowdTagsDao crowdTagsDao;
     @Resource
@@ -35,6 +67,31 @@ public class TagRepository implements ITagRepository {
 
     @Resource
     private IRedisService redisService;
+    @Resource
+    private CrowdTagReplicaRegistry crowdTagReplicaRegistry;
+    @Resource
+    private CrowdTagBitmapLayout crowdTagBitmapLayout;
+    @Resource
+    private UserIndexDictionary userIndexDictionary;
+    @Resource
+    private RedissonClient redissonClient;
+    @Resource
+    private PlatformTransactionManager transactionManager;
+
+    /** 迁移时每页读取的明细条数 */
+    @Value("${group-buy-market.crowd-tag.migrate-page-size:1000}")
+    private int migratePageSize;
+    /** 组合人群表达式本地缓存时间（秒） */
+    @Value("${group-buy-market.crowd-tag.expression-cache-seconds:30}")
+    private long expressionCacheSeconds;
+
+    private TransactionTemplate transactionTemplate;
+    private volatile CachedExpressions cachedExpressions;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
 
     @Override
     public CrowdTagsJobEntity queryCrowdTagsJobEntity(String tagId, String batchId) {
@@ -46,10 +103,16 @@ public class TagRepository implements ITagRepository {
         if (null == crowdTagsJobRes) return null;
 
         return CrowdTagsJobEntity.builder()
+                .tagId(crowdTagsJobRes.getTagId())
+                .batchId(crowdTagsJobRes.getBatchId())
                 .tagType(crowdTagsJobRes.getTagType())
                 .tagRule(crowdTagsJobRes.getTagRule())
                 .statStartTime(crowdTagsJobRes.getStatStartTime())
                 .statEndTime(crowdTagsJobRes.getStatEndTime())
+                .status(CrowdTagsJobStatusEnumVO.valueOf(crowdTagsJobRes.getStatus()))
+                .checkpoint(crowdTagsJobRes.getCheckpoint())
+                .processedCount(crowdTagsJobRes.getProcessedCount())
+                .insertedCount(crowdTagsJobRes.getInsertedCount())
                 .build();
     }
 
@@ -63,9 +126,19 @@ public class TagRepository implements ITagRepository {
 
             crowdTagsDetailDao.addCrowdTagsUserId(crowdTagsDetailReq);
 
-            // 获取BitSet
-            RBitSet bitSet = redisService.getBitSet(tagId);
-            bitSet.set(redisService.getIndexFromUserId(userId), true);
+            // 字典布局位图；未开启字典布局时同时写入哈希布局位图，迁移完成前判断仍读取哈希布局
+            RBitSet denseBitSet = redisService.getBitSet(crowdTagBitmapLayout.denseBitmapKey(tagId));
+            denseBitSet.set(userIndexDictionary.assignIndex(userId), true);
+            if (!crowdTagBitmapLayout.isDense()) {
+                RBitSet bitSet = redisService.getBitSet(tagId);
+                bitSet.set(redisService.getIndexFromUserId(userId), true);
+            }
+
+            // 增量更新引用本标签的组合人群
+            refreshCrowdTagsExpressions(tagId, Collections.singletonList(userId));
+
+            // 事务提交后广播增量，各节点副本构建时读取到的明细不遗漏已广播的用户
+            executeAfterCommit(() -> crowdTagReplicaRegistry.publishAdd(tagId, userId));
         } catch (DuplicateKeyException ignore) {
             // 忽略唯一索引冲突
         } catch (Exception e) {
@@ -74,6 +147,19 @@ public class TagRepository implements ITagRepository {
         }
     }
 
+    private void executeAfterCommit(Runnable runnable) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            runnable.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                runnable.run();
+            }
+        });
+    }
+
     @Override
     public void updateCrowdTagsStatistics(String tagId, int count) {
         CrowdTags crowdTagsReq = new CrowdTags();
@@ -83,4 +169,337 @@ public class TagRepository implements ITagRepository {
         crowdTagsDao.updateCrowdTagsStatistics(crowdTagsReq);
     }
 
+    @Override
+    public void resetCrowdTagsJob(String tagId, String batchId) {
+        CrowdTagsJob crowdTagsJobReq = new CrowdTagsJob();
+        crowdTagsJobReq.setTagId(tagId);
+        crowdTagsJobReq.setBatchId(batchId);
+
+        crowdTagsJobDao.resetCrowdTagsJob(crowdTagsJobReq);
+    }
+
+    @Override
+    public void updateCrowdTagsJobStatus(String tagId, String batchId, CrowdTagsJobStatusEnumVO status) {
+        CrowdTagsJob crowdTagsJobReq = new CrowdTagsJob();
+        crowdTagsJobReq.setTagId(tagId);
+        crowdTagsJobReq.setBatchId(batchId);
+        crowdTagsJobReq.setStatus(status.getCode());
+
+        crowdTagsJobDao.updateCrowdTagsJobStatus(crowdTagsJobReq);
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public int saveCrowdTagsUserBatch(String tagId, String batchId, CrowdTagsUserBatchVO crowdTagsUserBatchVO) {
+        List<String> userIds = crowdTagsUserBatchVO.getUserIds();
+
+        // 1. 明细批量写入，已存在的用户忽略；重复执行同一批次幂等
+        int insertedCount = crowdTagsDetailDao.insertIgnoreBatch(tagId, userIds);
+
+        // 2. 位图管道写入；设置位幂等，事务回滚后从断点重新执行再次写入即可
+        setCrowdTagsBitmap(tagId, userIds, true);
+
+        // 3. 增量更新引用本标签的组合人群
+        refreshCrowdTagsExpressions(tagId, userIds);
+
+        // 4. 保存断点
+        CrowdTagsJob crowdTagsJobReq = new CrowdTagsJob();
+        crowdTagsJobReq.setTagId(tagId);
+        crowdTagsJobReq.setBatchId(batchId);
+        crowdTagsJobReq.setCheckpoint(crowdTagsUserBatchVO.getCheckpoint());
+        crowdTagsJobReq.setProcessedCount((long) userIds.size());
+        crowdTagsJobReq.setInsertedCount((long) insertedCount);
+        crowdTagsJobDao.updateCrowdTagsJobCheckpoint(crowdTagsJobReq);
+
+        return insertedCount;
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public void completeCrowdTagsJob(String tagId, String batchId, long insertedCount) {
+        updateCrowdTagsStatistics(tagId, Math.toIntExact(insertedCount));
+        updateCrowdTagsJobStatus(tagId, batchId, CrowdTagsJobStatusEnumVO.COMPLETE);
+
+        // 批量写入不逐个广播增量，提交后各节点重新构建副本
+        executeAfterCommit(() -> crowdTagReplicaRegistry.publishReload(tagId));
+    }
+
+    @Override
+    public List<String> queryCrowdTagIdsToMigrate() {
+        List<String> tagIds = crowdTagsDao.queryCrowdTagIds();
+        if (null == tagIds || tagIds.isEmpty()) return Collections.emptyList();
+
+        RSet<String> migratedTagIds = redissonClient.getSet(MIGRATED_TAG_IDS_KEY, StringCodec.INSTANCE);
+        Set<String> migrated = migratedTagIds.readAll();
+        return tagIds.stream().filter(tagId -> !migrated.contains(tagId)).collect(Collectors.toList());
+    }
+
+    @Override
+    public int migrateCrowdTagsBitmap(String tagId) {
+        // 直接写入线上字典布局位图；迁移期间新写入的用户同时写入，设置位幂等，不会覆盖
+        int count = 0;
+        Long lastId = 0L;
+        while (true) {
+            List<CrowdTagsDetail> crowdTagsDetails = crowdTagsDetailDao.queryCrowdTagsDetailPage(tagId, lastId, migratePageSize);
+            if (null == crowdTagsDetails || crowdTagsDetails.isEmpty()) break;
+
+            List<String> userIds = crowdTagsDetails.stream().map(CrowdTagsDetail::getUserId).collect(Collectors.toList());
+            Map<String, Integer> indexes = userIndexDictionary.assignIndexes(userIds);
+
+            RBatch batch = redissonClient.createBatch();
+            RBitSetAsync bitSet = batch.getBitSet(crowdTagBitmapLayout.denseBitmapKey(tagId));
+            indexes.values().forEach(index -> bitSet.setAsync(index, true));
+            batch.execute();
+
+            count += crowdTagsDetails.size();
+            lastId = crowdTagsDetails.get(crowdTagsDetails.size() - 1).getId();
+            if (crowdTagsDetails.size() < migratePageSize) break;
+        }
+
+        redissonClient.getSet(MIGRATED_TAG_IDS_KEY, StringCodec.INSTANCE).add(tagId);
+        return count;
+    }
+
+    @Override
+    public Map<String, CrowdTagsExpressionVO> queryCrowdTagsExpressions() {
+        List<CrowdTags> crowdTagsList = crowdTagsDao.queryCrowdTagsExpressionList();
+        if (null == crowdTagsList || crowdTagsList.isEmpty()) return Collections.emptyMap();
+
+        Map<String, CrowdTagsExpressionVO> expressions = new HashMap<>();
+        for (CrowdTags crowdTags : crowdTagsList) {
+            expressions.put(crowdTags.getTagId(), CrowdTagsExpressionVO.parse(crowdTags.getTagExpr()));
+        }
+        return expressions;
+    }
+
+    @Override
+    public int saveCrowdTagsExpression(String tagId, CrowdTagsExpressionVO crowdTagsExpressionVO) {
+        CrowdTags crowdTagsReq = new CrowdTags();
+        crowdTagsReq.setTagId(tagId);
+        crowdTagsReq.setTagExpr(crowdTagsExpressionVO.getExpression());
+        if (1 != crowdTagsDao.updateCrowdTagsExpression(crowdTagsReq)) {
+            throw new AppException(ResponseCode.UPDATE_ZERO.getCode(), ResponseCode.UPDATE_ZERO.getInfo());
+        }
+        cachedExpressions = null;
+
+        // 同一组合人群串行计算；并发保存时后获得锁的按库中最新表达式计算
+        RLock lock = redissonClient.getLock(EXPRESSION_LOCK_PREFIX + tagId);
+        lock.lock();
+        try {
+            CrowdTagsExpressionVO latest = queryCrowdTagsExpressions().getOrDefault(tagId, crowdTagsExpressionVO);
+            int count = recomputeCrowdTagsExpression(tagId, latest).cardinality;
+
+            // 全量变更不逐个广播，各节点重新构建副本
+            crowdTagReplicaRegistry.publishReload(tagId);
+            return count;
+        } finally {
+            if (lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public int reconcileCrowdTagsExpressions() {
+        int changed = 0;
+        for (Map.Entry<String, CrowdTagsExpressionVO> entry : queryCrowdTagsExpressions().entrySet()) {
+            String tagId = entry.getKey();
+            // 正在保存的组合人群跳过，保存时会全量计算
+            RLock lock = redissonClient.getLock(EXPRESSION_LOCK_PREFIX + tagId);
+            if (!lock.tryLock()) continue;
+            try {
+                int count = recomputeCrowdTagsExpression(tagId, entry.getValue()).changed;
+                if (count > 0) {
+                    log.warn("组合人群对账修正 tagId:{} changed:{}", tagId, count);
+                    crowdTagReplicaRegistry.publishReload(tagId);
+                }
+                changed += count;
+            } catch (Exception e) {
+                log.error("组合人群对账失败 tagId:{}", tagId, e);
+            } finally {
+                if (lock.isHeldByCurrentThread()) {
+                    lock.unlock();
+                }
+            }
+        }
+        return changed;
+    }
+
+    @Override
+    public int rebuildUserIndexes() {
+        return userIndexDictionary.rebuild();
+    }
+
+    /**
+     * 全量计算组合人群；位图只保存用户索引，只对差异部分反查用户ID，按页独立事务写入
+     */
+    private ExpressionDiff recomputeCrowdTagsExpression(String tagId, CrowdTagsExpressionVO crowdTagsExpressionVO) {
+        // 1. 引用标签、组合标签当前人群，以用户索引为偏移
+        Map<String, RoaringBitmap> bitmaps = new HashMap<>();
+        for (String memberTagId : crowdTagsExpressionVO.getTagIds()) {
+            bitmaps.put(memberTagId, queryCrowdTagsBitmap(memberTagId));
+        }
+        RoaringBitmap current = queryCrowdTagsBitmap(tagId);
+
+        // 2. 位图求值，与当前人群比较得到差异
+        RoaringBitmap result = CrowdTagsExpressionBitmap.evaluate(crowdTagsExpressionVO, bitmaps::get);
+        bitmaps.clear();
+        RoaringBitmap addIndexes = RoaringBitmap.andNot(result, current);
+        RoaringBitmap removeIndexes = RoaringBitmap.andNot(current, result);
+
+        // 3. 差异按页写入
+        writeCrowdTagsIndexes(tagId, addIndexes, true);
+        writeCrowdTagsIndexes(tagId, removeIndexes, false);
+        return new ExpressionDiff(result.getCardinality(), addIndexes.getCardinality() + removeIndexes.getCardinality());
+    }
+
+    /**
+     * 组合人群表达式本地缓存；保存表达式后本节点立即失效，其他节点按缓存时间刷新，期间遗漏的增量由对账补齐
+     */
+    private Map<String, CrowdTagsExpressionVO> cachedCrowdTagsExpressions() {
+        CachedExpressions cached = cachedExpressions;
+        long now = System.currentTimeMillis();
+        if (null != cached && now - cached.loadTime < TimeUnit.SECONDS.toMillis(expressionCacheSeconds)) {
+            return cached.expressions;
+        }
+        Map<String, CrowdTagsExpressionVO> expressions = queryCrowdTagsExpressions();
+        cachedExpressions = new CachedExpressions(expressions, now);
+        return expressions;
+    }
+
+    /**
+     * 引用标签写入用户后，按用户当前所在标签重新判断组合人群；取反的标签写入用户时从组合人群移除。
+     * 并发写入同一用户的不同引用标签时，各事务看不到对方未提交的明细，可能漏判，由定时对账全量修正
+     */
+    private void refreshCrowdTagsExpressions(String tagId, List<String> userIds) {
+        for (Map.Entry<String, CrowdTagsExpressionVO> entry : cachedCrowdTagsExpressions().entrySet()) {
+            String expressionTagId = entry.getKey();
+            CrowdTagsExpressionVO crowdTagsExpressionVO = entry.getValue();
+            if (!crowdTagsExpressionVO.getTagIds().contains(tagId)) continue;
+
+            // 1. 一次查询用户在引用标签、组合标签中的明细
+            Set<String> tagIds = new HashSet<>(crowdTagsExpressionVO.getTagIds());
+            tagIds.add(expressionTagId);
+            Map<String, Set<String>> userTagIds = new HashMap<>();
+            for (CrowdTagsDetail crowdTagsDetail : crowdTagsDetailDao.queryCrowdTagsDetailByUserIds(tagIds, userIds)) {
+                userTagIds.computeIfAbsent(crowdTagsDetail.getUserId(), key -> new HashSet<>()).add(crowdTagsDetail.getTagId());
+            }
+
+            // 2. 逐个用户求值，只写入变化的用户
+            List<String> addUserIds = new ArrayList<>();
+            List<String> removeUserIds = new ArrayList<>();
+            for (String userId : new LinkedHashSet<>(userIds)) {
+                Set<String> within = userTagIds.getOrDefault(userId, Collections.emptySet());
+                boolean expected = crowdTagsExpressionVO.isWithin(within::contains);
+                if (expected && !within.contains(expressionTagId)) addUserIds.add(userId);
+                if (!expected && within.contains(expressionTagId)) removeUserIds.add(userId);
+            }
+            if (addUserIds.isEmpty() && removeUserIds.isEmpty()) continue;
+
+            writeCrowdTagsUsers(expressionTagId, addUserIds, removeUserIds);
+
+            // 单个用户变化广播增量；批量写入时提交后广播一次重新构建，不逐个用户广播
+            if (addUserIds.size() + removeUserIds.size() > 1) {
+                executeAfterCommit(() -> crowdTagReplicaRegistry.publishReload(expressionTagId));
+            } else if (!addUserIds.isEmpty()) {
+                executeAfterCommit(() -> crowdTagReplicaRegistry.publishAdd(expressionTagId, addUserIds.get(0)));
+            } else {
+                executeAfterCommit(() -> crowdTagReplicaRegistry.publishRemove(expressionTagId, removeUserIds.get(0)));
+            }
+        }
+    }
+
+    /**
+     * 读取人群标签明细为位图；只保留用户索引
+     */
+    private RoaringBitmap queryCrowdTagsBitmap(String tagId) {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        Long lastId = 0L;
+        while (true) {
+            List<CrowdTagsDetail> crowdTagsDetails = crowdTagsDetailDao.queryCrowdTagsDetailPage(tagId, lastId, migratePageSize);
+            if (null == crowdTagsDetails || crowdTagsDetails.isEmpty()) break;
+
+            List<String> pageUserIds = crowdTagsDetails.stream().map(CrowdTagsDetail::getUserId).collect(Collectors.toList());
+            userIndexDictionary.assignIndexes(pageUserIds).values().forEach(bitmap::add);
+
+            lastId = crowdTagsDetails.get(crowdTagsDetails.size() - 1).getId();
+            if (crowdTagsDetails.size() < migratePageSize) break;
+        }
+        return bitmap;
+    }
+
+    /**
+     * 按页反查用户ID后写入、移除人群用户；每页独立事务提交，中断后由对账继续
+     */
+    private void writeCrowdTagsIndexes(String tagId, RoaringBitmap userIndexes, boolean add) {
+        IntIterator iterator = userIndexes.getIntIterator();
+        List<Integer> page = new ArrayList<>(migratePageSize);
+        while (iterator.hasNext()) {
+            page.add(iterator.next());
+            if (page.size() < migratePageSize && iterator.hasNext()) continue;
+
+            List<String> userIds = new ArrayList<>(userIndexDictionary.queryUserIds(page).values());
+            transactionTemplate.executeWithoutResult(status -> writeCrowdTagsUsers(tagId,
+                    add ? userIds : Collections.<String>emptyList(),
+                    add ? Collections.<String>emptyList() : userIds));
+            page.clear();
+        }
+    }
+
+    /**
+     * 写入、移除人群用户；明细、位图分页批量处理，统计量按净变化更新
+     */
+    private void writeCrowdTagsUsers(String tagId, List<String> addUserIds, List<String> removeUserIds) {
+        int count = 0;
+        for (List<String> userIds : Lists.partition(addUserIds, migratePageSize)) {
+            count += crowdTagsDetailDao.insertIgnoreBatch(tagId, userIds);
+            setCrowdTagsBitmap(tagId, userIds, true);
+        }
+        for (List<String> userIds : Lists.partition(removeUserIds, migratePageSize)) {
+            count -= crowdTagsDetailDao.deleteBatch(tagId, userIds);
+            setCrowdTagsBitmap(tagId, userIds, false);
+        }
+        if (0 != count) updateCrowdTagsStatistics(tagId, count);
+    }
+
+    /**
+     * 管道写入位图；字典布局位图，未开启字典布局时同时写入哈希布局位图
+     */
+    private void setCrowdTagsBitmap(String tagId, List<String> userIds, boolean value) {
+        RBatch batch = redissonClient.createBatch();
+        RBitSetAsync denseBitSet = batch.getBitSet(crowdTagBitmapLayout.denseBitmapKey(tagId));
+        userIndexDictionary.assignIndexes(userIds).values().forEach(index -> denseBitSet.setAsync(index, value));
+        if (!crowdTagBitmapLayout.isDense()) {
+            RBitSetAsync bitSet = batch.getBitSet(tagId);
+            userIds.forEach(userId -> bitSet.setAsync(redisService.getIndexFromUserId(userId), value));
+        }
+        batch.execute();
+    }
+
+    private static class CachedExpressions {
+
+        private final Map<String, CrowdTagsExpressionVO> expressions;
+        private final long loadTime;
+
+        private CachedExpressions(Map<String, CrowdTagsExpressionVO> expressions, long loadTime) {
+            this.expressions = expressions;
+            this.loadTime = loadTime;
+        }
+
+    }
+
+    private static class ExpressionDiff {
+
+        /** 组合人群用户数 */
+        private final int cardinality;
+        /** 写入、移除的用户数 */
+        private final int changed;
+
+        private ExpressionDiff(int cardinality, int changed) {
+            this.cardinality = cardinality;
+            this.changed = changed;
+        }
+
+    }
+
 }
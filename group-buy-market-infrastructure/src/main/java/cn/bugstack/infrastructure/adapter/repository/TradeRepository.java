@@ -1,25 +1,36 @@
 package cn.bugstack.infrastructure.adapter.repository;
 
-import cn.bugstack.domain.trade.adapter.port.ITradePort;
+import cn.bugstack.domain.trade.adapter.port.IIdGenerator;
 import cn.bugstack.domain.trade.adapter.repository.ITradeRepository;
 import cn.bugstack.domain.trade.model.aggregate.GroupBuyOrderAggregate;
 import cn.bugstack.domain.trade.model.aggregate.GroupBuyRefundAggregate;
 import cn.bugstack.domain.trade.model.aggregate.GroupBuyTeamSettlementAggregate;
 import cn.bugstack.domain.trade.model.entity.*;
 import cn.bugstack.domain.trade.model.valobj.*;
-import cn.bugstack.infrastructure.dao.IGroupBuyActivityDao;
 import cn.bugstack.infrastructure.dao.IGroupBuyOrderDao;
 import cn.bugstack.infrastructure.dao.IGroupBuyOrderListDao;
+import cn.bugstack.infrastructure.dao.IMarketEventOutboxDao;
 import cn.bugstack.infrastructure.dao.INotifyTaskDao;
-import cn.bugstack.infrastructure.dao.po.GroupBuyActivity;
 import cn.bugstack.infrastructure.dao.po.GroupBuyOrder;
 import cn.bugstack.infrastructure.dao.po.GroupBuyOrderList;
+import cn.bugstack.infrastructure.dao.po.MarketEventOutbox;
 import cn.bugstack.infrastructure.dao.po.NotifyTask;
 import cn.bugstack.infrastructure.dcc.DCCService;
+import cn.bugstack.infrastructure.event.MarketEventOutboxRelay;
+import cn.bugstack.infrastructure.loader.RequestDataLoader;
 import cn.bugstack.infrastructure.redis.IRedisService;
+import cn.bugstack.infrastructure.snapshot.ActivitySnapshot;
+import cn.bugstack.infrastructure.snapshot.ActivitySnapshotRegistry;
+import cn.bugstack.infrastructure.snapshot.TeamFullRegistry;
+import cn.bugstack.infrastructure.adapter.repository.lua.LockOrderReserveLuaExecutor;
 import cn.bugstack.infrastructure.adapter.repository.lua.StockOccupyLuaExecutor;
+import cn.bugstack.infrastructure.adapter.repository.lua.UserTakeLuaExecutor;
+import cn.bugstack.infrastructure.adapter.repository.stock.ActivityStockStripes;
+import cn.bugstack.infrastructure.adapter.repository.writer.GroupBuyOrderLockWriter;
+import cn.bugstack.infrastructure.adapter.repository.writer.LockOrderCommand;
+import cn.bugstack.infrastructure.adapter.repository.writer.LockOrderWriteBehindProcessor;
+import cn.bugstack.infrastructure.adapter.repository.writer.TeamLockCountCombiner;
 import cn.bugstack.types.common.Constants;
-import cn.bugstack.types.enums.ActivityStatusEnumVO;
 import cn.bugstack.types.enums.GroupBuyOrderEnumVO;
 import cn.bugstack.types.enums.ResponseCode;
 import cn.bugstack.types.event.MarketRankEvent;
@@ -27,15 +38,21 @@ import cn.bugstack.types.event.MarketRankEventType;
 import cn.bugstack.types.exception.AppException;
 import com.alibaba.fastjson2.JSON;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.RandomStringUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.redisson.api.RBatch;
+import org.redisson.api.RBucket;
+import org.redisson.api.RMap;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.annotation.Resource;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author Fuzhengwei bugstack.cn @小傅哥
@@ -46,8 +63,21 @@ import java.util.*;
 @Repository
 public class TradeRepository implements ITradeRepository {
 
-    @Resource
-    private IGroupBuyActivityDao groupBuyActivityDao;
+    /** 用户参与次数；hash count 有效参与次数、seq 累计参与序号 */
+    private static final String USER_TAKE_KEY_PREFIX = "group_buy_market_user_take_";
+    /** 外部单号幂等索引；userId_outTradeNo -> 锁单结果 */
+    private static final String OUT_TRADE_NO_KEY_PREFIX = "group_buy_market_out_trade_no_";
+    /** 外部单号在途锁；同一外部单号的并发请求串行处理 */
+    private static final String OUT_TRADE_NO_LOCK_KEY_PREFIX = "group_buy_market_out_trade_no_lock_";
+    /** 锁单结果未知的订单；orderId -> 回退预占所需信息，由对账确认 */
+    private static final String UNKNOWN_LOCK_ORDER_KEY = "group_buy_market_lock_order_unknown";
+    /** 请求级数据加载器命名空间 */
+    private static final String LOADER_MARKET_PAY_ORDER = "market_pay_order";
+    private static final String LOADER_OUT_TRADE_NO_INDEX = "out_trade_no_index";
+    private static final String LOADER_TEAM_PROGRESS = "team_progress";
+    private static final String LOADER_TEAM = "team";
+    private static final String LOADER_TEAM_GOODS_ID = "team_goods_id";
+
     @Resource
     private IGroupBuyOrderDao groupBuyOrderDao;
     @Resource
@@ -57,7 +87,7 @@ public class TradeRepository implements ITradeRepository {
     @Resource
     private DCCService dccService;
     @Resource
-    private ITradePort port;
+    private IIdGenerator idGenerator;
 
     @Value("${spring.rabbitmq.config.producer.topic_team_success.routing_key}")
     private String topic_team_success;
@@ -65,44 +95,425 @@ public class TradeRepository implements ITradeRepository {
     @Value("${spring.rabbitmq.config.producer.topic_team_refund.routing_key}")
     private String topic_team_refund;
 
+    @Value("${spring.rabbitmq.config.producer.topic_market_rank.routing_key}")
+    private String topic_market_rank;
+
     @Resource
     private IRedisService redisService;
     @Resource
+    private RedissonClient redissonClient;
+    @Resource
     private StockOccupyLuaExecutor stockOccupyLuaExecutor;
+    @Resource
+    private GroupBuyOrderLockWriter groupBuyOrderLockWriter;
+    @Resource
+    private LockOrderReserveLuaExecutor lockOrderReserveLuaExecutor;
+    @Resource
+    private UserTakeLuaExecutor userTakeLuaExecutor;
+    @Resource
+    private ActivityStockStripes activityStockStripes;
+    @Resource
+    private ActivitySnapshotRegistry activitySnapshotRegistry;
+    @Resource
+    private LockOrderWriteBehindProcessor lockOrderWriteBehindProcessor;
+    @Resource
+    private TeamLockCountCombiner teamLockCountCombiner;
+    @Resource
+    private TeamFullRegistry teamFullRegistry;
+    @Resource
+    private IMarketEventOutboxDao marketEventOutboxDao;
+    @Resource
+    private MarketEventOutboxRelay marketEventOutboxRelay;
+
+    /** 在途锁等待时间，重复请求在此期间等待首个请求完成 */
+    @Value("${group-buy-market.lock-order.out-trade-no.lock-wait-millis:3000}")
+    private long outTradeNoLockWaitMillis;
+    /** 在途锁租期，超过后自动释放 */
+    @Value("${group-buy-market.lock-order.out-trade-no.lock-lease-millis:10000}")
+    private long outTradeNoLockLeaseMillis;
+    /** 在途锁重试间隔 */
+    @Value("${group-buy-market.lock-order.out-trade-no.lock-retry-millis:50}")
+    private long outTradeNoLockRetryMillis;
+    /** 查库回填索引的过期时间（分钟） */
+    @Value("${group-buy-market.lock-order.out-trade-no.index-backfill-minutes:60}")
+    private long outTradeNoIndexBackfillMinutes;
+    /** 锁单结果未知的订单超过该时间后对账（秒），需大于锁单写入事务超时 */
+    @Value("${group-buy-market.lock-order.unknown-reconcile-grace-seconds:60}")
+    private long unknownReconcileGraceSeconds;
 
     @Override
     public MarketPayOrderEntity queryMarketPayOrderEntityByOutTradeNo(String userId, String outTradeNo) {
         GroupBuyOrderList groupBuyOrderListReq = new GroupBuyOrderList();
         groupBuyOrderListReq.setUserId(userId);
         groupBuyOrderListReq.setOutTradeNo(outTradeNo);
-        GroupBuyOrderList groupBuyOrderListRes = groupBuyOrderListDao.queryGroupBuyOrderRecordByOutTradeNo(groupBuyOrderListReq);
-        if (null == groupBuyOrderListRes) return null;
-
-        return MarketPayOrderEntity.builder()
-                .teamId(groupBuyOrderListRes.getTeamId())
-                .orderId(groupBuyOrderListRes.getOrderId())
-                .originalPrice(groupBuyOrderListRes.getOriginalPrice())
-                .deductionPrice(groupBuyOrderListRes.getDeductionPrice())
-                .payPrice(groupBuyOrderListRes.getPayPrice())
-                .tradeOrderStatusEnumVO(TradeOrderStatusEnumVO.valueOf(groupBuyOrderListRes.getStatus()))
-                .build();
+        return RequestDataLoader.load(LOADER_MARKET_PAY_ORDER, userId + Constants.UNDERLINE + outTradeNo, () -> {
+            GroupBuyOrderList groupBuyOrderListRes = groupBuyOrderListDao.queryGroupBuyOrderRecordByOutTradeNo(groupBuyOrderListReq);
+            if (null == groupBuyOrderListRes) return null;
+
+            return MarketPayOrderEntity.builder()
+                    .teamId(groupBuyOrderListRes.getTeamId())
+                    .orderId(groupBuyOrderListRes.getOrderId())
+                    .goodsId(groupBuyOrderListRes.getGoodsId())
+                    .originalPrice(groupBuyOrderListRes.getOriginalPrice())
+                    .deductionPrice(groupBuyOrderListRes.getDeductionPrice())
+                    .payPrice(groupBuyOrderListRes.getPayPrice())
+                    .tradeOrderStatusEnumVO(TradeOrderStatusEnumVO.valueOf(groupBuyOrderListRes.getStatus()))
+                    .activityStockStripe(groupBuyOrderListRes.getActivityStockStripe())
+                    .build();
+        });
     }
 
-    @Transactional(timeout = 3000)  // 优化：从500ms增加到3000ms，应对高并发场景下的数据库操作
     @Override
     public MarketPayOrderEntity lockMarketPayOrder(GroupBuyOrderAggregate groupBuyOrderAggregate) {
+        PayActivityEntity payActivityEntity = groupBuyOrderAggregate.getPayActivityEntity();
+        PayDiscountEntity payDiscountEntity = groupBuyOrderAggregate.getPayDiscountEntity();
+
+        LockOrderCommand lockOrderCommand = buildLockOrderCommand(groupBuyOrderAggregate);
+        // 写入结果未知时，领域层按订单ID对账
+        groupBuyOrderAggregate.setOrderId(lockOrderCommand.getGroupBuyOrderList().getOrderId());
+        // 构建 bizId 唯一值；活动id_用户id_参与次数累加
+        lockOrderCommand.getGroupBuyOrderList().setBizId(payActivityEntity.getActivityId() + Constants.UNDERLINE + groupBuyOrderAggregate.getUserEntity().getUserId() + Constants.UNDERLINE + (groupBuyOrderAggregate.getUserTakeOrderCount() + 1));
+
+        // 写入拼团记录；加入组队开启热点合并时同一队伍的并发请求合并为一次锁单量累加，批量锁单或开启组提交时与并发请求合并为多行写入，否则单笔事务写入
+        if (!lockOrderCommand.isNewTeam() && dccService.isTeamCombineSwitch()) {
+            teamLockCountCombiner.combine(lockOrderCommand);
+        } else if (payDiscountEntity.isBatchLock() || dccService.isGroupCommitSwitch()) {
+            groupBuyOrderLockWriter.groupCommit(lockOrderCommand);
+        } else {
+            groupBuyOrderLockWriter.write(lockOrderCommand);
+        }
+
+        String orderId = lockOrderCommand.getGroupBuyOrderList().getOrderId();
+        invalidateLoader(groupBuyOrderAggregate.getUserEntity().getUserId(), payDiscountEntity.getOutTradeNo(), lockOrderCommand.getTeamId());
+
+        MarketPayOrderEntity marketPayOrderEntity = MarketPayOrderEntity.builder()
+                .teamId(lockOrderCommand.getTeamId())
+                .orderId(orderId)
+                .goodsId(payDiscountEntity.getGoodsId())
+                .originalPrice(payDiscountEntity.getOriginalPrice())
+                .deductionPrice(payDiscountEntity.getDeductionPrice())
+                .payPrice(payDiscountEntity.getPayPrice())
+                .tradeOrderStatusEnumVO(TradeOrderStatusEnumVO.CREATE)
+                .build();
+
+        // 写入外部单号幂等索引，重复请求直接由 Redis 应答
+        try {
+            redissonClient.getBucket(generateOutTradeNoKey(groupBuyOrderAggregate.getUserEntity().getUserId(), payDiscountEntity.getOutTradeNo()), StringCodec.INSTANCE)
+                    .set(JSON.toJSONString(marketPayOrderEntity), (payActivityEntity.getValidTime() + 60) * 60L, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            log.error("写入外部单号幂等索引失败 outTradeNo:{}", payDiscountEntity.getOutTradeNo(), e);
+        }
+
+        // 拼团中事件已随拼团明细写入发件箱，提交后投递
+        marketEventOutboxRelay.submit(Collections.singletonList(lockOrderCommand.getMarketEventOutbox()));
+
+        return marketPayOrderEntity;
+    }
+
+    @Override
+    public MarketPayOrderEntity queryNoPayMarketPayOrderByOutTradeNo(String userId, String outTradeNo) {
+        // 1. 幂等索引
+        MarketPayOrderEntity indexMarketPayOrderEntity = queryOutTradeNoIndex(userId, outTradeNo);
+        if (null != indexMarketPayOrderEntity) {
+            return indexMarketPayOrderEntity;
+        }
+
+        // 2. 索引未命中（如索引上线前的订单）查库，未支付的订单回填索引
+        MarketPayOrderEntity marketPayOrderEntity = queryMarketPayOrderEntityByOutTradeNo(userId, outTradeNo);
+        if (null != marketPayOrderEntity && TradeOrderStatusEnumVO.CREATE.equals(marketPayOrderEntity.getTradeOrderStatusEnumVO())) {
+            RBucket<String> bucket = redissonClient.getBucket(generateOutTradeNoKey(userId, outTradeNo), StringCodec.INSTANCE);
+            bucket.trySet(JSON.toJSONString(marketPayOrderEntity), outTradeNoIndexBackfillMinutes, TimeUnit.MINUTES);
+        }
+        return marketPayOrderEntity;
+    }
+
+    @Override
+    public MarketPayOrderEntity queryOutTradeNoIndex(String userId, String outTradeNo) {
+        String index = RequestDataLoader.load(LOADER_OUT_TRADE_NO_INDEX, userId + Constants.UNDERLINE + outTradeNo, () -> {
+            RequestDataLoader.recordRedis();
+            return redissonClient.<String>getBucket(generateOutTradeNoKey(userId, outTradeNo), StringCodec.INSTANCE).get();
+        });
+        return StringUtils.isBlank(index) ? null : JSON.parseObject(index, MarketPayOrderEntity.class);
+    }
+
+    @Override
+    public boolean isTeamFull(String teamId) {
+        return teamFullRegistry.isFull(teamId);
+    }
+
+    @Override
+    public void markTeamFull(String teamId) {
+        teamFullRegistry.markFull(teamId);
+    }
+
+    @Override
+    public void prefetchOutTradeNoIndex(Map<String, Set<String>> userOutTradeNos) {
+        Set<String> keys = new LinkedHashSet<>();
+        userOutTradeNos.forEach((userId, outTradeNos) -> outTradeNos.forEach(outTradeNo -> keys.add(userId + Constants.UNDERLINE + outTradeNo)));
+
+        // 一次管道读取，结果记入请求级加载器，逐笔查询幂等索引时直接命中
+        RequestDataLoader.loadMany(LOADER_OUT_TRADE_NO_INDEX, keys, missKeys -> {
+            RBatch batch = redissonClient.createBatch();
+            for (String key : missKeys) {
+                batch.getBucket(OUT_TRADE_NO_KEY_PREFIX + key, StringCodec.INSTANCE).getAsync();
+            }
+            List<?> responses = batch.execute().getResponses();
+            RequestDataLoader.recordRedis();
+
+            Map<String, String> indexMap = new HashMap<>();
+            int i = 0;
+            for (String key : missKeys) {
+                Object index = responses.get(i++);
+                if (null != index) indexMap.put(key, (String) index);
+            }
+            return indexMap;
+        });
+    }
+
+    @Override
+    public String tryLockOutTradeNo(String userId, String outTradeNo) {
+        if (StringUtils.isBlank(userId) || StringUtils.isBlank(outTradeNo)) {
+            throw new AppException(ResponseCode.ILLEGAL_PARAMETER);
+        }
+
+        // SET NX PX；一次往返，不走 RLock 的 hash 重入结构和订阅等待。重复请求按固定间隔重试至等待时间
+        RBucket<String> bucket = redissonClient.getBucket(OUT_TRADE_NO_LOCK_KEY_PREFIX + userId + Constants.UNDERLINE + outTradeNo, StringCodec.INSTANCE);
+        String lockToken = UUID.randomUUID().toString();
+        long deadline = System.currentTimeMillis() + outTradeNoLockWaitMillis;
+        try {
+            while (true) {
+                RequestDataLoader.recordRedis();
+                if (bucket.trySet(lockToken, outTradeNoLockLeaseMillis, TimeUnit.MILLISECONDS)) return lockToken;
+
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) return null;
+                Thread.sleep(Math.min(outTradeNoLockRetryMillis, remaining));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    @Override
+    public void unlockOutTradeNo(String userId, String outTradeNo, String lockToken) {
+        if (null == lockToken) return;
+        try {
+            // 令牌一致才删除；租期已过、锁被其他请求持有时不释放
+            redissonClient.<String>getBucket(OUT_TRADE_NO_LOCK_KEY_PREFIX + userId + Constants.UNDERLINE + outTradeNo, StringCodec.INSTANCE)
+                    .compareAndSet(lockToken, null);
+        } catch (Exception e) {
+            // 释放失败由租期兜底
+            log.error("外部单号在途锁释放失败 userId:{} outTradeNo:{}", userId, outTradeNo, e);
+        }
+    }
+
+    @Override
+    public boolean isRedisFirstLockActivity(Long activityId) {
+        return dccService.isRedisFirstLockActivity(activityId);
+    }
+
+    @Override
+    public MarketPayOrderEntity reserveMarketPayOrder(GroupBuyOrderAggregate groupBuyOrderAggregate, Integer takeLimitCount, String teamStockKey, String recoveryTeamStockKey) {
+        UserEntity userEntity = groupBuyOrderAggregate.getUserEntity();
+        PayActivityEntity payActivityEntity = groupBuyOrderAggregate.getPayActivityEntity();
+        PayDiscountEntity payDiscountEntity = groupBuyOrderAggregate.getPayDiscountEntity();
+
+        // bizId 由异步落库时根据预占脚本生成的参与序号构建
+        LockOrderCommand lockOrderCommand = buildLockOrderCommand(groupBuyOrderAggregate);
+        String orderId = lockOrderCommand.getGroupBuyOrderList().getOrderId();
+        MarketPayOrderEntity marketPayOrderEntity = MarketPayOrderEntity.builder()
+                .teamId(lockOrderCommand.getTeamId())
+                .orderId(orderId)
+                .goodsId(payDiscountEntity.getGoodsId())
+                .originalPrice(payDiscountEntity.getOriginalPrice())
+                .deductionPrice(payDiscountEntity.getDeductionPrice())
+                .payPrice(payDiscountEntity.getPayPrice())
+                .tradeOrderStatusEnumVO(TradeOrderStatusEnumVO.CREATE)
+                .build();
+        String takeKey = generateUserTakeKey(payActivityEntity.getActivityId(), userEntity.getUserId());
+        // validTime + 60分钟，与组队库存占用保持一致
+        long ttlSeconds = (payActivityEntity.getValidTime() + 60) * 60L;
+
+        List<Object> result = null;
+        for (int i = 0; i < 2; i++) {
+            result = lockOrderReserveLuaExecutor.reserve(
+                    generateOutTradeNoKey(userEntity.getUserId(), payDiscountEntity.getOutTradeNo()),
+                    takeKey,
+                    teamStockKey,
+                    recoveryTeamStockKey,
+                    LockOrderWriteBehindProcessor.RESERVE_KEY_PREFIX + orderId,
+                    LockOrderWriteBehindProcessor.PENDING_KEY,
+                    LockOrderWriteBehindProcessor.QUEUE_KEY,
+                    takeLimitCount,
+                    payActivityEntity.getTargetCount(),
+                    ttlSeconds,
+                    orderId,
+                    JSON.toJSONString(lockOrderCommand),
+                    TimeUnit.DAYS.toSeconds(7),
+                    JSON.toJSONString(marketPayOrderEntity));
+
+            if (LockOrderReserveLuaExecutor.RESERVE_TAKE_MISS != Long.parseLong(String.valueOf(result.get(0)))) break;
+
+            // 用户参与次数未初始化，从数据库回填后重试
+            backfillUserTakeCount(takeKey, payActivityEntity.getActivityId(), userEntity.getUserId(), payActivityEntity.getEndTime());
+        }
+
+        long code = Long.parseLong(String.valueOf(result.get(0)));
+        invalidateLoader(userEntity.getUserId(), payDiscountEntity.getOutTradeNo(), lockOrderCommand.getTeamId());
+        if (LockOrderReserveLuaExecutor.RESERVE_DUPLICATE == code) {
+            // 外部单号已锁单，本次占用的活动名额归还；返回幂等索引中的已有订单
+            if (null != groupBuyOrderAggregate.getActivityStockStripe()) {
+                releaseActivityStock(payActivityEntity.getActivityId(), groupBuyOrderAggregate.getActivityStockStripe());
+            }
+            return JSON.parseObject(String.valueOf(result.get(1)), MarketPayOrderEntity.class);
+        }
+        if (LockOrderReserveLuaExecutor.RESERVE_TAKE_LIMIT == code) {
+            throw new AppException(ResponseCode.E0103);
+        }
+        if (LockOrderReserveLuaExecutor.RESERVE_TEAM_FULL == code) {
+            log.warn("锁单预占失败，组队名额不足 teamStockKey:{}", teamStockKey);
+            teamFullRegistry.markFull(lockOrderCommand.getTeamId());
+            throw new AppException(ResponseCode.E0008);
+        }
+        if (LockOrderReserveLuaExecutor.RESERVE_SUCCESS != code) {
+            throw new AppException(ResponseCode.UN_ERROR);
+        }
+
+        // 拼团中事件随预占记录异步落库写入发件箱，落库后投递
+        return marketPayOrderEntity;
+    }
+
+    @Override
+    public int reconcileReservedMarketPayOrder() {
+        return lockOrderWriteBehindProcessor.reconcile();
+    }
+
+    @Override
+    public void saveUnknownLockOrder(UnknownLockOrderEntity unknownLockOrderEntity) {
+        try {
+            redissonClient.<String, String>getMap(UNKNOWN_LOCK_ORDER_KEY, StringCodec.INSTANCE)
+                    .fastPut(unknownLockOrderEntity.getOrderId(), JSON.toJSONString(unknownLockOrderEntity));
+        } catch (Exception e) {
+            // 记录失败时预占不回退，宁可少卖不超卖
+            log.error("【告警】锁单结果未知记录写入失败 orderId:{} userId:{} outTradeNo:{}", unknownLockOrderEntity.getOrderId(), unknownLockOrderEntity.getUserId(), unknownLockOrderEntity.getOutTradeNo(), e);
+        }
+    }
+
+    @Override
+    public int reconcileUnknownLockOrder() {
+        RMap<String, String> unknownOrders = redissonClient.getMap(UNKNOWN_LOCK_ORDER_KEY, StringCodec.INSTANCE);
+        long deadline = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(unknownReconcileGraceSeconds);
+
+        int count = 0;
+        for (Map.Entry<String, String> entry : unknownOrders.readAllEntrySet()) {
+            UnknownLockOrderEntity unknownOrder = JSON.parseObject(entry.getValue(), UnknownLockOrderEntity.class);
+            // 事务超时前结果仍可能变化
+            if (unknownOrder.getCreateTime().getTime() > deadline) continue;
+
+            // 同一外部单号可能已重试锁单成功，按订单ID判断原订单是否落库
+            MarketPayOrderEntity marketPayOrderEntity = queryMarketPayOrderEntityByOutTradeNo(unknownOrder.getUserId(), unknownOrder.getOutTradeNo());
+            if (null != marketPayOrderEntity && unknownOrder.getOrderId().equals(marketPayOrderEntity.getOrderId())) {
+                log.info("锁单结果未知对账，订单已落库 orderId:{}", unknownOrder.getOrderId());
+            } else {
+                recoveryTeamStock(unknownOrder.getTeamId(), unknownOrder.getRecoveryTeamStockKey(), unknownOrder.getValidTime());
+                releaseUserTakeCount(unknownOrder.getActivityId(), unknownOrder.getUserId());
+                if (null != unknownOrder.getActivityStockStripe()) {
+                    releaseActivityStock(unknownOrder.getActivityId(), unknownOrder.getActivityStockStripe());
+                }
+                log.warn("锁单结果未知对账，订单未落库，已回退预占 orderId:{} userId:{} outTradeNo:{}", unknownOrder.getOrderId(), unknownOrder.getUserId(), unknownOrder.getOutTradeNo());
+            }
+            unknownOrders.fastRemove(entry.getKey());
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public Integer occupyUserTakeCount(Long activityId, String userId, Integer takeLimitCount, Date endTime) {
+        String takeKey = generateUserTakeKey(activityId, userId);
+        long seq = userTakeLuaExecutor.occupy(takeKey, takeLimitCount);
+        if (UserTakeLuaExecutor.TAKE_MISS == seq) {
+            backfillUserTakeCount(takeKey, activityId, userId, endTime);
+            seq = userTakeLuaExecutor.occupy(takeKey, takeLimitCount);
+        }
+
+        if (UserTakeLuaExecutor.TAKE_LIMIT == seq) return null;
+        if (seq <= 0) {
+            log.error("用户参与次数占用失败 takeKey:{} result:{}", takeKey, seq);
+            throw new AppException(ResponseCode.UN_ERROR);
+        }
+        return (int) seq;
+    }
+
+    @Override
+    public void releaseUserTakeCount(Long activityId, String userId) {
+        try {
+            userTakeLuaExecutor.release(generateUserTakeKey(activityId, userId));
+        } catch (Exception e) {
+            log.error("用户参与次数回退失败 activityId:{} userId:{}", activityId, userId, e);
+        }
+    }
+
+    @Override
+    public Integer occupyActivityStock(Long activityId) {
+        Integer stripe = activityStockStripes.occupy(activityId);
+        if (null == stripe) {
+            log.info("活动总名额已售罄 activityId:{}", activityId);
+        }
+        return stripe;
+    }
+
+    @Override
+    public void releaseActivityStock(Long activityId, Integer stripe) {
+        try {
+            activityStockStripes.release(activityId, stripe);
+        } catch (Exception e) {
+            log.error("活动总名额归还失败 activityId:{} stripe:{}", activityId, stripe, e);
+        }
+    }
+
+    @Override
+    public int rebalanceActivityStock() {
+        return activityStockStripes.rebalance();
+    }
+
+    /**
+     * 从数据库回填用户参与次数；有效参与次数不含已退单，参与序号取 bizId 最大序号，避免与已有 bizId 冲突。保留到活动结束后1天
+     */
+    private void backfillUserTakeCount(String takeKey, Long activityId, String userId, Date endTime) {
+        GroupBuyOrderList groupBuyOrderListReq = new GroupBuyOrderList();
+        groupBuyOrderListReq.setActivityId(activityId);
+        groupBuyOrderListReq.setUserId(userId);
+        Integer count = groupBuyOrderListDao.queryActiveOrderCountByActivityId(groupBuyOrderListReq);
+        Integer seq = groupBuyOrderListDao.queryMaxBizSeqByActivityId(groupBuyOrderListReq);
+
+        long ttlSeconds = TimeUnit.DAYS.toSeconds(1);
+        if (null != endTime) {
+            ttlSeconds = Math.max(ttlSeconds, TimeUnit.MILLISECONDS.toSeconds(endTime.getTime() - System.currentTimeMillis()) + TimeUnit.DAYS.toSeconds(1));
+        }
+        userTakeLuaExecutor.backfill(takeKey, count, seq, ttlSeconds);
+    }
+
+    /**
+     * 构建锁单写入指令；新开团生成组队记录，加入组队只记录 teamId。bizId 由调用方按参与次数构建
+     */
+    private LockOrderCommand buildLockOrderCommand(GroupBuyOrderAggregate groupBuyOrderAggregate) {
         // 聚合对象信息
         UserEntity userEntity = groupBuyOrderAggregate.getUserEntity();
         PayActivityEntity payActivityEntity = groupBuyOrderAggregate.getPayActivityEntity();
         PayDiscountEntity payDiscountEntity = groupBuyOrderAggregate.getPayDiscountEntity();
         NotifyConfigVO notifyConfigVO = payDiscountEntity.getNotifyConfigVO();
-        Integer userTakeOrderCount = groupBuyOrderAggregate.getUserTakeOrderCount();
+        // 活动总名额占用分段；未设置总名额的不记录，退单时不归还
+        Integer activityStockStripe = groupBuyOrderAggregate.getActivityStockStripe();
+        if (null != activityStockStripe && activityStockStripe < 0) activityStockStripe = null;
 
         // 判断是否有团 - teamId 为空 - 新团、为不空 - 老团
         String teamId = payActivityEntity.getTeamId();
+        GroupBuyOrder groupBuyOrder = null;
         if (StringUtils.isBlank(teamId)) {
-            // 使用 RandomStringUtils.randomNumeric 替代公司里使用的雪花算法UUID
-            teamId = RandomStringUtils.randomNumeric(8);
+            // 雪花算法生成趋势递增的组队ID
+            teamId = idGenerator.nextTeamId();
             // 日期处理
             Date currentDate = new Date();
             Calendar calendar = Calendar.getInstance();
@@ -110,7 +521,7 @@ public class TradeRepository implements ITradeRepository {
             calendar.add(Calendar.MINUTE, payActivityEntity.getValidTime());
 
             // 构建拼团订单
-            GroupBuyOrder groupBuyOrder = GroupBuyOrder.builder()
+            groupBuyOrder = GroupBuyOrder.builder()
                     .teamId(teamId)
                     .activityId(payActivityEntity.getActivityId())
                     .source(payDiscountEntity.getSource())
@@ -126,19 +537,10 @@ public class TradeRepository implements ITradeRepository {
                     .notifyType(notifyConfigVO.getNotifyType().getCode())
                     .notifyUrl(notifyConfigVO.getNotifyUrl())
                     .build();
-
-            // 写入记录
-            groupBuyOrderDao.insert(groupBuyOrder);
-        } else {
-            // 更新记录 - 如果更新记录不等于1，则表示拼团已满，抛出异常
-            int updateAddTargetCount = groupBuyOrderDao.updateAddLockCount(teamId);
-            if (1 != updateAddTargetCount) {
-                throw new AppException(ResponseCode.E0005);
-            }
         }
 
-        // 使用 RandomStringUtils.randomNumeric 替代公司里使用的雪花算法UUID
-        String orderId = RandomStringUtils.randomNumeric(12);
+        // 雪花算法生成趋势递增的订单ID
+        String orderId = idGenerator.nextOrderId();
         GroupBuyOrderList groupBuyOrderListReq = GroupBuyOrderList.builder()
                 .userId(userEntity.getUserId())
                 .teamId(teamId)
@@ -154,56 +556,102 @@ public class TradeRepository implements ITradeRepository {
                 .payPrice(payDiscountEntity.getPayPrice())
                 .status(TradeOrderStatusEnumVO.CREATE.getCode())
                 .outTradeNo(payDiscountEntity.getOutTradeNo())
-                // 构建 bizId 唯一值；活动id_用户id_参与次数累加
-                .bizId(payActivityEntity.getActivityId() + Constants.UNDERLINE + userEntity.getUserId() + Constants.UNDERLINE + (userTakeOrderCount + 1))
+                .activityStockStripe(activityStockStripe)
                 .build();
-        try {
-            // 写入拼团记录
-            groupBuyOrderListDao.insert(groupBuyOrderListReq);
-        } catch (DuplicateKeyException e) {
-            throw new AppException(ResponseCode.INDEX_EXCEPTION);
-        }
-
-        // 发送拼团进度事件
-        sendGroupBuyProgressEvent(orderId, payActivityEntity.getActivityId(), payDiscountEntity.getGoodsId());
 
-        return MarketPayOrderEntity.builder()
-                .orderId(orderId)
-                .originalPrice(payDiscountEntity.getOriginalPrice())
-                .deductionPrice(payDiscountEntity.getDeductionPrice())
-                .payPrice(payDiscountEntity.getPayPrice())
-                .tradeOrderStatusEnumVO(TradeOrderStatusEnumVO.CREATE)
+        return LockOrderCommand.builder()
+                .teamId(teamId)
+                .groupBuyOrder(groupBuyOrder)
+                .groupBuyOrderList(groupBuyOrderListReq)
+                .marketEventOutbox(buildMarketRankEventOutbox(orderId, payActivityEntity.getActivityId(), payDiscountEntity.getGoodsId(), MarketRankEventType.UNPAID))
                 .build();
     }
 
+    private String generateUserTakeKey(Long activityId, String userId) {
+        return USER_TAKE_KEY_PREFIX + activityId + Constants.UNDERLINE + userId;
+    }
+
+    private String generateOutTradeNoKey(String userId, String outTradeNo) {
+        return OUT_TRADE_NO_KEY_PREFIX + userId + Constants.UNDERLINE + outTradeNo;
+    }
+
+    /**
+     * 事务提交后删除外部单号幂等索引；回滚时索引保持不变
+     */
+    private void deleteOutTradeNoIndexAfterCommit(String userId, String outTradeNo) {
+        if (StringUtils.isBlank(outTradeNo)) return;
+        String key = generateOutTradeNoKey(userId, outTradeNo);
+        executeAfterCommit(() -> redissonClient.getBucket(key, StringCodec.INSTANCE).delete());
+    }
+
+    /**
+     * 失效请求级数据加载器中的订单、队伍记忆，写入后同一请求内重新查询
+     */
+    private void invalidateLoader(String userId, String outTradeNo, String teamId) {
+        RequestDataLoader.invalidate(LOADER_MARKET_PAY_ORDER, userId + Constants.UNDERLINE + outTradeNo);
+        RequestDataLoader.invalidate(LOADER_OUT_TRADE_NO_INDEX, userId + Constants.UNDERLINE + outTradeNo);
+        if (StringUtils.isBlank(teamId)) return;
+        RequestDataLoader.invalidate(LOADER_TEAM_PROGRESS, teamId);
+        RequestDataLoader.invalidate(LOADER_TEAM, teamId);
+        RequestDataLoader.invalidate(ActivityRepository.LOADER_TEAM_ORDER, teamId);
+    }
+
+    /**
+     * 事务提交后执行缓存操作；无事务时立即执行。缓存操作失败只记录日志，不影响已提交的事务
+     */
+    private void executeAfterCommit(Runnable runnable) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            runnable.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                try {
+                    runnable.run();
+                } catch (Exception e) {
+                    log.error("事务提交后缓存操作失败", e);
+                }
+            }
+        });
+    }
+
     @Override
     public GroupBuyProgressVO queryGroupBuyProgress(String teamId) {
-        GroupBuyOrder groupBuyOrder = groupBuyOrderDao.queryGroupBuyProgress(teamId);
-        if (null == groupBuyOrder) return null;
-        return GroupBuyProgressVO.builder()
-                .completeCount(groupBuyOrder.getCompleteCount())
-                .targetCount(groupBuyOrder.getTargetCount())
-                .lockCount(groupBuyOrder.getLockCount())
-                .build();
+        return RequestDataLoader.load(LOADER_TEAM_PROGRESS, teamId, () -> {
+            GroupBuyOrder groupBuyOrder = groupBuyOrderDao.queryGroupBuyProgress(teamId);
+            if (null == groupBuyOrder) return null;
+            return GroupBuyProgressVO.builder()
+                    .completeCount(groupBuyOrder.getCompleteCount())
+                    .targetCount(groupBuyOrder.getTargetCount())
+                    .lockCount(groupBuyOrder.getLockCount())
+                    .build();
+        });
+    }
+
+    @Override
+    public Map<String, GroupBuyProgressVO> queryGroupBuyProgress(Set<String> teamIds) {
+        // 一次 IN 查询，与单个查询共用请求级记忆
+        return RequestDataLoader.loadMany(LOADER_TEAM_PROGRESS, teamIds, ids -> {
+            List<GroupBuyOrder> groupBuyOrders = groupBuyOrderDao.queryGroupBuyProgressList(ids);
+            Map<String, GroupBuyProgressVO> groupBuyProgressVOMap = new HashMap<>();
+            for (GroupBuyOrder groupBuyOrder : groupBuyOrders) {
+                groupBuyProgressVOMap.put(groupBuyOrder.getTeamId(), GroupBuyProgressVO.builder()
+                        .completeCount(groupBuyOrder.getCompleteCount())
+                        .targetCount(groupBuyOrder.getTargetCount())
+                        .lockCount(groupBuyOrder.getLockCount())
+                        .build());
+            }
+            return groupBuyProgressVOMap;
+        });
     }
 
     @Override
     public GroupBuyActivityEntity queryGroupBuyActivityEntityByActivityId(Long activityId) {
-        GroupBuyActivity groupBuyActivity = groupBuyActivityDao.queryGroupBuyActivityByActivityId(activityId);
-        return GroupBuyActivityEntity.builder()
-                .activityId(groupBuyActivity.getActivityId())
-                .activityName(groupBuyActivity.getActivityName())
-                .discountId(groupBuyActivity.getDiscountId())
-                .groupType(groupBuyActivity.getGroupType())
-                .takeLimitCount(groupBuyActivity.getTakeLimitCount())
-                .target(groupBuyActivity.getTarget())
-                .validTime(groupBuyActivity.getValidTime())
-                .status(ActivityStatusEnumVO.valueOf(groupBuyActivity.getStatus()))
-                .startTime(groupBuyActivity.getStartTime())
-                .endTime(groupBuyActivity.getEndTime())
-                .tagId(groupBuyActivity.getTagId())
-                .tagScope(groupBuyActivity.getTagScope())
-                .build();
+        // 进程内活动快照，与试算共用
+        ActivitySnapshot activitySnapshot = activitySnapshotRegistry.get(activityId);
+        if (null == activitySnapshot) return null;
+        return activitySnapshot.toGroupBuyActivityEntity();
     }
 
     @Override
@@ -216,23 +664,25 @@ public class TradeRepository implements ITradeRepository {
 
     @Override
     public GroupBuyTeamEntity queryGroupBuyTeamByTeamId(String teamId) {
-        GroupBuyOrder groupBuyOrder = groupBuyOrderDao.queryGroupBuyTeamByTeamId(teamId);
-        return GroupBuyTeamEntity.builder()
-                .teamId(groupBuyOrder.getTeamId())
-                .activityId(groupBuyOrder.getActivityId())
-                .targetCount(groupBuyOrder.getTargetCount())
-                .completeCount(groupBuyOrder.getCompleteCount())
-                .lockCount(groupBuyOrder.getLockCount())
-                .status(GroupBuyOrderEnumVO.valueOf(groupBuyOrder.getStatus()))
-                .validStartTime(groupBuyOrder.getValidStartTime())
-                .validEndTime(groupBuyOrder.getValidEndTime())
-                .notifyConfigVO(NotifyConfigVO.builder()
-                        .notifyType(NotifyTypeEnumVO.valueOf(groupBuyOrder.getNotifyType()))
-                        .notifyUrl(groupBuyOrder.getNotifyUrl())
-                        // MQ 是固定的
-                        .notifyMQ(topic_team_success)
-                        .build())
-                .build();
+        return RequestDataLoader.load(LOADER_TEAM, teamId, () -> {
+            GroupBuyOrder groupBuyOrder = groupBuyOrderDao.queryGroupBuyTeamByTeamId(teamId);
+            return GroupBuyTeamEntity.builder()
+                    .teamId(groupBuyOrder.getTeamId())
+                    .activityId(groupBuyOrder.getActivityId())
+                    .targetCount(groupBuyOrder.getTargetCount())
+                    .completeCount(groupBuyOrder.getCompleteCount())
+                    .lockCount(groupBuyOrder.getLockCount())
+                    .status(GroupBuyOrderEnumVO.valueOf(groupBuyOrder.getStatus()))
+                    .validStartTime(groupBuyOrder.getValidStartTime())
+                    .validEndTime(groupBuyOrder.getValidEndTime())
+                    .notifyConfigVO(NotifyConfigVO.builder()
+                            .notifyType(NotifyTypeEnumVO.valueOf(groupBuyOrder.getNotifyType()))
+                            .notifyUrl(groupBuyOrder.getNotifyUrl())
+                            // MQ 是固定的
+                            .notifyMQ(topic_team_success)
+                            .build())
+                    .build();
+        });
     }
 
     @Transactional(timeout = 5000)
@@ -254,6 +704,9 @@ public class TradeRepository implements ITradeRepository {
         if (1 != updateOrderListStatusCount) {
             throw new AppException(ResponseCode.UPDATE_ZERO);
         }
+        // 订单已支付，提交后删除幂等索引
+        deleteOutTradeNoIndexAfterCommit(userEntity.getUserId(), tradePaySuccessEntity.getOutTradeNo());
+        invalidateLoader(userEntity.getUserId(), tradePaySuccessEntity.getOutTradeNo(), groupBuyTeamEntity.getTeamId());
 
         // 2. 更新拼团达成数量
         int updateAddCount = groupBuyOrderDao.updateAddCompleteCount(groupBuyTeamEntity.getTeamId());
@@ -261,6 +714,11 @@ public class TradeRepository implements ITradeRepository {
             throw new AppException(ResponseCode.UPDATE_ZERO);
         }
 
+        // 拼团状态变化事件写入发件箱；事件类型按结算前的组队状态
+        MarketRankEventType eventType = GroupBuyOrderEnumVO.COMPLETE.equals(groupBuyTeamEntity.getStatus()) ? MarketRankEventType.GROUP_BUY_COMPLETE
+                : GroupBuyOrderEnumVO.PROGRESS.equals(groupBuyTeamEntity.getStatus()) ? MarketRankEventType.GROUP_BUY_PROGRESS : null;
+        saveTeamRankEventOutbox(groupBuyTeamEntity.getTeamId(), groupBuyTeamEntity.getActivityId(), groupBuyTeamSettlementAggregate.getGoodsId(), eventType);
+
         // 3. 更新拼团完成状态
         if (groupBuyTeamEntity.getTargetCount() - groupBuyTeamEntity.getCompleteCount() == 1) {
             int updateOrderStatusCount = groupBuyOrderDao.updateOrderStatus2COMPLETE(groupBuyTeamEntity.getTeamId());
@@ -268,6 +726,9 @@ public class TradeRepository implements ITradeRepository {
                 throw new AppException(ResponseCode.UPDATE_ZERO);
             }
 
+            // 拼团完成，提交后广播队伍已满
+            executeAfterCommit(() -> teamFullRegistry.markFull(groupBuyTeamEntity.getTeamId()));
+
             // 查询拼团交易完成外部单号列表
             List<String> outTradeNoList = groupBuyOrderListDao.queryGroupBuyCompleteOrderOutTradeNoListByTeamId(groupBuyTeamEntity.getTeamId());
 
@@ -370,40 +831,36 @@ public class TradeRepository implements ITradeRepository {
      */
     @Override
     public boolean occupyTeamStock(String teamStockKey, String recoveryTeamStockKey, Integer target, Integer validTime) {
-        // 1. 获取失败恢复量（系统失败时记录的量）
-        Long recoveryCount = redisService.getAtomicLong(recoveryTeamStockKey);
-        recoveryCount = null == recoveryCount ? 0 : recoveryCount;
-
-        // 2. 构建锁 key 前缀：teamStockKey + "_"
-        // 注意：完整的 lockKey 会在 Lua 脚本中构建（lockKeyPrefix + occupy），
-        // 因为 occupy 值是在 Lua 脚本执行过程中通过 INCR 计算出来的
+        // 1. 升级前单名额 key 前缀：teamStockKey + "_"；名额占用已改为每个队伍一个位图，仅用于兼容校验未过期的旧 key
         String lockKeyPrefix = teamStockKey + Constants.UNDERLINE;
         
-        // 3. 使用 Lua 脚本原子化执行：检查库存 + 扣减库存 + 加锁
-        // 如果 SETNX 失败，Lua 脚本会自动回滚库存
+        // 2. 使用 Lua 脚本原子化执行：读取失败恢复量 + 检查库存 + 扣减库存 + 占用名额位，一次 Redis 往返
+        // 如果名额位已被占用，Lua 脚本会自动回滚库存
         // validTime + 60分钟，是一个延后时间的设计，让数据保留时间稍微长一些，便于排查问题
         boolean success = stockOccupyLuaExecutor.occupyStock(
                 teamStockKey,
+                recoveryTeamStockKey,
                 lockKeyPrefix,
                 target,
-                recoveryCount,
                 validTime + 60
         );
 
         if (!success) {
-            log.warn("组队库存占用失败 teamStockKey:{} target:{} recoveryCount:{}", 
-                    teamStockKey, target, recoveryCount);
+            log.warn("组队库存占用失败 teamStockKey:{} target:{} recoveryTeamStockKey:{}", 
+                    teamStockKey, target, recoveryTeamStockKey);
         }
 
         return success;
     }
 
     @Override
-    public void recoveryTeamStock(String recoveryTeamStockKey, Integer validTime) {
+    public void recoveryTeamStock(String teamId, String recoveryTeamStockKey, Integer validTime) {
         // 首次组队拼团，是没有 teamId 的，所以不需要这个做处理。
         if (StringUtils.isBlank(recoveryTeamStockKey)) return;
 
         redisService.incr(recoveryTeamStockKey);
+        // 名额已恢复，移除已满记录
+        teamFullRegistry.reopen(teamId);
     }
 
     @Override
@@ -423,6 +880,18 @@ public class TradeRepository implements ITradeRepository {
             throw new AppException(ResponseCode.UPDATE_ZERO);
         }
 
+        // 订单已退单，提交后删除幂等索引
+        deleteOutTradeNoIndexAfterCommit(tradeRefundOrderEntity.getUserId(), tradeRefundOrderEntity.getOutTradeNo());
+        invalidateLoader(tradeRefundOrderEntity.getUserId(), tradeRefundOrderEntity.getOutTradeNo(), tradeRefundOrderEntity.getTeamId());
+        // 队伍名额释放，提交后广播移除已满记录
+        executeAfterCommit(() -> teamFullRegistry.reopen(tradeRefundOrderEntity.getTeamId()));
+        // 订单已退单，提交后回退用户参与次数
+        executeAfterCommit(() -> releaseUserTakeCount(tradeRefundOrderEntity.getActivityId(), tradeRefundOrderEntity.getUserId()));
+        // 订单已退单，占用过活动总名额的提交后归还到占用分段
+        if (null != tradeRefundOrderEntity.getActivityStockStripe()) {
+            executeAfterCommit(() -> releaseActivityStock(tradeRefundOrderEntity.getActivityId(), tradeRefundOrderEntity.getActivityStockStripe()));
+        }
+
         GroupBuyOrder groupBuyOrderReq = new GroupBuyOrder();
         groupBuyOrderReq.setTeamId(tradeRefundOrderEntity.getTeamId());
         groupBuyOrderReq.setLockCount(groupBuyProgress.getLockCount());
@@ -433,6 +902,9 @@ public class TradeRepository implements ITradeRepository {
             throw new AppException(ResponseCode.UPDATE_ZERO);
         }
 
+        // 退单事件写入发件箱
+        saveTeamRankEventOutbox(tradeRefundOrderEntity.getOrderId(), tradeRefundOrderEntity.getActivityId(), tradeRefundOrderEntity.getGoodsId(), MarketRankEventType.REFUND_SUCCESS);
+
         // 逆向后，还要处理 redis recoveryCount 恢复了，这部分最后统一处理
     }
 
@@ -453,6 +925,18 @@ public class TradeRepository implements ITradeRepository {
             throw new AppException(ResponseCode.UPDATE_ZERO);
         }
 
+        // 订单已退单，提交后删除幂等索引
+        deleteOutTradeNoIndexAfterCommit(tradeRefundOrderEntity.getUserId(), tradeRefundOrderEntity.getOutTradeNo());
+        invalidateLoader(tradeRefundOrderEntity.getUserId(), tradeRefundOrderEntity.getOutTradeNo(), tradeRefundOrderEntity.getTeamId());
+        // 队伍名额释放，提交后广播移除已满记录
+        executeAfterCommit(() -> teamFullRegistry.reopen(tradeRefundOrderEntity.getTeamId()));
+        // 订单已退单，提交后回退用户参与次数
+        executeAfterCommit(() -> releaseUserTakeCount(tradeRefundOrderEntity.getActivityId(), tradeRefundOrderEntity.getUserId()));
+        // 订单已退单，占用过活动总名额的提交后归还到占用分段
+        if (null != tradeRefundOrderEntity.getActivityStockStripe()) {
+            executeAfterCommit(() -> releaseActivityStock(tradeRefundOrderEntity.getActivityId(), tradeRefundOrderEntity.getActivityStockStripe()));
+        }
+
         GroupBuyOrder groupBuyOrderReq = new GroupBuyOrder();
         groupBuyOrderReq.setTeamId(tradeRefundOrderEntity.getTeamId());
         groupBuyOrderReq.setLockCount(groupBuyProgress.getLockCount());
@@ -464,6 +948,9 @@ public class TradeRepository implements ITradeRepository {
             throw new AppException(ResponseCode.UPDATE_ZERO);
         }
 
+        // 退单事件写入发件箱
+        saveTeamRankEventOutbox(tradeRefundOrderEntity.getOrderId(), tradeRefundOrderEntity.getActivityId(), tradeRefundOrderEntity.getGoodsId(), MarketRankEventType.REFUND_SUCCESS);
+
         // 本地消息任务表
         NotifyTask notifyTask = new NotifyTask();
         notifyTask.setActivityId(tradeRefundOrderEntity.getActivityId());
@@ -494,30 +981,46 @@ public class TradeRepository implements ITradeRepository {
 
     @Override
     public String queryGoodsIdByTeamId(String teamId) {
-        GroupBuyOrderList groupBuyOrderList  = groupBuyOrderListDao.selectByTeamId(teamId);
-        if (null == groupBuyOrderList) {
-            log.error("查询组队记录失败 teamId {}", teamId);
-            throw new AppException(ResponseCode.E0201);
+        return RequestDataLoader.load(LOADER_TEAM_GOODS_ID, teamId, () -> {
+            GroupBuyOrderList groupBuyOrderList  = groupBuyOrderListDao.selectByTeamId(teamId);
+            if (null == groupBuyOrderList) {
+                log.error("查询组队记录失败 teamId {}", teamId);
+                throw new AppException(ResponseCode.E0201);
+            }
+            return groupBuyOrderList.getGoodsId();
+        });
+    }
+
+    @Override
+    public int relayMarketEventOutbox() {
+        return marketEventOutboxRelay.relayUnPublished();
+    }
+
+    /**
+     * 组队维度的排行榜事件写入发件箱，提交后投递；商品ID取组队明细，查询不到时不写事件
+     */
+    private void saveTeamRankEventOutbox(String orderId, Long activityId, String goodsId, MarketRankEventType eventType) {
+        if (null == eventType) return;
+        if (StringUtils.isBlank(goodsId)) {
+            log.warn("排行榜事件未写入，商品ID为空 orderId:{} eventType:{}", orderId, eventType);
+            return;
         }
-        return groupBuyOrderList.getGoodsId();
+
+        MarketEventOutbox marketEventOutbox = buildMarketRankEventOutbox(orderId, activityId, goodsId, eventType);
+        marketEventOutboxDao.insert(marketEventOutbox);
+        executeAfterCommit(() -> marketEventOutboxRelay.submit(Collections.singletonList(marketEventOutbox)));
     }
 
-    // 添加sendGroupBuyProgressEvent方法
-    private void sendGroupBuyProgressEvent(String orderId, Long activityId, String goodsId) {
-        log.info("MQ发送拼团中事件 orderId {} activityId {} goodsId {}", orderId, activityId, goodsId);
+    private MarketEventOutbox buildMarketRankEventOutbox(String orderId, Long activityId, String goodsId, MarketRankEventType eventType) {
         MarketRankEvent rankEvent = new MarketRankEvent();
         rankEvent.setEventId(UUID.randomUUID().toString());
         rankEvent.setOrderId(orderId);
         rankEvent.setActivityId(activityId);
         rankEvent.setGoodsId(goodsId);
         rankEvent.setOccurTime(new Date());
-        rankEvent.setEventType(MarketRankEventType.UNPAID);
+        rankEvent.setEventType(eventType);
 
-        // 通过消息队列发送事件
-        try {
-            port.sendRankEvent(rankEvent);
-        } catch (Exception e) {
-            log.error("发送拼团中事件失败", e);
-        }
+        return MarketEventOutboxRelay.buildOutbox(rankEvent.getEventId(), topic_market_rank, rankEvent);
     }
+
 }
@@ -0,0 +1,155 @@
+package cn.bugstack.infrastructure.adapter.repository.lua;
+
+import cn.bugstack.infrastructure.loader.RequestDataLoader;
+import org.redisson.api.RScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.Collections;
+
+/**
+ * 活动名额分段计数 Lua 脚本执行器
+ * <p>
+ * 活动总名额拆为多个分段计数 key，分段 key 不存在时在脚本内按调用方传入的初始名额写入，之后只做原子加减；
+ * 初始名额传 {@link #STOCK_UNKNOWN} 时不写入，返回 {@link #STOCK_MISSING}，由调用方按数据库已占用数重建初始名额后再次调用。
+ * 每个脚本只访问一个 key，分段 key 不带 hash tag，集群下分散到不同槽位。
+ *
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ */
+@Component
+public class ActivityStockLuaExecutor {
+
+    /** 分段名额已用尽 */
+    public static final long STOCK_EMPTY = -1;
+    /** 分段 key 不存在，需传入初始名额 */
+    public static final long STOCK_MISSING = -2;
+    /** 初始名额未知；分段 key 不存在时返回 {@link #STOCK_MISSING} */
+    public static final long STOCK_UNKNOWN = -1;
+
+    /**
+     * 扣减一个名额
+     * KEYS[1]: 分段计数 key
+     * ARGV[1]: 分段初始名额；小于0为未知
+     * ARGV[2]: 过期时间（秒）
+     * 返回值：成功返回扣减后剩余名额；-1 分段名额已用尽；-2 分段 key 不存在且初始名额未知
+     */
+    private static final String DECREMENT_SCRIPT = ""
+            + "local stock = redis.call('GET', KEYS[1])\n"
+            + "if not stock then\n"
+            + "    if tonumber(ARGV[1]) < 0 then\n"
+            + "        return -2\n"
+            + "    end\n"
+            + "    redis.call('SET', KEYS[1], ARGV[1], 'EX', tonumber(ARGV[2]))\n"
+            + "    stock = ARGV[1]\n"
+            + "end\n"
+            + "if tonumber(stock) <= 0 then\n"
+            + "    return -1\n"
+            + "end\n"
+            + "return redis.call('DECR', KEYS[1])";
+
+    /**
+     * 调出名额；最多调出当前剩余，不会扣成负数
+     * KEYS[1]: 分段计数 key
+     * ARGV[1]: 分段初始名额；小于0为未知
+     * ARGV[2]: 过期时间（秒）
+     * ARGV[3]: 计划调出数量
+     * 返回值：实际调出数量；-2 分段 key 不存在且初始名额未知
+     */
+    private static final String TAKE_SCRIPT = ""
+            + "local stock = redis.call('GET', KEYS[1])\n"
+            + "if not stock then\n"
+            + "    if tonumber(ARGV[1]) < 0 then\n"
+            + "        return -2\n"
+            + "    end\n"
+            + "    redis.call('SET', KEYS[1], ARGV[1], 'EX', tonumber(ARGV[2]))\n"
+            + "    stock = ARGV[1]\n"
+            + "end\n"
+            + "local amount = math.min(tonumber(stock), tonumber(ARGV[3]))\n"
+            + "if amount <= 0 then\n"
+            + "    return 0\n"
+            + "end\n"
+            + "redis.call('DECRBY', KEYS[1], amount)\n"
+            + "return amount";
+
+    /**
+     * 归还、调入名额
+     * KEYS[1]: 分段计数 key
+     * ARGV[1]: 分段初始名额；小于0为未知
+     * ARGV[2]: 过期时间（秒）
+     * ARGV[3]: 数量
+     * 返回值：归还后剩余名额；-2 分段 key 不存在且初始名额未知
+     */
+    private static final String INCREMENT_SCRIPT = ""
+            + "if redis.call('EXISTS', KEYS[1]) == 0 then\n"
+            + "    if tonumber(ARGV[1]) < 0 then\n"
+            + "        return -2\n"
+            + "    end\n"
+            + "    redis.call('SET', KEYS[1], ARGV[1], 'EX', tonumber(ARGV[2]))\n"
+            + "end\n"
+            + "return redis.call('INCRBY', KEYS[1], tonumber(ARGV[3]))";
+
+    @Resource
+    private LuaScriptRegistry luaScriptRegistry;
+
+    @PostConstruct
+    public void init() {
+        luaScriptRegistry.register(DECREMENT_SCRIPT);
+        luaScriptRegistry.register(TAKE_SCRIPT);
+        luaScriptRegistry.register(INCREMENT_SCRIPT);
+    }
+
+    /**
+     * 扣减一个名额
+     *
+     * @return 扣减后剩余名额；{@link #STOCK_EMPTY} 分段名额已用尽；{@link #STOCK_MISSING} 分段 key 不存在且初始名额未知
+     */
+    public long decrement(String stockKey, long initStock, long ttlSeconds) {
+        RequestDataLoader.recordRedis();
+        Long result = luaScriptRegistry.eval(
+                RScript.Mode.READ_WRITE,
+                DECREMENT_SCRIPT,
+                RScript.ReturnType.INTEGER,
+                Collections.<Object>singletonList(stockKey),
+                String.valueOf(initStock),
+                String.valueOf(ttlSeconds));
+        return null == result ? STOCK_EMPTY : result;
+    }
+
+    /**
+     * 调出名额
+     *
+     * @return 实际调出数量；{@link #STOCK_MISSING} 分段 key 不存在且初始名额未知
+     */
+    public long take(String stockKey, long initStock, long ttlSeconds, long amount) {
+        RequestDataLoader.recordRedis();
+        Long result = luaScriptRegistry.eval(
+                RScript.Mode.READ_WRITE,
+                TAKE_SCRIPT,
+                RScript.ReturnType.INTEGER,
+                Collections.<Object>singletonList(stockKey),
+                String.valueOf(initStock),
+                String.valueOf(ttlSeconds),
+                String.valueOf(amount));
+        return null == result ? 0 : result;
+    }
+
+    /**
+     * 归还、调入名额
+     *
+     * @return 归还后剩余名额；{@link #STOCK_MISSING} 分段 key 不存在且初始名额未知
+     */
+    public long increment(String stockKey, long initStock, long ttlSeconds, long amount) {
+        RequestDataLoader.recordRedis();
+        Long result = luaScriptRegistry.eval(
+                RScript.Mode.READ_WRITE,
+                INCREMENT_SCRIPT,
+                RScript.ReturnType.INTEGER,
+                Collections.<Object>singletonList(stockKey),
+                String.valueOf(initStock),
+                String.valueOf(ttlSeconds),
+                String.valueOf(amount));
+        return null == result ? 0 : result;
+    }
+
+}
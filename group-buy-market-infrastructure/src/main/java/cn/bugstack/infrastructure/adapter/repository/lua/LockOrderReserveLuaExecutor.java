@@ -0,0 +1,142 @@
+package cn.bugstack.infrastructure.adapter.repository.lua;
+
+import cn.bugstack.infrastructure.loader.RequestDataLoader;
+import org.redisson.api.RScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 锁单预占 Lua 脚本执行器
+ * <p>
+ * Redis 优先锁单模式下，一次脚本原子化完成：外部单号幂等索引、用户参与次数、组队名额，
+ * 并把待落库的锁单记录写入预占记录、待落库集合和写入队列，由后台异步落库。
+ *
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ */
+@Component
+public class LockOrderReserveLuaExecutor {
+
+    /** 预占成功 */
+    public static final long RESERVE_SUCCESS = 1;
+    /** 外部单号已预占，返回已有订单的幂等索引 */
+    public static final long RESERVE_DUPLICATE = 0;
+    /** 用户参与次数未初始化，需要从数据库回填 */
+    public static final long RESERVE_TAKE_MISS = -1;
+    /** 用户参与次数已达上限 */
+    public static final long RESERVE_TAKE_LIMIT = -2;
+    /** 组队名额不足 */
+    public static final long RESERVE_TEAM_FULL = -3;
+
+    /**
+     * 参数说明：
+     * KEYS[1]: 外部单号幂等索引 key
+     * KEYS[2]: 用户参与次数 hash（count 有效参与次数、seq 累计参与序号），与 UserTakeLuaExecutor 共用
+     * KEYS[3]: 组队库存 key，新开团为空串
+     * KEYS[4]: 组队恢复量 key，新开团为空串
+     * KEYS[5]: 预占记录 hash
+     * KEYS[6]: 待落库 zset
+     * KEYS[7]: 写入队列 list
+     * KEYS[8]: 组队名额位图 key，新开团为空串
+     * ARGV[1]: 参与次数上限，-1 不限制
+     * ARGV[2]: 组队目标数量
+     * ARGV[3]: 幂等及组队名额过期时间（秒）
+     * ARGV[4]: 订单ID
+     * ARGV[5]: 锁单记录
+     * ARGV[6]: 当前时间戳（毫秒）
+     * ARGV[7]: 预占记录过期时间（秒）
+     * ARGV[8]: 幂等索引值（锁单结果）
+     * <p>
+     * 返回值：{状态, 附加值}；成功时附加值为参与序号，重复时为已有订单的幂等索引值
+     */
+    private static final String RESERVE_SCRIPT = ""
+            + "local existOrder = redis.call('GET', KEYS[1])\n"
+            + "if existOrder then\n"
+            + "    return {0, existOrder}\n"
+            + "end\n"
+            + "\n"
+            + "-- 1. 用户参与次数\n"
+            + "if redis.call('EXISTS', KEYS[2]) == 0 then\n"
+            + "    return {-1, ''}\n"
+            + "end\n"
+            + "local takeLimit = tonumber(ARGV[1])\n"
+            + "local takeCount = tonumber(redis.call('HGET', KEYS[2], 'count') or '0')\n"
+            + "if takeLimit >= 0 and takeCount >= takeLimit then\n"
+            + "    return {-2, ''}\n"
+            + "end\n"
+            + "\n"
+            + "-- 2. 组队名额；与组队库存占用脚本规则一致\n"
+            + "local ttl = tonumber(ARGV[3])\n"
+            + "if KEYS[3] ~= '' then\n"
+            + "    local recoveryCount = tonumber(redis.call('GET', KEYS[4]) or '0')\n"
+            + "    local occupy = redis.call('INCR', KEYS[3]) + 1\n"
+            + "    if occupy > tonumber(ARGV[2]) + recoveryCount then\n"
+            + "        redis.call('DECR', KEYS[3])\n"
+            + "        return {-3, ''}\n"
+            + "    end\n"
+            + "    local taken = redis.call('SETBIT', KEYS[8], occupy, 1)\n"
+            + "    if taken == 0 and redis.call('EXISTS', KEYS[3] .. '_' .. occupy) == 1 then\n"
+            + "        taken = 1\n"
+            + "    end\n"
+            + "    redis.call('EXPIRE', KEYS[8], ttl)\n"
+            + "    redis.call('EXPIRE', KEYS[3], ttl)\n"
+            + "    redis.call('EXPIRE', KEYS[4], ttl)\n"
+            + "    if taken == 1 then\n"
+            + "        redis.call('DECR', KEYS[3])\n"
+            + "        return {-3, ''}\n"
+            + "    end\n"
+            + "end\n"
+            + "\n"
+            + "-- 3. 提交预占\n"
+            + "redis.call('HINCRBY', KEYS[2], 'count', 1)\n"
+            + "local seq = redis.call('HINCRBY', KEYS[2], 'seq', 1)\n"
+            + "redis.call('SET', KEYS[1], ARGV[8], 'EX', ttl)\n"
+            + "redis.call('HSET', KEYS[5], 'payload', ARGV[5], 'seq', seq, 'takeKey', KEYS[2], 'idempotentKey', KEYS[1], 'recoveryKey', KEYS[4])\n"
+            + "redis.call('EXPIRE', KEYS[5], tonumber(ARGV[7]))\n"
+            + "redis.call('ZADD', KEYS[6], tonumber(ARGV[6]), ARGV[4])\n"
+            + "redis.call('RPUSH', KEYS[7], ARGV[4])\n"
+            + "return {1, tostring(seq)}";
+
+    @Resource
+    private LuaScriptRegistry luaScriptRegistry;
+
+    @PostConstruct
+    public void init() {
+        luaScriptRegistry.register(RESERVE_SCRIPT);
+    }
+
+    /**
+     * 预占锁单
+     *
+     * @return [状态, 附加值]
+     */
+    public List<Object> reserve(String idempotentKey, String takeKey, String teamStockKey, String recoveryTeamStockKey,
+                                String reserveKey, String pendingKey, String queueKey,
+                                Integer takeLimitCount, Integer target, long ttlSeconds,
+                                String orderId, String payload, long reserveTtlSeconds, String indexValue) {
+        RequestDataLoader.recordRedis();
+        List<Object> keys = Arrays.asList(idempotentKey, takeKey,
+                null == teamStockKey ? "" : teamStockKey,
+                null == recoveryTeamStockKey ? "" : recoveryTeamStockKey,
+                reserveKey, pendingKey, queueKey,
+                null == teamStockKey ? "" : StockOccupyLuaExecutor.slotsKey(teamStockKey));
+
+        return luaScriptRegistry.eval(
+                RScript.Mode.READ_WRITE,
+                RESERVE_SCRIPT,
+                RScript.ReturnType.MULTI,
+                keys,
+                String.valueOf(null == takeLimitCount ? -1 : takeLimitCount),
+                String.valueOf(null == target ? 0 : target),
+                String.valueOf(ttlSeconds),
+                orderId,
+                payload,
+                String.valueOf(System.currentTimeMillis()),
+                String.valueOf(reserveTtlSeconds),
+                indexValue);
+    }
+
+}
@@ -0,0 +1,82 @@
+package cn.bugstack.infrastructure.adapter.repository.lua;
+
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.RedisException;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lua 脚本注册表
+ * <p>
+ * 1. 脚本在执行器初始化时以 SCRIPT LOAD 加载一次，记录 SHA1；调用时以 EVALSHA 执行，只传输参数不传输脚本源码
+ * 2. Redis 重启、SCRIPT FLUSH 或主从切换后脚本缓存丢失时返回 NOSCRIPT，重新加载后重试一次，调用方无感知
+ * 3. 启动时 Redis 不可用不影响启动，首次调用时加载
+ *
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ */
+@Slf4j
+@Component
+public class LuaScriptRegistry {
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    private RScript script;
+
+    /** 脚本源码 -> SHA1 */
+    private final ConcurrentHashMap<String, String> shaCache = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        script = redissonClient.getScript(StringCodec.INSTANCE);
+    }
+
+    /**
+     * 注册并预加载脚本
+     */
+    public void register(String source) {
+        try {
+            load(source);
+        } catch (Exception e) {
+            log.warn("Lua 脚本预加载失败，首次调用时重新加载", e);
+        }
+    }
+
+    /**
+     * 以 EVALSHA 执行脚本；未加载或 NOSCRIPT 时加载后执行
+     */
+    public <R> R eval(RScript.Mode mode, String source, RScript.ReturnType returnType, List<Object> keys, Object... values) {
+        String sha = shaCache.get(source);
+        if (null == sha) {
+            sha = load(source);
+        }
+        try {
+            return script.evalSha(mode, sha, returnType, keys, values);
+        } catch (RedisException e) {
+            if (!isNoScript(e)) throw e;
+            log.warn("Lua 脚本缓存丢失，重新加载 sha:{}", sha);
+            return script.evalSha(mode, load(source), returnType, keys, values);
+        }
+    }
+
+    private String load(String source) {
+        String sha = script.scriptLoad(source);
+        shaCache.put(source, sha);
+        return sha;
+    }
+
+    private boolean isNoScript(Throwable e) {
+        for (Throwable cause = e; null != cause; cause = cause.getCause()) {
+            if (null != cause.getMessage() && cause.getMessage().contains("NOSCRIPT")) return true;
+        }
+        return false;
+    }
+
+}
@@ -1,14 +1,11 @@
 package cn.bugstack.infrastructure.adapter.repository.lua;
 
-import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.redisson.api.RScript;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 import java.util.Arrays;
-import java.util.List;
 
 /**
  * 排行榜 Lua 脚本执行器
@@ -16,6 +13,15 @@ import java.util.List;
 @Component
 public class RankLuaExecutor {
 
+    /**
+     * 累加销量并更新元数据时间
+     * KEYS[1]: 榜单 zset
+     * KEYS[2]: 元数据更新时间 key
+     * ARGV[1]: 商品ID
+     * ARGV[2]: 累加值
+     * ARGV[3]: 过期时间（秒）
+     * ARGV[4]: 更新时间（毫秒）
+     */
     private static final String INCR_WITH_META_SCRIPT = ""
             + "redis.call('ZINCRBY', KEYS[1], ARGV[2], ARGV[1])\n"
             + "redis.call('SET', KEYS[2], ARGV[4])\n"
@@ -24,22 +30,19 @@ public class RankLuaExecutor {
             + "return 1";
 
     @Resource
-    private RedisTemplate<String, String> redisTemplate;
-
-    @Resource
-    private StringRedisTemplate stringRedisTemplate;
-
-    private DefaultRedisScript<Long> incrWithMetaScript;
+    private LuaScriptRegistry luaScriptRegistry;
 
     @PostConstruct
     public void init() {
-        incrWithMetaScript = new DefaultRedisScript<>();
-        incrWithMetaScript.setResultType(Long.class);
-        incrWithMetaScript.setScriptText(INCR_WITH_META_SCRIPT);
+        luaScriptRegistry.register(INCR_WITH_META_SCRIPT);
     }
 
     public void incrWithMeta(String zsetKey, String metaUpdateKey, String goodsId, long delta, long ttlSeconds, long updateTimeMillis) {
-        List<String> keys = Arrays.asList(zsetKey, metaUpdateKey);
-        stringRedisTemplate.execute(incrWithMetaScript, keys, goodsId, String.valueOf(delta), String.valueOf(ttlSeconds), String.valueOf(updateTimeMillis));
+        luaScriptRegistry.eval(
+                RScript.Mode.READ_WRITE,
+                INCR_WITH_META_SCRIPT,
+                RScript.ReturnType.INTEGER,
+                Arrays.<Object>asList(zsetKey, metaUpdateKey),
+                goodsId, String.valueOf(delta), String.valueOf(ttlSeconds), String.valueOf(updateTimeMillis));
     }
-}
\ No newline at end of file
+}
@@ -1,8 +1,7 @@
 package cn.bugstack.infrastructure.adapter.repository.lua;
 
+import cn.bugstack.infrastructure.loader.RequestDataLoader;
 import org.redisson.api.RScript;
-import org.redisson.api.RedissonClient;
-import org.redisson.client.codec.StringCodec;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
@@ -14,35 +13,40 @@ import java.util.List;
  * 库存占用 Lua 脚本执行器
  * <p>
  * 解决高并发下库存扣减的安全性问题：
- * 1. 使用 Lua 脚本保证"检查库存+扣减库存+加锁"的原子性
- * 2. 如果 SETNX 失败，自动回滚库存，避免库存泄漏
+ * 1. 使用 Lua 脚本保证"读取恢复量+检查库存+扣减库存+占用名额位"的原子性，一次占用只有一次 Redis 往返
+ * 2. 如果名额位已被占用，自动回滚库存，避免库存泄漏
+ * 3. 每个队伍的名额占用记录为一个位图 key（第 n 位表示第 n 个名额），与计数、恢复量共用一个过期时间，
+ * 不再为每个名额创建一个带过期时间的 key；占用、查看均为对该 key 的 O(1) 操作（SETBIT / GETBIT）
  * 
  * @author Fuzhengwei bugstack.cn @小傅哥
  */
 @Component
 public class StockOccupyLuaExecutor {
 
+    /** 组队名额位图 key 后缀 */
+    private static final String SLOTS_KEY_SUFFIX = "_slots";
+
     /**
      * Lua 脚本：原子化执行库存占用逻辑
      * 
      * 参数说明：
      * KEYS[1]: teamStockKey - 组队库存 key
+     * KEYS[2]: recoveryTeamStockKey - 组队恢复量 key（系统失败时记录的量）
+     * KEYS[3]: slotsKey - 组队名额位图 key
      * ARGV[1]: target - 目标数量
-     * ARGV[2]: recoveryCount - 恢复数量
-     * ARGV[3]: validTimeMinutes - 锁过期时间（分钟）
-     * ARGV[4]: lockKeyPrefix - 锁 key 前缀（teamStockKey + "_"）
+     * ARGV[2]: validTimeMinutes - 过期时间（分钟）
+     * ARGV[3]: lockKeyPrefix - 升级前单名额 key 前缀（teamStockKey + "_"），兼容校验使用
      * 
      * 返回值：
      * 1 - 成功
-     * 0 - 库存不足或 SETNX 失败（已自动回滚）
-     * -1 - 库存 key 不存在
+     * 0 - 库存不足或名额位已被占用（已自动回滚）
      */
     private static final String OCCUPY_STOCK_SCRIPT = ""
             + "local teamStockKey = KEYS[1]\n"
             + "local target = tonumber(ARGV[1])\n"
-            + "local recoveryCount = tonumber(ARGV[2])\n"
-            + "local validTimeMinutes = tonumber(ARGV[3])\n"
-            + "local lockKeyPrefix = ARGV[4]\n"
+            + "local recoveryCount = tonumber(redis.call('GET', KEYS[2]) or '0')\n"
+            + "local ttl = tonumber(ARGV[2]) * 60\n"
+            + "local lockKeyPrefix = ARGV[3]\n"
             + "\n"
             + "-- 1. INCR 增加库存计数，得到占用后的值\n"
             + "-- 注意：从有组队量开始，相当于已经有了一个占用量，所以要 +1\n"
@@ -55,63 +59,66 @@ public class StockOccupyLuaExecutor {
             + "    return 0\n"
             + "end\n"
             + "\n"
-            + "-- 3. 构建锁 key：lockKeyPrefix + occupy\n"
-            + "local lockKey = lockKeyPrefix .. occupy\n"
+            + "-- 3. 占用名额位；原值为 1 表示该名额已被占用\n"
+            + "local taken = redis.call('SETBIT', KEYS[3], occupy, 1)\n"
+            + "-- 兼容升级前的单名额 key，待其全部过期后可移除\n"
+            + "if taken == 0 and redis.call('EXISTS', lockKeyPrefix .. occupy) == 1 then\n"
+            + "    taken = 1\n"
+            + "end\n"
             + "\n"
-            + "-- 4. 尝试加锁（SETNX），设置过期时间\n"
-            + "-- SET key value NX EX seconds 等价于 SETNX + EXPIRE 的原子操作\n"
-            + "local lockResult = redis.call('SET', lockKey, '1', 'NX', 'EX', validTimeMinutes * 60)\n"
+            + "-- 4. 队伍的计数、恢复量、名额位图共用一个过期时间\n"
+            + "redis.call('EXPIRE', KEYS[3], ttl)\n"
+            + "redis.call('EXPIRE', teamStockKey, ttl)\n"
+            + "redis.call('EXPIRE', KEYS[2], ttl)\n"
             + "\n"
-            + "-- 5. 如果加锁失败，回滚库存并返回失败\n"
-            + "if lockResult == false then\n"
+            + "-- 5. 如果名额位已被占用，回滚库存并返回失败\n"
+            + "if taken == 1 then\n"
             + "    redis.call('DECR', teamStockKey)\n"
             + "    return 0\n"
             + "end\n"
             + "\n"
-            + "-- 6. 加锁成功，返回成功\n"
+            + "-- 6. 占用成功，返回成功\n"
             + "return 1";
 
     @Resource
-    private RedissonClient redissonClient;
-
-    private RScript script;
+    private LuaScriptRegistry luaScriptRegistry;
 
     @PostConstruct
     public void init() {
-        // 初始化 RScript，使用 StringCodec 确保编码正确
-        script = redissonClient.getScript(StringCodec.INSTANCE);
+        luaScriptRegistry.register(OCCUPY_STOCK_SCRIPT);
     }
 
     /**
      * 原子化占用库存
      * 
      * @param teamStockKey 组队库存 key
-     * @param lockKeyPrefix 锁 key 前缀（通常是 teamStockKey + "_"）
+     * @param recoveryTeamStockKey 组队恢复量 key
+     * @param lockKeyPrefix 升级前单名额 key 前缀（通常是 teamStockKey + "_"），兼容校验使用
      * @param target 目标数量
-     * @param recoveryCount 恢复数量
-     * @param validTimeMinutes 锁过期时间（分钟）
-     * @return true-成功，false-失败（库存不足或 SETNX 失败，已自动回滚）
+     * @param validTimeMinutes 过期时间（分钟）
+     * @return true-成功，false-失败（库存不足或名额位已被占用，已自动回滚）
      */
-    public boolean occupyStock(String teamStockKey, String lockKeyPrefix, Integer target, Long recoveryCount, Integer validTimeMinutes) {
+    public boolean occupyStock(String teamStockKey, String recoveryTeamStockKey, String lockKeyPrefix, Integer target, Integer validTimeMinutes) {
+        RequestDataLoader.recordRedis();
         // 准备参数
         // KEYS[1]: teamStockKey
-        List<Object> keys = Arrays.asList(teamStockKey);
+        // KEYS[2]: recoveryTeamStockKey
+        // KEYS[3]: slotsKey
+        List<Object> keys = Arrays.asList(teamStockKey, recoveryTeamStockKey, slotsKey(teamStockKey));
         
         // ARGV[1]: target
-        // ARGV[2]: recoveryCount
-        // ARGV[3]: validTimeMinutes
-        // ARGV[4]: lockKeyPrefix
+        // ARGV[2]: validTimeMinutes
+        // ARGV[3]: lockKeyPrefix
         List<Object> values = Arrays.asList(
                 String.valueOf(target),
-                String.valueOf(recoveryCount == null ? 0 : recoveryCount),
                 String.valueOf(validTimeMinutes),
                 lockKeyPrefix
         );
 
-        // 执行 Lua 脚本
+        // 执行 Lua 脚本；EVALSHA，脚本缓存丢失时注册表自动重新加载
         // RScript.Mode.READ_WRITE: 脚本会读取和写入数据
         // RScript.ReturnType.INTEGER: 返回整数类型
-        Long result = script.eval(
+        Long result = luaScriptRegistry.eval(
                 RScript.Mode.READ_WRITE,
                 OCCUPY_STOCK_SCRIPT,
                 RScript.ReturnType.INTEGER,
@@ -119,7 +126,14 @@ public class StockOccupyLuaExecutor {
                 values.toArray()
         );
 
-        // 返回值：1 表示成功，0 或 -1 表示失败
+        // 返回值：1 表示成功，0 表示失败
         return result != null && result == 1;
     }
+
+    /**
+     * 组队名额位图 key；与锁单预占脚本共用
+     */
+    public static String slotsKey(String teamStockKey) {
+        return teamStockKey + SLOTS_KEY_SUFFIX;
+    }
 }
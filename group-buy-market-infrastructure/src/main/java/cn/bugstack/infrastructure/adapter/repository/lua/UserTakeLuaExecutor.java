@@ -0,0 +1,126 @@
+package cn.bugstack.infrastructure.adapter.repository.lua;
+
+import cn.bugstack.infrastructure.loader.RequestDataLoader;
+import org.redisson.api.RScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.Collections;
+
+/**
+ * 用户参与次数 Lua 脚本执行器
+ * <p>
+ * 每个（活动, 用户）一个 hash：count 有效参与次数，锁单累加、退单回退，用于参与上限校验；
+ * seq 累计参与序号，只增不减，用于构建 bizId 唯一值。key 不存在时由仓储从数据库回填。
+ *
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ */
+@Component
+public class UserTakeLuaExecutor {
+
+    /** 参与次数未初始化，需要从数据库回填 */
+    public static final long TAKE_MISS = -1;
+    /** 参与次数已达上限 */
+    public static final long TAKE_LIMIT = -2;
+
+    /**
+     * 占用参与次数
+     * KEYS[1]: 用户参与次数 hash
+     * ARGV[1]: 参与次数上限，-1 不限制
+     * 返回值：成功返回累计参与序号；-1 未初始化；-2 已达上限
+     */
+    private static final String OCCUPY_SCRIPT = ""
+            + "if redis.call('EXISTS', KEYS[1]) == 0 then\n"
+            + "    return -1\n"
+            + "end\n"
+            + "local takeLimit = tonumber(ARGV[1])\n"
+            + "local takeCount = tonumber(redis.call('HGET', KEYS[1], 'count') or '0')\n"
+            + "if takeLimit >= 0 and takeCount >= takeLimit then\n"
+            + "    return -2\n"
+            + "end\n"
+            + "redis.call('HINCRBY', KEYS[1], 'count', 1)\n"
+            + "return redis.call('HINCRBY', KEYS[1], 'seq', 1)";
+
+    /**
+     * 回退参与次数；key 不存在时不处理，下次占用从数据库回填即为最新值
+     * KEYS[1]: 用户参与次数 hash
+     */
+    private static final String RELEASE_SCRIPT = ""
+            + "if redis.call('EXISTS', KEYS[1]) == 0 then\n"
+            + "    return 0\n"
+            + "end\n"
+            + "if tonumber(redis.call('HGET', KEYS[1], 'count') or '0') <= 0 then\n"
+            + "    return 0\n"
+            + "end\n"
+            + "return redis.call('HINCRBY', KEYS[1], 'count', -1)";
+
+    /**
+     * 回填参与次数；仅在 key 不存在时写入，避免覆盖并发占用的累加结果
+     * KEYS[1]: 用户参与次数 hash
+     * ARGV[1]: 数据库有效参与次数
+     * ARGV[2]: 数据库最大参与序号
+     * ARGV[3]: 过期时间（秒）
+     */
+    private static final String BACKFILL_SCRIPT = ""
+            + "if redis.call('EXISTS', KEYS[1]) == 1 then\n"
+            + "    return 0\n"
+            + "end\n"
+            + "redis.call('HSET', KEYS[1], 'count', ARGV[1], 'seq', ARGV[2])\n"
+            + "redis.call('EXPIRE', KEYS[1], tonumber(ARGV[3]))\n"
+            + "return 1";
+
+    @Resource
+    private LuaScriptRegistry luaScriptRegistry;
+
+    @PostConstruct
+    public void init() {
+        luaScriptRegistry.register(OCCUPY_SCRIPT);
+        luaScriptRegistry.register(RELEASE_SCRIPT);
+        luaScriptRegistry.register(BACKFILL_SCRIPT);
+    }
+
+    /**
+     * 占用参与次数
+     *
+     * @return 累计参与序号；{@link #TAKE_MISS} 未初始化；{@link #TAKE_LIMIT} 已达上限
+     */
+    public long occupy(String takeKey, Integer takeLimitCount) {
+        RequestDataLoader.recordRedis();
+        Long result = luaScriptRegistry.eval(
+                RScript.Mode.READ_WRITE,
+                OCCUPY_SCRIPT,
+                RScript.ReturnType.INTEGER,
+                Collections.<Object>singletonList(takeKey),
+                String.valueOf(null == takeLimitCount ? -1 : takeLimitCount));
+        return null == result ? TAKE_MISS : result;
+    }
+
+    /**
+     * 回退参与次数
+     */
+    public void release(String takeKey) {
+        RequestDataLoader.recordRedis();
+        luaScriptRegistry.eval(
+                RScript.Mode.READ_WRITE,
+                RELEASE_SCRIPT,
+                RScript.ReturnType.INTEGER,
+                Collections.<Object>singletonList(takeKey));
+    }
+
+    /**
+     * 回填参与次数
+     */
+    public void backfill(String takeKey, Integer count, Integer seq, long ttlSeconds) {
+        RequestDataLoader.recordRedis();
+        luaScriptRegistry.eval(
+                RScript.Mode.READ_WRITE,
+                BACKFILL_SCRIPT,
+                RScript.ReturnType.INTEGER,
+                Collections.<Object>singletonList(takeKey),
+                String.valueOf(null == count ? 0 : count),
+                String.valueOf(null == seq ? 0 : seq),
+                String.valueOf(ttlSeconds));
+    }
+
+}
@@ -0,0 +1,325 @@
+package cn.bugstack.infrastructure.adapter.repository.stock;
+
+import cn.bugstack.infrastructure.adapter.repository.lua.ActivityStockLuaExecutor;
+import cn.bugstack.infrastructure.dao.IGroupBuyOrderListDao;
+import cn.bugstack.infrastructure.snapshot.ActivitySnapshot;
+import cn.bugstack.infrastructure.snapshot.ActivitySnapshotRegistry;
+import cn.bugstack.types.enums.ResponseCode;
+import cn.bugstack.types.exception.AppException;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBatch;
+import org.redisson.api.RBucket;
+import org.redisson.api.RFuture;
+import org.redisson.api.RLock;
+import org.redisson.api.RSet;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * 活动总名额分段计数
+ * <p>
+ * 1. 活动配置 stock_limit 大于0时启用；总名额拆为 N 个分段计数 key，分散到不同 Redis 分片，避免单 key 热点
+ * 2. 分段 key 不存在时（首次使用、过期或 Redis 数据丢失）加锁重建：总名额减数据库已占用数，再减其余已存在分段的剩余，
+ * 均分给未写入的分段；各段剩余之和恒等于总名额减已占用。已占用数只含已落库订单，重建时在途未落库的订单会少计
+ * 3. 锁单从随机分段开始扣减，当前分段用尽时依次尝试下一段，全部分段用尽才判定售罄
+ * 4. 定时调拨：剩余低于均值一定比例的分段从最富余的分段调入名额；先受保护地扣减调出方，再增加调入方，任何时刻不会超卖，
+ * 两步之间失败只会少卖，记录错误日志
+ * 5. 分段数首次使用时写入 Redis，各节点以 Redis 为准；活动开始后调整总名额需清理分段 key
+ * 6. 占用分段记录在拼团明细上，只有占用过分段的订单退单时才归还；活动配置快照缺失时拒绝占用
+ *
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ */
+@Slf4j
+@Component
+public class ActivityStockStripes {
+
+    /** 未设置活动总名额，未占用 */
+    public static final int NO_LIMIT = -1;
+
+    private static final String STOCK_KEY_PREFIX = "group_buy_market_activity_stock_";
+    private static final String STRIPES_KEY_SUFFIX = "_stripes";
+    private static final String REBUILD_LOCK_SUFFIX = "_rebuild_lock";
+    /** 启用分段计数的活动集合，调拨任务遍历使用 */
+    private static final String ACTIVE_KEY = "group_buy_market_activity_stock_active";
+
+    @Resource
+    private ActivityStockLuaExecutor activityStockLuaExecutor;
+    @Resource
+    private ActivitySnapshotRegistry activitySnapshotRegistry;
+    @Resource
+    private RedissonClient redissonClient;
+    @Resource
+    private IGroupBuyOrderListDao groupBuyOrderListDao;
+
+    /** 新活动的分段数 */
+    @Value("${group-buy-market.activity-stock.stripes:8}")
+    private int stripes;
+    /** 分段剩余低于均值的该百分比时调入名额 */
+    @Value("${group-buy-market.activity-stock.rebalance-low-water-percent:25}")
+    private int lowWaterPercent;
+
+    /** activityId -> 分段数 */
+    private final ConcurrentHashMap<Long, Integer> stripeCounts = new ConcurrentHashMap<>();
+
+    /**
+     * 占用一个活动名额
+     *
+     * @return 占用的分段序号；{@link #NO_LIMIT} 未设置活动总名额；为空表示已售罄
+     */
+    public Integer occupy(Long activityId) {
+        ActivitySnapshot snapshot = activitySnapshotRegistry.get(activityId);
+        // 调用方已按活动配置判定需占用名额，快照缺失时无法确定总名额，拒绝占用
+        if (null == snapshot) {
+            throw new AppException(ResponseCode.UN_ERROR.getCode(), "活动配置快照缺失，无法占用活动总名额");
+        }
+        if (snapshot.getStockLimit() <= 0) return NO_LIMIT;
+
+        int stripeCount = stripeCount(activityId, snapshot);
+        long ttlSeconds = ttlSeconds(snapshot);
+        int start = ThreadLocalRandom.current().nextInt(stripeCount);
+        for (int i = 0; i < stripeCount; i++) {
+            int stripe = (start + i) % stripeCount;
+            String stockKey = stockKey(activityId, stripe);
+            long remain = withRebuild(activityId, snapshot, stripeCount, stripe,
+                    () -> activityStockLuaExecutor.decrement(stockKey, ActivityStockLuaExecutor.STOCK_UNKNOWN, ttlSeconds));
+            if (remain >= 0) return stripe;
+        }
+        return null;
+    }
+
+    /**
+     * 归还一个活动名额
+     *
+     * @param stripe 占用时的分段序号；为空或小于0表示未占用，不归还
+     */
+    public void release(Long activityId, Integer stripe) {
+        if (null == stripe || stripe < 0) return;
+        ActivitySnapshot snapshot = activitySnapshotRegistry.get(activityId);
+        if (null == snapshot) {
+            log.error("活动配置快照缺失，活动名额未归还 activityId:{} stripe:{}", activityId, stripe);
+            return;
+        }
+        if (snapshot.getStockLimit() <= 0) return;
+
+        int stripeCount = stripeCount(activityId, snapshot);
+        int target = stripe >= stripeCount ? ThreadLocalRandom.current().nextInt(stripeCount) : stripe;
+        long remain = activityStockLuaExecutor.increment(stockKey(activityId, target), ActivityStockLuaExecutor.STOCK_UNKNOWN, ttlSeconds(snapshot), 1);
+        // 分段 key 已丢失的按数据库重建；已占用数不含本单，重建后无需再归还
+        if (ActivityStockLuaExecutor.STOCK_MISSING == remain) {
+            rebuild(activityId, snapshot, stripeCount, target);
+        }
+    }
+
+    /**
+     * 预热；写入分段数和各分段初始名额，已写入的分段保持不变
+     */
+    public void warmUp(Long activityId) {
+        ActivitySnapshot snapshot = activitySnapshotRegistry.get(activityId);
+        if (null == snapshot || snapshot.getStockLimit() <= 0) return;
+
+        int stripeCount = stripeCount(activityId, snapshot);
+        long ttlSeconds = ttlSeconds(snapshot);
+        for (int stripe = 0; stripe < stripeCount; stripe++) {
+            long remain = activityStockLuaExecutor.increment(stockKey(activityId, stripe), ActivityStockLuaExecutor.STOCK_UNKNOWN, ttlSeconds, 0);
+            if (ActivityStockLuaExecutor.STOCK_MISSING == remain) {
+                rebuild(activityId, snapshot, stripeCount, stripe);
+            }
+        }
+    }
+
+    /**
+     * 调拨全部进行中活动的分段名额；活动已结束、已删除或取消总名额时移出集合
+     *
+     * @return 调拨名额数
+     */
+    public int rebalance() {
+        RSet<String> active = redissonClient.getSet(ACTIVE_KEY, StringCodec.INSTANCE);
+        int moved = 0;
+        for (String member : active.readAll()) {
+            Long activityId = Long.valueOf(member);
+            ActivitySnapshot snapshot = activitySnapshotRegistry.get(activityId);
+            if (null == snapshot || snapshot.getStockLimit() <= 0 || snapshot.getEndTime() < System.currentTimeMillis()) {
+                active.remove(member);
+                stripeCounts.remove(activityId);
+                continue;
+            }
+            try {
+                moved += rebalance(activityId, snapshot);
+            } catch (Exception e) {
+                log.error("活动名额分段调拨失败 activityId:{}", activityId, e);
+            }
+        }
+        return moved;
+    }
+
+    private int rebalance(Long activityId, ActivitySnapshot snapshot) {
+        int stripeCount = stripeCount(activityId, snapshot);
+        long ttlSeconds = ttlSeconds(snapshot);
+
+        // 1. 一次管道读取各分段剩余；未写入的分段按数据库重建
+        String[] values = readStripes(activityId, stripeCount);
+        long[] remains = new long[stripeCount];
+        long total = 0;
+        for (int stripe = 0; stripe < stripeCount; stripe++) {
+            remains[stripe] = null == values[stripe] ? rebuild(activityId, snapshot, stripeCount, stripe) : Math.max(0, Long.parseLong(values[stripe]));
+            total += remains[stripe];
+        }
+
+        // 剩余不足每段一个时不调拨，锁单依次尝试全部分段即可
+        long average = total / stripeCount;
+        if (average <= 0) return 0;
+        long lowWater = average * lowWaterPercent / 100;
+
+        // 2. 低水位分段从最富余的分段调入，补到均值
+        int moved = 0;
+        for (int stripe = 0; stripe < stripeCount; stripe++) {
+            if (remains[stripe] > lowWater) continue;
+
+            int donor = 0;
+            for (int i = 1; i < stripeCount; i++) {
+                if (remains[i] > remains[donor]) donor = i;
+            }
+            long amount = Math.min(average - remains[stripe], remains[donor] - average);
+            if (amount <= 0) break;
+
+            // 先扣减调出方，扣减以实时剩余为上限
+            String donorKey = stockKey(activityId, donor);
+            long taken = withRebuild(activityId, snapshot, stripeCount, donor,
+                    () -> activityStockLuaExecutor.take(donorKey, ActivityStockLuaExecutor.STOCK_UNKNOWN, ttlSeconds, amount));
+            // 实时剩余不足计划数量时调出方已接近用尽，不再作为调出方
+            remains[donor] = taken < amount ? 0 : remains[donor] - taken;
+            if (taken <= 0) continue;
+
+            try {
+                long remain = activityStockLuaExecutor.increment(stockKey(activityId, stripe), ActivityStockLuaExecutor.STOCK_UNKNOWN, ttlSeconds, taken);
+                // 调入方 key 已丢失的按数据库重建；调出方已扣减，重建结果已含调入名额
+                if (ActivityStockLuaExecutor.STOCK_MISSING == remain) {
+                    rebuild(activityId, snapshot, stripeCount, stripe);
+                }
+            } catch (Exception e) {
+                log.error("活动名额分段调入失败，名额少计 activityId:{} from:{} to:{} amount:{}", activityId, donor, stripe, taken, e);
+                throw e;
+            }
+            remains[stripe] += taken;
+            moved += taken;
+        }
+
+        if (moved > 0) {
+            log.info("活动名额分段调拨 activityId:{} total:{} moved:{}", activityId, total, moved);
+        }
+        return moved;
+    }
+
+    /**
+     * 活动分段数；首次使用时写入 Redis 并登记到调拨集合，之后以 Redis 中的值为准
+     */
+    private int stripeCount(Long activityId, ActivitySnapshot snapshot) {
+        Integer stripeCount = stripeCounts.get(activityId);
+        if (null != stripeCount) return stripeCount;
+        return stripeCounts.computeIfAbsent(activityId, key -> {
+            RBucket<String> bucket = redissonClient.getBucket(STOCK_KEY_PREFIX + activityId + STRIPES_KEY_SUFFIX, StringCodec.INSTANCE);
+            bucket.trySet(String.valueOf(Math.max(1, stripes)), ttlSeconds(snapshot), TimeUnit.SECONDS);
+            redissonClient.getSet(ACTIVE_KEY, StringCodec.INSTANCE).add(String.valueOf(activityId));
+            String value = bucket.get();
+            return Math.max(1, null == value ? stripes : Integer.parseInt(value));
+        });
+    }
+
+    /**
+     * 执行分段脚本；分段 key 不存在时重建后再执行一次
+     */
+    private long withRebuild(Long activityId, ActivitySnapshot snapshot, int stripeCount, int stripe, LongSupplier script) {
+        long result = script.getAsLong();
+        if (ActivityStockLuaExecutor.STOCK_MISSING != result) return result;
+        rebuild(activityId, snapshot, stripeCount, stripe);
+        return script.getAsLong();
+    }
+
+    /**
+     * 重建分段名额；按活动加锁，总名额减数据库已占用数、减其余已存在分段的剩余，均分给未写入的分段，余数给第一个未写入的分段
+     *
+     * @return 分段剩余名额
+     */
+    private long rebuild(Long activityId, ActivitySnapshot snapshot, int stripeCount, int stripe) {
+        RLock lock = redissonClient.getLock(STOCK_KEY_PREFIX + activityId + REBUILD_LOCK_SUFFIX);
+        try {
+            if (!lock.tryLock(3, 10, TimeUnit.SECONDS)) {
+                throw new AppException(ResponseCode.UN_ERROR.getCode(), "活动名额分段重建等待超时");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AppException(ResponseCode.UN_ERROR.getCode(), "活动名额分段重建中断", e);
+        }
+
+        try {
+            String[] values = readStripes(activityId, stripeCount);
+            // 已由其他线程重建
+            if (null != values[stripe]) return Math.max(0, Long.parseLong(values[stripe]));
+
+            Integer occupied = groupBuyOrderListDao.queryActivityStockOccupiedCount(activityId);
+            long unassigned = snapshot.getStockLimit() - (null == occupied ? 0 : occupied);
+            int missing = 0;
+            int firstMissing = -1;
+            for (int i = 0; i < stripeCount; i++) {
+                if (null == values[i]) {
+                    if (missing++ == 0) firstMissing = i;
+                } else {
+                    unassigned -= Math.max(0, Long.parseLong(values[i]));
+                }
+            }
+            unassigned = Math.max(0, unassigned);
+            long stock = unassigned / missing + (stripe == firstMissing ? unassigned % missing : 0);
+
+            activityStockLuaExecutor.increment(stockKey(activityId, stripe), stock, ttlSeconds(snapshot), 0);
+            if (null != occupied && occupied > 0) {
+                log.warn("活动名额分段按数据库重建 activityId:{} stripe:{} occupied:{} stock:{}", activityId, stripe, occupied, stock);
+            }
+            return stock;
+        } finally {
+            if (lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 一次管道读取各分段剩余；未写入的分段为空
+     */
+    private String[] readStripes(Long activityId, int stripeCount) {
+        RBatch batch = redissonClient.createBatch();
+        List<RFuture<String>> futures = new ArrayList<>(stripeCount);
+        for (int stripe = 0; stripe < stripeCount; stripe++) {
+            futures.add(batch.<String>getBucket(stockKey(activityId, stripe), StringCodec.INSTANCE).getAsync());
+        }
+        batch.execute();
+
+        String[] values = new String[stripeCount];
+        for (int stripe = 0; stripe < stripeCount; stripe++) {
+            values[stripe] = futures.get(stripe).getNow();
+        }
+        return values;
+    }
+
+    private static String stockKey(Long activityId, int stripe) {
+        return STOCK_KEY_PREFIX + activityId + "_" + stripe;
+    }
+
+    /**
+     * 保留到活动结束后1天
+     */
+    private static long ttlSeconds(ActivitySnapshot snapshot) {
+        long ttlSeconds = TimeUnit.DAYS.toSeconds(1);
+        return Math.max(ttlSeconds, TimeUnit.MILLISECONDS.toSeconds(snapshot.getEndTime() - System.currentTimeMillis()) + ttlSeconds);
+    }
+
+}
@@ -0,0 +1,82 @@
+package cn.bugstack.infrastructure.adapter.repository.tag;
+
+import cn.bugstack.infrastructure.redis.IRedisService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 人群标签位图布局
+ * <p>
+ * 1. 哈希布局：MD5(userId) 取模作为偏移，位图 key 为 tagId；偏移分散在 2^31 范围，单个标签位图最大可达 256MB
+ * 2. 字典布局：{@link UserIndexDictionary} 分配的连续索引作为偏移，位图 key 为 crowd_tag_dense_{tagId}
+ * 3. 迁移：写入人群时两种布局同时写入，CrowdTagsBitmapMigrationJob 把存量明细重建到字典布局；
+ * 全部标签迁移完成后开启 dense-index 并重启，之后判断和写入只使用字典布局
+ *
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ */
+@Component
+public class CrowdTagBitmapLayout {
+
+    private static final String DENSE_KEY_PREFIX = "crowd_tag_dense_";
+
+    @Resource
+    private UserIndexDictionary userIndexDictionary;
+    @Resource
+    private IRedisService redisService;
+
+    /** 是否使用字典布局 */
+    @Value("${group-buy-market.crowd-tag.dense-index:false}")
+    private boolean dense;
+
+    public boolean isDense() {
+        return dense;
+    }
+
+    /**
+     * 布局名称；本地副本快照按布局区分
+     */
+    public String name() {
+        return dense ? "dense" : "hash";
+    }
+
+    public String bitmapKey(String tagId) {
+        return dense ? denseBitmapKey(tagId) : tagId;
+    }
+
+    public String denseBitmapKey(String tagId) {
+        return DENSE_KEY_PREFIX + tagId;
+    }
+
+    /**
+     * 判断用的用户偏移；字典布局下未分配索引的用户不在任何人群中，返回 null
+     */
+    public Integer queryIndex(String userId) {
+        return dense ? userIndexDictionary.queryIndex(userId) : Integer.valueOf(redisService.getIndexFromUserId(userId));
+    }
+
+    /**
+     * 用户写入人群后调用；清除本节点未分配索引的记录
+     */
+    public void invalidateAbsent(String userId) {
+        if (dense) userIndexDictionary.invalidateAbsent(userId);
+    }
+
+    /**
+     * 批量写入用的用户偏移；字典布局下分配索引
+     */
+    public Map<String, Integer> assignIndexes(Collection<String> userIds) {
+        if (dense) return userIndexDictionary.assignIndexes(userIds);
+
+        Map<String, Integer> result = new HashMap<>(userIds.size() * 2);
+        for (String userId : userIds) {
+            result.put(userId, redisService.getIndexFromUserId(userId));
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,56 @@
+package cn.bugstack.infrastructure.adapter.repository.tag;
+
+import cn.bugstack.domain.tag.model.valobj.CrowdTagsExpressionVO;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.function.Function;
+
+/**
+ * 人群标签表达式位图求值
+ * <p>
+ * 1. 取反不展开为全体用户的补集，中间结果记为 (位图, 是否取反)，与、或按是否取反转换为 and、or、andNot
+ * 2. 有界表达式的结果不取反，是引用标签人群并集的子集
+ *
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ */
+public class CrowdTagsExpressionBitmap {
+
+    private final RoaringBitmap bitmap;
+    private final boolean negated;
+
+    private CrowdTagsExpressionBitmap(RoaringBitmap bitmap, boolean negated) {
+        this.bitmap = bitmap;
+        this.negated = negated;
+    }
+
+    /**
+     * @param tagBitmap 标签人群位图，以用户索引为偏移
+     * @return 组合人群位图
+     */
+    public static RoaringBitmap evaluate(CrowdTagsExpressionVO crowdTagsExpressionVO, Function<String, RoaringBitmap> tagBitmap) {
+        CrowdTagsExpressionBitmap result = crowdTagsExpressionVO.evaluate(
+                tagId -> new CrowdTagsExpressionBitmap(tagBitmap.apply(tagId), false),
+                CrowdTagsExpressionBitmap::and,
+                CrowdTagsExpressionBitmap::or,
+                a -> new CrowdTagsExpressionBitmap(a.bitmap, !a.negated));
+        if (result.negated) throw new IllegalArgumentException("unbounded crowd tags expression " + crowdTagsExpressionVO.getExpression());
+        return result.bitmap;
+    }
+
+    private static CrowdTagsExpressionBitmap and(CrowdTagsExpressionBitmap a, CrowdTagsExpressionBitmap b) {
+        // A & B、A & !B、!A & B、!A & !B = !(A | B)
+        if (!a.negated && !b.negated) return new CrowdTagsExpressionBitmap(RoaringBitmap.and(a.bitmap, b.bitmap), false);
+        if (!a.negated) return new CrowdTagsExpressionBitmap(RoaringBitmap.andNot(a.bitmap, b.bitmap), false);
+        if (!b.negated) return new CrowdTagsExpressionBitmap(RoaringBitmap.andNot(b.bitmap, a.bitmap), false);
+        return new CrowdTagsExpressionBitmap(RoaringBitmap.or(a.bitmap, b.bitmap), true);
+    }
+
+    private static CrowdTagsExpressionBitmap or(CrowdTagsExpressionBitmap a, CrowdTagsExpressionBitmap b) {
+        // A | B、A | !B = !(B & !A)、!A | B = !(A & !B)、!A | !B = !(A & B)
+        if (!a.negated && !b.negated) return new CrowdTagsExpressionBitmap(RoaringBitmap.or(a.bitmap, b.bitmap), false);
+        if (!a.negated) return new CrowdTagsExpressionBitmap(RoaringBitmap.andNot(b.bitmap, a.bitmap), true);
+        if (!b.negated) return new CrowdTagsExpressionBitmap(RoaringBitmap.andNot(a.bitmap, b.bitmap), true);
+        return new CrowdTagsExpressionBitmap(RoaringBitmap.and(a.bitmap, b.bitmap), true);
+    }
+
+}
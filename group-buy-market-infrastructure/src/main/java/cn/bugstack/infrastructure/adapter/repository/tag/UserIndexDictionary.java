@@ -0,0 +1,278 @@
+package cn.bugstack.infrastructure.adapter.repository.tag;
+
+import cn.bugstack.infrastructure.dao.IUserIndexDao;
+import cn.bugstack.infrastructure.dao.po.UserIndex;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.RateLimiter;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBatch;
+import org.redisson.api.RFuture;
+import org.redisson.api.RMap;
+import org.redisson.api.RMapAsync;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 用户索引字典
+ * <p>
+ * 1. 每个用户分配连续的整数索引（user_index 自增ID），作为人群标签位图偏移；位图紧凑，用户之间无哈希碰撞
+ * 2. Redis 哈希按用户ID哈希拆分为多个分片，避免单个大 key；分片数调整后由重建任务按数据库回填
+ * 3. 查询顺序：本地缓存 -> Redis 分片 -> 数据库；Redis 未命中时限速查询数据库并回填，超过速率的视为未分配，
+ * 避免 Redis 数据丢失时试算流量打到数据库
+ * 4. 分配顺序：本地缓存 -> Redis 分片 -> 数据库，已存在的用户不再 insert，避免 insert ignore 冲突消耗自增ID使索引出现空洞
+ * 5. 未分配索引的用户在本地短时记录，不反复查询；用户写入人群时清除记录
+ *
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ */
+@Slf4j
+@Component
+public class UserIndexDictionary {
+
+    private static final String REDIS_KEY_PREFIX = "group_buy_market_user_index_";
+
+    @Resource
+    private IUserIndexDao userIndexDao;
+    @Resource
+    private RedissonClient redissonClient;
+
+    /** 本地缓存最大用户数 */
+    @Value("${group-buy-market.user-index.maximum-size:1000000}")
+    private long maximumSize;
+    /** 未分配索引记录的过期时间（秒） */
+    @Value("${group-buy-market.user-index.absent-expire-seconds:60}")
+    private long absentExpireSeconds;
+    /** Redis 哈希分片数 */
+    @Value("${group-buy-market.user-index.shards:16}")
+    private int shards;
+    /** Redis 未命中时每秒查询数据库的次数上限 */
+    @Value("${group-buy-market.user-index.db-fallback-permits-per-second:200}")
+    private double dbFallbackPermitsPerSecond;
+    /** 重建时每页读取的条数 */
+    @Value("${group-buy-market.user-index.rebuild-page-size:5000}")
+    private int rebuildPageSize;
+
+    private Cache<String, Integer> indexes;
+    private Cache<String, Boolean> absents;
+    private RateLimiter dbFallbackLimiter;
+
+    @PostConstruct
+    public void init() {
+        indexes = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .build();
+        absents = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(absentExpireSeconds, TimeUnit.SECONDS)
+                .build();
+        dbFallbackLimiter = RateLimiter.create(dbFallbackPermitsPerSecond);
+    }
+
+    /**
+     * 查询用户索引，不分配；Redis 未命中时限速查询数据库并回填
+     *
+     * @return 未分配时返回 null
+     */
+    public Integer queryIndex(String userId) {
+        Integer index = indexes.getIfPresent(userId);
+        if (null != index) return index;
+        if (null != absents.getIfPresent(userId)) return null;
+
+        String value = redisMap(userId).get(userId);
+        if (null != value) {
+            index = Integer.valueOf(value);
+            indexes.put(userId, index);
+            return index;
+        }
+
+        // 超过速率不记录未分配，下次请求仍可查询数据库
+        if (!dbFallbackLimiter.tryAcquire()) return null;
+        UserIndex userIndex = userIndexDao.queryUserIndexByUserId(userId);
+        if (null == userIndex) {
+            absents.put(userId, Boolean.TRUE);
+            return null;
+        }
+        index = Math.toIntExact(userIndex.getId());
+        redisMap(userId).fastPut(userId, String.valueOf(index));
+        indexes.put(userId, index);
+        return index;
+    }
+
+    /**
+     * 分配用户索引；已分配时返回原索引。独立事务提交，调用方事务回滚时已缓存的索引仍然有效
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW, rollbackFor = Exception.class)
+    public int assignIndex(String userId) {
+        absents.invalidate(userId);
+        Integer index = indexes.getIfPresent(userId);
+        if (null != index) return index;
+
+        index = queryRemote(userId);
+        if (null == index) {
+            try {
+                UserIndex userIndex = UserIndex.builder().userId(userId).build();
+                userIndexDao.insert(userIndex);
+                index = Math.toIntExact(userIndex.getId());
+            } catch (DuplicateKeyException e) {
+                // 并发分配，以先写入的为准
+                index = Math.toIntExact(userIndexDao.queryUserIndexByUserId(userId).getId());
+            }
+            redisMap(userId).fastPut(userId, String.valueOf(index));
+        }
+        indexes.put(userId, index);
+        return index;
+    }
+
+    /**
+     * 批量分配用户索引；用于人群标签副本构建、迁移，独立事务提交
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW, rollbackFor = Exception.class)
+    public Map<String, Integer> assignIndexes(Collection<String> userIds) {
+        Map<String, Integer> result = new HashMap<>(userIds.size() * 2);
+        Set<String> missUserIds = new LinkedHashSet<>();
+        for (String userId : userIds) {
+            absents.invalidate(userId);
+            Integer index = indexes.getIfPresent(userId);
+            if (null != index) {
+                result.put(userId, index);
+            } else {
+                missUserIds.add(userId);
+            }
+        }
+        if (missUserIds.isEmpty()) return result;
+
+        // 1. Redis 按分片管道批量查询
+        Map<String, String> cached = getAll(missUserIds);
+        cached.forEach((userId, value) -> result.put(userId, Integer.valueOf(value)));
+        missUserIds.removeAll(cached.keySet());
+
+        // 2. 数据库已分配的用户直接读取，只写入新用户；insert ignore 冲突的行同样消耗自增ID
+        if (!missUserIds.isEmpty()) {
+            Map<String, String> loaded = new HashMap<>(missUserIds.size() * 2);
+            loadIndexes(missUserIds, result, loaded);
+            missUserIds.removeAll(loaded.keySet());
+            if (!missUserIds.isEmpty()) {
+                userIndexDao.insertIgnoreBatch(missUserIds);
+                loadIndexes(missUserIds, result, loaded);
+            }
+            putAll(loaded);
+        }
+
+        result.forEach(indexes::put);
+        return result;
+    }
+
+    /**
+     * 按索引反查用户ID；组合人群只对差异部分反查，不缓存
+     *
+     * @return 索引 -> 用户ID
+     */
+    public Map<Integer, String> queryUserIds(Collection<Integer> userIndexes) {
+        List<Long> ids = new ArrayList<>(userIndexes.size());
+        userIndexes.forEach(index -> ids.add(index.longValue()));
+        Map<Integer, String> result = new HashMap<>(userIndexes.size() * 2);
+        for (UserIndex userIndex : userIndexDao.queryUserIndexByIds(ids)) {
+            result.put(Math.toIntExact(userIndex.getId()), userIndex.getUserId());
+        }
+        return result;
+    }
+
+    /**
+     * 按数据库重建 Redis 分片；分片数调整、Redis 数据丢失后执行，已存在的字段覆盖为相同值
+     *
+     * @return 重建的用户数
+     */
+    public int rebuild() {
+        int count = 0;
+        Long lastId = 0L;
+        while (true) {
+            List<UserIndex> userIndexes = userIndexDao.queryUserIndexPage(lastId, rebuildPageSize);
+            if (null == userIndexes || userIndexes.isEmpty()) break;
+
+            Map<String, String> page = new HashMap<>(userIndexes.size() * 2);
+            userIndexes.forEach(userIndex -> page.put(userIndex.getUserId(), String.valueOf(userIndex.getId())));
+            putAll(page);
+
+            count += userIndexes.size();
+            lastId = userIndexes.get(userIndexes.size() - 1).getId();
+            if (userIndexes.size() < rebuildPageSize) break;
+        }
+        absents.invalidateAll();
+        log.info("用户索引字典重建完成 shards:{} count:{}", shards, count);
+        return count;
+    }
+
+    /**
+     * 清除未分配记录；其他节点为用户分配索引后调用
+     */
+    public void invalidateAbsent(String userId) {
+        absents.invalidate(userId);
+    }
+
+    private void loadIndexes(Collection<String> userIds, Map<String, Integer> result, Map<String, String> loaded) {
+        for (UserIndex userIndex : userIndexDao.queryUserIndexByUserIds(userIds)) {
+            int index = Math.toIntExact(userIndex.getId());
+            result.put(userIndex.getUserId(), index);
+            loaded.put(userIndex.getUserId(), String.valueOf(index));
+        }
+    }
+
+    private Integer queryRemote(String userId) {
+        RMap<String, String> redisMap = redisMap(userId);
+        String value = redisMap.get(userId);
+        if (null != value) return Integer.valueOf(value);
+
+        UserIndex userIndex = userIndexDao.queryUserIndexByUserId(userId);
+        if (null == userIndex) return null;
+
+        int index = Math.toIntExact(userIndex.getId());
+        redisMap.fastPut(userId, String.valueOf(index));
+        return index;
+    }
+
+    private Map<String, String> getAll(Collection<String> userIds) {
+        Map<Integer, Set<String>> shardUserIds = new HashMap<>();
+        userIds.forEach(userId -> shardUserIds.computeIfAbsent(shard(userId), key -> new HashSet<>()).add(userId));
+
+        RBatch batch = redissonClient.createBatch();
+        List<RFuture<Map<String, String>>> futures = new ArrayList<>(shardUserIds.size());
+        shardUserIds.forEach((shard, keys) -> futures.add(batch.<String, String>getMap(REDIS_KEY_PREFIX + shard, StringCodec.INSTANCE).getAllAsync(keys)));
+        batch.execute();
+
+        Map<String, String> result = new HashMap<>(userIds.size() * 2);
+        futures.forEach(future -> result.putAll(future.getNow()));
+        return result;
+    }
+
+    private void putAll(Map<String, String> values) {
+        if (values.isEmpty()) return;
+        Map<Integer, Map<String, String>> shardValues = new HashMap<>();
+        values.forEach((userId, index) -> shardValues.computeIfAbsent(shard(userId), key -> new HashMap<>()).put(userId, index));
+
+        RBatch batch = redissonClient.createBatch();
+        shardValues.forEach((shard, entries) -> {
+            RMapAsync<String, String> map = batch.getMap(REDIS_KEY_PREFIX + shard, StringCodec.INSTANCE);
+            map.putAllAsync(entries);
+        });
+        batch.execute();
+    }
+
+    private RMap<String, String> redisMap(String userId) {
+        return redissonClient.getMap(REDIS_KEY_PREFIX + shard(userId), StringCodec.INSTANCE);
+    }
+
+    private int shard(String userId) {
+        return (userId.hashCode() & Integer.MAX_VALUE) % Math.max(1, shards);
+    }
+
+}
@@ -0,0 +1,318 @@
+package cn.bugstack.infrastructure.adapter.repository.writer;
+
+import cn.bugstack.infrastructure.dao.IGroupBuyOrderDao;
+import cn.bugstack.infrastructure.dao.IGroupBuyOrderListDao;
+import cn.bugstack.infrastructure.dao.IMarketEventOutboxDao;
+import cn.bugstack.infrastructure.dao.po.GroupBuyOrder;
+import cn.bugstack.infrastructure.dao.po.GroupBuyOrderList;
+import cn.bugstack.infrastructure.dao.po.MarketEventOutbox;
+import cn.bugstack.types.enums.ResponseCode;
+import cn.bugstack.types.exception.AppException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 拼团锁单写入器
+ * <p>
+ * 1. 单笔写入：每次锁单独立开启一个事务，写入 group_buy_order / group_buy_order_list
+ * 2. 组提交（group commit）：并发锁单请求先进入队列，刷写线程攒批几毫秒后在一个事务内以多行 insert 写入，
+ * 再逐个回执调用方的 future。批量失败时整批回滚并逐笔重放，保证唯一索引冲突等错误回到对应的调用方。
+ * 3. 调用方等待超时与刷写线程取批通过 CAS 互斥：超时先取消的任务不再写入；已被取批的任务调用方继续等待真实结果，避免回滚库存后订单仍落库。
+ * 4. 继续等待以事务超时加余量为上限，仍无结果时抛出 E0011（结果未知），调用方不能回退预占，交由对账按订单是否落库处理。
+ *
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ */
+@Slf4j
+@Component
+public class GroupBuyOrderLockWriter {
+
+    @Resource
+    private IGroupBuyOrderDao groupBuyOrderDao;
+    @Resource
+    private IGroupBuyOrderListDao groupBuyOrderListDao;
+    @Resource
+    private IMarketEventOutboxDao marketEventOutboxDao;
+    @Resource
+    private PlatformTransactionManager transactionManager;
+
+    /** 单批最大条数 */
+    @Value("${group-buy-market.lock-order.group-commit.max-batch-size:64}")
+    private int maxBatchSize;
+    /** 攒批等待时间（毫秒） */
+    @Value("${group-buy-market.lock-order.group-commit.linger-ms:5}")
+    private long lingerMs;
+    /** 队列容量，队列满时退化为单笔写入 */
+    @Value("${group-buy-market.lock-order.group-commit.queue-capacity:2048}")
+    private int queueCapacity;
+    /** 刷写线程数 */
+    @Value("${group-buy-market.lock-order.group-commit.flush-threads:2}")
+    private int flushThreads;
+    /** 调用方等待回执的超时时间（毫秒） */
+    @Value("${group-buy-market.lock-order.group-commit.wait-timeout-ms:3000}")
+    private long waitTimeoutMs;
+    /** 批次已写入时，在事务超时基础上继续等待结果的余量（毫秒） */
+    @Value("${group-buy-market.lock-order.group-commit.outcome-margin-ms:2000}")
+    private long outcomeMarginMs;
+    /** 锁单写入事务超时（秒） */
+    @Value("${group-buy-market.lock-order.transaction-timeout-seconds:5}")
+    private int transactionTimeoutSeconds;
+
+    private TransactionTemplate transactionTemplate;
+    private BlockingQueue<LockOrderTask> queue;
+    private ExecutorService flushExecutor;
+    private volatile boolean running = true;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setTimeout(transactionTimeoutSeconds);
+
+        queue = new LinkedBlockingQueue<>(queueCapacity);
+        flushExecutor = Executors.newFixedThreadPool(flushThreads, runnable -> {
+            Thread thread = new Thread(runnable, "group-commit-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < flushThreads; i++) {
+            flushExecutor.execute(this::flushLoop);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        running = false;
+        flushExecutor.shutdown();
+        if (!flushExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+            log.warn("组提交刷写线程未在超时时间内退出 剩余:{}", queue.size());
+        }
+    }
+
+    /**
+     * 单笔写入，独立事务
+     */
+    public void write(LockOrderCommand command) {
+        transactionTemplate.executeWithoutResult(status -> doWrite(command));
+    }
+
+    /**
+     * 组提交写入，阻塞等待所在批次提交完成
+     */
+    public void groupCommit(LockOrderCommand command) {
+        LockOrderTask task = new LockOrderTask(command);
+        if (!running || !queue.offer(task)) {
+            // 队列已满或停机中，退化为单笔写入
+            write(command);
+            return;
+        }
+
+        try {
+            task.future.get(waitTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new AppException(ResponseCode.UN_ERROR.getCode(), ResponseCode.UN_ERROR.getInfo(), cause);
+        } catch (TimeoutException e) {
+            if (task.cancel()) {
+                log.error("组提交等待超时，已取消 teamId:{} orderId:{}", command.getTeamId(), command.getGroupBuyOrderList().getOrderId());
+                throw new AppException(ResponseCode.UN_ERROR.getCode(), "组提交等待超时", e);
+            }
+            // 已被刷写线程取走，事务结果未知，等待真实结果
+            log.warn("组提交等待超时，批次写入中继续等待 teamId:{} orderId:{}", command.getTeamId(), command.getGroupBuyOrderList().getOrderId());
+            awaitOutcome(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AppException(ResponseCode.UN_ERROR.getCode(), ResponseCode.UN_ERROR.getInfo(), e);
+        }
+    }
+
+    private void awaitOutcome(LockOrderTask task) {
+        LockOrderCommand command = task.command;
+        try {
+            task.future.get(TimeUnit.SECONDS.toMillis(transactionTimeoutSeconds) + outcomeMarginMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // 事务超时后仍无回执（批次失败后逐笔重放中、连接池阻塞等），订单可能已落库
+            log.error("组提交结果未知，交由对账确认 teamId:{} orderId:{}", command.getTeamId(), command.getGroupBuyOrderList().getOrderId());
+            throw new AppException(ResponseCode.E0011.getCode(), ResponseCode.E0011.getInfo(), e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new AppException(ResponseCode.UN_ERROR.getCode(), ResponseCode.UN_ERROR.getInfo(), cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AppException(ResponseCode.UN_ERROR.getCode(), ResponseCode.UN_ERROR.getInfo(), e);
+        }
+    }
+
+    private void doWrite(LockOrderCommand command) {
+        if (command.isNewTeam()) {
+            groupBuyOrderDao.insert(command.getGroupBuyOrder());
+        } else {
+            // 更新记录 - 如果更新记录不等于1，则表示拼团已满，抛出异常
+            int updateAddTargetCount = groupBuyOrderDao.updateAddLockCount(command.getTeamId());
+            if (1 != updateAddTargetCount) {
+                throw new AppException(ResponseCode.E0005);
+            }
+        }
+
+        try {
+            groupBuyOrderListDao.insert(command.getGroupBuyOrderList());
+        } catch (DuplicateKeyException e) {
+            throw new AppException(ResponseCode.INDEX_EXCEPTION);
+        }
+
+        // 事件写入发件箱，提交后投递
+        if (null != command.getMarketEventOutbox()) {
+            marketEventOutboxDao.insert(command.getMarketEventOutbox());
+        }
+    }
+
+    private void flushLoop() {
+        List<LockOrderTask> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                LockOrderTask first = queue.poll(1, TimeUnit.SECONDS);
+                if (null == first) continue;
+                batch.add(first);
+
+                // 攒批；到达条数上限或等待时间即刷写
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMs);
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        queue.drainTo(batch, maxBatchSize - batch.size());
+                        break;
+                    }
+                    LockOrderTask next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (null == next) break;
+                    batch.add(next);
+                }
+
+                // 调用方已超时取消的任务跳过，其余任务标记为写入中，调用方不能再取消
+                batch.removeIf(task -> !task.claim());
+                if (!batch.isEmpty()) flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Throwable e) {
+                log.error("组提交刷写异常 size:{}", batch.size(), e);
+                for (LockOrderTask task : batch) {
+                    task.future.completeExceptionally(e);
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<LockOrderTask> batch) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> doBatchWrite(batch));
+        } catch (Exception e) {
+            // 整批回滚后逐笔重放，每个调用方拿到各自的结果（如唯一索引冲突）
+            log.warn("组提交批量写入失败，逐笔重放 size:{} error:{}", batch.size(), e.getMessage());
+            for (LockOrderTask task : batch) {
+                try {
+                    write(task.command);
+                    task.future.complete(null);
+                } catch (Exception ex) {
+                    task.future.completeExceptionally(ex);
+                }
+            }
+            return;
+        }
+
+        for (LockOrderTask task : batch) {
+            if (null != task.error) {
+                task.future.completeExceptionally(task.error);
+            } else {
+                task.future.complete(null);
+            }
+        }
+    }
+
+    private void doBatchWrite(List<LockOrderTask> batch) {
+        // 1. 新开团多行写入
+        List<GroupBuyOrder> groupBuyOrders = new ArrayList<>();
+        List<LockOrderTask> joinTasks = new ArrayList<>();
+        for (LockOrderTask task : batch) {
+            task.error = null;
+            if (task.command.isNewTeam()) {
+                groupBuyOrders.add(task.command.getGroupBuyOrder());
+            } else {
+                joinTasks.add(task);
+            }
+        }
+        if (!groupBuyOrders.isEmpty()) {
+            groupBuyOrderDao.insertBatch(groupBuyOrders);
+        }
+
+        // 2. 加入组队累加锁单量；按 teamId 排序加锁，降低多批次之间死锁概率。已满的请求单独回执 E0005，不影响同批其他请求
+        joinTasks.sort(Comparator.comparing(task -> task.command.getTeamId()));
+        for (LockOrderTask task : joinTasks) {
+            int updateAddTargetCount = groupBuyOrderDao.updateAddLockCount(task.command.getTeamId());
+            if (1 != updateAddTargetCount) {
+                task.error = new AppException(ResponseCode.E0005);
+            }
+        }
+
+        // 3. 拼团明细、发件箱事件多行写入
+        List<GroupBuyOrderList> groupBuyOrderLists = new ArrayList<>(batch.size());
+        List<MarketEventOutbox> marketEventOutboxes = new ArrayList<>(batch.size());
+        for (LockOrderTask task : batch) {
+            if (null != task.error) continue;
+            groupBuyOrderLists.add(task.command.getGroupBuyOrderList());
+            if (null != task.command.getMarketEventOutbox()) {
+                marketEventOutboxes.add(task.command.getMarketEventOutbox());
+            }
+        }
+        if (!groupBuyOrderLists.isEmpty()) {
+            groupBuyOrderListDao.insertBatch(groupBuyOrderLists);
+        }
+        if (!marketEventOutboxes.isEmpty()) {
+            marketEventOutboxDao.insertBatch(marketEventOutboxes);
+        }
+    }
+
+    private static class LockOrderTask {
+
+        private static final int PENDING = 0;
+        private static final int CLAIMED = 1;
+        private static final int CANCELLED = 2;
+
+        private final LockOrderCommand command;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        /** 等待中、已被刷写线程取走、调用方已取消 */
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        /** 批内判定失败的原因，批次提交后回执 */
+        private RuntimeException error;
+
+        private LockOrderTask(LockOrderCommand command) {
+            this.command = command;
+        }
+
+        /** 刷写线程取走任务；已取消时返回 false */
+        private boolean claim() {
+            return state.compareAndSet(PENDING, CLAIMED) || state.get() == CLAIMED;
+        }
+
+        /** 调用方超时取消；已被取走时返回 false */
+        private boolean cancel() {
+            return state.compareAndSet(PENDING, CANCELLED);
+        }
+
+    }
+
+}
@@ -0,0 +1,35 @@
+package cn.bugstack.infrastructure.adapter.repository.writer;
+
+import cn.bugstack.infrastructure.dao.po.GroupBuyOrder;
+import cn.bugstack.infrastructure.dao.po.GroupBuyOrderList;
+import cn.bugstack.infrastructure.dao.po.MarketEventOutbox;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 锁单写入指令；仓储层把聚合对象转换为待写入的 PO 后交给写入器执行
+ *
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class LockOrderCommand {
+
+    /** 拼单组队ID */
+    private String teamId;
+    /** 新开团记录；为空表示加入已有组队，需要累加锁单量 */
+    private GroupBuyOrder groupBuyOrder;
+    /** 拼团明细记录 */
+    private GroupBuyOrderList groupBuyOrderList;
+    /** 拼团中事件，与拼团明细同一事务写入发件箱；为空表示无事件 */
+    private MarketEventOutbox marketEventOutbox;
+
+    public boolean isNewTeam() {
+        return null != groupBuyOrder;
+    }
+
+}
@@ -0,0 +1,285 @@
+package cn.bugstack.infrastructure.adapter.repository.writer;
+
+import cn.bugstack.infrastructure.adapter.repository.lua.LuaScriptRegistry;
+import cn.bugstack.infrastructure.dao.IGroupBuyOrderListDao;
+import cn.bugstack.infrastructure.dao.ILockOrderDeadLetterDao;
+import cn.bugstack.infrastructure.dao.po.GroupBuyOrderList;
+import cn.bugstack.infrastructure.dao.po.LockOrderDeadLetter;
+import cn.bugstack.infrastructure.dcc.DCCService;
+import cn.bugstack.infrastructure.event.MarketEventOutboxRelay;
+import cn.bugstack.types.common.Constants;
+import cn.bugstack.types.enums.ResponseCode;
+import cn.bugstack.types.exception.AppException;
+import com.alibaba.fastjson2.JSON;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.redisson.api.RBlockingQueue;
+import org.redisson.api.RMap;
+import org.redisson.api.RScoredSortedSet;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 锁单异步落库处理器（write-behind）
+ * <p>
+ * 1. Redis 优先锁单模式下，预占脚本把订单ID写入 Redis 队列，消费线程取出预占记录写入数据库，失败时带退避重试
+ * 2. 待落库集合按预占时间记录所有未落库订单，对账任务扫描超过宽限期仍未落库的记录：已落库的清理，未落库的重放，
+ * 重放失败按次数指数退避后再次对账
+ * 3. 预占已向调用方确认锁单成功，任何情况下都不自动释放；超过最大次数的转入死信表并告警，由人工修复（补录订单或释放预占）
+ *
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ */
+@Slf4j
+@Component
+public class LockOrderWriteBehindProcessor {
+
+    public static final String QUEUE_KEY = "group_buy_market_lock_order_write_behind_queue";
+    public static final String PENDING_KEY = "group_buy_market_lock_order_write_behind_pending";
+    public static final String RESERVE_KEY_PREFIX = "group_buy_market_lock_order_reserve_";
+
+    /** 预占记录字段累加 */
+    private static final String HINCRBY_SCRIPT = "return redis.call('HINCRBY', KEYS[1], ARGV[1], ARGV[2])";
+
+    @Resource
+    private RedissonClient redissonClient;
+    @Resource
+    private GroupBuyOrderLockWriter groupBuyOrderLockWriter;
+    @Resource
+    private IGroupBuyOrderListDao groupBuyOrderListDao;
+    @Resource
+    private DCCService dccService;
+    @Resource
+    private LuaScriptRegistry luaScriptRegistry;
+    @Resource
+    private MarketEventOutboxRelay marketEventOutboxRelay;
+    @Resource
+    private ILockOrderDeadLetterDao lockOrderDeadLetterDao;
+    @Resource
+    private ObjectProvider<MeterRegistry> meterRegistryProvider;
+
+    /** 消费线程数 */
+    @Value("${group-buy-market.lock-order.write-behind.consumer-threads:2}")
+    private int consumerThreads;
+    /** 单次消费内的重试次数 */
+    @Value("${group-buy-market.lock-order.write-behind.retry-times:3}")
+    private int retryTimes;
+    /** 对账重放的最大次数，超过后转入死信表 */
+    @Value("${group-buy-market.lock-order.write-behind.max-attempts:5}")
+    private int maxAttempts;
+    /** 对账宽限期（秒），预占超过该时间仍未落库才处理 */
+    @Value("${group-buy-market.lock-order.write-behind.reconcile-grace-seconds:30}")
+    private long reconcileGraceSeconds;
+    /** 单次对账条数 */
+    @Value("${group-buy-market.lock-order.write-behind.reconcile-batch-size:500}")
+    private int reconcileBatchSize;
+    /** 对账重放失败的退避基数（秒），按次数翻倍 */
+    @Value("${group-buy-market.lock-order.write-behind.retry-backoff-seconds:10}")
+    private long retryBackoffSeconds;
+    /** 对账重放失败的最大退避（秒） */
+    @Value("${group-buy-market.lock-order.write-behind.max-backoff-seconds:600}")
+    private long maxBackoffSeconds;
+
+    private ExecutorService consumerExecutor;
+    private Counter deadLetterCounter;
+    private volatile boolean running = true;
+
+    @PostConstruct
+    public void init() {
+        luaScriptRegistry.register(HINCRBY_SCRIPT);
+        MeterRegistry meterRegistry = meterRegistryProvider.getIfAvailable();
+        if (null != meterRegistry) {
+            deadLetterCounter = Counter.builder("group_buy_market_lock_order_dead_letter").register(meterRegistry);
+        }
+        consumerExecutor = Executors.newFixedThreadPool(consumerThreads, runnable -> {
+            Thread thread = new Thread(runnable, "lock-order-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < consumerThreads; i++) {
+            consumerExecutor.execute(this::consumeLoop);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        running = false;
+        consumerExecutor.shutdown();
+        consumerExecutor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 对账；修复预占后迟迟未落库的记录
+     *
+     * @return 处理条数
+     */
+    public int reconcile() {
+        RScoredSortedSet<String> pending = redissonClient.getScoredSortedSet(PENDING_KEY, StringCodec.INSTANCE);
+        long deadline = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(reconcileGraceSeconds);
+        Collection<String> orderIds = pending.valueRange(0, true, deadline, true, 0, reconcileBatchSize);
+
+        int count = 0;
+        for (String orderId : orderIds) {
+            try {
+                RMap<String, String> reserveMap = getReserveMap(orderId);
+                Map<String, String> reserve = reserveMap.readAllMap();
+                if (null == reserve || reserve.isEmpty()) {
+                    pending.remove(orderId);
+                    continue;
+                }
+
+                LockOrderCommand command = parseCommand(reserve);
+                if (isLanded(command)) {
+                    cleanup(orderId);
+                } else {
+                    long attempts = hincrBy(RESERVE_KEY_PREFIX + orderId, "attempts", 1);
+                    try {
+                        land(orderId, command);
+                    } catch (Exception e) {
+                        if (attempts >= maxAttempts) {
+                            park(orderId, reserve, command, attempts, e);
+                        } else {
+                            backoff(pending, orderId, attempts);
+                            log.warn("锁单异步落库对账重放失败，退避后重试 orderId:{} attempts:{}", orderId, attempts, e);
+                        }
+                    }
+                }
+                count++;
+            } catch (Exception e) {
+                log.error("锁单异步落库对账失败 orderId:{}", orderId, e);
+            }
+        }
+        return count;
+    }
+
+    private void consumeLoop() {
+        RBlockingQueue<String> queue = redissonClient.getBlockingQueue(QUEUE_KEY, StringCodec.INSTANCE);
+        while (running) {
+            String orderId = null;
+            try {
+                orderId = queue.poll(1, TimeUnit.SECONDS);
+                if (null == orderId) continue;
+
+                Map<String, String> reserve = getReserveMap(orderId).readAllMap();
+                if (null == reserve || reserve.isEmpty()) {
+                    // 已由对账处理
+                    continue;
+                }
+                LockOrderCommand command = parseCommand(reserve);
+
+                for (int attempt = 1; ; attempt++) {
+                    try {
+                        land(orderId, command);
+                        break;
+                    } catch (Exception e) {
+                        if (attempt >= retryTimes) throw e;
+                        // 加入组队时，开团记录可能还在队列中未落库，退避后重试
+                        Thread.sleep(50L * attempt);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                // 保留在待落库集合中，由对账任务重放
+                log.error("锁单异步落库失败，等待对账重放 orderId:{}", orderId, e);
+            }
+        }
+    }
+
+    private void land(String orderId, LockOrderCommand command) {
+        try {
+            if (dccService.isGroupCommitSwitch()) {
+                groupBuyOrderLockWriter.groupCommit(command);
+            } else {
+                groupBuyOrderLockWriter.write(command);
+            }
+            // 已提交，投递拼团中事件
+            if (null != command.getMarketEventOutbox()) {
+                marketEventOutboxRelay.submit(Collections.singletonList(command.getMarketEventOutbox()));
+            }
+        } catch (AppException e) {
+            // 唯一索引冲突：对账与消费并发重放时，记录可能已经落库
+            if (!ResponseCode.INDEX_EXCEPTION.getCode().equals(e.getCode()) || !isLanded(command)) {
+                throw e;
+            }
+        }
+        cleanup(orderId);
+    }
+
+    private boolean isLanded(LockOrderCommand command) {
+        GroupBuyOrderList orderList = command.getGroupBuyOrderList();
+        GroupBuyOrderList groupBuyOrderListReq = new GroupBuyOrderList();
+        groupBuyOrderListReq.setUserId(orderList.getUserId());
+        groupBuyOrderListReq.setOutTradeNo(orderList.getOutTradeNo());
+        GroupBuyOrderList groupBuyOrderListRes = groupBuyOrderListDao.queryGroupBuyOrderRecordByOutTradeNo(groupBuyOrderListReq);
+        return null != groupBuyOrderListRes && orderList.getOrderId().equals(groupBuyOrderListRes.getOrderId());
+    }
+
+    /**
+     * 退避；按重放次数翻倍推迟下次对账时间
+     */
+    private void backoff(RScoredSortedSet<String> pending, String orderId, long attempts) {
+        long backoffSeconds = Math.min(maxBackoffSeconds, retryBackoffSeconds << Math.min(attempts - 1, 30));
+        long score = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(reconcileGraceSeconds) + TimeUnit.SECONDS.toMillis(backoffSeconds);
+        pending.add(score, orderId);
+    }
+
+    /**
+     * 转入死信；预占保留不释放，移出待落库集合，由人工按死信记录补录订单或释放预占
+     */
+    private void park(String orderId, Map<String, String> reserve, LockOrderCommand command, long attempts, Exception e) {
+        GroupBuyOrderList orderList = command.getGroupBuyOrderList();
+        lockOrderDeadLetterDao.insert(LockOrderDeadLetter.builder()
+                .orderId(orderId)
+                .userId(orderList.getUserId())
+                .activityId(orderList.getActivityId())
+                .outTradeNo(orderList.getOutTradeNo())
+                .reserve(JSON.toJSONString(reserve))
+                .attempts((int) attempts)
+                .errorMessage(StringUtils.abbreviate(String.valueOf(e.getMessage()), 512))
+                .build());
+        cleanup(orderId);
+        if (null != deadLetterCounter) deadLetterCounter.increment();
+        log.error("【告警】锁单异步落库超过最大重放次数，已转入死信待人工修复 orderId:{} attempts:{}", orderId, attempts, e);
+    }
+
+    private void cleanup(String orderId) {
+        redissonClient.getScoredSortedSet(PENDING_KEY, StringCodec.INSTANCE).remove(orderId);
+        getReserveMap(orderId).delete();
+    }
+
+    private long hincrBy(String key, String field, long delta) {
+        Long value = luaScriptRegistry.eval(RScript.Mode.READ_WRITE, HINCRBY_SCRIPT, RScript.ReturnType.INTEGER,
+                Collections.<Object>singletonList(key), field, String.valueOf(delta));
+        return null == value ? 0 : value;
+    }
+
+    private RMap<String, String> getReserveMap(String orderId) {
+        return redissonClient.getMap(RESERVE_KEY_PREFIX + orderId, StringCodec.INSTANCE);
+    }
+
+    private LockOrderCommand parseCommand(Map<String, String> reserve) {
+        LockOrderCommand command = JSON.parseObject(reserve.get("payload"), LockOrderCommand.class);
+        // bizId 唯一值；活动id_用户id_参与次数累加，参与序号由预占脚本生成
+        GroupBuyOrderList orderList = command.getGroupBuyOrderList();
+        orderList.setBizId(orderList.getActivityId() + Constants.UNDERLINE + orderList.getUserId() + Constants.UNDERLINE + reserve.get("seq"));
+        return command;
+    }
+
+}
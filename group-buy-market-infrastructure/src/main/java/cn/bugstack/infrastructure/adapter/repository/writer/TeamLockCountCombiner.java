@@ -0,0 +1,243 @@
+package cn.bugstack.infrastructure.adapter.repository.writer;
+
+import cn.bugstack.infrastructure.dao.IGroupBuyOrderDao;
+import cn.bugstack.infrastructure.dao.IGroupBuyOrderListDao;
+import cn.bugstack.infrastructure.dao.IMarketEventOutboxDao;
+import cn.bugstack.infrastructure.dao.po.GroupBuyOrder;
+import cn.bugstack.infrastructure.dao.po.GroupBuyOrderList;
+import cn.bugstack.infrastructure.dao.po.MarketEventOutbox;
+import cn.bugstack.infrastructure.snapshot.TeamFullRegistry;
+import cn.bugstack.types.enums.ResponseCode;
+import cn.bugstack.types.exception.AppException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 热点组队锁单合并器
+ * <p>
+ * 1. 同一 teamId 的加入组队请求进入该队伍的等待队列；没有合并者时由当前请求线程担任合并者（flat combining），
+ * 一次取出队列中的全部请求，在一个事务内锁定队伍行、按剩余名额一次累加 lock_count + N，并多行写入拼团明细
+ * 2. 合并者执行事务期间到达的请求继续排队，由下一个合并者一并处理；热点队伍越热合并越多，行锁竞争从 N 次降为 1 次
+ * 3. 超出剩余名额的请求直接回执 E0005；名额用尽的队伍记入 {@link TeamFullRegistry} 并广播，后续请求不访问数据库直接拒绝，退单时移除。
+ * 队伍记录不存在（teamId 错误、开团记录尚未落库）时整批回执 E0005，不记为已满
+ * 4. 批量写入失败时整批回滚，逐笔重放，唯一索引冲突等错误回到对应的调用方
+ *
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ */
+@Slf4j
+@Component
+public class TeamLockCountCombiner {
+
+    @Resource
+    private IGroupBuyOrderDao groupBuyOrderDao;
+    @Resource
+    private IGroupBuyOrderListDao groupBuyOrderListDao;
+    @Resource
+    private IMarketEventOutboxDao marketEventOutboxDao;
+    @Resource
+    private GroupBuyOrderLockWriter groupBuyOrderLockWriter;
+    @Resource
+    private PlatformTransactionManager transactionManager;
+    @Resource
+    private TeamFullRegistry teamFullRegistry;
+
+    /** 单次合并最大条数 */
+    @Value("${group-buy-market.lock-order.team-combine.max-batch-size:128}")
+    private int maxBatchSize;
+    /** 等待合并结果的轮询间隔（毫秒），轮询时尝试接任合并者 */
+    @Value("${group-buy-market.lock-order.team-combine.poll-millis:2}")
+    private long pollMillis;
+    /** 锁单写入事务超时（秒），与锁单写入器一致 */
+    @Value("${group-buy-market.lock-order.transaction-timeout-seconds:5}")
+    private int transactionTimeoutSeconds;
+
+    private TransactionTemplate transactionTemplate;
+
+    /** teamId -> 等待合并的请求 */
+    private final ConcurrentHashMap<String, TeamQueue> teamQueues = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setTimeout(transactionTimeoutSeconds);
+    }
+
+    /**
+     * 加入组队锁单，阻塞等待所在合并批次提交完成
+     *
+     * @throws AppException E0005 队伍名额已满
+     */
+    public void combine(LockOrderCommand command) {
+        String teamId = command.getTeamId();
+        if (teamFullRegistry.isFull(teamId)) {
+            throw new AppException(ResponseCode.E0005);
+        }
+
+        LockOrderTask task = new LockOrderTask(command);
+        TeamQueue teamQueue = teamQueues.computeIfAbsent(teamId, key -> new TeamQueue());
+        teamQueue.pending.offer(task);
+
+        boolean interrupted = false;
+        while (!task.future.isDone()) {
+            if (teamQueue.combining.compareAndSet(false, true)) {
+                try {
+                    drainAndFlush(teamId, teamQueue);
+                } finally {
+                    teamQueue.combining.set(false);
+                }
+                // 队列已空时移除；移除后仍入队的请求由其自身线程担任合并者处理
+                if (teamQueue.pending.isEmpty()) {
+                    teamQueues.remove(teamId, teamQueue);
+                }
+                continue;
+            }
+
+            try {
+                task.future.get(pollMillis, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException ignore) {
+                // 合并者仍在执行或已退出，下一轮尝试接任
+            } catch (ExecutionException ignore) {
+                // 结果在循环外统一处理
+            } catch (InterruptedException e) {
+                // 请求已入队，可能已在合并者的事务中，不能中途放弃；等待完成后恢复中断标记
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+
+        try {
+            task.future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new AppException(ResponseCode.UN_ERROR.getCode(), ResponseCode.UN_ERROR.getInfo(), cause);
+        }
+    }
+
+    private void drainAndFlush(String teamId, TeamQueue teamQueue) {
+        List<LockOrderTask> batch = new ArrayList<>();
+        LockOrderTask task;
+        while (batch.size() < maxBatchSize && null != (task = teamQueue.pending.poll())) {
+            batch.add(task);
+        }
+        if (batch.isEmpty()) return;
+
+        // 已满队伍不访问数据库
+        if (teamFullRegistry.isFull(teamId)) {
+            for (LockOrderTask item : batch) {
+                item.future.completeExceptionally(new AppException(ResponseCode.E0005));
+            }
+            return;
+        }
+
+        try {
+            Integer remaining = transactionTemplate.execute(status -> doCombineWrite(teamId, batch));
+            if (null != remaining && remaining <= 0) {
+                teamFullRegistry.markFull(teamId);
+            }
+        } catch (Exception e) {
+            // 整批回滚后逐笔重放已分配名额的请求，每个调用方拿到各自的结果
+            log.warn("热点组队合并写入失败，逐笔重放 teamId:{} size:{} error:{}", teamId, batch.size(), e.getMessage());
+            for (LockOrderTask item : batch) {
+                if (item.rejected) continue;
+                item.error = null;
+                try {
+                    groupBuyOrderLockWriter.write(item.command);
+                } catch (Exception ex) {
+                    item.error = ex instanceof RuntimeException ? (RuntimeException) ex : new AppException(ResponseCode.UN_ERROR.getCode(), ResponseCode.UN_ERROR.getInfo(), ex);
+                }
+            }
+        }
+
+        for (LockOrderTask item : batch) {
+            if (null != item.error) {
+                item.future.completeExceptionally(item.error);
+            } else {
+                item.future.complete(null);
+            }
+        }
+    }
+
+    /**
+     * @return 本次累加后队伍剩余名额；队伍记录不存在时为空
+     */
+    private Integer doCombineWrite(String teamId, List<LockOrderTask> batch) {
+        // 1. 锁定队伍行，按剩余名额分配；超出的请求回执 E0005
+        GroupBuyOrder groupBuyOrder = groupBuyOrderDao.queryGroupBuyProgressForUpdate(teamId);
+        if (null == groupBuyOrder) {
+            // 队伍不存在不是名额已满，不能记入已满队伍，否则后续开团记录落库后仍被拒绝
+            log.warn("热点组队合并写入失败，组队记录不存在 teamId:{} size:{}", teamId, batch.size());
+            for (LockOrderTask task : batch) {
+                task.rejected = true;
+                task.error = new AppException(ResponseCode.E0005.getCode(), "拼团组队失败，组队记录不存在");
+            }
+            return null;
+        }
+        int remaining = groupBuyOrder.getTargetCount() - groupBuyOrder.getLockCount();
+        int granted = Math.max(0, Math.min(remaining, batch.size()));
+
+        List<GroupBuyOrderList> groupBuyOrderLists = new ArrayList<>(granted);
+        List<MarketEventOutbox> marketEventOutboxes = new ArrayList<>(granted);
+        for (int i = 0; i < batch.size(); i++) {
+            LockOrderTask task = batch.get(i);
+            task.rejected = i >= granted;
+            if (task.rejected) {
+                task.error = new AppException(ResponseCode.E0005);
+            } else {
+                task.error = null;
+                groupBuyOrderLists.add(task.command.getGroupBuyOrderList());
+                if (null != task.command.getMarketEventOutbox()) {
+                    marketEventOutboxes.add(task.command.getMarketEventOutbox());
+                }
+            }
+        }
+        if (0 == granted) return remaining;
+
+        // 2. 一次累加锁单量
+        int updateAddLockCount = groupBuyOrderDao.updateAddLockCountBatch(teamId, granted);
+        if (1 != updateAddLockCount) {
+            throw new AppException(ResponseCode.E0005);
+        }
+
+        // 3. 拼团明细、发件箱事件多行写入
+        groupBuyOrderListDao.insertBatch(groupBuyOrderLists);
+        if (!marketEventOutboxes.isEmpty()) {
+            marketEventOutboxDao.insertBatch(marketEventOutboxes);
+        }
+
+        return remaining - granted;
+    }
+
+    private static class TeamQueue {
+
+        private final ConcurrentLinkedQueue<LockOrderTask> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean combining = new AtomicBoolean(false);
+
+    }
+
+    private static class LockOrderTask {
+
+        private final LockOrderCommand command;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        /** 合并批次内判定失败的原因，批次提交后回执 */
+        private RuntimeException error;
+        /** 超出剩余名额被拒绝 */
+        private boolean rejected;
+
+        private LockOrderTask(LockOrderCommand command) {
+            this.command = command;
+        }
+
+    }
+
+}
@@ -0,0 +1,256 @@
+package cn.bugstack.infrastructure.cache;
+
+import cn.bugstack.infrastructure.redis.IRedisService;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RAtomicLong;
+import org.redisson.api.RScoredSortedSet;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.redisson.client.protocol.ScoredEntry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * 缓存失效广播
+ * <p>
+ * 1. 失效按 key 或 key 前缀发起：递增全局失效版本，失效记录写入 Redis 有序集合，通过 cacheInvalidationRedisTopic 广播
+ * 2. 各节点收到后先记录失效版本、删除 {@link TwoLevelCache} 本地缓存，按 key 失效时再删除该 key 的 Redis 缓存，同时通知按前缀订阅的本地副本（如活动配置快照）；
+ * 其他节点在收到广播前已从数据库读到旧值并写回 Redis 的，由该节点收到广播后的删除清除，收到广播后完成的加载因版本变化不再写回
+ * 3. 按前缀失效需扫描 Redis，只由发起节点执行：立即删除一次，延迟再删除一次，覆盖其他节点收到广播前写回的旧值；
+ * 按 key 失效时发起节点同样延迟再删除一次，覆盖加载线程判断版本与写入 Redis 之间的间隙
+ * 4. 广播可能丢失，后台按固定间隔比对全局失效版本，补齐未收到的失效记录；记录已被裁剪、无法确定范围时失效本节点全部缓存
+ *
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ */
+@Slf4j
+@Component
+public class CacheInvalidationBus {
+
+    private static final String SEQUENCE_KEY = "group_buy_market_cache_invalidation_seq";
+    private static final String RECORD_KEY = "group_buy_market_cache_invalidation_record";
+    private static final String KEY = "k";
+    private static final String PREFIX = "p";
+
+    @Resource
+    private RedissonClient redissonClient;
+    @Resource
+    private IRedisService redisService;
+    @Resource
+    private TwoLevelCache twoLevelCache;
+    @Resource(name = "cacheInvalidationRedisTopic")
+    private RTopic cacheInvalidationTopic;
+
+    /** 失效版本核对间隔（秒） */
+    @Value("${group-buy-market.cache-invalidation.reconcile-interval-seconds:10}")
+    private long reconcileIntervalSeconds;
+    /** 延迟二次删除 Redis 缓存的时间（毫秒） */
+    @Value("${group-buy-market.cache-invalidation.delay-delete-millis:1000}")
+    private long delayDeleteMillis;
+    /** 保留的失效记录数 */
+    @Value("${group-buy-market.cache-invalidation.record-retain-size:10000}")
+    private long recordRetainSize;
+
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    /** 已通过广播应用、尚未核对的失效版本 */
+    private final Set<Long> received = ConcurrentHashMap.newKeySet();
+    /** 已核对的失效版本，之前的失效记录都已应用 */
+    private volatile long reconciledVersion;
+    /** 上次核对停留的缺失版本；连续两次缺失视为发起方写入失败，跳过 */
+    private long missingVersion;
+
+    private ScheduledExecutorService scheduler;
+    private int listenerId;
+
+    @PostConstruct
+    public void init() {
+        reconciledVersion = sequence().get();
+        listenerId = cacheInvalidationTopic.addListener(String.class, (channel, message) -> onMessage(message));
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cache-invalidation");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::reconcile, reconcileIntervalSeconds, reconcileIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        cacheInvalidationTopic.removeListener(listenerId);
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 失效缓存键；数据库变更提交后调用
+     */
+    public void invalidate(String cacheKey) {
+        publish(KEY, cacheKey);
+    }
+
+    /**
+     * 按前缀失效缓存；前缀下的 Redis 缓存按模式扫描删除
+     */
+    public void invalidatePrefix(String prefix) {
+        publish(PREFIX, prefix);
+    }
+
+    /**
+     * 订阅失效；不走两级缓存的本地副本按前缀订阅，失效的 key 以该前缀开头，或失效的前缀覆盖该前缀时通知
+     *
+     * @param listener 入参为失效的 key 或前缀，是否为前缀
+     */
+    public void subscribe(String prefix, BiConsumer<String, Boolean> listener) {
+        subscriptions.add(new Subscription(prefix, listener));
+    }
+
+    private void publish(String type, String target) {
+        long version = sequence().incrementAndGet();
+        String message = version + ":" + type + ":" + target;
+        RScoredSortedSet<String> records = records();
+        records.add(version, message);
+        if (version % 100 == 0) {
+            records.removeRangeByScore(0, true, version - recordRetainSize, true);
+        }
+
+        // 本节点直接应用，其余节点通过广播应用；前缀只在发起节点扫描删除
+        apply(version, type, target);
+        if (PREFIX.equals(type)) {
+            try {
+                removeRemote(true, target);
+            } catch (Exception e) {
+                log.error("缓存失效删除 Redis 缓存失败 target:{}", target, e);
+            }
+        }
+        cacheInvalidationTopic.publish(message);
+        scheduler.schedule(() -> {
+            try {
+                removeRemote(PREFIX.equals(type), target);
+            } catch (Exception e) {
+                log.error("缓存失效延迟删除失败 target:{}", target, e);
+            }
+        }, delayDeleteMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void onMessage(String message) {
+        String[] parts = message.split(":", 3);
+        if (parts.length != 3) return;
+        long version = Long.parseLong(parts[0]);
+        if (version <= reconciledVersion || !received.add(version)) return;
+        apply(version, parts[1], parts[2]);
+    }
+
+    private void apply(long version, String type, String target) {
+        // 先记录版本，本节点进行中的加载不再写回；按 key 失效再删除 Redis 缓存，清除本节点收到广播前写回的旧值
+        boolean prefix = PREFIX.equals(type);
+        if (prefix) {
+            twoLevelCache.invalidateLocalByPrefix(target, version);
+        } else {
+            twoLevelCache.invalidateLocal(target, version);
+            try {
+                removeRemote(false, target);
+            } catch (Exception e) {
+                log.error("缓存失效删除 Redis 缓存失败 target:{}", target, e);
+            }
+        }
+
+        for (Subscription subscription : subscriptions) {
+            if (!target.startsWith(subscription.prefix) && !(prefix && subscription.prefix.startsWith(target))) continue;
+            try {
+                subscription.listener.accept(target, prefix);
+            } catch (Exception e) {
+                log.error("缓存失效通知失败 target:{}", target, e);
+            }
+        }
+    }
+
+    /**
+     * 核对全局失效版本，按顺序补齐未收到广播的失效记录
+     */
+    private void reconcile() {
+        try {
+            long current = sequence().get();
+            long expected = reconciledVersion + 1;
+            if (current < expected) return;
+
+            RScoredSortedSet<String> records = records();
+            Collection<ScoredEntry<String>> entries = records.entryRange(reconciledVersion, false, current, true);
+            Double first = records.firstScore();
+            if (null == first || first.longValue() > expected) {
+                // 失效记录已裁剪，无法确定缺失的范围
+                log.warn("缓存失效记录缺失，失效本节点全部缓存 reconciled:{} current:{}", reconciledVersion, current);
+                twoLevelCache.invalidateAllLocal(current);
+                subscriptions.forEach(subscription -> subscription.listener.accept("", true));
+                advance(current);
+                return;
+            }
+
+            for (ScoredEntry<String> entry : entries) {
+                long version = entry.getScore().longValue();
+                if (version != expected) {
+                    // 版本已递增、记录未写入；下次核对仍缺失则跳过
+                    if (missingVersion != expected) {
+                        missingVersion = expected;
+                        break;
+                    }
+                    log.warn("缓存失效记录缺失，跳过 version:{}", expected);
+                }
+                if (!received.contains(version)) {
+                    String[] parts = entry.getValue().split(":", 3);
+                    apply(version, parts[1], parts[2]);
+                }
+                expected = version + 1;
+            }
+            advance(expected - 1);
+        } catch (Exception e) {
+            log.error("缓存失效版本核对失败", e);
+        }
+    }
+
+    private void advance(long version) {
+        reconciledVersion = version;
+        received.removeIf(v -> v <= version);
+    }
+
+    private void removeRemote(boolean prefix, String target) {
+        if (prefix) {
+            redissonClient.getKeys().deleteByPattern(target + "*");
+        } else {
+            redisService.remove(target);
+        }
+    }
+
+    private RAtomicLong sequence() {
+        return redissonClient.getAtomicLong(SEQUENCE_KEY);
+    }
+
+    private RScoredSortedSet<String> records() {
+        return redissonClient.getScoredSortedSet(RECORD_KEY, StringCodec.INSTANCE);
+    }
+
+    private static class Subscription {
+
+        private final String prefix;
+        private final BiConsumer<String, Boolean> listener;
+
+        private Subscription(String prefix, BiConsumer<String, Boolean> listener) {
+            this.prefix = prefix;
+            this.listener = listener;
+        }
+
+    }
+
+}
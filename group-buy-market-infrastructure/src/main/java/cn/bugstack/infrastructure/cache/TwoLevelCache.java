@@ -0,0 +1,424 @@
+package cn.bugstack.infrastructure.cache;
+
+import cn.bugstack.infrastructure.redis.IRedisService;
+import com.alibaba.fastjson.JSON;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 仓储两级缓存
+ * <p>
+ * 1. 本地 L1 按对象 JSON 长度估算容量限量，短时过期；Redis L2 过期时间随机延长，同一批写入的 key 不会同时过期
+ * 2. 同一 key 单节点只由一个线程加载，其余线程等待同一结果；每个节点对每个 key 至多一次数据库查询
+ * 3. 数据库不存在的 key 在 L1、L2 短时缓存空值，不反复穿透
+ * 4. 按缓存区域统计 L1、L2 命中，空值命中，等待合并，数据库加载次数和耗时；定时打印日志，并注册到 Micrometer
+ * 5. 缓存对象在本节点共享，调用方只读不修改
+ * 6. 失效由 {@link CacheInvalidationBus} 广播，本节点记录 key、前缀的失效版本；加载期间版本变化的结果不写入缓存，失效前读到的旧值不会在失效后写回
+ *
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ */
+@Slf4j
+@Component
+public class TwoLevelCache {
+
+    /** 空值占位 */
+    private static final String NULL_VALUE = "group_buy_market_cache_null";
+
+    @Resource
+    private IRedisService redisService;
+    @Resource
+    private ObjectProvider<MeterRegistry> meterRegistryProvider;
+
+    /** 本地缓存最大容量（字节） */
+    @Value("${group-buy-market.cache.local-maximum-weight:67108864}")
+    private long localMaximumWeight;
+    /** 本地缓存过期时间（秒） */
+    @Value("${group-buy-market.cache.local-expire-seconds:30}")
+    private long localExpireSeconds;
+    /** 空值缓存最大 key 数 */
+    @Value("${group-buy-market.cache.negative-maximum-size:100000}")
+    private long negativeMaximumSize;
+    /** 空值缓存过期时间（毫秒） */
+    @Value("${group-buy-market.cache.negative-expire-millis:5000}")
+    private long negativeExpireMillis;
+    /** Redis 过期时间随机延长比例 */
+    @Value("${group-buy-market.cache.expire-jitter-ratio:0.1}")
+    private double expireJitterRatio;
+    /** 命中率日志间隔（秒） */
+    @Value("${group-buy-market.cache.report-interval-seconds:60}")
+    private long reportIntervalSeconds;
+
+    private Cache<String, Object> values;
+    private Cache<String, Boolean> negatives;
+    /** 失效版本；保留时间远大于单次加载耗时即可 */
+    private Cache<String, Long> keyVersions;
+    private final ConcurrentHashMap<String, Long> prefixVersions = new ConcurrentHashMap<>();
+    private volatile long allVersion;
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> loadings = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, RegionStats> regions = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void init() {
+        values = CacheBuilder.newBuilder()
+                .maximumWeight(localMaximumWeight)
+                .weigher((String key, Object value) -> weigh(key, value))
+                .expireAfterWrite(localExpireSeconds, TimeUnit.SECONDS)
+                .build();
+        negatives = CacheBuilder.newBuilder()
+                .maximumSize(negativeMaximumSize)
+                .expireAfterWrite(negativeExpireMillis, TimeUnit.MILLISECONDS)
+                .build();
+        keyVersions = CacheBuilder.newBuilder()
+                .maximumSize(negativeMaximumSize)
+                .expireAfterWrite(10, TimeUnit.MINUTES)
+                .build();
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "two-level-cache");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::report, reportIntervalSeconds, reportIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 查询缓存，未命中时加载
+     *
+     * @param region       缓存区域，用于统计
+     * @param cacheKey     缓存键
+     * @param loader       数据库查询函数
+     * @param expireMillis Redis 过期时间，小于等于0不过期
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String region, String cacheKey, Supplier<T> loader, long expireMillis) {
+        RegionStats stats = stats(region);
+        Object value = values.getIfPresent(cacheKey);
+        if (null != value) {
+            stats.l1Hit.increment();
+            return (T) value;
+        }
+        if (null != negatives.getIfPresent(cacheKey)) {
+            stats.negativeHit.increment();
+            return null;
+        }
+
+        // 其他线程加载中，等待同一结果
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> loading = loadings.putIfAbsent(cacheKey, future);
+        if (null != loading) {
+            stats.wait.increment();
+            return (T) join(loading);
+        }
+
+        try {
+            Object loaded = load(stats, cacheKey, loader, expireMillis);
+            future.complete(loaded);
+            return (T) loaded;
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loadings.remove(cacheKey, future);
+        }
+    }
+
+    /**
+     * 批量查询缓存；L2 一次管道读取，未命中的 key 一次交给数据库查询
+     *
+     * @param region       缓存区域，用于统计
+     * @param keys         业务键
+     * @param cacheKey     业务键 -> 缓存键
+     * @param loader       数据库批量查询函数，入参为未命中的业务键，返回业务键 -> 值
+     * @param expireMillis Redis 过期时间
+     * @return 存在的业务键 -> 值
+     */
+    @SuppressWarnings("unchecked")
+    public <K, T> Map<K, T> getAll(String region, Collection<K> keys, Function<K, String> cacheKey, Function<Set<K>, Map<K, T>> loader, long expireMillis) {
+        RegionStats stats = stats(region);
+        Map<K, T> result = new HashMap<>();
+
+        // 1. 本地缓存
+        Map<String, K> missKeys = new LinkedHashMap<>();
+        for (K key : new LinkedHashSet<>(keys)) {
+            String ck = cacheKey.apply(key);
+            Object value = values.getIfPresent(ck);
+            if (null != value) {
+                stats.l1Hit.increment();
+                result.put(key, (T) value);
+            } else if (null != negatives.getIfPresent(ck)) {
+                stats.negativeHit.increment();
+            } else {
+                missKeys.put(ck, key);
+            }
+        }
+        if (missKeys.isEmpty()) return result;
+
+        // 2. 其他线程加载中的 key 等待，其余 key 由本线程加载
+        Map<String, CompletableFuture<Object>> waitings = new HashMap<>();
+        Map<String, CompletableFuture<Object>> owned = new LinkedHashMap<>();
+        for (String ck : missKeys.keySet()) {
+            CompletableFuture<Object> future = new CompletableFuture<>();
+            CompletableFuture<Object> loading = loadings.putIfAbsent(ck, future);
+            if (null != loading) {
+                stats.wait.increment();
+                waitings.put(ck, loading);
+            } else {
+                owned.put(ck, future);
+            }
+        }
+
+        try {
+            if (!owned.isEmpty()) {
+                Map<String, Object> loaded = loadAll(stats, owned.keySet(), missKeys, loader, expireMillis);
+                owned.forEach((ck, future) -> future.complete(loaded.get(ck)));
+            }
+        } catch (Throwable e) {
+            owned.values().forEach(future -> future.completeExceptionally(e));
+            throw e;
+        } finally {
+            owned.forEach(loadings::remove);
+        }
+
+        owned.forEach((ck, future) -> putResult(result, missKeys.get(ck), future));
+        waitings.forEach((ck, future) -> putResult(result, missKeys.get(ck), future));
+        return result;
+    }
+
+    /**
+     * 失效本节点缓存
+     *
+     * @param version 失效版本
+     */
+    public void invalidateLocal(String cacheKey, long version) {
+        keyVersions.asMap().merge(cacheKey, version, Math::max);
+        values.invalidate(cacheKey);
+        negatives.invalidate(cacheKey);
+    }
+
+    /**
+     * 按前缀失效本节点缓存
+     */
+    public void invalidateLocalByPrefix(String prefix, long version) {
+        prefixVersions.merge(prefix, version, Math::max);
+        values.asMap().keySet().removeIf(cacheKey -> cacheKey.startsWith(prefix));
+        negatives.asMap().keySet().removeIf(cacheKey -> cacheKey.startsWith(prefix));
+    }
+
+    /**
+     * 失效本节点全部缓存；失效记录缺失，无法确定失效范围时使用
+     */
+    public void invalidateAllLocal(long version) {
+        allVersion = Math.max(allVersion, version);
+        values.invalidateAll();
+        negatives.invalidateAll();
+    }
+
+    /**
+     * 缓存键当前的失效版本
+     */
+    public long version(String cacheKey) {
+        long version = allVersion;
+        Long keyVersion = keyVersions.getIfPresent(cacheKey);
+        if (null != keyVersion) version = Math.max(version, keyVersion);
+        for (Map.Entry<String, Long> entry : prefixVersions.entrySet()) {
+            if (cacheKey.startsWith(entry.getKey())) version = Math.max(version, entry.getValue());
+        }
+        return version;
+    }
+
+    private Object load(RegionStats stats, String cacheKey, Supplier<?> loader, long expireMillis) {
+        // 等待期间已加载完成
+        Object value = values.getIfPresent(cacheKey);
+        if (null != value) return value;
+        if (null != negatives.getIfPresent(cacheKey)) return null;
+
+        long version = version(cacheKey);
+        Object cached = redisService.getValue(cacheKey);
+        if (NULL_VALUE.equals(cached)) {
+            stats.negativeHit.increment();
+            if (version == version(cacheKey)) negatives.put(cacheKey, Boolean.TRUE);
+            return null;
+        }
+        if (null != cached) {
+            stats.l2Hit.increment();
+            if (version == version(cacheKey)) values.put(cacheKey, cached);
+            return cached;
+        }
+
+        stats.miss.increment();
+        long startTime = System.nanoTime();
+        Object loaded = loader.get();
+        stats.loadNanos.add(System.nanoTime() - startTime);
+
+        // 加载期间已失效，结果只返回本次调用
+        if (version != version(cacheKey)) return loaded;
+        if (null == loaded) {
+            redisService.setValue(cacheKey, NULL_VALUE, negativeExpireMillis);
+            negatives.put(cacheKey, Boolean.TRUE);
+            return null;
+        }
+        if (expireMillis > 0) {
+            redisService.setValue(cacheKey, loaded, jitter(expireMillis));
+        } else {
+            redisService.setValue(cacheKey, loaded);
+        }
+        values.put(cacheKey, loaded);
+        return loaded;
+    }
+
+    private <K, T> Map<String, Object> loadAll(RegionStats stats, Set<String> cacheKeys, Map<String, K> keys, Function<Set<K>, Map<K, T>> loader, long expireMillis) {
+        Map<String, Object> result = new HashMap<>();
+
+        // 1. Redis 一次管道读取
+        List<String> cacheKeyList = new ArrayList<>(cacheKeys);
+        Map<String, Long> versions = new HashMap<>();
+        cacheKeyList.forEach(ck -> versions.put(ck, version(ck)));
+        List<Object> cached = redisService.getValues(cacheKeyList);
+        Map<K, String> missKeys = new LinkedHashMap<>();
+        for (int i = 0; i < cacheKeyList.size(); i++) {
+            String ck = cacheKeyList.get(i);
+            Object value = cached.get(i);
+            if (NULL_VALUE.equals(value)) {
+                stats.negativeHit.increment();
+                if (versions.get(ck) == version(ck)) negatives.put(ck, Boolean.TRUE);
+            } else if (null != value) {
+                stats.l2Hit.increment();
+                if (versions.get(ck) == version(ck)) values.put(ck, value);
+                result.put(ck, value);
+            } else {
+                missKeys.put(keys.get(ck), ck);
+            }
+        }
+        if (missKeys.isEmpty()) return result;
+
+        // 2. 数据库一次查询，存在的写入缓存，不存在的写入空值
+        stats.miss.add(missKeys.size());
+        long startTime = System.nanoTime();
+        Map<K, T> loaded = loader.apply(missKeys.keySet());
+        stats.loadNanos.add(System.nanoTime() - startTime);
+
+        Map<String, Object> cacheValues = new HashMap<>();
+        Map<String, Object> nullValues = new HashMap<>();
+        for (Map.Entry<K, String> entry : missKeys.entrySet()) {
+            String ck = entry.getValue();
+            T value = null == loaded ? null : loaded.get(entry.getKey());
+            // 加载期间已失效，结果只返回本次调用
+            if (versions.get(ck) != version(ck)) {
+                if (null != value) result.put(ck, value);
+                continue;
+            }
+            if (null == value) {
+                nullValues.put(ck, NULL_VALUE);
+                negatives.put(ck, Boolean.TRUE);
+            } else {
+                cacheValues.put(ck, value);
+                values.put(ck, value);
+                result.put(ck, value);
+            }
+        }
+        // 过期时间按 key 分别随机延长，同一批次不同时过期；不大于 0 时不过期，与单个加载一致
+        if (!cacheValues.isEmpty()) redisService.setValues(cacheValues, ck -> expireMillis > 0 ? jitter(expireMillis) : 0);
+        if (!nullValues.isEmpty()) redisService.setValues(nullValues, ck -> negativeExpireMillis);
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, T> void putResult(Map<K, T> result, K key, CompletableFuture<Object> future) {
+        Object value = join(future);
+        if (null != value) result.put(key, (T) value);
+    }
+
+    private static Object join(CompletableFuture<Object> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw e;
+        }
+    }
+
+    private long jitter(long expireMillis) {
+        long bound = (long) (expireMillis * expireJitterRatio);
+        return bound > 0 ? expireMillis + ThreadLocalRandom.current().nextLong(bound) : expireMillis;
+    }
+
+    private static int weigh(String key, Object value) {
+        // 按 JSON 长度估算对象大小，只在写入本地缓存时计算一次
+        long size = 2L * (key.length() + JSON.toJSONString(value).length());
+        return (int) Math.min(Integer.MAX_VALUE, size);
+    }
+
+    private RegionStats stats(String region) {
+        return regions.computeIfAbsent(region, this::register);
+    }
+
+    private RegionStats register(String region) {
+        RegionStats stats = new RegionStats();
+        MeterRegistry meterRegistry = meterRegistryProvider.getIfAvailable();
+        if (null == meterRegistry) return stats;
+
+        registerCounter(meterRegistry, region, "l1_hit", stats.l1Hit);
+        registerCounter(meterRegistry, region, "l2_hit", stats.l2Hit);
+        registerCounter(meterRegistry, region, "negative_hit", stats.negativeHit);
+        registerCounter(meterRegistry, region, "wait", stats.wait);
+        registerCounter(meterRegistry, region, "miss", stats.miss);
+        FunctionTimer.builder("group_buy_market_cache_load", stats, s -> s.miss.sum(), s -> s.loadNanos.sum(), TimeUnit.NANOSECONDS)
+                .tag("region", region)
+                .register(meterRegistry);
+        return stats;
+    }
+
+    private static void registerCounter(MeterRegistry meterRegistry, String region, String result, LongAdder counter) {
+        FunctionCounter.builder("group_buy_market_cache_gets", counter, LongAdder::sum)
+                .tag("region", region)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private void report() {
+        regions.forEach((region, stats) -> {
+            long l1Hit = stats.l1Hit.sum();
+            long l2Hit = stats.l2Hit.sum();
+            long negativeHit = stats.negativeHit.sum();
+            long wait = stats.wait.sum();
+            long miss = stats.miss.sum();
+            long total = Math.max(1L, l1Hit + l2Hit + negativeHit + wait + miss);
+            log.info("两级缓存统计 region:{} l1Hit:{}% l2Hit:{}% negativeHit:{}% wait:{} miss:{}% loadAvgMillis:{}",
+                    region, l1Hit * 100 / total, l2Hit * 100 / total, negativeHit * 100 / total, wait, miss * 100 / total,
+                    TimeUnit.NANOSECONDS.toMillis(stats.loadNanos.sum()) / Math.max(1L, miss));
+        });
+    }
+
+    private static class RegionStats {
+        private final LongAdder l1Hit = new LongAdder();
+        private final LongAdder l2Hit = new LongAdder();
+        private final LongAdder negativeHit = new LongAdder();
+        private final LongAdder wait = new LongAdder();
+        private final LongAdder miss = new LongAdder();
+        private final LongAdder loadNanos = new LongAdder();
+    }
+
+}
@@ -4,6 +4,8 @@ import cn.bugstack.infrastructure.dao.po.CrowdTags;
 import cn.bugstack.infrastructure.dao.po.CrowdTagsJob;
 import org.apache.ibatis.annotations.Mapper;
 
+import java.util.List;
+
 /**
  * @author Fuzhengwei bugstack.cn @小傅哥
  * @description 人群标签
@@ -14,4 +16,10 @@ public interface ICrowdTagsDao {
 
     void updateCrowdTagsStatistics(CrowdTags crowdTagsReq);
 
+    List<String> queryCrowdTagIds();
+
+    int updateCrowdTagsExpression(CrowdTags crowdTagsReq);
+
+    List<CrowdTags> queryCrowdTagsExpressionList();
+
 }
@@ -2,6 +2,10 @@ package cn.bugstack.infrastructure.dao;
 
 import cn.bugstack.infrastructure.dao.po.CrowdTagsDetail;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Collection;
+import java.util.List;
 
 /**
  * @author Fuzhengwei bugstack.cn @小傅哥
@@ -13,4 +17,17 @@ public interface ICrowdTagsDetailDao {
 
     void addCrowdTagsUserId(CrowdTagsDetail crowdTagsDetailReq);
 
+    /**
+     * 批量写入，已存在的用户忽略
+     *
+     * @return 新写入的用户数
+     */
+    int insertIgnoreBatch(@Param("tagId") String tagId, @Param("userIds") List<String> userIds);
+
+    int deleteBatch(@Param("tagId") String tagId, @Param("userIds") List<String> userIds);
+
+    List<CrowdTagsDetail> queryCrowdTagsDetailByUserIds(@Param("tagIds") Collection<String> tagIds, @Param("userIds") List<String> userIds);
+
+    List<CrowdTagsDetail> queryCrowdTagsDetailPage(@Param("tagId") String tagId, @Param("lastId") Long lastId, @Param("limit") int limit);
+
 }
@@ -13,4 +13,13 @@ public interface ICrowdTagsJobDao {
 
     CrowdTagsJob queryCrowdTagsJob(CrowdTagsJob crowdTagsJobReq);
 
+    void updateCrowdTagsJobStatus(CrowdTagsJob crowdTagsJobReq);
+
+    void resetCrowdTagsJob(CrowdTagsJob crowdTagsJobReq);
+
+    /**
+     * 保存断点；processedCount、insertedCount 为本批增量
+     */
+    void updateCrowdTagsJobCheckpoint(CrowdTagsJob crowdTagsJobReq);
+
 }
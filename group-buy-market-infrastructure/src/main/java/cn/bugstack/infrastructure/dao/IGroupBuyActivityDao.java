@@ -2,7 +2,9 @@ package cn.bugstack.infrastructure.dao;
 
 import cn.bugstack.infrastructure.dao.po.GroupBuyActivity;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
 
+import java.util.Date;
 import java.util.List;
 
 /**
@@ -21,4 +23,9 @@ public interface IGroupBuyActivityDao {
 
     GroupBuyActivity queryGroupBuyActivityByActivityId(Long activityId);
 
+    /**
+     * 查询开始时间在区间内的生效活动
+     */
+    List<GroupBuyActivity> queryUpcomingGroupBuyActivityList(@Param("startTimeFrom") Date startTimeFrom, @Param("startTimeTo") Date startTimeTo);
+
 }
@@ -18,12 +18,20 @@ public interface IGroupBuyOrderDao {
 
     void insert(GroupBuyOrder groupBuyOrder);
 
+    void insertBatch(@Param("list") List<GroupBuyOrder> groupBuyOrders);
+
     int updateAddLockCount(String teamId);
 
+    int updateAddLockCountBatch(@Param("teamId") String teamId, @Param("count") Integer count);
+
+    GroupBuyOrder queryGroupBuyProgressForUpdate(String teamId);
+
     int updateSubtractionLockCount(String teamId);
 
     GroupBuyOrder queryGroupBuyProgress(String teamId);
 
+    List<GroupBuyOrder> queryGroupBuyProgressList(@Param("teamIds") Set<String> teamIds);
+
     GroupBuyOrder queryGroupBuyTeamByTeamId(String teamId);
 
     int updateAddCompleteCount(String teamId);
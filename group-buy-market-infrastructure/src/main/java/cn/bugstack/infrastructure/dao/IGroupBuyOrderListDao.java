@@ -2,7 +2,10 @@ package cn.bugstack.infrastructure.dao;
 
 import cn.bugstack.infrastructure.dao.po.GroupBuyOrderList;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
 
+import java.math.BigDecimal;
+import java.util.Date;
 import java.util.List;
 
 /**
@@ -15,10 +18,18 @@ public interface IGroupBuyOrderListDao {
 
     void insert(GroupBuyOrderList groupBuyOrderListReq);
 
+    void insertBatch(@Param("list") List<GroupBuyOrderList> groupBuyOrderLists);
+
     GroupBuyOrderList queryGroupBuyOrderRecordByOutTradeNo(GroupBuyOrderList groupBuyOrderListReq);
 
     Integer queryOrderCountByActivityId(GroupBuyOrderList groupBuyOrderListReq);
 
+    Integer queryActiveOrderCountByActivityId(GroupBuyOrderList groupBuyOrderListReq);
+
+    Integer queryMaxBizSeqByActivityId(GroupBuyOrderList groupBuyOrderListReq);
+
+    Integer queryActivityStockOccupiedCount(Long activityId);
+
     int updateOrderStatus2COMPLETE(GroupBuyOrderList groupBuyOrderListReq);
 
     List<String> queryGroupBuyCompleteOrderOutTradeNoListByTeamId(String teamId);
@@ -34,4 +45,11 @@ public interface IGroupBuyOrderListDao {
     int paid2Refund(GroupBuyOrderList groupBuyOrderListReq);
 
     GroupBuyOrderList selectByTeamId(String teamId);
+
+    /**
+     * 按用户ID顺序分页查询统计时间内达到规则的用户；tagType 2 按支付金额，其余按参与次数
+     */
+    List<String> queryCrowdTagsUserIdPage(@Param("tagType") Integer tagType, @Param("threshold") BigDecimal threshold,
+                                          @Param("statStartTime") Date statStartTime, @Param("statEndTime") Date statEndTime,
+                                          @Param("lastUserId") String lastUserId, @Param("limit") int limit);
 }
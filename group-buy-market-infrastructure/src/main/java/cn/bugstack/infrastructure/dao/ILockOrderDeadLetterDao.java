@@ -0,0 +1,16 @@
+package cn.bugstack.infrastructure.dao;
+
+import cn.bugstack.infrastructure.dao.po.LockOrderDeadLetter;
+import org.apache.ibatis.annotations.Mapper;
+
+/**
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ * @description 锁单异步落库死信
+ * @create 2025-07-26 10:20
+ */
+@Mapper
+public interface ILockOrderDeadLetterDao {
+
+    void insert(LockOrderDeadLetter lockOrderDeadLetter);
+
+}
@@ -0,0 +1,27 @@
+package cn.bugstack.infrastructure.dao;
+
+import cn.bugstack.infrastructure.dao.po.MarketEventOutbox;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+/**
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ * @description 交易事件发件箱
+ * @create 2025-07-26 10:20
+ */
+@Mapper
+public interface IMarketEventOutboxDao {
+
+    void insert(MarketEventOutbox marketEventOutbox);
+
+    void insertBatch(@Param("list") List<MarketEventOutbox> marketEventOutboxes);
+
+    List<MarketEventOutbox> queryUnPublishedList(@Param("graceSeconds") Long graceSeconds, @Param("maxRetryCount") Integer maxRetryCount, @Param("limit") Integer limit);
+
+    int updateStatusPublished(@Param("eventIds") List<String> eventIds);
+
+    int updateStatusRetry(@Param("eventIds") List<String> eventIds, @Param("maxRetryCount") Integer maxRetryCount);
+
+}
@@ -2,6 +2,10 @@ package cn.bugstack.infrastructure.dao;
 
 import cn.bugstack.infrastructure.dao.po.SCSkuActivity;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+import java.util.Set;
 
 /**
  * @author Fuzhengwei bugstack.cn @小傅哥
@@ -13,4 +17,8 @@ public interface ISCSkuActivityDao {
 
     SCSkuActivity querySCSkuActivityBySCGoodsId(SCSkuActivity scSkuActivity);
 
+    List<SCSkuActivity> querySCSkuActivityBySCGoodsIds(@Param("source") String source, @Param("channel") String channel, @Param("goodsIds") Set<String> goodsIds);
+
+    List<SCSkuActivity> querySCSkuActivityListByActivityId(Long activityId);
+
 }
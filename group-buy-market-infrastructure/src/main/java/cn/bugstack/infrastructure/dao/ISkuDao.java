@@ -2,6 +2,10 @@ package cn.bugstack.infrastructure.dao;
 
 import cn.bugstack.infrastructure.dao.po.Sku;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+import java.util.Set;
 
 /**
  * @author Fuzhengwei bugstack.cn @小傅哥
@@ -13,4 +17,6 @@ public interface ISkuDao {
 
     Sku querySkuByGoodsId(String goodsId);
 
+    List<Sku> querySkuByGoodsIds(@Param("goodsIds") Set<String> goodsIds);
+
 }
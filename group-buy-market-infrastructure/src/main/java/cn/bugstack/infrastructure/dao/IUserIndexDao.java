@@ -0,0 +1,30 @@
+package cn.bugstack.infrastructure.dao;
+
+import cn.bugstack.infrastructure.dao.po.UserIndex;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ * @description 用户索引字典
+ * @create 2025-08-20 09:30
+ */
+@Mapper
+public interface IUserIndexDao {
+
+    void insert(UserIndex userIndex);
+
+    void insertIgnoreBatch(@Param("userIds") Collection<String> userIds);
+
+    UserIndex queryUserIndexByUserId(String userId);
+
+    List<UserIndex> queryUserIndexByUserIds(@Param("userIds") Collection<String> userIds);
+
+    List<UserIndex> queryUserIndexByIds(@Param("ids") Collection<Long> ids);
+
+    List<UserIndex> queryUserIndexPage(@Param("lastId") Long lastId, @Param("limit") Integer limit);
+
+}
@@ -28,6 +28,8 @@ public class CrowdTags {
     private String tagDesc;
     /** 人群标签统计量 */
     private Integer statistics;
+    /** 人群标签表达式；为空为普通标签 */
+    private String tagExpr;
     /** 创建时间 */
     private Date createTime;
     /** 更新时间 */
@@ -34,6 +34,12 @@ public class CrowdTagsJob {
     private Date statEndTime;
     /** 状态；0初始、1计划（进入执行阶段）、2重置、3完成 */
     private Integer status;
+    /** 断点；已写入数据的读取位置 */
+    private String checkpoint;
+    /** 已处理用户数 */
+    private Long processedCount;
+    /** 新写入用户数 */
+    private Long insertedCount;
     /** 创建时间 */
     private Date createTime;
     /** 更新时间 */
@@ -34,6 +34,8 @@ public class GroupBuyActivity {
     private Integer target;
     /** 拼团时长（分钟） */
     private Integer validTime;
+    /** 活动总参与名额（0不限制） */
+    private Integer stockLimit;
     /** 活动状态（0创建、1生效、2过期、3废弃） */
     private Integer status;
     /** 活动开始时间 */
@@ -49,8 +51,11 @@ public class GroupBuyActivity {
     /** 更新时间 */
     private Date updateTime;
 
+    /** 缓存键前缀 */
+    public static final String CACHE_KEY_PREFIX = "group_buy_market_cn.bugstack.infrastructure.dao.po.GroupBuyActivity_";
+
     public static String cacheRedisKey(Long activityId) {
-        return "group_buy_market_cn.bugstack.infrastructure.dao.po.GroupBuyActivity_" + activityId;
+        return CACHE_KEY_PREFIX + activityId;
     }
 
 }
@@ -68,8 +68,11 @@ public class GroupBuyDiscount {
      */
     private Date updateTime;
 
+    /** 缓存键前缀 */
+    public static final String CACHE_KEY_PREFIX = "group_buy_market_cn.bugstack.infrastructure.dao.po.GroupBuyDiscount_";
+
     public static String cacheRedisKey(String discountId) {
-        return "group_buy_market_cn.bugstack.infrastructure.dao.po.GroupBuyDiscount_" + discountId;
+        return CACHE_KEY_PREFIX + discountId;
     }
 
 }
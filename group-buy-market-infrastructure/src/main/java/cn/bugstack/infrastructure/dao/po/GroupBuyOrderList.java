@@ -52,6 +52,8 @@ public class GroupBuyOrderList extends Page {
     private Date outTradeTime;
     /** 唯一业务ID */
     private String bizId;
+    /** 活动总名额占用分段；为空未占用 */
+    private Integer activityStockStripe;
     /** 创建时间 */
     private Date createTime;
     /** 更新时间 */
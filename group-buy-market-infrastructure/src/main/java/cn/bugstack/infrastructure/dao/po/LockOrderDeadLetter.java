@@ -0,0 +1,44 @@
+package cn.bugstack.infrastructure.dao.po;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+/**
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ * @description 锁单异步落库死信
+ * @create 2025-07-26 10:20
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class LockOrderDeadLetter {
+
+    /** 自增ID */
+    private Long id;
+    /** 订单ID */
+    private String orderId;
+    /** 用户ID */
+    private String userId;
+    /** 活动ID */
+    private Long activityId;
+    /** 外部交易单号 */
+    private String outTradeNo;
+    /** 预占记录；含锁单内容及参与次数、组队名额、外部单号幂等等预占键 */
+    private String reserve;
+    /** 重放次数 */
+    private Integer attempts;
+    /** 最后一次失败原因 */
+    private String errorMessage;
+    /** 处理状态【0待处理、1已修复】 */
+    private Integer status;
+    /** 创建时间 */
+    private Date createTime;
+    /** 更新时间 */
+    private Date updateTime;
+
+}
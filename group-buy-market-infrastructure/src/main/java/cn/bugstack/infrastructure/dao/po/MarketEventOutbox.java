@@ -0,0 +1,38 @@
+package cn.bugstack.infrastructure.dao.po;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+/**
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ * @description 交易事件发件箱
+ * @create 2025-07-26 10:20
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class MarketEventOutbox {
+
+    /** 自增ID */
+    private Long id;
+    /** 事件ID */
+    private String eventId;
+    /** 消息路由 */
+    private String routingKey;
+    /** 消息内容 */
+    private String message;
+    /** 发送状态【0待发送、1已发送、2发送失败】 */
+    private Integer status;
+    /** 重试次数 */
+    private Integer retryCount;
+    /** 创建时间 */
+    private Date createTime;
+    /** 更新时间 */
+    private Date updateTime;
+
+}
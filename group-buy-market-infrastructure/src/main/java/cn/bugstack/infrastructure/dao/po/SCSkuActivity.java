@@ -33,4 +33,11 @@ public class SCSkuActivity {
     /** 更新时间 */
     private Date updateTime;
 
+    /** 缓存键前缀 */
+    public static final String CACHE_KEY_PREFIX = "group_buy_market_cn.bugstack.infrastructure.dao.po.SCSkuActivity_";
+
+    public static String cacheRedisKey(String source, String channel, String goodsId) {
+        return CACHE_KEY_PREFIX + source + "_" + channel + "_" + goodsId;
+    }
+
 }
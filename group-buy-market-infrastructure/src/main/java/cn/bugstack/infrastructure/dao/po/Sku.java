@@ -36,4 +36,11 @@ public class Sku {
     /** 更新时间 */
     private Date updateTime;
 
+    /** 缓存键前缀 */
+    public static final String CACHE_KEY_PREFIX = "group_buy_market_cn.bugstack.infrastructure.dao.po.Sku_";
+
+    public static String cacheRedisKey(String goodsId) {
+        return CACHE_KEY_PREFIX + goodsId;
+    }
+
 }
@@ -0,0 +1,28 @@
+package cn.bugstack.infrastructure.dao.po;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+/**
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ * @description 用户索引字典
+ * @create 2025-08-20 09:30
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class UserIndex {
+
+    /** 自增ID；即用户索引 */
+    private Long id;
+    /** 用户ID */
+    private String userId;
+    /** 创建时间 */
+    private Date createTime;
+
+}
@@ -30,6 +30,24 @@ public class DCCService {
     @DCCValue("cacheSwitch:0")
     private String cacheOpenSwitch;
 
+    /**
+     * 锁单组提交开关 0关闭、1开启
+     */
+    @DCCValue("groupCommitSwitch:0")
+    private String groupCommitSwitch;
+
+    /**
+     * 热点组队锁单合并开关 0关闭、1开启
+     */
+    @DCCValue("teamCombineSwitch:0")
+    private String teamCombineSwitch;
+
+    /**
+     * Redis 优先锁单的活动ID列表（秒杀活动），英文逗号分隔；0 表示无
+     */
+    @DCCValue("redisFirstLockActivityList:0")
+    private String redisFirstLockActivityList;
+
     public boolean isDowngradeSwitch() {
         return "1".equals(downgradeSwitch);
     }
@@ -64,4 +82,27 @@ public class DCCService {
         return "0".equals(cacheOpenSwitch);
     }
 
+    /**
+     * 锁单组提交开关，true 开启多行批量写入
+     */
+    public boolean isGroupCommitSwitch() {
+        return "1".equals(groupCommitSwitch);
+    }
+
+    /**
+     * 热点组队锁单合并开关，true 同一队伍的并发加入请求合并为一次锁单量累加
+     */
+    public boolean isTeamCombineSwitch() {
+        return "1".equals(teamCombineSwitch);
+    }
+
+    /**
+     * 判断活动是否走 Redis 优先锁单，true 预占后异步落库
+     */
+    public boolean isRedisFirstLockActivity(Long activityId) {
+        if (null == activityId) return false;
+        List<String> list = Arrays.asList(redisFirstLockActivityList.split(Constants.SPLIT));
+        return list.contains(String.valueOf(activityId));
+    }
+
 }
@@ -9,6 +9,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+import java.util.function.Function;
+
 /**
  * @author Fuzhengwei bugstack.cn @小傅哥
  * @description 消息发送
@@ -24,6 +27,10 @@ public class EventPublisher {
     @Value("${spring.rabbitmq.config.producer.exchange}")
     private String exchangeName;
 
+    /** 批量发送等待 broker 确认的超时时间（毫秒）；需开启 spring.rabbitmq.publisher-confirm-type: simple */
+    @Value("${spring.rabbitmq.config.producer.confirm-timeout-millis:5000}")
+    private long confirmTimeoutMillis;
+
     public void publish(String routingKey, String message) {
         try {
             rabbitTemplate.convertAndSend(exchangeName, routingKey, message, m -> {
@@ -37,4 +44,22 @@ public class EventPublisher {
         }
     }
 
+    /**
+     * 批量发送；同一信道内连续发送后统一等待 broker 确认，一次确认往返覆盖整批。任一消息未确认时抛出异常，由调用方整批重试
+     */
+    public <T> void publishBatch(List<T> items, Function<T, String> routingKey, Function<T, String> message) {
+        if (null == items || items.isEmpty()) return;
+        rabbitTemplate.invoke(operations -> {
+            for (T item : items) {
+                operations.convertAndSend(exchangeName, routingKey.apply(item), message.apply(item), m -> {
+                    // 持久化消息配置
+                    m.getMessageProperties().setDeliveryMode(MessageDeliveryMode.PERSISTENT);
+                    return m;
+                });
+            }
+            operations.waitForConfirmsOrDie(confirmTimeoutMillis);
+            return null;
+        });
+    }
+
 }
@@ -0,0 +1,162 @@
+package cn.bugstack.infrastructure.event;
+
+import cn.bugstack.infrastructure.dao.IMarketEventOutboxDao;
+import cn.bugstack.infrastructure.dao.po.MarketEventOutbox;
+import com.alibaba.fastjson.JSON;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+/**
+ * 交易事件发件箱投递
+ * <p>
+ * 1. 业务事务内写入 market_event_outbox，事务提交后把事件交给本节点投递线程，攒批后以 publisher confirm 批量发送，确认后标记已发送
+ * 2. 投递失败、队列已满或节点宕机的事件保留在发件箱，由定时任务扫描超过宽限期仍未发送的记录重新投递
+ * 3. 至少一次投递，消费方按事件ID去重
+ *
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ */
+@Slf4j
+@Component
+public class MarketEventOutboxRelay {
+
+    @Resource
+    private IMarketEventOutboxDao marketEventOutboxDao;
+    @Resource
+    private EventPublisher eventPublisher;
+
+    /** 单批最大条数 */
+    @Value("${group-buy-market.event-outbox.batch-size:100}")
+    private int batchSize;
+    /** 攒批等待时间（毫秒） */
+    @Value("${group-buy-market.event-outbox.linger-ms:10}")
+    private long lingerMs;
+    /** 本节点投递队列容量，队列满时交由定时任务补偿 */
+    @Value("${group-buy-market.event-outbox.queue-capacity:4096}")
+    private int queueCapacity;
+    /** 补偿宽限期（秒），超过该时间仍未发送才由定时任务投递，避免与提交后投递重复 */
+    @Value("${group-buy-market.event-outbox.grace-seconds:30}")
+    private long graceSeconds;
+    /** 最大重试次数，超过后标记发送失败 */
+    @Value("${group-buy-market.event-outbox.max-retry-count:10}")
+    private int maxRetryCount;
+
+    private BlockingQueue<MarketEventOutbox> queue;
+    private ExecutorService relayExecutor;
+    private volatile boolean running = true;
+
+    @PostConstruct
+    public void init() {
+        queue = new LinkedBlockingQueue<>(queueCapacity);
+        relayExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "event-outbox-relay");
+            thread.setDaemon(true);
+            return thread;
+        });
+        relayExecutor.execute(this::relayLoop);
+    }
+
+    /**
+     * 构建发件箱记录；与原 MQ 发送保持一致使用 fastjson，日期按毫秒序列化，消费方 Jackson 可直接解析
+     */
+    public static MarketEventOutbox buildOutbox(String eventId, String routingKey, Object event) {
+        return MarketEventOutbox.builder()
+                .eventId(eventId)
+                .routingKey(routingKey)
+                .message(JSON.toJSONString(event))
+                .build();
+    }
+
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        running = false;
+        relayExecutor.shutdown();
+        if (!relayExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+            log.warn("事件发件箱投递线程未在超时时间内退出 剩余:{}", queue.size());
+        }
+    }
+
+    /**
+     * 提交已落库的事件；须在写入发件箱的事务提交后调用
+     */
+    public void submit(List<MarketEventOutbox> marketEventOutboxes) {
+        for (MarketEventOutbox marketEventOutbox : marketEventOutboxes) {
+            if (!running || !queue.offer(marketEventOutbox)) {
+                log.warn("事件发件箱投递队列已满，等待定时任务补偿 eventId:{}", marketEventOutbox.getEventId());
+            }
+        }
+    }
+
+    /**
+     * 补偿投递超过宽限期仍未发送的事件
+     *
+     * @return 发送成功条数
+     */
+    public int relayUnPublished() {
+        int count = 0;
+        while (true) {
+            List<MarketEventOutbox> marketEventOutboxes = marketEventOutboxDao.queryUnPublishedList(graceSeconds, maxRetryCount, batchSize);
+            if (null == marketEventOutboxes || marketEventOutboxes.isEmpty()) return count;
+            if (!publish(marketEventOutboxes)) return count;
+            count += marketEventOutboxes.size();
+            if (marketEventOutboxes.size() < batchSize) return count;
+        }
+    }
+
+    private void relayLoop() {
+        List<MarketEventOutbox> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                MarketEventOutbox first = queue.poll(1, TimeUnit.SECONDS);
+                if (null == first) continue;
+                batch.add(first);
+
+                // 攒批；到达条数上限或等待时间即发送
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMs);
+                while (batch.size() < batchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        queue.drainTo(batch, batchSize - batch.size());
+                        break;
+                    }
+                    MarketEventOutbox next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (null == next) break;
+                    batch.add(next);
+                }
+
+                publish(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Throwable e) {
+                log.error("事件发件箱投递异常，等待定时任务补偿 size:{}", batch.size(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private boolean publish(List<MarketEventOutbox> marketEventOutboxes) {
+        List<String> eventIds = marketEventOutboxes.stream()
+                .map(MarketEventOutbox::getEventId)
+                .collect(Collectors.toList());
+        try {
+            eventPublisher.publishBatch(marketEventOutboxes, MarketEventOutbox::getRoutingKey, MarketEventOutbox::getMessage);
+        } catch (Exception e) {
+            log.error("事件发件箱批量发送失败 size:{}", marketEventOutboxes.size(), e);
+            marketEventOutboxDao.updateStatusRetry(eventIds, maxRetryCount);
+            return false;
+        }
+        marketEventOutboxDao.updateStatusPublished(eventIds);
+        return true;
+    }
+
+}
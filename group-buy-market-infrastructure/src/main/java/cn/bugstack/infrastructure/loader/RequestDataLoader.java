@@ -0,0 +1,203 @@
+package cn.bugstack.infrastructure.loader;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 请求级数据加载器
+ * <p>
+ * 1. 去重：请求内以 namespace + key 记忆查询结果（包括空结果），并发的相同查询只执行一次，其余等待同一个 future
+ * 2. 批量：只在单次 loadMany 调用内合并，已加载的 key 直接命中，未命中的合并为一次 IN 查询或一次 Redis 管道；
+ * 不设批处理窗口，分散的 load 调用不会跨调用合并，需要批量的链路应先收集 key 再调用 loadMany
+ * 3. 统计：记录请求内实际发生的数据库、Redis 往返次数和去重命中次数，用于验证优化效果
+ * <p>
+ * 上下文由 web 过滤器开启，通过 {@link #wrap(Runnable)} 传递到异步线程；无上下文时（定时任务、消息监听）直接执行查询。
+ * 仓储写入后应调用 {@link #invalidate(String, Object)} 失效相关记忆，避免同一请求内读到写入前的值。
+ *
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ */
+public final class RequestDataLoader {
+
+    private static final ThreadLocal<Context> CONTEXT = new ThreadLocal<>();
+
+    private RequestDataLoader() {
+    }
+
+    public static Context open() {
+        Context context = new Context();
+        CONTEXT.set(context);
+        return context;
+    }
+
+    public static void close() {
+        CONTEXT.remove();
+    }
+
+    /**
+     * 单个加载；请求内相同 namespace + key 只查询一次
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T load(String namespace, Object key, Supplier<T> loader) {
+        Context context = CONTEXT.get();
+        if (null == context) return loader.get();
+
+        String memoKey = namespace + ":" + key;
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> exist = context.memo.putIfAbsent(memoKey, future);
+        if (null != exist) {
+            context.dedupHits.increment();
+            return (T) join(exist);
+        }
+
+        try {
+            T value = loader.get();
+            future.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            // 失败不记忆，后续查询重新加载
+            context.memo.remove(memoKey, future);
+            future.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * 批量加载；已记忆的 key 直接返回，未命中的 key 交给 batchLoader 一次加载
+     *
+     * @param batchLoader 入参为未命中的 key，返回 key -> value，不存在的 key 可以不返回
+     * @return 存在的 key -> value
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> Map<K, V> loadMany(String namespace, Collection<K> keys, Function<Set<K>, Map<K, V>> batchLoader) {
+        if (null == keys || keys.isEmpty()) return new HashMap<>();
+        Context context = CONTEXT.get();
+        if (null == context) {
+            Map<K, V> loaded = batchLoader.apply(new LinkedHashSet<>(keys));
+            return null == loaded ? new HashMap<>() : loaded;
+        }
+
+        Map<K, CompletableFuture<Object>> owned = new LinkedHashMap<>();
+        Map<K, CompletableFuture<Object>> waiting = new LinkedHashMap<>();
+        for (K key : keys) {
+            if (owned.containsKey(key) || waiting.containsKey(key)) continue;
+            CompletableFuture<Object> future = new CompletableFuture<>();
+            CompletableFuture<Object> exist = context.memo.putIfAbsent(namespace + ":" + key, future);
+            if (null == exist) {
+                owned.put(key, future);
+            } else {
+                waiting.put(key, exist);
+            }
+        }
+
+        Map<K, V> result = new HashMap<>();
+        if (!owned.isEmpty()) {
+            try {
+                Map<K, V> loaded = batchLoader.apply(new LinkedHashSet<>(owned.keySet()));
+                for (Map.Entry<K, CompletableFuture<Object>> entry : owned.entrySet()) {
+                    V value = null == loaded ? null : loaded.get(entry.getKey());
+                    entry.getValue().complete(value);
+                    if (null != value) result.put(entry.getKey(), value);
+                }
+            } catch (RuntimeException e) {
+                for (Map.Entry<K, CompletableFuture<Object>> entry : owned.entrySet()) {
+                    context.memo.remove(namespace + ":" + entry.getKey(), entry.getValue());
+                    entry.getValue().completeExceptionally(e);
+                }
+                throw e;
+            }
+        }
+
+        context.dedupHits.add(waiting.size());
+        for (Map.Entry<K, CompletableFuture<Object>> entry : waiting.entrySet()) {
+            V value = (V) join(entry.getValue());
+            if (null != value) result.put(entry.getKey(), value);
+        }
+        return result;
+    }
+
+    /**
+     * 失效记忆；写入后调用
+     */
+    public static void invalidate(String namespace, Object key) {
+        Context context = CONTEXT.get();
+        if (null == context) return;
+        context.memo.remove(namespace + ":" + key);
+    }
+
+    /**
+     * 记录一次数据库往返；由 MyBatis 拦截器统一调用
+     */
+    public static void recordDb() {
+        Context context = CONTEXT.get();
+        if (null != context) context.dbRoundTrips.increment();
+    }
+
+    /**
+     * 记录一次 Redis 往返；管道、脚本按一次计
+     */
+    public static void recordRedis() {
+        Context context = CONTEXT.get();
+        if (null != context) context.redisRoundTrips.increment();
+    }
+
+    /**
+     * 包装异步任务，传递当前请求上下文
+     */
+    public static Runnable wrap(Runnable runnable) {
+        Context context = CONTEXT.get();
+        if (null == context) return runnable;
+        return () -> {
+            Context previous = CONTEXT.get();
+            CONTEXT.set(context);
+            try {
+                runnable.run();
+            } finally {
+                if (null == previous) {
+                    CONTEXT.remove();
+                } else {
+                    CONTEXT.set(previous);
+                }
+            }
+        };
+    }
+
+    private static Object join(CompletableFuture<Object> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw e;
+        }
+    }
+
+    /**
+     * 请求上下文
+     */
+    public static final class Context {
+
+        private final ConcurrentHashMap<String, CompletableFuture<Object>> memo = new ConcurrentHashMap<>();
+        private final LongAdder dbRoundTrips = new LongAdder();
+        private final LongAdder redisRoundTrips = new LongAdder();
+        private final LongAdder dedupHits = new LongAdder();
+
+        public long getDbRoundTrips() {
+            return dbRoundTrips.sum();
+        }
+
+        public long getRedisRoundTrips() {
+            return redisRoundTrips.sum();
+        }
+
+        public long getDedupHits() {
+            return dedupHits.sum();
+        }
+
+    }
+
+}
@@ -6,7 +6,10 @@ import java.math.BigInteger;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
 
 /**
  * Redis 服务
@@ -40,6 +43,22 @@ public interface IRedisService {
      */
     <T> T getValue(String key);
 
+    /**
+     * 批量获取 key 的值，一次管道往返
+     *
+     * @param keys 键
+     * @return 与 keys 顺序一致，不存在的 key 为 null
+     */
+    <T> List<T> getValues(List<String> keys);
+
+    /**
+     * 批量设置 key 的值，已存在的 key 不覆盖，一次管道往返
+     *
+     * @param values  键 -> 值
+     * @param expired 按键计算过期时间（毫秒），不大于 0 时不过期
+     */
+    <T> void setValues(Map<String, T> values, ToLongFunction<String> expired);
+
     /**
      * 获取队列
      *
@@ -5,7 +5,11 @@ import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
 
 /**
  * Redis 服务 - Redisson
@@ -33,6 +37,32 @@ public class RedissonService implements IRedisService {
         return redissonClient.<T>getBucket(key).get();
     }
 
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> List<T> getValues(List<String> keys) {
+        if (keys.isEmpty()) return new ArrayList<>();
+        RBatch batch = redissonClient.createBatch();
+        for (String key : keys) {
+            batch.getBucket(key).getAsync();
+        }
+        return (List<T>) batch.execute().getResponses();
+    }
+
+    @Override
+    public <T> void setValues(Map<String, T> values, ToLongFunction<String> expired) {
+        if (values.isEmpty()) return;
+        RBatch batch = redissonClient.createBatch();
+        for (Map.Entry<String, T> entry : values.entrySet()) {
+            long expireMillis = expired.applyAsLong(entry.getKey());
+            if (expireMillis > 0) {
+                batch.<T>getBucket(entry.getKey()).trySetAsync(entry.getValue(), expireMillis, TimeUnit.MILLISECONDS);
+            } else {
+                batch.<T>getBucket(entry.getKey()).trySetAsync(entry.getValue());
+            }
+        }
+        batch.execute();
+    }
+
     @Override
     public <T> RQueue<T> getQueue(String key) {
         return redissonClient.getQueue(key);
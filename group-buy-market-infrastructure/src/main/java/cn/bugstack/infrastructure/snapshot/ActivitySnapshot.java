@@ -0,0 +1,138 @@
+package cn.bugstack.infrastructure.snapshot;
+
+import cn.bugstack.domain.activity.model.valobj.CompiledDiscountPlan;
+import cn.bugstack.domain.activity.model.valobj.DiscountTypeEnum;
+import cn.bugstack.domain.activity.model.valobj.GroupBuyActivityDiscountVO;
+import cn.bugstack.domain.activity.model.valobj.TagScopeVO;
+import cn.bugstack.domain.trade.model.entity.GroupBuyActivityEntity;
+import cn.bugstack.infrastructure.dao.po.GroupBuyActivity;
+import cn.bugstack.infrastructure.dao.po.GroupBuyDiscount;
+import cn.bugstack.types.enums.ActivityStatusEnumVO;
+
+import java.util.Date;
+
+/**
+ * 活动配置快照；活动、折扣、人群标签范围加载时一次解析完成，折扣计划编译为按分计算，创建后不再修改，变更时整体替换
+ *
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ */
+public final class ActivitySnapshot {
+
+    private final Long activityId;
+    private final String activityName;
+    private final String discountId;
+    private final Integer groupType;
+    private final Integer takeLimitCount;
+    private final Integer target;
+    private final Integer validTime;
+    /** 活动总参与名额，0 不限制 */
+    private final int stockLimit;
+    private final ActivityStatusEnumVO status;
+    private final long startTime;
+    private final long endTime;
+    private final String tagId;
+    private final String tagScope;
+    private final Integer statusCode;
+    private final TagScopeVO tagScopeVO;
+    /** 试算使用的折扣配置，不可变；活动非生效状态或折扣不存在时为空 */
+    private final GroupBuyActivityDiscountVO.GroupBuyDiscount groupBuyDiscount;
+    /** 加载时间 */
+    private final long loadTime = System.currentTimeMillis();
+
+    public ActivitySnapshot(GroupBuyActivity groupBuyActivity, GroupBuyDiscount groupBuyDiscount, CompiledDiscountPlan compiledDiscountPlan) {
+        this.activityId = groupBuyActivity.getActivityId();
+        this.activityName = groupBuyActivity.getActivityName();
+        this.discountId = groupBuyActivity.getDiscountId();
+        this.groupType = groupBuyActivity.getGroupType();
+        this.takeLimitCount = groupBuyActivity.getTakeLimitCount();
+        this.target = groupBuyActivity.getTarget();
+        this.validTime = groupBuyActivity.getValidTime();
+        this.stockLimit = null == groupBuyActivity.getStockLimit() ? 0 : groupBuyActivity.getStockLimit();
+        this.status = ActivityStatusEnumVO.valueOf(groupBuyActivity.getStatus());
+        this.startTime = groupBuyActivity.getStartTime().getTime();
+        this.endTime = groupBuyActivity.getEndTime().getTime();
+        this.tagId = groupBuyActivity.getTagId();
+        this.tagScope = groupBuyActivity.getTagScope();
+        this.statusCode = groupBuyActivity.getStatus();
+        this.tagScopeVO = TagScopeVO.parse(tagScope);
+
+        if (ActivityStatusEnumVO.EFFECTIVE.equals(status) && null != groupBuyDiscount) {
+            this.groupBuyDiscount = GroupBuyActivityDiscountVO.GroupBuyDiscount.builder()
+                    .discountName(groupBuyDiscount.getDiscountName())
+                    .discountDesc(groupBuyDiscount.getDiscountDesc())
+                    .discountType(DiscountTypeEnum.get(groupBuyDiscount.getDiscountType()))
+                    .marketPlan(groupBuyDiscount.getMarketPlan())
+                    .marketExpr(groupBuyDiscount.getMarketExpr())
+                    .tagId(groupBuyDiscount.getTagId())
+                    .compiledDiscountPlan(compiledDiscountPlan)
+                    .discountVersion(null == groupBuyDiscount.getUpdateTime() ? null : groupBuyDiscount.getDiscountId() + "_" + groupBuyDiscount.getUpdateTime().getTime())
+                    .build();
+        } else {
+            this.groupBuyDiscount = null;
+        }
+    }
+
+    public Long getActivityId() {
+        return activityId;
+    }
+
+    public String getDiscountId() {
+        return discountId;
+    }
+
+    public int getStockLimit() {
+        return stockLimit;
+    }
+
+    public long getEndTime() {
+        return endTime;
+    }
+
+    public long getLoadTime() {
+        return loadTime;
+    }
+
+    /**
+     * 试算使用的活动营销配置；每次返回新对象，调用方修改（如时间）不会影响快照。活动非生效状态或折扣不存在时为空
+     */
+    public GroupBuyActivityDiscountVO getGroupBuyActivityDiscountVO() {
+        if (null == groupBuyDiscount) return null;
+        return GroupBuyActivityDiscountVO.builder()
+                .activityId(activityId)
+                .activityName(activityName)
+                .groupBuyDiscount(groupBuyDiscount)
+                .groupType(groupType)
+                .takeLimitCount(takeLimitCount)
+                .target(target)
+                .validTime(validTime)
+                .status(statusCode)
+                .startTime(new Date(startTime))
+                .endTime(new Date(endTime))
+                .tagId(tagId)
+                .tagScope(tagScope)
+                .tagScopeVO(tagScopeVO)
+                .build();
+    }
+
+    /**
+     * 交易使用的活动实体；每次返回新对象，调用方修改不会影响快照
+     */
+    public GroupBuyActivityEntity toGroupBuyActivityEntity() {
+        return GroupBuyActivityEntity.builder()
+                .activityId(activityId)
+                .activityName(activityName)
+                .discountId(discountId)
+                .groupType(groupType)
+                .takeLimitCount(takeLimitCount)
+                .target(target)
+                .validTime(validTime)
+                .stockLimit(stockLimit)
+                .status(status)
+                .startTime(new Date(startTime))
+                .endTime(new Date(endTime))
+                .tagId(tagId)
+                .tagScope(tagScope)
+                .build();
+    }
+
+}
@@ -0,0 +1,235 @@
+package cn.bugstack.infrastructure.snapshot;
+
+import cn.bugstack.domain.activity.model.valobj.CompiledDiscountPlan;
+import cn.bugstack.infrastructure.cache.CacheInvalidationBus;
+import cn.bugstack.infrastructure.dao.IGroupBuyActivityDao;
+import cn.bugstack.infrastructure.dao.IGroupBuyDiscountDao;
+import cn.bugstack.infrastructure.dao.po.GroupBuyActivity;
+import cn.bugstack.infrastructure.dao.po.GroupBuyDiscount;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.redisson.api.RTopic;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 活动配置快照注册表
+ * <p>
+ * 1. 进程内按活动ID缓存不可变的 {@link ActivitySnapshot}，首次访问从数据库加载，之后试算和锁单链路读取均无 I/O；
+ * 同一活动并发首次访问由第一个请求加载，其余请求等待同一个 future，加载不在 ConcurrentHashMap 的 compute 内执行，不阻塞其他活动；
+ * 不存在的活动短暂记为空，避免无效活动ID反复查库
+ * 2. 配置变更时通过 activitySnapshotRedisTopic 广播活动ID（0 表示全部），各节点重新加载后整体替换快照
+ * 3. 广播可能丢失，后台按固定间隔重新加载已缓存的活动作为兜底；已结束的活动移出注册表
+ * 4. 折扣计划按 discountId 编译一次并缓存，重新加载时 marketPlan、marketExpr 未变更则复用
+ * 5. 订阅 {@link CacheInvalidationBus} 的活动、折扣缓存失效，活动失效时重新加载该活动，折扣失效时重新加载引用该折扣的活动，按前缀失效时重新加载全部
+ *
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ */
+@Slf4j
+@Component
+public class ActivitySnapshotRegistry {
+
+    /** 刷新全部活动 */
+    public static final String REFRESH_ALL = "0";
+
+    @Resource
+    private IGroupBuyActivityDao groupBuyActivityDao;
+    @Resource
+    private IGroupBuyDiscountDao groupBuyDiscountDao;
+    @Resource(name = "activitySnapshotRedisTopic")
+    private RTopic activitySnapshotTopic;
+    @Resource
+    private CacheInvalidationBus cacheInvalidationBus;
+
+    /** 兜底重新加载间隔（秒） */
+    @Value("${group-buy-market.activity-snapshot.reload-interval-seconds:60}")
+    private long reloadIntervalSeconds;
+    /** 不存在的活动记为空的时间（秒） */
+    @Value("${group-buy-market.activity-snapshot.negative-cache-seconds:5}")
+    private long negativeCacheSeconds;
+
+    private final ConcurrentHashMap<Long, ActivitySnapshot> snapshots = new ConcurrentHashMap<>();
+    /** 加载中的活动；activityId -> 加载结果 */
+    private final ConcurrentHashMap<Long, CompletableFuture<ActivitySnapshot>> loading = new ConcurrentHashMap<>();
+    /** 不存在的活动；activityId -> 过期时间 */
+    private final ConcurrentHashMap<Long, Long> absent = new ConcurrentHashMap<>();
+    /** discountId -> 编译后的折扣计划 */
+    private final ConcurrentHashMap<String, CompiledDiscountPlan> compiledDiscountPlans = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService scheduler;
+    private int listenerId;
+
+    @PostConstruct
+    public void init() {
+        listenerId = activitySnapshotTopic.addListener(String.class, (channel, message) -> {
+            log.info("活动配置快照刷新 activityId:{}", message);
+            if (REFRESH_ALL.equals(message)) {
+                refreshAll();
+            } else if (StringUtils.isNumeric(message)) {
+                refresh(Long.valueOf(message));
+            }
+        });
+        cacheInvalidationBus.subscribe(GroupBuyActivity.CACHE_KEY_PREFIX, this::onInvalidate);
+        cacheInvalidationBus.subscribe(GroupBuyDiscount.CACHE_KEY_PREFIX, this::onInvalidate);
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "activity-snapshot-reload");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::refreshAll, reloadIntervalSeconds, reloadIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        activitySnapshotTopic.removeListener(listenerId);
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 获取活动快照；未加载时从数据库加载，同一活动并发首次访问只加载一次
+     *
+     * @return 活动不存在时为空
+     */
+    public ActivitySnapshot get(Long activityId) {
+        if (null == activityId) return null;
+        ActivitySnapshot snapshot = snapshots.get(activityId);
+        if (null != snapshot) return snapshot;
+
+        Long absentUntil = absent.get(activityId);
+        if (null != absentUntil) {
+            if (absentUntil > System.currentTimeMillis()) return null;
+            absent.remove(activityId, absentUntil);
+        }
+
+        CompletableFuture<ActivitySnapshot> future = new CompletableFuture<>();
+        CompletableFuture<ActivitySnapshot> exist = loading.putIfAbsent(activityId, future);
+        if (null != exist) return join(exist);
+
+        try {
+            // 占位前可能已由其他请求或刷新加载完成
+            snapshot = snapshots.get(activityId);
+            if (null == snapshot) {
+                snapshot = load(activityId);
+                if (null == snapshot) {
+                    absent.put(activityId, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(negativeCacheSeconds));
+                } else {
+                    // 加载期间刷新写入的快照更新，以刷新为准
+                    ActivitySnapshot previous = snapshots.putIfAbsent(activityId, snapshot);
+                    if (null != previous) snapshot = previous;
+                }
+            }
+            future.complete(snapshot);
+            return snapshot;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(activityId, future);
+        }
+    }
+
+    /**
+     * 重新加载活动快照并替换；活动已删除时移除
+     */
+    public void refresh(Long activityId) {
+        absent.remove(activityId);
+        try {
+            ActivitySnapshot snapshot = load(activityId);
+            if (null == snapshot) {
+                snapshots.remove(activityId);
+            } else {
+                snapshots.put(activityId, snapshot);
+            }
+        } catch (Exception e) {
+            // 加载失败保留旧快照
+            log.error("活动配置快照刷新失败 activityId:{}", activityId, e);
+        }
+    }
+
+    public void refreshAll() {
+        long now = System.currentTimeMillis();
+        absent.values().removeIf(absentUntil -> absentUntil <= now);
+
+        List<ActivitySnapshot> activitySnapshots = new ArrayList<>(snapshots.values());
+        for (ActivitySnapshot snapshot : activitySnapshots) {
+            // 已结束的活动移除，延长结束时间后再次访问时重新加载
+            if (snapshot.getEndTime() < now) {
+                snapshots.remove(snapshot.getActivityId(), snapshot);
+                continue;
+            }
+            refresh(snapshot.getActivityId());
+        }
+    }
+
+    private void onInvalidate(String target, boolean prefix) {
+        if (prefix) {
+            absent.clear();
+            refreshAll();
+            return;
+        }
+
+        if (target.startsWith(GroupBuyDiscount.CACHE_KEY_PREFIX)) {
+            // 折扣失效，重新加载引用该折扣的活动
+            String discountId = StringUtils.removeStart(target, GroupBuyDiscount.CACHE_KEY_PREFIX);
+            for (ActivitySnapshot snapshot : snapshots.values()) {
+                if (discountId.equals(snapshot.getDiscountId())) {
+                    refresh(snapshot.getActivityId());
+                }
+            }
+            return;
+        }
+
+        String activityId = StringUtils.removeStart(target, GroupBuyActivity.CACHE_KEY_PREFIX);
+        if (!StringUtils.isNumeric(activityId)) {
+            refreshAll();
+        } else if (snapshots.containsKey(Long.valueOf(activityId))) {
+            refresh(Long.valueOf(activityId));
+        } else {
+            // 新建的活动不再记为空
+            absent.remove(Long.valueOf(activityId));
+        }
+    }
+
+    private static ActivitySnapshot join(CompletableFuture<ActivitySnapshot> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw e;
+        }
+    }
+
+    private ActivitySnapshot load(Long activityId) {
+        GroupBuyActivity groupBuyActivity = groupBuyActivityDao.queryGroupBuyActivityByActivityId(activityId);
+        if (null == groupBuyActivity) return null;
+
+        GroupBuyDiscount groupBuyDiscount = StringUtils.isBlank(groupBuyActivity.getDiscountId()) ? null :
+                groupBuyDiscountDao.queryGroupBuyActivityDiscountByDiscountId(groupBuyActivity.getDiscountId());
+
+        return new ActivitySnapshot(groupBuyActivity, groupBuyDiscount, compileDiscountPlan(groupBuyDiscount));
+    }
+
+    private CompiledDiscountPlan compileDiscountPlan(GroupBuyDiscount groupBuyDiscount) {
+        if (null == groupBuyDiscount) return null;
+        String marketPlan = groupBuyDiscount.getMarketPlan();
+        String marketExpr = groupBuyDiscount.getMarketExpr();
+        // 不可编译的配置返回空，同时移除旧计划
+        return compiledDiscountPlans.compute(groupBuyDiscount.getDiscountId(), (discountId, compiled) ->
+                null != compiled && compiled.isCompiledFrom(marketPlan, marketExpr) ? compiled : CompiledDiscountPlan.compile(marketPlan, marketExpr));
+    }
+
+}
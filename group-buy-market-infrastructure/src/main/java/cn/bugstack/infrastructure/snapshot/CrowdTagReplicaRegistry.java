@@ -0,0 +1,476 @@
+package cn.bugstack.infrastructure.snapshot;
+
+import cn.bugstack.infrastructure.adapter.repository.tag.CrowdTagBitmapLayout;
+import cn.bugstack.infrastructure.dao.ICrowdTagsDetailDao;
+import cn.bugstack.infrastructure.dao.po.CrowdTagsDetail;
+import cn.bugstack.infrastructure.redis.IRedisService;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RTopic;
+import org.roaringbitmap.RoaringBitmap;
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 人群标签本地副本注册表
+ * <p>
+ * 1. 每个节点按标签持有 Roaring 压缩位图副本，偏移与 {@link CrowdTagBitmapLayout} 一致，人群判断在内存完成，无 Redis 往返；副本未就绪时返回 null，由调用方查询 Redis
+ * 2. 首次访问时后台按人群标签明细分页构建副本，写入本地快照文件并以内存映射方式读取；重启后快照布局、版本与 Redis 一致时直接映射，无需重新拉取
+ * 3. 写入人群标签后递增标签版本并通过 crowdTagRedisTopic 广播增量（携带用户ID，各节点按本节点布局计算偏移），各节点记入增量表，增量超过阈值时合并写入新的快照文件
+ * 4. 广播可能丢失，后台按固定间隔比对 Redis 中的标签版本，连续两次发现增量缺失时重新构建；长时间未访问的副本释放
+ *
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ */
+@Slf4j
+@Component
+public class CrowdTagReplicaRegistry {
+
+    private static final String ADD = "add";
+    private static final String REMOVE = "remove";
+    private static final String RELOAD = "reload";
+    private static final String VERSION_KEY_PREFIX = "crowd_tag_version_";
+    private static final String SNAPSHOT_SUFFIX = ".roaring";
+
+    @Resource
+    private ICrowdTagsDetailDao crowdTagsDetailDao;
+    @Resource
+    private IRedisService redisService;
+    @Resource
+    private CrowdTagBitmapLayout crowdTagBitmapLayout;
+    @Resource(name = "crowdTagRedisTopic")
+    private RTopic crowdTagTopic;
+
+    /** 是否启用本地副本 */
+    @Value("${group-buy-market.crowd-tag-replica.enabled:true}")
+    private boolean enabled;
+    /** 快照文件目录 */
+    @Value("${group-buy-market.crowd-tag-replica.snapshot-dir:${java.io.tmpdir}/group-buy-market/crowd-tag}")
+    private String snapshotDir;
+    /** 版本核对间隔（秒） */
+    @Value("${group-buy-market.crowd-tag-replica.verify-interval-seconds:30}")
+    private long verifyIntervalSeconds;
+    /** 增量合并阈值 */
+    @Value("${group-buy-market.crowd-tag-replica.compact-threshold:10000}")
+    private int compactThreshold;
+    /** 构建副本时每页读取的明细条数 */
+    @Value("${group-buy-market.crowd-tag-replica.page-size:5000}")
+    private int pageSize;
+    /** 未访问释放时间（秒） */
+    @Value("${group-buy-market.crowd-tag-replica.idle-evict-seconds:3600}")
+    private long idleEvictSeconds;
+
+    private final ConcurrentHashMap<String, Replica> replicas = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService scheduler;
+    private int listenerId;
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled) return;
+        Files.createDirectories(Paths.get(snapshotDir));
+
+        listenerId = crowdTagTopic.addListener(String.class, (channel, message) -> onDelta(message));
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "crowd-tag-replica");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.execute(this::mapSnapshots);
+        scheduler.scheduleWithFixedDelay(this::verify, verifyIntervalSeconds, verifyIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (!enabled) return;
+        crowdTagTopic.removeListener(listenerId);
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 用户是否在人群标签范围内；人群标签不存在时不限制
+     *
+     * @param index 用户偏移，{@link CrowdTagBitmapLayout#queryIndex(String)}；为 null 时用户不在任何人群中
+     * @return 副本未就绪时返回 null
+     */
+    public Boolean isTagCrowdRange(String tagId, Integer index) {
+        if (!enabled) return null;
+
+        Replica replica = replicas.get(tagId);
+        if (null == replica) {
+            replica = replicas.computeIfAbsent(tagId, Replica::new);
+        }
+        replica.lastAccessTime = System.currentTimeMillis();
+
+        State state = replica.state;
+        if (null == state) {
+            load(replica);
+            return null;
+        }
+        if (!state.exists) return true;
+        if (null == index) return false;
+
+        Boolean within = state.delta.get(index);
+        return null != within ? within : state.base.contains(index);
+    }
+
+    /**
+     * 人群标签写入用户后调用；递增标签版本并广播增量
+     */
+    public void publishAdd(String tagId, String userId) {
+        publish(ADD, tagId, userId);
+    }
+
+    /**
+     * 人群标签移除用户后调用；递增标签版本并广播增量
+     */
+    public void publishRemove(String tagId, String userId) {
+        publish(REMOVE, tagId, userId);
+    }
+
+    /**
+     * 人群标签批量写入后调用；递增标签版本，各节点重新构建副本，不逐个广播用户
+     * <p>
+     * 字典布局下其他节点的未分配索引记录不清除，到期后生效
+     */
+    public void publishReload(String tagId) {
+        publish(RELOAD, tagId, "");
+    }
+
+    private void publish(String op, String tagId, String userId) {
+        try {
+            long version = redisService.incr(VERSION_KEY_PREFIX + tagId);
+            crowdTagTopic.publish(op + ":" + version + ":" + tagId + ":" + userId);
+        } catch (Exception e) {
+            // 广播失败由版本核对兜底
+            log.warn("人群标签增量广播失败 tagId:{} userId:{}", tagId, userId, e);
+        }
+    }
+
+    private void onDelta(String message) {
+        String[] parts = message.split(":", 4);
+        if (parts.length != 4) return;
+
+        if (RELOAD.equals(parts[0])) {
+            Replica replica = replicas.get(parts[2]);
+            if (null != replica) load(replica);
+            return;
+        }
+
+        boolean add = ADD.equals(parts[0]);
+        String userId = parts[3];
+        if (add) crowdTagBitmapLayout.invalidateAbsent(userId);
+
+        Replica replica = replicas.get(parts[2]);
+        if (null == replica) return;
+
+        Integer index = crowdTagBitmapLayout.queryIndex(userId);
+        if (null == index) return;
+
+        Delta delta = new Delta(add, Long.parseLong(parts[1]), index);
+        synchronized (replica) {
+            // 构建期间的增量暂存，新副本就绪后补记
+            if (replica.loading) replica.pending.add(delta);
+            if (null != replica.state) apply(replica, delta);
+        }
+    }
+
+    private void apply(Replica replica, Delta delta) {
+        State state = replica.state;
+        state.delta.put(delta.index, delta.add);
+        if (delta.add) state.exists = true;
+        if (delta.version > replica.baseVersion) {
+            replica.appliedCount++;
+            replica.maxVersion = Math.max(replica.maxVersion, delta.version);
+        }
+    }
+
+    private void load(Replica replica) {
+        synchronized (replica) {
+            if (replica.loading) return;
+            replica.loading = true;
+        }
+        scheduler.execute(() -> rebuild(replica));
+    }
+
+    /**
+     * 从人群标签明细构建副本；先读取版本再读取明细，版本之前提交的用户都在明细中
+     */
+    private void rebuild(Replica replica) {
+        String tagId = replica.tagId;
+        try {
+            long version = currentVersion(tagId);
+
+            RoaringBitmap bitmap = new RoaringBitmap();
+            Long lastId = 0L;
+            while (true) {
+                List<CrowdTagsDetail> crowdTagsDetails = crowdTagsDetailDao.queryCrowdTagsDetailPage(tagId, lastId, pageSize);
+                if (null == crowdTagsDetails || crowdTagsDetails.isEmpty()) break;
+                List<String> userIds = crowdTagsDetails.stream().map(CrowdTagsDetail::getUserId).collect(Collectors.toList());
+                crowdTagBitmapLayout.assignIndexes(userIds).values().forEach(bitmap::add);
+                lastId = crowdTagsDetails.get(crowdTagsDetails.size() - 1).getId();
+                if (crowdTagsDetails.size() < pageSize) break;
+            }
+            bitmap.runOptimize();
+
+            install(replica, version, writeSnapshot(tagId, version, bitmap));
+            log.info("人群标签副本构建完成 tagId:{} version:{} cardinality:{}", tagId, version, bitmap.getLongCardinality());
+        } catch (Exception e) {
+            log.error("人群标签副本构建失败 tagId:{}", tagId, e);
+            synchronized (replica) {
+                replica.loading = false;
+                replica.pending.clear();
+            }
+        }
+    }
+
+    private void install(Replica replica, long version, ImmutableRoaringBitmap base) {
+        synchronized (replica) {
+            replica.state = new State(base, !base.isEmpty());
+            replica.baseVersion = version;
+            replica.maxVersion = version;
+            replica.appliedCount = 0;
+            replica.suspect = false;
+            for (Delta delta : replica.pending) {
+                if (delta.version > version) apply(replica, delta);
+            }
+            replica.pending.clear();
+            replica.loading = false;
+        }
+    }
+
+    /**
+     * 启动时映射本地快照；版本与 Redis 不一致的快照删除，访问时重新构建
+     */
+    private void mapSnapshots() {
+        String suffix = snapshotSuffix();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(Paths.get(snapshotDir), "*" + suffix)) {
+            for (Path file : files) {
+                String fileName = file.getFileName().toString();
+                String tagId = URLDecoder.decode(fileName.substring(0, fileName.length() - suffix.length()), "UTF-8");
+                Replica replica = replicas.computeIfAbsent(tagId, Replica::new);
+                synchronized (replica) {
+                    if (replica.loading || null != replica.state) continue;
+                    replica.loading = true;
+                }
+                try {
+                    long version = currentVersion(tagId);
+                    Snapshot snapshot = readSnapshot(file);
+                    if (snapshot.version == version) {
+                        install(replica, version, snapshot.bitmap);
+                        log.info("人群标签副本映射完成 tagId:{} version:{}", tagId, version);
+                        continue;
+                    }
+                    Files.deleteIfExists(file);
+                } catch (Exception e) {
+                    log.warn("人群标签快照映射失败 tagId:{}", tagId, e);
+                }
+                synchronized (replica) {
+                    replica.loading = false;
+                    replica.pending.clear();
+                }
+            }
+        } catch (IOException e) {
+            log.error("人群标签快照目录读取失败 dir:{}", snapshotDir, e);
+        }
+    }
+
+    /**
+     * 版本核对、增量合并、释放未访问的副本
+     */
+    private void verify() {
+        long now = System.currentTimeMillis();
+        for (Replica replica : replicas.values()) {
+            try {
+                if (now - replica.lastAccessTime > TimeUnit.SECONDS.toMillis(idleEvictSeconds)) {
+                    evict(replica);
+                    continue;
+                }
+
+                if (null == replica.state || replica.loading) continue;
+
+                long version = currentVersion(replica.tagId);
+                boolean rebuild;
+                synchronized (replica) {
+                    // 版本差大于已收到的增量数，说明有增量丢失；上一轮已发现时重新构建，避免广播在途误判
+                    boolean missing = version - replica.baseVersion > replica.appliedCount;
+                    rebuild = missing && replica.suspect;
+                    replica.suspect = missing && !rebuild;
+                }
+                if (rebuild) {
+                    log.info("人群标签副本增量缺失，重新构建 tagId:{} version:{}", replica.tagId, version);
+                    load(replica);
+                    continue;
+                }
+
+                if (replica.state.delta.size() >= compactThreshold) {
+                    compact(replica);
+                }
+            } catch (Exception e) {
+                log.warn("人群标签副本核对失败 tagId:{}", replica.tagId, e);
+            }
+        }
+    }
+
+    /**
+     * 增量合并到基础位图并写入新的快照；增量版本连续时快照记录最新版本，否则记录基础版本，重启后重新构建
+     */
+    private void compact(Replica replica) throws IOException {
+        synchronized (replica) {
+            State state = replica.state;
+            RoaringBitmap bitmap = state.base.toRoaringBitmap();
+            state.delta.forEach((index, within) -> {
+                if (within) {
+                    bitmap.add(index);
+                } else {
+                    bitmap.remove(index);
+                }
+            });
+            bitmap.runOptimize();
+
+            boolean contiguous = replica.maxVersion - replica.baseVersion == replica.appliedCount;
+            long version = contiguous ? replica.maxVersion : replica.baseVersion;
+            replica.state = new State(writeSnapshot(replica.tagId, version, bitmap), state.exists);
+            if (contiguous) {
+                replica.baseVersion = version;
+                replica.appliedCount = 0;
+            }
+        }
+    }
+
+    private void evict(Replica replica) throws IOException {
+        synchronized (replica) {
+            if (replica.loading) return;
+            replicas.remove(replica.tagId, replica);
+        }
+        Files.deleteIfExists(snapshotPath(replica.tagId));
+        log.info("人群标签副本释放 tagId:{}", replica.tagId);
+    }
+
+    private long currentVersion(String tagId) {
+        Long version = redisService.getAtomicLong(VERSION_KEY_PREFIX + tagId);
+        return null == version ? 0L : version;
+    }
+
+    /**
+     * 快照文件：8字节版本 + Roaring 序列化位图；写入临时文件后原子替换，再以内存映射方式读取
+     */
+    private ImmutableRoaringBitmap writeSnapshot(String tagId, long version, RoaringBitmap bitmap) throws IOException {
+        Path file = snapshotPath(tagId);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeLong(version);
+            bitmap.serialize(out);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return readSnapshot(file).bitmap;
+    }
+
+    private Snapshot readSnapshot(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // 映射在通道关闭后仍然有效
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            long version = buffer.getLong();
+            return new Snapshot(version, new ImmutableRoaringBitmap(buffer.slice()));
+        }
+    }
+
+    private Path snapshotPath(String tagId) throws UnsupportedEncodingException {
+        return Paths.get(snapshotDir, URLEncoder.encode(tagId, "UTF-8") + snapshotSuffix());
+    }
+
+    /**
+     * 快照按布局区分，切换布局后不映射旧布局的快照
+     */
+    private String snapshotSuffix() {
+        return "." + crowdTagBitmapLayout.name() + SNAPSHOT_SUFFIX;
+    }
+
+    private static class Replica {
+
+        private final String tagId;
+        /** 当前副本；未就绪时为 null */
+        private volatile State state;
+        private volatile long lastAccessTime = System.currentTimeMillis();
+
+        // 以下字段由 synchronized (replica) 保护
+        private boolean loading;
+        private final List<Delta> pending = new ArrayList<>();
+        /** 基础位图覆盖的版本 */
+        private long baseVersion;
+        /** 基础版本之后收到的增量数、最大版本 */
+        private long appliedCount;
+        private long maxVersion;
+        /** 上一轮核对发现增量缺失 */
+        private boolean suspect;
+
+        private Replica(String tagId) {
+            this.tagId = tagId;
+        }
+
+    }
+
+    /**
+     * 基础位图 + 增量表；增量表 true 为加入，false 为移除
+     */
+    private static class State {
+
+        private final ImmutableRoaringBitmap base;
+        private final ConcurrentHashMap<Integer, Boolean> delta = new ConcurrentHashMap<>();
+        /** 人群标签是否存在，与 Redis 位图是否存在一致 */
+        private volatile boolean exists;
+
+        private State(ImmutableRoaringBitmap base, boolean exists) {
+            this.base = base;
+            this.exists = exists;
+        }
+
+    }
+
+    private static class Delta {
+
+        private final boolean add;
+        private final long version;
+        private final int index;
+
+        private Delta(boolean add, long version, int index) {
+            this.add = add;
+            this.version = version;
+            this.index = index;
+        }
+
+    }
+
+    private static class Snapshot {
+
+        private final long version;
+        private final ImmutableRoaringBitmap bitmap;
+
+        private Snapshot(long version, ImmutableRoaringBitmap bitmap) {
+            this.version = version;
+            this.bitmap = bitmap;
+        }
+
+    }
+
+}
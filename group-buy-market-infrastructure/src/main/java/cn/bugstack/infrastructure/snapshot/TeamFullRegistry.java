@@ -0,0 +1,111 @@
+package cn.bugstack.infrastructure.snapshot;
+
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RTopic;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 已满队伍注册表
+ * <p>
+ * 1. 组队名额占用失败、合并写入名额用尽、拼团完成时记录队伍已满，通过 teamFullRedisTopic 广播到所有节点
+ * 2. 锁单入口先查本节点记录，已满队伍不再进入试算、规则过滤和 Redis 脚本，直接拒绝
+ * 3. 退单、恢复量释放名额时广播移除；广播可能丢失，记录带过期时间，过期后请求回到正常链路重新判定
+ *
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ */
+@Slf4j
+@Component
+public class TeamFullRegistry {
+
+    private static final String FULL_PREFIX = "full_";
+    private static final String OPEN_PREFIX = "open_";
+
+    @Resource(name = "teamFullRedisTopic")
+    private RTopic teamFullTopic;
+
+    /** 已满记录的过期时间（秒） */
+    @Value("${group-buy-market.team-full.ttl-seconds:60}")
+    private long ttlSeconds;
+
+    /** teamId -> 已满记录的过期时间 */
+    private final ConcurrentHashMap<String, Long> fullTeams = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService scheduler;
+    private int listenerId;
+
+    @PostConstruct
+    public void init() {
+        listenerId = teamFullTopic.addListener(String.class, (channel, message) -> {
+            if (message.startsWith(FULL_PREFIX)) {
+                fullTeams.put(message.substring(FULL_PREFIX.length()), System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(ttlSeconds));
+            } else if (message.startsWith(OPEN_PREFIX)) {
+                fullTeams.remove(message.substring(OPEN_PREFIX.length()));
+            }
+        });
+
+        // 定期清理过期记录，不再访问的队伍不常驻内存
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "team-full-purge");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::purge, ttlSeconds, ttlSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        teamFullTopic.removeListener(listenerId);
+        scheduler.shutdownNow();
+    }
+
+    public boolean isFull(String teamId) {
+        if (null == teamId) return false;
+        Long expireTime = fullTeams.get(teamId);
+        if (null == expireTime) return false;
+        if (expireTime > System.currentTimeMillis()) return true;
+        fullTeams.remove(teamId, expireTime);
+        return false;
+    }
+
+    /**
+     * 记录队伍已满并广播；本节点已有记录时不重复广播
+     */
+    public void markFull(String teamId) {
+        if (null == teamId || isFull(teamId)) return;
+        fullTeams.put(teamId, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(ttlSeconds));
+        publish(FULL_PREFIX + teamId);
+    }
+
+    /**
+     * 队伍名额释放，移除已满记录并广播
+     */
+    public void reopen(String teamId) {
+        if (null == teamId) return;
+        fullTeams.remove(teamId);
+        publish(OPEN_PREFIX + teamId);
+    }
+
+    private void publish(String message) {
+        try {
+            teamFullTopic.publish(message);
+        } catch (Exception e) {
+            // 广播失败只影响其他节点的拦截时效，记录过期后回到正常链路
+            log.warn("已满队伍广播失败 message:{}", message, e);
+        }
+    }
+
+    private void purge() {
+        long now = System.currentTimeMillis();
+        fullTeams.entrySet().removeIf(entry -> entry.getValue() <= now);
+    }
+
+}
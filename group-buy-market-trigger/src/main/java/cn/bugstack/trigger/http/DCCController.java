@@ -1,14 +1,21 @@
 package cn.bugstack.trigger.http;
 
 import cn.bugstack.api.IDCCService;
+import cn.bugstack.api.dto.ActivityPrewarmStatusResponseDTO;
 import cn.bugstack.api.response.Response;
+import cn.bugstack.domain.activity.model.valobj.CacheEntityEnumVO;
+import cn.bugstack.domain.activity.service.IActivityCacheService;
+import cn.bugstack.domain.activity.service.IActivityPrewarmService;
 import cn.bugstack.types.enums.ResponseCode;
+import cn.bugstack.types.exception.AppException;
 import cn.bugstack.wrench.dynamic.config.center.domain.model.valobj.AttributeVO;
 import lombok.extern.slf4j.Slf4j;
 import org.redisson.api.RTopic;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
+import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * @author Fuzhengwei bugstack.cn @小傅哥
@@ -24,6 +31,15 @@ public class DCCController implements IDCCService {
     @Resource(name = "dynamicConfigCenterRedisTopic")
     private RTopic dccTopic;
 
+    @Resource(name = "activitySnapshotRedisTopic")
+    private RTopic activitySnapshotTopic;
+
+    @Resource
+    private IActivityPrewarmService activityPrewarmService;
+
+    @Resource
+    private IActivityCacheService activityCacheService;
+
     /**
      * 动态值变更
      * <p>
@@ -50,4 +66,99 @@ public class DCCController implements IDCCService {
         }
     }
 
+    /**
+     * 活动配置快照刷新；活动、折扣配置变更后广播，各节点重新加载
+     * <p>
+     * curl http://127.0.0.1:8091/api/v1/gbm/dcc/refresh_activity_snapshot?activityId=100123
+     * curl http://127.0.0.1:8091/api/v1/gbm/dcc/refresh_activity_snapshot?activityId=0
+     */
+    @RequestMapping(value = "refresh_activity_snapshot", method = RequestMethod.GET)
+    @Override
+    public Response<Boolean> refreshActivitySnapshot(@RequestParam Long activityId) {
+        try {
+            log.info("活动配置快照刷新 activityId:{}", activityId);
+            activitySnapshotTopic.publish(String.valueOf(activityId));
+            return Response.<Boolean>builder()
+                    .code(ResponseCode.SUCCESS.getCode())
+                    .info(ResponseCode.SUCCESS.getInfo())
+                    .build();
+        } catch (Exception e) {
+            log.error("活动配置快照刷新失败 activityId:{}", activityId, e);
+            return Response.<Boolean>builder()
+                    .code(ResponseCode.UN_ERROR.getCode())
+                    .info(ResponseCode.UN_ERROR.getInfo())
+                    .build();
+        }
+    }
+
+    /**
+     * 活动预热状态；返回应答节点本地的预热结果和耗时
+     * <p>
+     * curl http://127.0.0.1:8091/api/v1/gbm/dcc/query_activity_prewarm_status
+     */
+    @RequestMapping(value = "query_activity_prewarm_status", method = RequestMethod.GET)
+    @Override
+    public Response<List<ActivityPrewarmStatusResponseDTO>> queryActivityPrewarmStatus() {
+        try {
+            List<ActivityPrewarmStatusResponseDTO> statusList = activityPrewarmService.queryActivityPrewarmStatusList().stream()
+                    .map(status -> ActivityPrewarmStatusResponseDTO.builder()
+                            .activityId(status.getActivityId())
+                            .startTime(status.getStartTime())
+                            .status(status.getStatus().getCode())
+                            .goodsCount(status.getGoodsCount())
+                            .trialCount(status.getTrialCount())
+                            .trialErrorCount(status.getTrialErrorCount())
+                            .loadMillis(status.getLoadMillis())
+                            .trialMillis(status.getTrialMillis())
+                            .costMillis(status.getCostMillis())
+                            .warmTime(status.getWarmTime())
+                            .message(status.getMessage())
+                            .build())
+                    .collect(Collectors.toList());
+            return Response.<List<ActivityPrewarmStatusResponseDTO>>builder()
+                    .code(ResponseCode.SUCCESS.getCode())
+                    .info(ResponseCode.SUCCESS.getInfo())
+                    .data(statusList)
+                    .build();
+        } catch (Exception e) {
+            log.error("查询活动预热状态失败", e);
+            return Response.<List<ActivityPrewarmStatusResponseDTO>>builder()
+                    .code(ResponseCode.UN_ERROR.getCode())
+                    .info(ResponseCode.UN_ERROR.getInfo())
+                    .build();
+        }
+    }
+
+    /**
+     * 实体缓存失效；删除 Redis 缓存并广播各节点失效本地缓存，id 为空时失效该实体的全部缓存
+     * <p>
+     * curl http://127.0.0.1:8091/api/v1/gbm/dcc/invalidate_cache?entity=sku&id=9890001
+     * curl http://127.0.0.1:8091/api/v1/gbm/dcc/invalidate_cache?entity=sc_sku_activity&id=s01_c01_9890001
+     * curl http://127.0.0.1:8091/api/v1/gbm/dcc/invalidate_cache?entity=activity
+     */
+    @RequestMapping(value = "invalidate_cache", method = RequestMethod.GET)
+    @Override
+    public Response<Boolean> invalidateCache(@RequestParam String entity, @RequestParam(required = false) String id) {
+        try {
+            log.info("实体缓存失效 entity:{} id:{}", entity, id);
+            activityCacheService.invalidateCache(CacheEntityEnumVO.getByCode(entity), id);
+            return Response.<Boolean>builder()
+                    .code(ResponseCode.SUCCESS.getCode())
+                    .info(ResponseCode.SUCCESS.getInfo())
+                    .build();
+        } catch (AppException e) {
+            log.error("实体缓存失效失败 entity:{} id:{}", entity, id, e);
+            return Response.<Boolean>builder()
+                    .code(e.getCode())
+                    .info(e.getInfo())
+                    .build();
+        } catch (Exception e) {
+            log.error("实体缓存失效失败 entity:{} id:{}", entity, id, e);
+            return Response.<Boolean>builder()
+                    .code(ResponseCode.UN_ERROR.getCode())
+                    .info(ResponseCode.UN_ERROR.getInfo())
+                    .build();
+        }
+    }
+
 }
@@ -11,19 +11,19 @@ import cn.bugstack.domain.activity.model.valobj.TeamStatisticVO;
 import cn.bugstack.domain.activity.service.IIndexGroupBuyMarketService;
 import cn.bugstack.domain.activity.service.IRankGroupBuyMarketService;
 import cn.bugstack.types.enums.ResponseCode;
+import cn.bugstack.types.exception.AppException;
 import cn.bugstack.wrench.rate.limiter.types.annotations.RateLimiterAccessInterceptor;
 import com.alibaba.fastjson.JSON;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import javax.annotation.Resource;
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.List;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.*;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.stream.Collectors;
 
 /**
@@ -41,9 +41,16 @@ public class MarketIndexController implements IMarketIndexService {
     private IIndexGroupBuyMarketService indexGroupBuyMarketService;
     @Resource
     private IRankGroupBuyMarketService rankGroupBuyMarketService;
+    @Resource
+    private ThreadPoolExecutor threadPoolExecutor;
+
+    /** 批量查询单次最大商品数 */
+    @Value("${group-buy-market.market-index.batch-max-size:50}")
+    private int batchMaxSize;
+    /** 异步查询超时时间（毫秒） */
+    @Value("${group-buy-market.market-index.async-timeout-millis:5000}")
+    private long asyncTimeoutMillis;
 
-    // 用于并行查询商品价格的线程池
-    private final ExecutorService priceQueryExecutor = Executors.newFixedThreadPool(10);
     @RateLimiterAccessInterceptor(key = "userId", fallbackMethod = "queryGroupBuyMarketConfigFallBack", permitsPerSecond = 1.0d, blacklistCount = 1)
     @RequestMapping(value = "query_group_buy_market_config", method = RequestMethod.POST)
     @Override
@@ -66,65 +73,178 @@ public class MarketIndexController implements IMarketIndexService {
                     .goodsId(requestDTO.getGoodsId())
                     .build());
 
+            // 2. 查询拼团组队、统计拼团数据
+            Response<GoodsMarketResponseDTO> response = Response.<GoodsMarketResponseDTO>builder()
+                    .code(ResponseCode.SUCCESS.getCode())
+                    .info(ResponseCode.SUCCESS.getInfo())
+                    .data(buildGoodsMarketResponseDTO(requestDTO.getUserId(), trialBalanceEntity))
+                    .build();
 
-            GroupBuyActivityDiscountVO groupBuyActivityDiscountVO = trialBalanceEntity.getGroupBuyActivityDiscountVO();
-            Long activityId = groupBuyActivityDiscountVO.getActivityId();
+            log.info("查询拼团营销配置完成:{} goodsId:{} response:{}", requestDTO.getUserId(), requestDTO.getGoodsId(), JSON.toJSONString(response));
 
-            // 2. 查询拼团组队
-            List<UserGroupBuyOrderDetailEntity> userGroupBuyOrderDetailEntities = indexGroupBuyMarketService.queryInProgressUserGroupBuyOrderDetailList(activityId, requestDTO.getUserId(), 1, 2);
+            return response;
+        } catch (Exception e) {
+            log.error("查询拼团营销配置失败:{} goodsId:{}", requestDTO.getUserId(), requestDTO.getGoodsId(), e);
+            return Response.<GoodsMarketResponseDTO>builder()
+                    .code(ResponseCode.UN_ERROR.getCode())
+                    .info(ResponseCode.UN_ERROR.getInfo())
+                    .build();
+        }
+    }
 
-            // 3. 统计拼团数据
-            TeamStatisticVO teamStatisticVO = indexGroupBuyMarketService.queryTeamStatisticByActivityId(activityId);
+    /**
+     * 异步查询拼团营销配置；试算树非阻塞组合执行，Servlet 异步释放容器线程，超时返回 UN_ERROR
+     */
+    @RateLimiterAccessInterceptor(key = "userId", fallbackMethod = "queryGroupBuyMarketConfigAsyncFallBack", permitsPerSecond = 1.0d, blacklistCount = 1)
+    @RequestMapping(value = "query_group_buy_market_config_async", method = RequestMethod.POST)
+    public DeferredResult<Response<GoodsMarketResponseDTO>> queryGroupBuyMarketConfigAsync(@RequestBody GoodsMarketRequestDTO requestDTO) {
+        DeferredResult<Response<GoodsMarketResponseDTO>> deferredResult = new DeferredResult<>(asyncTimeoutMillis, Response.<GoodsMarketResponseDTO>builder()
+                .code(ResponseCode.UN_ERROR.getCode())
+                .info(ResponseCode.UN_ERROR.getInfo())
+                .build());
 
-            GoodsMarketResponseDTO.Goods goods = GoodsMarketResponseDTO.Goods.builder()
-                    .goodsId(trialBalanceEntity.getGoodsId())
-                    .originalPrice(trialBalanceEntity.getOriginalPrice())
-                    .deductionPrice(trialBalanceEntity.getDeductionPrice())
-                    .payPrice(trialBalanceEntity.getPayPrice())
+        if (StringUtils.isBlank(requestDTO.getUserId()) || StringUtils.isBlank(requestDTO.getSource()) || StringUtils.isBlank(requestDTO.getChannel()) || StringUtils.isBlank(requestDTO.getGoodsId())) {
+            deferredResult.setResult(Response.<GoodsMarketResponseDTO>builder()
+                    .code(ResponseCode.ILLEGAL_PARAMETER.getCode())
+                    .info(ResponseCode.ILLEGAL_PARAMETER.getInfo())
+                    .build());
+            return deferredResult;
+        }
+
+        log.info("异步查询拼团营销配置开始:{} goodsId:{}", requestDTO.getUserId(), requestDTO.getGoodsId());
+        deferredResult.onTimeout(() -> log.warn("异步查询拼团营销配置超时:{} goodsId:{}", requestDTO.getUserId(), requestDTO.getGoodsId()));
+
+        // 1. 营销优惠试算；2. 组队、统计查询为阻塞查询，放到线程池执行
+        indexGroupBuyMarketService.indexMarketTrialAsync(MarketProductEntity.builder()
+                        .userId(requestDTO.getUserId())
+                        .source(requestDTO.getSource())
+                        .channel(requestDTO.getChannel())
+                        .goodsId(requestDTO.getGoodsId())
+                        .build())
+                .thenApplyAsync(trialBalanceEntity -> buildGoodsMarketResponseDTO(requestDTO.getUserId(), trialBalanceEntity), threadPoolExecutor)
+                .whenComplete((goodsMarketResponseDTO, throwable) -> {
+                    if (null == throwable) {
+                        log.info("异步查询拼团营销配置完成:{} goodsId:{}", requestDTO.getUserId(), requestDTO.getGoodsId());
+                        deferredResult.setResult(Response.<GoodsMarketResponseDTO>builder()
+                                .code(ResponseCode.SUCCESS.getCode())
+                                .info(ResponseCode.SUCCESS.getInfo())
+                                .data(goodsMarketResponseDTO)
+                                .build());
+                        return;
+                    }
+
+                    Throwable cause = throwable instanceof CompletionException && null != throwable.getCause() ? throwable.getCause() : throwable;
+                    if (cause instanceof AppException) {
+                        log.error("异步查询拼团营销配置业务异常:{} goodsId:{}", requestDTO.getUserId(), requestDTO.getGoodsId(), cause);
+                        deferredResult.setResult(Response.<GoodsMarketResponseDTO>builder()
+                                .code(((AppException) cause).getCode())
+                                .info(((AppException) cause).getInfo())
+                                .build());
+                        return;
+                    }
+
+                    log.error("异步查询拼团营销配置失败:{} goodsId:{}", requestDTO.getUserId(), requestDTO.getGoodsId(), cause);
+                    deferredResult.setResult(Response.<GoodsMarketResponseDTO>builder()
+                            .code(ResponseCode.UN_ERROR.getCode())
+                            .info(ResponseCode.UN_ERROR.getInfo())
+                            .build());
+                });
+
+        return deferredResult;
+    }
+
+    public DeferredResult<Response<GoodsMarketResponseDTO>> queryGroupBuyMarketConfigAsyncFallBack(GoodsMarketRequestDTO requestDTO) {
+        log.error("异步查询拼团营销配置限流:{}", requestDTO.getUserId());
+        DeferredResult<Response<GoodsMarketResponseDTO>> deferredResult = new DeferredResult<>();
+        deferredResult.setResult(Response.<GoodsMarketResponseDTO>builder()
+                .code(ResponseCode.RATE_LIMITER.getCode())
+                .info(ResponseCode.RATE_LIMITER.getInfo())
+                .build());
+        return deferredResult;
+    }
+
+    @RateLimiterAccessInterceptor(key = "userId", fallbackMethod = "queryGroupBuyMarketConfigBatchFallBack", permitsPerSecond = 1.0d, blacklistCount = 1)
+    @RequestMapping(value = "query_group_buy_market_config_batch", method = RequestMethod.POST)
+    @Override
+    public Response<List<GoodsMarketBatchResponseDTO>> queryGroupBuyMarketConfigBatch(@RequestBody GoodsMarketBatchRequestDTO requestDTO) {
+        List<String> goodsIds = requestDTO.getGoodsIds();
+        if (StringUtils.isBlank(requestDTO.getUserId()) || StringUtils.isBlank(requestDTO.getSource()) || StringUtils.isBlank(requestDTO.getChannel())
+                || null == goodsIds || goodsIds.isEmpty() || goodsIds.size() > batchMaxSize || goodsIds.stream().anyMatch(StringUtils::isBlank)) {
+            return Response.<List<GoodsMarketBatchResponseDTO>>builder()
+                    .code(ResponseCode.ILLEGAL_PARAMETER.getCode())
+                    .info(ResponseCode.ILLEGAL_PARAMETER.getInfo())
                     .build();
+        }
 
-            List<GoodsMarketResponseDTO.Team> teams = new ArrayList<>();
-            if (null != userGroupBuyOrderDetailEntities && !userGroupBuyOrderDetailEntities.isEmpty()) {
-                for (UserGroupBuyOrderDetailEntity userGroupBuyOrderDetailEntity : userGroupBuyOrderDetailEntities) {
-                    GoodsMarketResponseDTO.Team team = GoodsMarketResponseDTO.Team.builder()
-                            .userId(userGroupBuyOrderDetailEntity.getUserId())
-                            .teamId(userGroupBuyOrderDetailEntity.getTeamId())
-                            .activityId(userGroupBuyOrderDetailEntity.getActivityId())
-                            .targetCount(userGroupBuyOrderDetailEntity.getTargetCount())
-                            .completeCount(userGroupBuyOrderDetailEntity.getCompleteCount())
-                            .lockCount(userGroupBuyOrderDetailEntity.getLockCount())
-                            .validStartTime(userGroupBuyOrderDetailEntity.getValidStartTime())
-                            .validEndTime(userGroupBuyOrderDetailEntity.getValidEndTime())
-                            .validTimeCountdown(GoodsMarketResponseDTO.Team.differenceDateTime2Str(new Date(), userGroupBuyOrderDetailEntity.getValidEndTime()))
-                            .outTradeNo(userGroupBuyOrderDetailEntity.getOutTradeNo())
-                            .build();
-                    teams.add(team);
+        try {
+            log.info("批量查询拼团营销配置开始:{} size:{}", requestDTO.getUserId(), goodsIds.size());
+
+            // 1. 营销优惠批量试算
+            List<MarketProductEntity> marketProductEntities = goodsIds.stream()
+                    .map(goodsId -> MarketProductEntity.builder()
+                            .userId(requestDTO.getUserId())
+                            .source(requestDTO.getSource())
+                            .channel(requestDTO.getChannel())
+                            .goodsId(goodsId)
+                            .build())
+                    .collect(Collectors.toList());
+            List<TrialBalanceEntity> trialBalanceEntities = indexGroupBuyMarketService.indexMarketTrialBatch(marketProductEntities);
+
+            // 2. 组装应答；组队统计按活动查询一次
+            Map<Long, GoodsMarketResponseDTO.TeamStatistic> teamStatisticMap = new HashMap<>();
+            List<GoodsMarketBatchResponseDTO> responseDTOList = new ArrayList<>(goodsIds.size());
+            for (int i = 0; i < goodsIds.size(); i++) {
+                TrialBalanceEntity trialBalanceEntity = trialBalanceEntities.get(i);
+                if (null == trialBalanceEntity) {
+                    responseDTOList.add(GoodsMarketBatchResponseDTO.builder()
+                            .goodsId(goodsIds.get(i))
+                            .code(ResponseCode.E0002.getCode())
+                            .info(ResponseCode.E0002.getInfo())
+                            .build());
+                    continue;
                 }
+
+                Long activityId = trialBalanceEntity.getGroupBuyActivityDiscountVO().getActivityId();
+                GoodsMarketResponseDTO.TeamStatistic teamStatistic = teamStatisticMap.computeIfAbsent(activityId, key -> {
+                    TeamStatisticVO teamStatisticVO = indexGroupBuyMarketService.queryTeamStatisticByActivityId(key);
+                    return GoodsMarketResponseDTO.TeamStatistic.builder()
+                            .allTeamCount(teamStatisticVO.getAllTeamCount())
+                            .allTeamCompleteCount(teamStatisticVO.getAllTeamCompleteCount())
+                            .allTeamUserCount(teamStatisticVO.getAllTeamUserCount())
+                            .build();
+                });
+
+                responseDTOList.add(GoodsMarketBatchResponseDTO.builder()
+                        .goodsId(goodsIds.get(i))
+                        .code(ResponseCode.SUCCESS.getCode())
+                        .info(ResponseCode.SUCCESS.getInfo())
+                        .activityId(activityId)
+                        .goods(GoodsMarketResponseDTO.Goods.builder()
+                                .goodsId(trialBalanceEntity.getGoodsId())
+                                .originalPrice(trialBalanceEntity.getOriginalPrice())
+                                .deductionPrice(trialBalanceEntity.getDeductionPrice())
+                                .payPrice(trialBalanceEntity.getPayPrice())
+                                .build())
+                        .teamStatistic(teamStatistic)
+                        .build());
             }
 
-            GoodsMarketResponseDTO.TeamStatistic teamStatistic = GoodsMarketResponseDTO.TeamStatistic.builder()
-                    .allTeamCount(teamStatisticVO.getAllTeamCount())
-                    .allTeamCompleteCount(teamStatisticVO.getAllTeamCompleteCount())
-                    .allTeamUserCount(teamStatisticVO.getAllTeamUserCount())
-                    .build();
+            log.info("批量查询拼团营销配置完成:{} size:{}", requestDTO.getUserId(), goodsIds.size());
 
-            Response<GoodsMarketResponseDTO> response = Response.<GoodsMarketResponseDTO>builder()
+            return Response.<List<GoodsMarketBatchResponseDTO>>builder()
                     .code(ResponseCode.SUCCESS.getCode())
                     .info(ResponseCode.SUCCESS.getInfo())
-                    .data(GoodsMarketResponseDTO.builder()
-                            .activityId(activityId)
-                            .goods(goods)
-                            .teamList(teams)
-                            .teamStatistic(teamStatistic)
-                            .build())
+                    .data(responseDTOList)
+                    .build();
+        } catch (AppException e) {
+            log.error("批量查询拼团营销配置业务异常:{} size:{}", requestDTO.getUserId(), goodsIds.size(), e);
+            return Response.<List<GoodsMarketBatchResponseDTO>>builder()
+                    .code(e.getCode())
+                    .info(e.getInfo())
                     .build();
-
-            log.info("查询拼团营销配置完成:{} goodsId:{} response:{}", requestDTO.getUserId(), requestDTO.getGoodsId(), JSON.toJSONString(response));
-
-            return response;
         } catch (Exception e) {
-            log.error("查询拼团营销配置失败:{} goodsId:{}", requestDTO.getUserId(), requestDTO.getGoodsId(), e);
-            return Response.<GoodsMarketResponseDTO>builder()
+            log.error("批量查询拼团营销配置失败:{} size:{}", requestDTO.getUserId(), goodsIds.size(), e);
+            return Response.<List<GoodsMarketBatchResponseDTO>>builder()
                     .code(ResponseCode.UN_ERROR.getCode())
                     .info(ResponseCode.UN_ERROR.getInfo())
                     .build();
@@ -163,44 +283,33 @@ public class MarketIndexController implements IMarketIndexService {
                 resp = rankGroupBuyMarketService.queryTopNByActivityId(activityId, timeWindow, windowKey);
             }
 
-            // 2) 并行查询商品价格信息，提升性能
+            // 2) 商品价格一次批量试算；试算失败时保持原有商品信息（只有goodsId）
             List<GoodsMarketRankResponseDTO> rankList = resp.getRankList();
             if (rankList != null && !rankList.isEmpty()) {
-                // 使用 CompletableFuture 并行查询商品价格
-                List<CompletableFuture<Void>> futures = rankList.stream()
-                        .map(rankItem -> CompletableFuture.runAsync(() -> {
-                            try {
-                                String goodsId = rankItem.getGoods().getGoodsId();
-                                
-                                // 通过试算获取商品价格信息
-                                TrialBalanceEntity trialBalanceEntity = indexGroupBuyMarketService.indexMarketTrial(
-                                        MarketProductEntity.builder()
-                                                .activityId(activityId)
-                                                .userId(req.getUserId())
-                                                .goodsId(goodsId)
-                                                .source(req.getSource())
-                                                .channel(req.getChannel())
-                                                .build());
-
-                                // 构建商品信息
-                                GoodsMarketRankResponseDTO.Goods goods = GoodsMarketRankResponseDTO.Goods.builder()
-                                        .goodsId(goodsId)
-                                        .originalPrice(trialBalanceEntity.getOriginalPrice())
-                                        .deductionPrice(trialBalanceEntity.getDeductionPrice())
-                                        .payPrice(trialBalanceEntity.getPayPrice())
-                                        .build();
-
-                                // 设置商品信息
-                                rankItem.setGoods(goods);
-                            } catch (Exception e) {
-                                log.error("查询商品价格失败 goodsId:{}", rankItem.getGoods().getGoodsId(), e);
-                                // 异常时保持原有商品信息（只有goodsId）
-                            }
-                        }, priceQueryExecutor))
+                List<MarketProductEntity> marketProductEntities = rankList.stream()
+                        .map(rankItem -> MarketProductEntity.builder()
+                                .activityId(activityId)
+                                .userId(req.getUserId())
+                                .goodsId(rankItem.getGoods().getGoodsId())
+                                .source(req.getSource())
+                                .channel(req.getChannel())
+                                .build())
                         .collect(Collectors.toList());
-
-                // 等待所有查询完成
-                CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+                try {
+                    List<TrialBalanceEntity> trialBalanceEntities = indexGroupBuyMarketService.indexMarketTrialBatch(marketProductEntities);
+                    for (int i = 0; i < rankList.size(); i++) {
+                        TrialBalanceEntity trialBalanceEntity = trialBalanceEntities.get(i);
+                        if (null == trialBalanceEntity) continue;
+                        rankList.get(i).setGoods(GoodsMarketRankResponseDTO.Goods.builder()
+                                .goodsId(trialBalanceEntity.getGoodsId())
+                                .originalPrice(trialBalanceEntity.getOriginalPrice())
+                                .deductionPrice(trialBalanceEntity.getDeductionPrice())
+                                .payPrice(trialBalanceEntity.getPayPrice())
+                                .build());
+                    }
+                } catch (AppException e) {
+                    log.error("查询排行榜商品价格失败:{} activityId:{} code:{}", req.getUserId(), activityId, e.getCode(), e);
+                }
             }
 
             log.info("查询拼团营销排行榜完成:{} activityId:{}", req.getUserId(), req.getActivityId());
@@ -219,4 +328,65 @@ public class MarketIndexController implements IMarketIndexService {
         }
     }
 
+    public Response<List<GoodsMarketBatchResponseDTO>> queryGroupBuyMarketConfigBatchFallBack(GoodsMarketBatchRequestDTO requestDTO) {
+        log.error("批量查询拼团营销配置限流:{}", requestDTO.getUserId());
+        return Response.<List<GoodsMarketBatchResponseDTO>>builder()
+                .code(ResponseCode.RATE_LIMITER.getCode())
+                .info(ResponseCode.RATE_LIMITER.getInfo())
+                .build();
+    }
+
+    /**
+     * 组装商品营销应答；查询用户进行中的组队、活动组队统计
+     */
+    private GoodsMarketResponseDTO buildGoodsMarketResponseDTO(String userId, TrialBalanceEntity trialBalanceEntity) {
+        GroupBuyActivityDiscountVO groupBuyActivityDiscountVO = trialBalanceEntity.getGroupBuyActivityDiscountVO();
+        Long activityId = groupBuyActivityDiscountVO.getActivityId();
+
+        // 查询拼团组队
+        List<UserGroupBuyOrderDetailEntity> userGroupBuyOrderDetailEntities = indexGroupBuyMarketService.queryInProgressUserGroupBuyOrderDetailList(activityId, userId, 1, 2);
+
+        // 统计拼团数据
+        TeamStatisticVO teamStatisticVO = indexGroupBuyMarketService.queryTeamStatisticByActivityId(activityId);
+
+        GoodsMarketResponseDTO.Goods goods = GoodsMarketResponseDTO.Goods.builder()
+                .goodsId(trialBalanceEntity.getGoodsId())
+                .originalPrice(trialBalanceEntity.getOriginalPrice())
+                .deductionPrice(trialBalanceEntity.getDeductionPrice())
+                .payPrice(trialBalanceEntity.getPayPrice())
+                .build();
+
+        List<GoodsMarketResponseDTO.Team> teams = new ArrayList<>();
+        if (null != userGroupBuyOrderDetailEntities && !userGroupBuyOrderDetailEntities.isEmpty()) {
+            for (UserGroupBuyOrderDetailEntity userGroupBuyOrderDetailEntity : userGroupBuyOrderDetailEntities) {
+                GoodsMarketResponseDTO.Team team = GoodsMarketResponseDTO.Team.builder()
+                        .userId(userGroupBuyOrderDetailEntity.getUserId())
+                        .teamId(userGroupBuyOrderDetailEntity.getTeamId())
+                        .activityId(userGroupBuyOrderDetailEntity.getActivityId())
+                        .targetCount(userGroupBuyOrderDetailEntity.getTargetCount())
+                        .completeCount(userGroupBuyOrderDetailEntity.getCompleteCount())
+                        .lockCount(userGroupBuyOrderDetailEntity.getLockCount())
+                        .validStartTime(userGroupBuyOrderDetailEntity.getValidStartTime())
+                        .validEndTime(userGroupBuyOrderDetailEntity.getValidEndTime())
+                        .validTimeCountdown(GoodsMarketResponseDTO.Team.differenceDateTime2Str(new Date(), userGroupBuyOrderDetailEntity.getValidEndTime()))
+                        .outTradeNo(userGroupBuyOrderDetailEntity.getOutTradeNo())
+                        .build();
+                teams.add(team);
+            }
+        }
+
+        GoodsMarketResponseDTO.TeamStatistic teamStatistic = GoodsMarketResponseDTO.TeamStatistic.builder()
+                .allTeamCount(teamStatisticVO.getAllTeamCount())
+                .allTeamCompleteCount(teamStatisticVO.getAllTeamCompleteCount())
+                .allTeamUserCount(teamStatisticVO.getAllTeamUserCount())
+                .build();
+
+        return GoodsMarketResponseDTO.builder()
+                .activityId(activityId)
+                .goods(goods)
+                .teamList(teams)
+                .teamStatistic(teamStatistic)
+                .build();
+    }
+
 }
@@ -21,12 +21,14 @@ import cn.bugstack.types.exception.AppException;
 import com.alibaba.fastjson.JSON;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Objects;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 
 /**
  * @author Fuzhengwei bugstack.cn @小傅哥
@@ -45,6 +47,16 @@ public class MarketTradeController implements IMarketTradeService {
     private ITradeLockOrderService tradeOrderService;
     @Resource
     private ITradeSettlementOrderService tradeSettlementOrderService;
+    /** 批量锁单通道线程池；与试算、查询共用的线程池隔离，通道内阻塞等待不占用其任务 */
+    @Resource(name = "lockBatchExecutor")
+    private ExecutorService lockBatchExecutor;
+
+    /** 批量锁单单次最大条数 */
+    @Value("${group-buy-market.lock-order.batch.max-size:200}")
+    private int lockBatchMaxSize;
+    /** 批量锁单并行通道数 */
+    @Value("${group-buy-market.lock-order.batch.parallelism:8}")
+    private int lockBatchParallelism;
 
     /**
      * 拼团营销锁单
@@ -52,6 +64,16 @@ public class MarketTradeController implements IMarketTradeService {
     @RequestMapping(value = "lock_market_pay_order", method = RequestMethod.POST)
     @Override
     public Response<LockMarketPayOrderResponseDTO> lockMarketPayOrder(@RequestBody LockMarketPayOrderRequestDTO requestDTO) {
+        return lockMarketPayOrder(requestDTO, () -> indexGroupBuyMarketService.indexMarketTrial(buildMarketProductEntity(requestDTO)), false);
+    }
+
+    /**
+     * 锁单流程；单笔、批量共用
+     *
+     * @param trial     营销优惠试算；批量锁单传入批内已计算的结果
+     * @param batchLock 批量锁单，落库固定走组提交
+     */
+    private Response<LockMarketPayOrderResponseDTO> lockMarketPayOrder(LockMarketPayOrderRequestDTO requestDTO, Callable<TrialBalanceEntity> trial, boolean batchLock) {
         try {
             // 参数
             String userId = requestDTO.getUserId();
@@ -65,107 +87,126 @@ public class MarketTradeController implements IMarketTradeService {
 
             log.info("营销交易锁单:{} LockMarketPayOrderRequestDTO:{}", userId, JSON.toJSONString(requestDTO));
 
-            if (StringUtils.isBlank(userId) || StringUtils.isBlank(source) || StringUtils.isBlank(channel) || StringUtils.isBlank(goodsId) || null == activityId || ("HTTP".equals(notifyConfigVO.getNotifyType()) && StringUtils.isBlank(notifyConfigVO.getNotifyUrl()))) {
+            if (StringUtils.isBlank(userId) || StringUtils.isBlank(source) || StringUtils.isBlank(channel) || StringUtils.isBlank(goodsId) || null == activityId || StringUtils.isBlank(outTradeNo) || ("HTTP".equals(notifyConfigVO.getNotifyType()) && StringUtils.isBlank(notifyConfigVO.getNotifyUrl()))) {
                 return Response.<LockMarketPayOrderResponseDTO>builder()
                         .code(ResponseCode.ILLEGAL_PARAMETER.getCode())
                         .info(ResponseCode.ILLEGAL_PARAMETER.getInfo())
                         .build();
             }
 
-            // 查询 outTradeNo 是否已经存在交易记录
-            MarketPayOrderEntity marketPayOrderEntity = tradeOrderService.queryNoPayMarketPayOrderByOutTradeNo(userId, outTradeNo);
-            if (null != marketPayOrderEntity && TradeOrderStatusEnumVO.CREATE.equals(marketPayOrderEntity.getTradeOrderStatusEnumVO())) {
-                LockMarketPayOrderResponseDTO lockMarketPayOrderResponseDTO = LockMarketPayOrderResponseDTO.builder()
-                        .orderId(marketPayOrderEntity.getOrderId())
-                        .originalPrice(marketPayOrderEntity.getOriginalPrice())
-                        .deductionPrice(marketPayOrderEntity.getDeductionPrice())
-                        .payPrice(marketPayOrderEntity.getPayPrice())
-                        .tradeOrderStatus(marketPayOrderEntity.getTradeOrderStatusEnumVO().getCode())
+            // 已满队伍直接拒绝，不进入试算、规则过滤和 Redis 脚本
+            if (tradeOrderService.isTeamFullIntercept(userId, outTradeNo, teamId)) {
+                log.info("交易锁单拦截-组队已满:{} {}", userId, teamId);
+                return Response.<LockMarketPayOrderResponseDTO>builder()
+                        .code(ResponseCode.E0008.getCode())
+                        .info(ResponseCode.E0008.getInfo())
                         .build();
+            }
 
-                log.info("交易锁单记录(存在):{} marketPayOrderEntity:{}", userId, JSON.toJSONString(marketPayOrderEntity));
+            // 外部单号在途锁；重复请求等待首个请求完成，再由幂等索引返回首个请求的结果
+            String outTradeNoLockToken = tradeOrderService.tryLockOutTradeNo(userId, outTradeNo);
+            if (null == outTradeNoLockToken) {
+                log.info("交易锁单拦截-重复请求处理中:{} outTradeNo:{}", userId, outTradeNo);
                 return Response.<LockMarketPayOrderResponseDTO>builder()
-                        .code(ResponseCode.SUCCESS.getCode())
-                        .info(ResponseCode.SUCCESS.getInfo())
-                        .data(lockMarketPayOrderResponseDTO)
+                        .code(ResponseCode.E0009.getCode())
+                        .info(ResponseCode.E0009.getInfo())
                         .build();
             }
 
-            // 判断拼团锁单是否完成了目标
-            if (StringUtils.isNotBlank(teamId)) {
-                GroupBuyProgressVO groupBuyProgressVO = tradeOrderService.queryGroupBuyProgress(teamId);
-                if (null != groupBuyProgressVO && Objects.equals(groupBuyProgressVO.getTargetCount(), groupBuyProgressVO.getLockCount())) {
-                    log.info("交易锁单拦截-拼单目标已达成:{} {}", userId, teamId);
+            try {
+                // 查询 outTradeNo 是否已经存在交易记录
+                MarketPayOrderEntity marketPayOrderEntity = tradeOrderService.queryNoPayMarketPayOrderByOutTradeNo(userId, outTradeNo);
+                if (null != marketPayOrderEntity && TradeOrderStatusEnumVO.CREATE.equals(marketPayOrderEntity.getTradeOrderStatusEnumVO())) {
+                    LockMarketPayOrderResponseDTO lockMarketPayOrderResponseDTO = LockMarketPayOrderResponseDTO.builder()
+                            .orderId(marketPayOrderEntity.getOrderId())
+                            .originalPrice(marketPayOrderEntity.getOriginalPrice())
+                            .deductionPrice(marketPayOrderEntity.getDeductionPrice())
+                            .payPrice(marketPayOrderEntity.getPayPrice())
+                            .tradeOrderStatus(marketPayOrderEntity.getTradeOrderStatusEnumVO().getCode())
+                            .build();
+
+                    log.info("交易锁单记录(存在):{} marketPayOrderEntity:{}", userId, JSON.toJSONString(marketPayOrderEntity));
                     return Response.<LockMarketPayOrderResponseDTO>builder()
-                            .code(ResponseCode.E0006.getCode())
-                            .info(ResponseCode.E0006.getInfo())
+                            .code(ResponseCode.SUCCESS.getCode())
+                            .info(ResponseCode.SUCCESS.getInfo())
+                            .data(lockMarketPayOrderResponseDTO)
                             .build();
                 }
-            }
 
-            // 营销优惠试算
-            TrialBalanceEntity trialBalanceEntity = indexGroupBuyMarketService.indexMarketTrial(MarketProductEntity.builder()
-                    .userId(userId)
-                    .source(source)
-                    .channel(channel)
-                    .goodsId(goodsId)
-                    .activityId(activityId)
-                    .build());
+                // 判断拼团锁单是否完成了目标
+                if (StringUtils.isNotBlank(teamId)) {
+                    GroupBuyProgressVO groupBuyProgressVO = tradeOrderService.queryGroupBuyProgress(teamId);
+                    if (null != groupBuyProgressVO && Objects.equals(groupBuyProgressVO.getTargetCount(), groupBuyProgressVO.getLockCount())) {
+                        log.info("交易锁单拦截-拼单目标已达成:{} {}", userId, teamId);
+                        tradeOrderService.markTeamFull(teamId);
+                        return Response.<LockMarketPayOrderResponseDTO>builder()
+                                .code(ResponseCode.E0006.getCode())
+                                .info(ResponseCode.E0006.getInfo())
+                                .build();
+                    }
+                }
+
+                // 营销优惠试算
+                TrialBalanceEntity trialBalanceEntity = trial.call();
+
+                // 人群限定
+                if (!trialBalanceEntity.getIsVisible() || !trialBalanceEntity.getIsEnable()) {
+                    return Response.<LockMarketPayOrderResponseDTO>builder()
+                            .code(ResponseCode.E0007.getCode())
+                            .info(ResponseCode.E0007.getInfo())
+                            .build();
+                }
 
-            // 人群限定
-            if (!trialBalanceEntity.getIsVisible() || !trialBalanceEntity.getIsEnable()) {
+                GroupBuyActivityDiscountVO groupBuyActivityDiscountVO = trialBalanceEntity.getGroupBuyActivityDiscountVO();
+
+                // 营销优惠锁单
+                marketPayOrderEntity = tradeOrderService.lockMarketPayOrder(
+                        UserEntity.builder().userId(userId).build(),
+                        PayActivityEntity.builder()
+                                .teamId(teamId)
+                                .activityId(activityId)
+                                .activityName(groupBuyActivityDiscountVO.getActivityName())
+                                .startTime(groupBuyActivityDiscountVO.getStartTime())
+                                .endTime(groupBuyActivityDiscountVO.getEndTime())
+                                .validTime(groupBuyActivityDiscountVO.getValidTime())
+                                .targetCount(groupBuyActivityDiscountVO.getTarget())
+                                .build(),
+                        PayDiscountEntity.builder()
+                                .source(source)
+                                .channel(channel)
+                                .goodsId(goodsId)
+                                .goodsName(trialBalanceEntity.getGoodsName())
+                                .originalPrice(trialBalanceEntity.getOriginalPrice())
+                                .deductionPrice(trialBalanceEntity.getDeductionPrice())
+                                .payPrice(trialBalanceEntity.getPayPrice())
+                                .outTradeNo(outTradeNo)
+                                .batchLock(batchLock)
+                                .notifyConfigVO(
+                                        // 构建回调通知对象
+                                        NotifyConfigVO.builder()
+                                                .notifyType(NotifyTypeEnumVO.valueOf(notifyConfigVO.getNotifyType()))
+                                                .notifyMQ(notifyConfigVO.getNotifyMQ())
+                                                .notifyUrl(notifyConfigVO.getNotifyUrl())
+                                                .build())
+                                .build());
+
+                log.info("交易锁单记录(新):{} marketPayOrderEntity:{}", userId, JSON.toJSONString(marketPayOrderEntity));
+
+                // 返回结果
                 return Response.<LockMarketPayOrderResponseDTO>builder()
-                        .code(ResponseCode.E0007.getCode())
-                        .info(ResponseCode.E0007.getInfo())
+                        .code(ResponseCode.SUCCESS.getCode())
+                        .info(ResponseCode.SUCCESS.getInfo())
+                        .data(LockMarketPayOrderResponseDTO.builder()
+                                .orderId(marketPayOrderEntity.getOrderId())
+                                .originalPrice(marketPayOrderEntity.getOriginalPrice())
+                                .deductionPrice(marketPayOrderEntity.getDeductionPrice())
+                                .payPrice(marketPayOrderEntity.getPayPrice())
+                                .tradeOrderStatus(marketPayOrderEntity.getTradeOrderStatusEnumVO().getCode())
+                                .build())
                         .build();
+            } finally {
+                tradeOrderService.unlockOutTradeNo(userId, outTradeNo, outTradeNoLockToken);
             }
-
-            GroupBuyActivityDiscountVO groupBuyActivityDiscountVO = trialBalanceEntity.getGroupBuyActivityDiscountVO();
-
-            // 营销优惠锁单
-            marketPayOrderEntity = tradeOrderService.lockMarketPayOrder(
-                    UserEntity.builder().userId(userId).build(),
-                    PayActivityEntity.builder()
-                            .teamId(teamId)
-                            .activityId(activityId)
-                            .activityName(groupBuyActivityDiscountVO.getActivityName())
-                            .startTime(groupBuyActivityDiscountVO.getStartTime())
-                            .endTime(groupBuyActivityDiscountVO.getEndTime())
-                            .validTime(groupBuyActivityDiscountVO.getValidTime())
-                            .targetCount(groupBuyActivityDiscountVO.getTarget())
-                            .build(),
-                    PayDiscountEntity.builder()
-                            .source(source)
-                            .channel(channel)
-                            .goodsId(goodsId)
-                            .goodsName(trialBalanceEntity.getGoodsName())
-                            .originalPrice(trialBalanceEntity.getOriginalPrice())
-                            .deductionPrice(trialBalanceEntity.getDeductionPrice())
-                            .payPrice(trialBalanceEntity.getPayPrice())
-                            .outTradeNo(outTradeNo)
-                            .notifyConfigVO(
-                                    // 构建回调通知对象
-                                    NotifyConfigVO.builder()
-                                            .notifyType(NotifyTypeEnumVO.valueOf(notifyConfigVO.getNotifyType()))
-                                            .notifyMQ(notifyConfigVO.getNotifyMQ())
-                                            .notifyUrl(notifyConfigVO.getNotifyUrl())
-                                            .build())
-                            .build());
-
-            log.info("交易锁单记录(新):{} marketPayOrderEntity:{}", userId, JSON.toJSONString(marketPayOrderEntity));
-
-            // 返回结果
-            return Response.<LockMarketPayOrderResponseDTO>builder()
-                    .code(ResponseCode.SUCCESS.getCode())
-                    .info(ResponseCode.SUCCESS.getInfo())
-                    .data(LockMarketPayOrderResponseDTO.builder()
-                            .orderId(marketPayOrderEntity.getOrderId())
-                            .originalPrice(marketPayOrderEntity.getOriginalPrice())
-                            .deductionPrice(marketPayOrderEntity.getDeductionPrice())
-                            .payPrice(marketPayOrderEntity.getPayPrice())
-                            .tradeOrderStatus(marketPayOrderEntity.getTradeOrderStatusEnumVO().getCode())
-                            .build())
-                    .build();
         } catch (AppException e) {
             log.error("营销交易锁单业务异常:{} LockMarketPayOrderRequestDTO:{}", requestDTO.getUserId(), JSON.toJSONString(requestDTO), e);
             return Response.<LockMarketPayOrderResponseDTO>builder()
@@ -181,6 +222,189 @@ public class MarketTradeController implements IMarketTradeService {
         }
     }
 
+    /**
+     * 拼团营销批量锁单；合作渠道一次推送多笔订单
+     * <p>
+     * 1. 一次管道读取全部外部单号幂等索引、一次查询读取全部组队进度，逐笔锁单时直接命中请求级记忆
+     * 2. 营销优惠批量试算一次，价格按 活动_商品 计算一次，人群标签按 标签_用户 判断一次
+     * 3. 加入同一组队的订单同组串行，不在批内争抢同一队伍；新建组队的订单各自成组，各组在独立线程池并行执行，落库固定走锁单组提交合并为多行写入
+     * 4. 逐笔复用单笔锁单流程，单笔失败只影响该笔结果
+     */
+    @RequestMapping(value = "lock_market_pay_order_batch", method = RequestMethod.POST)
+    @Override
+    public Response<List<LockMarketPayOrderBatchResponseDTO>> lockMarketPayOrderBatch(@RequestBody LockMarketPayOrderBatchRequestDTO requestDTO) {
+        List<LockMarketPayOrderRequestDTO> lockMarketPayOrderList = requestDTO.getLockMarketPayOrderList();
+        if (null == lockMarketPayOrderList || lockMarketPayOrderList.isEmpty() || lockMarketPayOrderList.size() > lockBatchMaxSize) {
+            return Response.<List<LockMarketPayOrderBatchResponseDTO>>builder()
+                    .code(ResponseCode.ILLEGAL_PARAMETER.getCode())
+                    .info(ResponseCode.ILLEGAL_PARAMETER.getInfo())
+                    .build();
+        }
+
+        try {
+            int size = lockMarketPayOrderList.size();
+            log.info("营销交易批量锁单开始 size:{}", size);
+
+            // 1. 按活动、组队分组；收集预取参数
+            Map<String, List<Integer>> groups = new LinkedHashMap<>();
+            Map<String, Set<String>> userOutTradeNos = new HashMap<>();
+            Set<String> teamIds = new HashSet<>();
+            for (int i = 0; i < size; i++) {
+                LockMarketPayOrderRequestDTO item = lockMarketPayOrderList.get(i);
+                if (null == item) continue;
+                String groupKey = StringUtils.isBlank(item.getTeamId()) ? "new_" + i : item.getActivityId() + "_" + item.getTeamId();
+                groups.computeIfAbsent(groupKey, key -> new ArrayList<>()).add(i);
+                if (StringUtils.isNotBlank(item.getUserId()) && StringUtils.isNotBlank(item.getOutTradeNo())) {
+                    userOutTradeNos.computeIfAbsent(item.getUserId(), key -> new HashSet<>()).add(item.getOutTradeNo());
+                }
+                if (StringUtils.isNotBlank(item.getTeamId())) {
+                    teamIds.add(item.getTeamId());
+                }
+            }
+
+            // 2. 预取；失败时逐笔查询兜底
+            try {
+                tradeOrderService.prefetchLockMarketPayOrder(userOutTradeNos, teamIds);
+            } catch (Exception e) {
+                log.warn("营销交易批量锁单预取失败，逐笔查询 size:{}", size, e);
+            }
+
+            // 3. 批量试算
+            Map<Integer, TrialBalanceEntity> trials = new HashMap<>();
+            Map<Integer, AppException> trialErrors = new HashMap<>();
+            trialLockMarketPayOrderBatch(lockMarketPayOrderList, trials, trialErrors);
+
+            // 4. 分组分配到并行通道执行
+            int laneCount = Math.max(1, Math.min(lockBatchParallelism, groups.size()));
+            List<List<Integer>> lanes = new ArrayList<>(laneCount);
+            for (int i = 0; i < laneCount; i++) {
+                lanes.add(new ArrayList<>());
+            }
+            int groupIndex = 0;
+            for (List<Integer> group : groups.values()) {
+                lanes.get(groupIndex++ % laneCount).addAll(group);
+            }
+
+            List<Response<LockMarketPayOrderResponseDTO>> responses = new ArrayList<>(Collections.nCopies(size, null));
+            List<CompletableFuture<Void>> futures = new ArrayList<>(laneCount);
+            for (List<Integer> lane : lanes) {
+                futures.add(CompletableFuture.runAsync(() -> {
+                    for (Integer index : lane) {
+                        LockMarketPayOrderRequestDTO item = lockMarketPayOrderList.get(index);
+                        responses.set(index, lockMarketPayOrder(item, () -> {
+                            if (trialErrors.containsKey(index)) throw trialErrors.get(index);
+                            TrialBalanceEntity trialBalanceEntity = trials.get(index);
+                            if (null == trialBalanceEntity) throw new AppException(ResponseCode.E0002.getCode(), ResponseCode.E0002.getInfo());
+                            return trialBalanceEntity;
+                        }, true));
+                    }
+                }, lockBatchExecutor));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+
+            // 5. 逐笔结果，与请求顺序一致
+            int successCount = 0;
+            List<LockMarketPayOrderBatchResponseDTO> lockMarketPayOrderBatchResponseDTOList = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                LockMarketPayOrderRequestDTO item = lockMarketPayOrderList.get(i);
+                Response<LockMarketPayOrderResponseDTO> response = responses.get(i);
+                if (null == response) {
+                    response = Response.<LockMarketPayOrderResponseDTO>builder()
+                            .code(ResponseCode.ILLEGAL_PARAMETER.getCode())
+                            .info(ResponseCode.ILLEGAL_PARAMETER.getInfo())
+                            .build();
+                }
+                if (ResponseCode.SUCCESS.getCode().equals(response.getCode())) successCount++;
+                lockMarketPayOrderBatchResponseDTOList.add(LockMarketPayOrderBatchResponseDTO.builder()
+                        .userId(null == item ? null : item.getUserId())
+                        .outTradeNo(null == item ? null : item.getOutTradeNo())
+                        .code(response.getCode())
+                        .info(response.getInfo())
+                        .lockMarketPayOrderResponseDTO(response.getData())
+                        .build());
+            }
+
+            log.info("营销交易批量锁单完成 size:{} success:{} groups:{}", size, successCount, groups.size());
+            return Response.<List<LockMarketPayOrderBatchResponseDTO>>builder()
+                    .code(ResponseCode.SUCCESS.getCode())
+                    .info(ResponseCode.SUCCESS.getInfo())
+                    .data(lockMarketPayOrderBatchResponseDTOList)
+                    .build();
+        } catch (Exception e) {
+            log.error("营销交易批量锁单服务失败 size:{}", lockMarketPayOrderList.size(), e);
+            return Response.<List<LockMarketPayOrderBatchResponseDTO>>builder()
+                    .code(ResponseCode.UN_ERROR.getCode())
+                    .info(ResponseCode.UN_ERROR.getInfo())
+                    .build();
+        }
+    }
+
+    /**
+     * 批量锁单试算；一次批量试算，存在切量拦截的用户时按用户分别试算，只影响该用户的订单
+     */
+    private void trialLockMarketPayOrderBatch(List<LockMarketPayOrderRequestDTO> lockMarketPayOrderList, Map<Integer, TrialBalanceEntity> trials, Map<Integer, AppException> trialErrors) {
+        Map<String, List<Integer>> userIndexes = new LinkedHashMap<>();
+        for (int i = 0; i < lockMarketPayOrderList.size(); i++) {
+            LockMarketPayOrderRequestDTO item = lockMarketPayOrderList.get(i);
+            // 参数不合法的订单在锁单流程内应答
+            if (null == item || StringUtils.isBlank(item.getUserId()) || StringUtils.isBlank(item.getSource()) || StringUtils.isBlank(item.getChannel()) || StringUtils.isBlank(item.getGoodsId()) || null == item.getActivityId()) {
+                continue;
+            }
+            userIndexes.computeIfAbsent(item.getUserId(), key -> new ArrayList<>()).add(i);
+        }
+        if (userIndexes.isEmpty()) return;
+
+        List<Integer> indexes = new ArrayList<>();
+        userIndexes.values().forEach(indexes::addAll);
+        try {
+            trialBatch(lockMarketPayOrderList, indexes, trials);
+            return;
+        } catch (AppException e) {
+            if (!ResponseCode.E0004.getCode().equals(e.getCode())) {
+                indexes.forEach(index -> trialErrors.put(index, e));
+                return;
+            }
+        } catch (Exception e) {
+            log.error("营销交易批量锁单试算失败 size:{}", indexes.size(), e);
+            AppException error = new AppException(ResponseCode.UN_ERROR.getCode(), ResponseCode.UN_ERROR.getInfo());
+            indexes.forEach(index -> trialErrors.put(index, error));
+            return;
+        }
+
+        // 切量按用户判断，逐个用户试算；价格、活动配置由共享缓存命中
+        for (List<Integer> userIndex : userIndexes.values()) {
+            try {
+                trialBatch(lockMarketPayOrderList, userIndex, trials);
+            } catch (AppException e) {
+                userIndex.forEach(index -> trialErrors.put(index, e));
+            } catch (Exception e) {
+                AppException error = new AppException(ResponseCode.UN_ERROR.getCode(), ResponseCode.UN_ERROR.getInfo());
+                userIndex.forEach(index -> trialErrors.put(index, error));
+            }
+        }
+    }
+
+    private void trialBatch(List<LockMarketPayOrderRequestDTO> lockMarketPayOrderList, List<Integer> indexes, Map<Integer, TrialBalanceEntity> trials) {
+        List<MarketProductEntity> marketProductEntities = new ArrayList<>(indexes.size());
+        for (Integer index : indexes) {
+            marketProductEntities.add(buildMarketProductEntity(lockMarketPayOrderList.get(index)));
+        }
+        List<TrialBalanceEntity> trialBalanceEntities = indexGroupBuyMarketService.indexMarketTrialBatch(marketProductEntities);
+        for (int i = 0; i < indexes.size(); i++) {
+            trials.put(indexes.get(i), trialBalanceEntities.get(i));
+        }
+    }
+
+    private MarketProductEntity buildMarketProductEntity(LockMarketPayOrderRequestDTO requestDTO) {
+        return MarketProductEntity.builder()
+                .userId(requestDTO.getUserId())
+                .source(requestDTO.getSource())
+                .channel(requestDTO.getChannel())
+                .goodsId(requestDTO.getGoodsId())
+                .activityId(requestDTO.getActivityId())
+                .build();
+    }
+
     @RequestMapping(value = "settlement_market_pay_order", method = RequestMethod.POST)
     @Override
     public Response<SettlementMarketPayOrderResponseDTO> settlementMarketPayOrder(@RequestBody SettlementMarketPayOrderRequestDTO requestDTO) {
@@ -0,0 +1,63 @@
+package cn.bugstack.trigger.job;
+
+import cn.bugstack.domain.activity.service.IActivityPrewarmService;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ * @description 活动预热任务；活动开始前的提前量内预热本节点缓存和试算链路，本地缓存每个节点都要加载；活动总名额分段 key 等共享数据由抢占到锁的节点预热
+ * @create 2025-08-09 09:40
+ */
+@Slf4j
+@Service
+public class ActivityPrewarmJob {
+
+    @Resource
+    private IActivityPrewarmService activityPrewarmService;
+    @Resource
+    private RedissonClient redissonClient;
+
+    /** 预热提前量（秒） */
+    @Value("${group-buy-market.activity-prewarm.lead-seconds:300}")
+    private long leadSeconds;
+    /** 每个渠道商品的模拟试算次数 */
+    @Value("${group-buy-market.activity-prewarm.trial-rounds:200}")
+    private int trialRounds;
+
+    @Scheduled(cron = "0/30 * * * * ?")
+    public void exec() {
+        // 多实例部署，共享数据由抢占到锁的实例预热；初始化只写入不存在的分段 key，加锁避免重复执行
+        RLock lock = redissonClient.getLock("group_buy_market_activity_prewarm_job_exec");
+        try {
+            boolean isLocked = lock.tryLock(1, 0, TimeUnit.SECONDS);
+            if (isLocked) {
+                activityPrewarmService.prewarmUpcomingActivityStock(leadSeconds);
+            }
+        } catch (Exception e) {
+            log.error("定时任务，活动库存预热失败", e);
+        } finally {
+            if (lock.isLocked() && lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+
+        // 本节点缓存和试算链路；试算耗时较长，定时任务线程池见 spring.task.scheduling
+        try {
+            int count = activityPrewarmService.prewarmUpcomingActivities(leadSeconds, trialRounds);
+            if (count > 0) {
+                log.info("定时任务，活动预热完成 count:{}", count);
+            }
+        } catch (Exception e) {
+            log.error("定时任务，活动预热失败", e);
+        }
+    }
+
+}
@@ -0,0 +1,49 @@
+package cn.bugstack.trigger.job;
+
+import cn.bugstack.domain.trade.service.ITradeLockOrderService;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ * @description 活动总名额分段调拨任务；把富余分段的名额调入即将用尽的分段，减少锁单逐段探测
+ * @create 2025-08-02 10:30
+ */
+@Slf4j
+@Service
+public class ActivityStockRebalanceJob {
+
+    @Resource
+    private ITradeLockOrderService tradeLockOrderService;
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    @Scheduled(cron = "0/5 * * * * ?")
+    public void exec() {
+        // 多实例部署，抢占到锁的实例执行；调拨并发执行不会超卖，加锁避免重复调拨
+        RLock lock = redissonClient.getLock("group_buy_market_activity_stock_rebalance_job_exec");
+        try {
+            boolean isLocked = lock.tryLock(1, 0, TimeUnit.SECONDS);
+            if (!isLocked) return;
+
+            int count = tradeLockOrderService.rebalanceActivityStock();
+            if (count > 0) {
+                log.info("定时任务，活动总名额分段调拨完成 count:{}", count);
+            }
+        } catch (Exception e) {
+            log.error("定时任务，活动总名额分段调拨失败", e);
+        } finally {
+            if (lock.isLocked() && lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,49 @@
+package cn.bugstack.trigger.job;
+
+import cn.bugstack.domain.tag.service.ITagService;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ * @description 人群标签位图迁移任务；把存量人群标签重建到用户索引字典布局，全部迁移后可开启 group-buy-market.crowd-tag.dense-index
+ * @create 2025-08-20 10:30
+ */
+@Slf4j
+@Service
+public class CrowdTagsBitmapMigrationJob {
+
+    @Resource
+    private ITagService tagService;
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    @Scheduled(cron = "0 0/10 * * * ?")
+    public void exec() {
+        // 多实例部署，抢占到锁的实例执行
+        RLock lock = redissonClient.getLock("group_buy_market_crowd_tags_bitmap_migration_job_exec");
+        try {
+            boolean isLocked = lock.tryLock(3, 0, TimeUnit.SECONDS);
+            if (!isLocked) return;
+
+            int count = tagService.migrateCrowdTagsBitmap();
+            if (count > 0) {
+                log.info("定时任务，人群标签位图迁移完成 count:{}", count);
+            }
+        } catch (Exception e) {
+            log.error("定时任务，人群标签位图迁移失败", e);
+        } finally {
+            if (lock.isLocked() && lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,49 @@
+package cn.bugstack.trigger.job;
+
+import cn.bugstack.domain.tag.service.ITagService;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ * @description 组合人群对账任务；全量重新计算组合人群，修正引用标签并发写入时增量更新遗漏的用户
+ * @create 2025-08-20 10:30
+ */
+@Slf4j
+@Service
+public class CrowdTagsExpressionReconcileJob {
+
+    @Resource
+    private ITagService tagService;
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    @Scheduled(cron = "0 0/30 * * * ?")
+    public void exec() {
+        // 多实例部署，抢占到锁的实例执行
+        RLock lock = redissonClient.getLock("group_buy_market_crowd_tags_expression_reconcile_job_exec");
+        try {
+            boolean isLocked = lock.tryLock(3, 0, TimeUnit.SECONDS);
+            if (!isLocked) return;
+
+            int count = tagService.reconcileCrowdTagsExpressions();
+            if (count > 0) {
+                log.info("定时任务，组合人群对账完成 changed:{}", count);
+            }
+        } catch (Exception e) {
+            log.error("定时任务，组合人群对账失败", e);
+        } finally {
+            if (lock.isLocked() && lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
+
+}
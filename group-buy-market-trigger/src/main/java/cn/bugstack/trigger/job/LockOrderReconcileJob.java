@@ -0,0 +1,54 @@
+package cn.bugstack.trigger.job;
+
+import cn.bugstack.domain.trade.service.ITradeLockOrderService;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ * @description 锁单对账任务；修复 Redis 优先锁单预占成功但数据库迟迟未落库的订单，确认结果未知的锁单是否落库
+ * @create 2025-07-20 14:30
+ */
+@Slf4j
+@Service
+public class LockOrderReconcileJob {
+
+    @Resource
+    private ITradeLockOrderService tradeLockOrderService;
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    @Scheduled(cron = "0/30 * * * * ?")
+    public void exec() {
+        // 多实例部署，抢占到锁的实例执行
+        RLock lock = redissonClient.getLock("group_buy_market_lock_order_reconcile_job_exec");
+        try {
+            boolean isLocked = lock.tryLock(3, 0, TimeUnit.SECONDS);
+            if (!isLocked) return;
+
+            int count = tradeLockOrderService.reconcileReservedMarketPayOrder();
+            if (count > 0) {
+                log.info("定时任务，锁单异步落库对账完成 count:{}", count);
+            }
+
+            int unknownCount = tradeLockOrderService.reconcileUnknownLockOrder();
+            if (unknownCount > 0) {
+                log.info("定时任务，锁单结果未知对账完成 count:{}", unknownCount);
+            }
+        } catch (Exception e) {
+            log.error("定时任务，锁单异步落库对账失败", e);
+        } finally {
+            if (lock.isLocked() && lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,49 @@
+package cn.bugstack.trigger.job;
+
+import cn.bugstack.domain.trade.service.ITradeTaskService;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ * @description 交易事件发件箱补偿投递任务；提交后投递失败或节点宕机遗留的事件，超过宽限期后由该任务重新投递
+ * @create 2025-07-26 10:20
+ */
+@Slf4j
+@Service
+public class MarketEventOutboxRelayJob {
+
+    @Resource
+    private ITradeTaskService tradeTaskService;
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    @Scheduled(cron = "0/15 * * * * ?")
+    public void exec() {
+        // 多实例部署，抢占到锁的实例执行
+        RLock lock = redissonClient.getLock("group_buy_market_event_outbox_relay_job_exec");
+        try {
+            boolean isLocked = lock.tryLock(3, 0, TimeUnit.SECONDS);
+            if (!isLocked) return;
+
+            int count = tradeTaskService.execMarketEventOutboxRelay();
+            if (count > 0) {
+                log.info("定时任务，交易事件发件箱补偿投递完成 count:{}", count);
+            }
+        } catch (Exception e) {
+            log.error("定时任务，交易事件发件箱补偿投递失败", e);
+        } finally {
+            if (lock.isLocked() && lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,47 @@
+package cn.bugstack.trigger.job;
+
+import cn.bugstack.domain.tag.service.ITagService;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Fuzhengwei bugstack.cn @小傅哥
+ * @description 用户索引字典重建任务；按 user_index 表回填 Redis 哈希分片，修复 Redis 数据丢失、分片数调整后的缺失
+ * @create 2025-08-20 10:30
+ */
+@Slf4j
+@Service
+public class UserIndexRebuildJob {
+
+    @Resource
+    private ITagService tagService;
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    @Scheduled(cron = "0 30 3 * * ?")
+    public void exec() {
+        // 多实例部署，抢占到锁的实例执行
+        RLock lock = redissonClient.getLock("group_buy_market_user_index_rebuild_job_exec");
+        try {
+            boolean isLocked = lock.tryLock(3, 0, TimeUnit.SECONDS);
+            if (!isLocked) return;
+
+            int count = tagService.rebuildUserIndexes();
+            log.info("定时任务，用户索引字典重建完成 count:{}", count);
+        } catch (Exception e) {
+            log.error("定时任务，用户索引字典重建失败", e);
+        } finally {
+            if (lock.isLocked() && lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
+
+}
@@ -25,6 +25,9 @@ public enum ResponseCode {
     E0006("E0006", "拼团组队完结，锁单量已达成"),
     E0007("E0007", "拼团人群限定，不可参与"),
     E0008("E0008", "拼团组队失败，缓存库存不足"),
+    E0009("E0009", "重复请求处理中，请稍后重试"),
+    E0010("E0010", "拼团活动名额已售罄"),
+    E0011("E0011", "锁单结果未知，等待对账确认"),
 
     E0101("E0101", "拼团活动未生效"),
     E0102("E0102", "不在拼团活动有效时间内"),
@@ -34,6 +37,9 @@ public enum ResponseCode {
     E0106("E0106", "订单交易时间不在拼团有效时间范围内"),
 
     E0201("E0201", "查询记录为空"),
+
+    E0301("E0301", "人群标签表达式不合法"),
+    E0302("E0302", "人群标签表达式人群无界，需至少包含一个不取反的标签"),
     ;
 
     private String code;